@@ -0,0 +1,390 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.activemq.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ScheduledMessage;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.scheduler.JobListener;
+import org.apache.activemq.broker.scheduler.JobScheduler;
+import org.apache.activemq.broker.scheduler.JobSchedulerStore;
+import org.apache.activemq.broker.scheduler.memory.InMemoryJobSchedulerStore;
+import org.apache.activemq.store.kahadb.scheduler.JobSchedulerStoreImpl;
+import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
+
+/**
+ * Tests for the TimingWheelJobScheduler, and a stress test of the job scheduler stores: the InMemoryJobSchedulerStore
+ * ("memory"), the KahaDB JobSchedulerStoreImpl ("kahadb") and the TimingWheelJobSchedulerStore ("wheel").
+ *
+ * For each store, the stress test schedules a large number of jobs directly on the JobScheduler of the store, with a
+ * random delay, where some of the jobs repeat. It reports how fast the jobs are scheduled and fired, how late they
+ * fire (compared to the delay, or to the previous firing plus the period for a repeat), and the size of the store
+ * and of the heap when all of the jobs are scheduled. It then sends scheduled messages through a broker with each
+ * store, and reports how late they are received.
+ *
+ * The stress test takes several minutes, so it only runs with -Dactivemq.benchmark=true. It is configured via system
+ * properties:
+ *
+ *  - activemq.benchmark.scheduler.stores: The stores to test (default "memory,kahadb,wheel")
+ *  - activemq.benchmark.scheduler.jobs: The number of jobs to schedule directly (default 1000000)
+ *  - activemq.benchmark.scheduler.repeating: The percentage of the jobs that repeat (default 10)
+ *  - activemq.benchmark.scheduler.repeat / activemq.benchmark.scheduler.period: The repeat count and period of the
+ *    repeating jobs (default 3 and 1000ms)
+ *  - activemq.benchmark.scheduler.max.delay: The maximum delay in milliseconds, where the minimum is a second
+ *    (default 10000)
+ *  - activemq.benchmark.scheduler.payload: The payload size of a job in bytes (default 256)
+ *  - activemq.benchmark.scheduler.messages: The number of scheduled messages to send via the broker (default 100000)
+ */
+public class SchedulerPerformanceTest {
+
+    private static final String[] STORES =
+        System.getProperty("activemq.benchmark.scheduler.stores", "memory,kahadb,wheel").split(",");
+    private static final int JOBS = Integer.getInteger("activemq.benchmark.scheduler.jobs", 1000000);
+    private static final int REPEATING = Integer.getInteger("activemq.benchmark.scheduler.repeating", 10);
+    private static final int REPEAT = Integer.getInteger("activemq.benchmark.scheduler.repeat", 3);
+    private static final long PERIOD = Long.getLong("activemq.benchmark.scheduler.period", 1000L);
+    private static final long MIN_DELAY = 1000L;
+    private static final long MAX_DELAY = Long.getLong("activemq.benchmark.scheduler.max.delay", 10000L);
+    private static final int PAYLOAD = Integer.getInteger("activemq.benchmark.scheduler.payload", 256);
+    private static final int MESSAGES = Integer.getInteger("activemq.benchmark.scheduler.messages", 100000);
+
+    private static final String EXPECTED_TIME = "expectedTime";
+
+    @org.junit.Test
+    public void testTimingWheelScheduler() throws Exception {
+        // A tick of 1ms, so that the jobs of more than 256ms away are moved down from the second wheel
+        TimingWheelJobSchedulerStore store = new TimingWheelJobSchedulerStore();
+        store.setTickMillis(1L);
+        store.start();
+        try {
+            TimingWheelJobScheduler scheduler = (TimingWheelJobScheduler)store.getJobScheduler("JMS");
+            final List<String> fired = new CopyOnWriteArrayList<>();
+            final ConcurrentMap<String, Long> lateness = new ConcurrentHashMap<>();
+            scheduler.addListener(new JobListener() {
+                public void scheduledJob(String id, ByteSequence job) {
+                    long expected = ByteBuffer.wrap(job.getData(), job.getOffset(), job.getLength()).getLong();
+                    lateness.put(id, System.currentTimeMillis() - expected);
+                    fired.add(id);
+                }
+            });
+
+            long now = System.currentTimeMillis();
+            scheduler.schedule("delay50", createPayload(now + 50L, 0L, 8), 50L);
+            scheduler.schedule("delay300", createPayload(now + 300L, 0L, 8), 300L);
+            scheduler.schedule("delay700", createPayload(now + 700L, 0L, 8), 700L);
+            scheduler.schedule("removed", createPayload(now + 500L, 0L, 8), 500L);
+            // Fires three times
+            scheduler.schedule("repeat", createPayload(now + 100L, 0L, 8), "", 100L, 100L, 2);
+            // Ten days away, so it is in the last wheel
+            scheduler.schedule("later", createPayload(now + 864000000L, 0L, 8), 864000000L);
+            assertEquals(6, scheduler.getAllJobs().size());
+            assertEquals(1, scheduler.getAllJobs(now + 864000000L, now + 864001000L).size());
+
+            scheduler.remove("removed");
+            Thread.sleep(1500L);
+
+            assertEquals(6, fired.size());
+            assertEquals(3, Collections.frequency(fired, "repeat"));
+            assertEquals("delay50", fired.get(0));
+            assertEquals("delay700", fired.get(5));
+            for (String id : Arrays.asList("delay50", "delay300", "delay700")) {
+                // A job never fires before its execution time
+                long late = lateness.get(id);
+                assertTrue(id + " fired " + late + "ms late", late >= 0L && late < 200L);
+            }
+            assertEquals(1, scheduler.getAllJobs().size());
+            assertEquals("later", scheduler.getNextScheduleJobs().get(0).getJobId());
+
+            scheduler.removeAllJobs();
+            assertEquals(0, scheduler.getAllJobs().size());
+            assertEquals(0L, store.size());
+        } finally {
+            store.stop();
+        }
+    }
+
+    @org.junit.Test
+    public void testScheduledMessagesWithTimingWheel() throws Exception {
+        BrokerService broker = createBroker(new TimingWheelJobSchedulerStore());
+        broker.start();
+        try {
+            ActiveMQConnectionFactory factory =
+                new ActiveMQConnectionFactory(broker.getTransportConnectors().get(0).getConnectUri());
+            Connection connection = factory.createConnection();
+            connection.start();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Destination queue = session.createQueue("testqueue");
+            MessageProducer producer = session.createProducer(queue);
+            MessageConsumer consumer = session.createConsumer(queue);
+
+            // Deliver the message after a 2 second delay
+            TextMessage message = session.createTextMessage("Some txt");
+            message.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY, 2000L);
+            producer.send(message);
+
+            assertNull(consumer.receive(1000L));
+            TextMessage receivedMessage = (TextMessage)consumer.receive(3000L);
+            assertEquals("Some txt", receivedMessage.getText());
+
+            // Deliver the message three times, half a second apart
+            message = session.createTextMessage("Repeated txt");
+            message.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_PERIOD, 500L);
+            message.setIntProperty(ScheduledMessage.AMQ_SCHEDULED_REPEAT, 2);
+            producer.send(message);
+
+            for (int i = 0; i < 3; i++) {
+                receivedMessage = (TextMessage)consumer.receive(3000L);
+                assertEquals("Repeated txt", receivedMessage.getText());
+            }
+            assertNull(consumer.receive(1000L));
+
+            connection.close();
+        } finally {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    @org.junit.Test
+    public void testSchedulerStores() throws Exception {
+        Assume.assumeTrue("Set -Dactivemq.benchmark=true to run the benchmark",
+                          Boolean.getBoolean("activemq.benchmark"));
+
+        System.out.println(String.format("Testing job schedulers with %d jobs (%d%% repeating %d times)", JOBS,
+                                         REPEATING, REPEAT));
+        System.out.println(String.format("%-8s %14s %12s %10s %10s %10s %12s %10s", "store", "scheduled/sec",
+                                         "fired/sec", "p50 (ms)", "p99 (ms)", "max (ms)", "store (KB)",
+                                         "heap (MB)"));
+        for (String store : STORES) {
+            measureScheduler(store.trim());
+        }
+
+        System.out.println(String.format("Testing %d scheduled messages via the broker", MESSAGES));
+        System.out.println(String.format("%-8s %14s %10s %10s %10s %12s", "store", "sent/sec", "p50 (ms)",
+                                         "p99 (ms)", "max (ms)", "store (KB)"));
+        for (String store : STORES) {
+            measureBroker(store.trim());
+        }
+    }
+
+    private static void measureScheduler(String name) throws Exception {
+        JobSchedulerStore store = createStore(name);
+        store.start();
+        try {
+            JobScheduler scheduler = store.getJobScheduler("JMS");
+            scheduler.startDispatching();
+
+            int repeatingJobs = (int)((long)JOBS * REPEATING / 100);
+            final int firings = JOBS + repeatingJobs * REPEAT;
+            final long[] lateness = new long[firings];
+            final AtomicInteger fired = new AtomicInteger();
+            final long[] firstAndLastFiring = new long[2];
+            final ConcurrentMap<String, Long> previousFirings = new ConcurrentHashMap<>();
+            scheduler.addListener(new JobListener() {
+                public void scheduledJob(String id, ByteSequence job) {
+                    long now = System.currentTimeMillis();
+                    ByteBuffer payload = ByteBuffer.wrap(job.getData(), job.getOffset(), job.getLength());
+                    long expected = payload.getLong();
+                    long period = payload.getLong();
+                    if (period > 0) {
+                        // A repeat is scheduled relative to when the previous firing was
+                        Long previous = previousFirings.put(id, now);
+                        if (previous != null) {
+                            expected = previous + period;
+                        }
+                    }
+                    int index = fired.getAndIncrement();
+                    if (index == 0) {
+                        firstAndLastFiring[0] = now;
+                    }
+                    if (index < firings) {
+                        lateness[index] = now - expected;
+                    }
+                    firstAndLastFiring[1] = now;
+                }
+            });
+
+            long heapBefore = getUsedHeap();
+            Random random = new Random(42L);
+            long start = System.nanoTime();
+            for (int i = 0; i < JOBS; i++) {
+                long delay = MIN_DELAY + (long)(random.nextDouble() * (MAX_DELAY - MIN_DELAY));
+                boolean repeating = i % 100 < REPEATING;
+                ByteSequence payload =
+                    createPayload(System.currentTimeMillis() + delay, repeating ? PERIOD : 0L, PAYLOAD);
+                if (repeating) {
+                    scheduler.schedule("job" + i, payload, "", delay, PERIOD, REPEAT);
+                } else {
+                    scheduler.schedule("job" + i, payload, delay);
+                }
+            }
+            double scheduleSeconds = (System.nanoTime() - start) / 1000000000.0;
+            long storeSize = store.size();
+            long heapSize = getUsedHeap() - heapBefore;
+
+            long timeout = System.currentTimeMillis() + MAX_DELAY + REPEAT * PERIOD + 120000L;
+            while (fired.get() < firings && System.currentTimeMillis() < timeout) {
+                Thread.sleep(100L);
+            }
+            assertEquals(firings, fired.get());
+
+            Arrays.sort(lateness);
+            double firingSeconds = Math.max(firstAndLastFiring[1] - firstAndLastFiring[0], 1L) / 1000.0;
+            System.out.println(String.format("%-8s %14.0f %12.0f %10d %10d %10d %12d %10d", name,
+                                             JOBS / scheduleSeconds, firings / firingSeconds,
+                                             lateness[firings / 2], lateness[(int)Math.ceil(firings * 0.99) - 1],
+                                             lateness[firings - 1], storeSize / 1024, heapSize / (1024 * 1024)));
+        } finally {
+            store.stop();
+        }
+    }
+
+    private static void measureBroker(String name) throws Exception {
+        JobSchedulerStore store = createStore(name);
+        BrokerService broker = createBroker(store);
+        broker.setUseJmx(false);
+        broker.start();
+        try {
+            ActiveMQConnectionFactory factory =
+                new ActiveMQConnectionFactory(broker.getTransportConnectors().get(0).getConnectUri());
+            factory.setUseAsyncSend(true);
+            Connection connection = factory.createConnection();
+            try {
+                connection.start();
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                Destination queue = session.createQueue("scheduled." + name);
+                MessageConsumer consumer = session.createConsumer(queue);
+                MessageProducer producer = session.createProducer(queue);
+
+                Random random = new Random(42L);
+                long start = System.nanoTime();
+                for (int i = 0; i < MESSAGES; i++) {
+                    long delay = MIN_DELAY + (long)(random.nextDouble() * (MAX_DELAY - MIN_DELAY));
+                    Message message = session.createTextMessage("Some txt");
+                    message.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY, delay);
+                    message.setLongProperty(EXPECTED_TIME, System.currentTimeMillis() + delay);
+                    producer.send(message);
+                }
+                double sendSeconds = (System.nanoTime() - start) / 1000000000.0;
+                long storeSize = store.size();
+
+                long[] lateness = new long[MESSAGES];
+                int received = 0;
+                long timeout = System.currentTimeMillis() + MAX_DELAY + 120000L;
+                while (received < MESSAGES && System.currentTimeMillis() < timeout) {
+                    Message message = consumer.receive(1000L);
+                    if (message != null) {
+                        lateness[received++] = System.currentTimeMillis() - message.getLongProperty(EXPECTED_TIME);
+                    }
+                }
+                assertEquals(MESSAGES, received);
+
+                Arrays.sort(lateness);
+                System.out.println(String.format("%-8s %14.0f %10d %10d %10d %12d", name, MESSAGES / sendSeconds,
+                                                 lateness[MESSAGES / 2],
+                                                 lateness[(int)Math.ceil(MESSAGES * 0.99) - 1],
+                                                 lateness[MESSAGES - 1], storeSize / 1024));
+            } finally {
+                connection.close();
+            }
+        } finally {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    private static JobSchedulerStore createStore(String name) throws Exception {
+        if ("memory".equals(name)) {
+            return new InMemoryJobSchedulerStore();
+        } else if ("kahadb".equals(name)) {
+            File directory = new File("target/activemq-benchmark/scheduler/kahadb");
+            FileUtils.deleteQuietly(directory);
+            JobSchedulerStoreImpl store = new JobSchedulerStoreImpl();
+            store.setDirectory(directory);
+            return store;
+        } else if ("wheel".equals(name)) {
+            return new TimingWheelJobSchedulerStore();
+        }
+        throw new IllegalArgumentException("Unknown store: " + name);
+    }
+
+    private static BrokerService createBroker(JobSchedulerStore store) throws Exception {
+        BrokerService broker = new BrokerService();
+        broker.setPersistenceAdapter(new MemoryPersistenceAdapter());
+        broker.setJobSchedulerStore(store);
+        broker.setDataDirectory("target/activemq-data");
+        broker.setSchedulerSupport(true);
+
+        ServerSocket serverSocket = new ServerSocket(0);
+        int brokerPort = serverSocket.getLocalPort();
+        serverSocket.close();
+
+        broker.addConnector("tcp://localhost:" + brokerPort);
+        return broker;
+    }
+
+    /**
+     * The payload starts with the expected execution time and the period, so that the listener can work out how late
+     * a job is
+     */
+    private static ByteSequence createPayload(long expectedTime, long period, int size) {
+        ByteBuffer payload = ByteBuffer.allocate(Math.max(size, 16));
+        payload.putLong(expectedTime);
+        payload.putLong(period);
+        return new ByteSequence(payload.array());
+    }
+
+    private static long getUsedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100L);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
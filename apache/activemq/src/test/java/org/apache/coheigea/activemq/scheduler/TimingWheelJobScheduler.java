@@ -0,0 +1,702 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.activemq.scheduler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.jms.MessageFormatException;
+
+import org.apache.activemq.broker.scheduler.CronParser;
+import org.apache.activemq.broker.scheduler.Job;
+import org.apache.activemq.broker.scheduler.JobListener;
+import org.apache.activemq.broker.scheduler.JobScheduler;
+import org.apache.activemq.broker.scheduler.JobSupport;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IdGenerator;
+
+/**
+ * A JobScheduler that keeps its jobs in memory, in a hierarchical timing wheel, rather than in a sorted index as the
+ * InMemoryJobScheduler (a TreeMap and a Timer task per execution time) and the KahaDB JobSchedulerImpl (a BTree)
+ * do. Scheduling, firing and removing a job by id are O(1), no matter how many jobs are scheduled:
+ *
+ * - Time is divided into ticks of "tickMillis" milliseconds. There are 4 wheels of 256 buckets each: the first
+ *   has a bucket per tick, the second a bucket per 256 ticks, and so on, so that the wheels cover 2^32 ticks (about
+ *   500 days with a 10ms tick). A job is added to the bucket for its execution tick on the lowest wheel that covers
+ *   it, or to an overflow bucket if it is further away.
+ * - A dispatcher thread advances the wheel a tick at a time. When the first wheel wraps around, the next bucket of
+ *   the second wheel is moved down to the first wheel, and so on up the wheels.
+ * - The jobs of a tick are fired after the lock is released. A job fires at most tickMillis after its execution
+ *   time, and never before it (the start time isn't rounded up to the next 500ms, as the other schedulers do).
+ *
+ * The semantics of the delay, period, repeat and CRON entry are the same as for the InMemoryJobScheduler. The
+ * operations that select jobs by time (e.g. getNextScheduleTime and removeAllJobs(start, finish)) are O(n), as they
+ * are only used by the scheduler management operations.
+ */
+public class TimingWheelJobScheduler implements JobScheduler {
+
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    private static final IdGenerator ID_GENERATOR = new IdGenerator();
+
+    private final String name;
+    private final long tickMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition wakeUp = lock.newCondition();
+    private final List<JobListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Guarded by the lock
+    private final Map<String, WheelJob> jobs = new HashMap<>();
+    private final Bucket[][] wheels = new Bucket[LEVELS][WHEEL_SIZE];
+    private final Bucket overflow = new Bucket();
+    private final Bucket due = new Bucket();
+    private long currentTick;
+    private long payloadSize;
+    private boolean running;
+    private boolean dispatching;
+
+    private Thread dispatcher;
+
+    public TimingWheelJobScheduler(String name, long tickMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("The tick must be at least a millisecond");
+        }
+        this.name = name;
+        this.tickMillis = tickMillis;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                wheels[level][i] = new Bucket();
+            }
+        }
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    /**
+     * Start the dispatcher thread, and start dispatching jobs
+     */
+    public void start() {
+        lock.lock();
+        try {
+            if (running) {
+                return;
+            }
+            running = true;
+            dispatching = true;
+            dispatcher = new Thread(new Runnable() {
+                public void run() {
+                    dispatchLoop();
+                }
+            }, "TimingWheelJobScheduler:" + name);
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop the dispatcher thread. The jobs are kept, and are dispatched if the scheduler is started again.
+     */
+    public void stop() throws InterruptedException {
+        Thread thread;
+        lock.lock();
+        try {
+            running = false;
+            thread = dispatcher;
+            dispatcher = null;
+            wakeUp.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.join();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void startDispatching() {
+        lock.lock();
+        try {
+            dispatching = true;
+            wakeUp.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void stopDispatching() {
+        lock.lock();
+        try {
+            dispatching = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addListener(JobListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(JobListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void schedule(String jobId, ByteSequence payload, String cronEntry) throws IOException {
+        doSchedule(jobId, payload, cronEntry, 0, 0, 0);
+    }
+
+    @Override
+    public void schedule(String jobId, ByteSequence payload, long delay) throws IOException {
+        doSchedule(jobId, payload, "", delay, 0, 0);
+    }
+
+    @Override
+    public void schedule(String jobId, ByteSequence payload, String cronEntry, long delay, long period, int repeat)
+        throws IOException {
+        doSchedule(jobId, payload, cronEntry, delay, period, repeat);
+    }
+
+    @Override
+    public void remove(long time) {
+        lock.lock();
+        try {
+            Iterator<WheelJob> iterator = jobs.values().iterator();
+            while (iterator.hasNext()) {
+                WheelJob job = iterator.next();
+                if (job.nextTime == time) {
+                    iterator.remove();
+                    unlink(job);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(String jobId) {
+        lock.lock();
+        try {
+            WheelJob job = jobs.remove(jobId);
+            if (job != null) {
+                unlink(job);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeAllJobs() {
+        lock.lock();
+        try {
+            for (WheelJob job : jobs.values()) {
+                unlink(job);
+            }
+            jobs.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeAllJobs(long start, long finish) {
+        lock.lock();
+        try {
+            Iterator<WheelJob> iterator = jobs.values().iterator();
+            while (iterator.hasNext()) {
+                WheelJob job = iterator.next();
+                if (job.nextTime >= start && job.nextTime <= finish) {
+                    iterator.remove();
+                    unlink(job);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getNextScheduleTime() {
+        lock.lock();
+        try {
+            long nextTime = -1;
+            for (WheelJob job : jobs.values()) {
+                if (nextTime == -1 || job.nextTime < nextTime) {
+                    nextTime = job.nextTime;
+                }
+            }
+            return nextTime;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Job> getNextScheduleJobs() {
+        lock.lock();
+        try {
+            long nextTime = getNextScheduleTime();
+            List<Job> result = new ArrayList<>();
+            for (WheelJob job : jobs.values()) {
+                if (job.nextTime == nextTime) {
+                    result.add(job);
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Job> getAllJobs() {
+        lock.lock();
+        try {
+            return new ArrayList<Job>(jobs.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Job> getAllJobs(long start, long finish) {
+        lock.lock();
+        try {
+            List<Job> result = new ArrayList<>();
+            for (WheelJob job : jobs.values()) {
+                if (job.nextTime >= start && job.nextTime <= finish) {
+                    result.add(job);
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return the number of scheduled jobs
+     */
+    public int getJobCount() {
+        lock.lock();
+        try {
+            return jobs.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return the total size of the payloads of the scheduled jobs, in bytes
+     */
+    public long getPayloadSize() {
+        lock.lock();
+        try {
+            return payloadSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void doSchedule(String jobId, ByteSequence payload, String cronEntry, long delay, long period,
+                            int repeat) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long executionTime = 0;
+        if (cronEntry != null && cronEntry.length() > 0) {
+            try {
+                executionTime = CronParser.getNextScheduledTime(cronEntry, startTime);
+            } catch (MessageFormatException ex) {
+                throw new IOException(ex.getMessage());
+            }
+        }
+        if (executionTime == 0) {
+            // The start time is not set by a CRON entry, so it is the current time
+            executionTime = startTime;
+        }
+        if (delay > 0) {
+            executionTime += delay;
+        } else {
+            executionTime += period;
+        }
+
+        byte[] data = payload.getData();
+        if (payload.getOffset() != 0 || payload.getLength() != data.length) {
+            data = new byte[payload.getLength()];
+            System.arraycopy(payload.getData(), payload.getOffset(), data, 0, data.length);
+        }
+        WheelJob job = new WheelJob(jobId, data, cronEntry, startTime, delay, period, repeat, executionTime);
+
+        lock.lock();
+        try {
+            WheelJob existing = jobs.put(jobId, job);
+            if (existing != null) {
+                unlink(existing);
+            }
+            payloadSize += data.length;
+            insert(job);
+            if (job.bucket == due) {
+                wakeUp.signalAll();
+            } else if (jobs.size() == 1) {
+                // The dispatcher waits without a timeout if there are no jobs
+                wakeUp.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add the job to the bucket for its execution tick, on the lowest wheel that covers it. Called with the lock held.
+     */
+    private void insert(WheelJob job) {
+        // Round up, so that a job never fires before its execution time
+        long tick = (job.nextTime + tickMillis - 1) / tickMillis;
+        long ticks = tick - currentTick;
+        if (ticks <= 0) {
+            due.add(job);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (ticks < 1L << (WHEEL_BITS * (level + 1))) {
+                wheels[level][(int)(tick >>> (WHEEL_BITS * level)) & WHEEL_MASK].add(job);
+                return;
+            }
+        }
+        overflow.add(job);
+    }
+
+    /**
+     * Remove the job from its bucket, if any. Called with the lock held.
+     */
+    private void unlink(WheelJob job) {
+        if (job.bucket != null) {
+            job.bucket.remove(job);
+        }
+        job.removed = true;
+        payloadSize -= job.payload.length;
+    }
+
+    /**
+     * Move on a tick, moving the jobs of that tick to the due bucket. Called with the lock held.
+     */
+    private void advance() {
+        currentTick++;
+        int index = (int)currentTick & WHEEL_MASK;
+        if (index == 0) {
+            cascade(1);
+        }
+        Bucket bucket = wheels[0][index];
+        WheelJob job;
+        while ((job = bucket.poll()) != null) {
+            due.add(job);
+        }
+    }
+
+    /**
+     * Move the current bucket of the given wheel down to the lower wheels, as the wheel below it has wrapped around
+     */
+    private void cascade(int level) {
+        if (level == LEVELS) {
+            reinsert(overflow);
+            return;
+        }
+        int index = (int)(currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+        reinsert(wheels[level][index]);
+        if (index == 0) {
+            cascade(level + 1);
+        }
+    }
+
+    private void reinsert(Bucket bucket) {
+        WheelJob job;
+        List<WheelJob> cascaded = new ArrayList<>(bucket.size);
+        while ((job = bucket.poll()) != null) {
+            cascaded.add(job);
+        }
+        for (WheelJob cascadedJob : cascaded) {
+            insert(cascadedJob);
+        }
+    }
+
+    private void dispatchLoop() {
+        List<WheelJob> fired = new ArrayList<>();
+        while (true) {
+            lock.lock();
+            try {
+                if (!running) {
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                long targetTick = now / tickMillis;
+                while (currentTick < targetTick) {
+                    advance();
+                }
+
+                if (!dispatching || due.size == 0) {
+                    if (jobs.isEmpty() || !dispatching) {
+                        wakeUp.await();
+                    } else {
+                        // Wait until the next tick, or until a job is scheduled that is already due
+                        long wait = (currentTick + 1) * tickMillis - now;
+                        wakeUp.await(Math.max(wait, 1L), TimeUnit.MILLISECONDS);
+                    }
+                    continue;
+                }
+                WheelJob job;
+                while ((job = due.poll()) != null) {
+                    fired.add(job);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            for (WheelJob job : fired) {
+                dispatch(job);
+            }
+            fired.clear();
+        }
+    }
+
+    private void dispatch(WheelJob job) {
+        long currentTime = System.currentTimeMillis();
+        try {
+            if (!job.isCron()) {
+                fire(job);
+                if (job.repeat != 0) {
+                    // The repeat count is decremented when the job is rescheduled
+                    reschedule(job, currentTime + job.period);
+                } else {
+                    remove(job);
+                }
+            } else {
+                if (job.repeat == 0) {
+                    // This is a non-repeating CRON entry, so it is fired as it is
+                    fire(job);
+                }
+                long nextExecutionTime = CronParser.getNextScheduledTime(job.cronEntry, currentTime);
+                if (nextExecutionTime > currentTime) {
+                    reschedule(job, nextExecutionTime);
+                    if (job.repeat != 0) {
+                        // A CRON entry that repeats starts a separate schedule each time, rather than firing
+                        doSchedule(ID_GENERATOR.generateId(), new ByteSequence(job.payload), "", job.delay,
+                                   job.period, job.repeat);
+                    }
+                } else {
+                    remove(job);
+                }
+            }
+        } catch (IOException | MessageFormatException ex) {
+            // The job can't be rescheduled, so it is removed
+            remove(job);
+        }
+    }
+
+    private void fire(WheelJob job) {
+        for (JobListener listener : listeners) {
+            try {
+                listener.scheduledJob(job.jobId, new ByteSequence(job.payload));
+            } catch (RuntimeException ex) {
+                // A failing listener does not stop the job from being fired to the other listeners
+            }
+        }
+    }
+
+    private void reschedule(WheelJob job, long nextExecutionTime) {
+        lock.lock();
+        try {
+            // Don't reschedule a job that was removed or replaced while it was being fired
+            if (job.removed) {
+                return;
+            }
+            job.nextTime = nextExecutionTime;
+            job.executionCount++;
+            if (!job.isCron() && job.repeat > 0) {
+                job.repeat--;
+            }
+            insert(job);
+            if (job.bucket == due) {
+                wakeUp.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(WheelJob job) {
+        lock.lock();
+        try {
+            if (!job.removed && jobs.get(job.jobId) == job) {
+                jobs.remove(job.jobId);
+                unlink(job);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A doubly linked list of jobs, so that a job can be removed from its bucket in constant time
+     */
+    private static final class Bucket {
+        private WheelJob head;
+        private int size;
+
+        void add(WheelJob job) {
+            job.bucket = this;
+            job.previous = null;
+            job.next = head;
+            if (head != null) {
+                head.previous = job;
+            }
+            head = job;
+            size++;
+        }
+
+        void remove(WheelJob job) {
+            if (job.previous != null) {
+                job.previous.next = job.next;
+            } else {
+                head = job.next;
+            }
+            if (job.next != null) {
+                job.next.previous = job.previous;
+            }
+            job.bucket = null;
+            job.previous = null;
+            job.next = null;
+            size--;
+        }
+
+        WheelJob poll() {
+            WheelJob job = head;
+            if (job != null) {
+                remove(job);
+            }
+            return job;
+        }
+    }
+
+    private static final class WheelJob implements Job {
+        private final String jobId;
+        private final byte[] payload;
+        private final String cronEntry;
+        private final long start;
+        private final long delay;
+        private final long period;
+        private int repeat;
+        private long nextTime;
+        private int executionCount;
+        private boolean removed;
+
+        private Bucket bucket;
+        private WheelJob previous;
+        private WheelJob next;
+
+        WheelJob(String jobId, byte[] payload, String cronEntry, long start, long delay, long period, int repeat,
+                 long nextTime) {
+            this.jobId = jobId;
+            this.payload = payload;
+            this.cronEntry = cronEntry;
+            this.start = start;
+            this.delay = delay;
+            this.period = period;
+            this.repeat = repeat;
+            this.nextTime = nextTime;
+        }
+
+        boolean isCron() {
+            return cronEntry != null && cronEntry.length() > 0;
+        }
+
+        @Override
+        public String getJobId() {
+            return jobId;
+        }
+
+        @Override
+        public int getRepeat() {
+            return repeat;
+        }
+
+        @Override
+        public long getStart() {
+            return start;
+        }
+
+        @Override
+        public long getDelay() {
+            return delay;
+        }
+
+        @Override
+        public long getPeriod() {
+            return period;
+        }
+
+        @Override
+        public String getCronEntry() {
+            return cronEntry;
+        }
+
+        @Override
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        @Override
+        public String getStartTime() {
+            return JobSupport.getDateTime(start);
+        }
+
+        @Override
+        public String getNextExecutionTime() {
+            return JobSupport.getDateTime(nextTime);
+        }
+
+        @Override
+        public int getExecutionCount() {
+            return executionCount;
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.activemq.scheduler;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.activemq.broker.scheduler.JobScheduler;
+import org.apache.activemq.broker.scheduler.JobSchedulerStore;
+import org.apache.activemq.util.ServiceStopper;
+import org.apache.activemq.util.ServiceSupport;
+
+/**
+ * A JobSchedulerStore for TimingWheelJobSchedulers, which can be used in place of the InMemoryJobSchedulerStore:
+ *
+ *   broker.setJobSchedulerStore(new TimingWheelJobSchedulerStore());
+ *   broker.setSchedulerSupport(true);
+ *
+ * As with the InMemoryJobSchedulerStore, the jobs are not persisted, and so are lost when the broker is stopped.
+ * The tick of the timing wheels is set via setTickMillis (the default is 10ms), which is the most that a job can
+ * fire after its execution time.
+ */
+public class TimingWheelJobSchedulerStore extends ServiceSupport implements JobSchedulerStore {
+
+    private final Map<String, TimingWheelJobScheduler> schedulers = new HashMap<>();
+    private long tickMillis = 10L;
+    private File directory;
+
+    @Override
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void setDirectory(File directory) {
+        // The jobs are only held in memory
+        this.directory = directory;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Set the tick of the schedulers that are created after this call
+     */
+    public void setTickMillis(long tickMillis) {
+        this.tickMillis = tickMillis;
+    }
+
+    /**
+     * Return the total size of the payloads of the scheduled jobs, in bytes
+     */
+    @Override
+    public synchronized long size() {
+        long size = 0;
+        for (TimingWheelJobScheduler scheduler : schedulers.values()) {
+            size += scheduler.getPayloadSize();
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized JobScheduler getJobScheduler(String name) {
+        TimingWheelJobScheduler scheduler = schedulers.get(name);
+        if (scheduler == null) {
+            scheduler = new TimingWheelJobScheduler(name, tickMillis);
+            schedulers.put(name, scheduler);
+            if (isStarted()) {
+                scheduler.start();
+            }
+        }
+        return scheduler;
+    }
+
+    @Override
+    public synchronized boolean removeJobScheduler(String name) throws Exception {
+        TimingWheelJobScheduler scheduler = schedulers.remove(name);
+        if (scheduler != null) {
+            scheduler.stop();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected synchronized void doStart() {
+        for (TimingWheelJobScheduler scheduler : schedulers.values()) {
+            scheduler.start();
+        }
+    }
+
+    @Override
+    protected synchronized void doStop(ServiceStopper stopper) throws Exception {
+        for (TimingWheelJobScheduler scheduler : schedulers.values()) {
+            scheduler.stop();
+        }
+    }
+
+}
@@ -0,0 +1,407 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.activemq.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerFilter;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ConnectionInfo;
+import org.apache.activemq.filter.DestinationMapEntry;
+import org.apache.activemq.security.AbstractAuthenticationBroker;
+import org.apache.activemq.security.AuthorizationEntry;
+import org.apache.activemq.security.AuthorizationMap;
+import org.apache.activemq.security.AuthorizationPlugin;
+import org.apache.activemq.security.DefaultAuthorizationMap;
+import org.apache.activemq.security.JaasAuthenticationPlugin;
+import org.apache.activemq.security.SecurityContext;
+import org.apache.activemq.shiro.ShiroPlugin;
+import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
+
+/**
+ * Tests for the CachingAuthenticationPlugin in front of the JAAS PropertiesLoginModule (with the same authorization
+ * entries as JAASPropertiesLoginModuleTest), and a connection storm benchmark, where many short-lived connections
+ * are opened and closed by a number of threads, with and without the cache. The ShiroPlugin is included (without the
+ * cache) for comparison.
+ *
+ * The number of connections is set via "activemq.benchmark.connections" (the default is 5000) and the number of
+ * threads via "activemq.benchmark.threads" (the default is 8). The benchmark reports the connect latency, the CPU
+ * time of the process, and the number and CPU time of the logins of the JAAS login module.
+ */
+public class AuthenticationCachePerformanceTest {
+
+    private static final int CONNECTIONS = Integer.getInteger("activemq.benchmark.connections", 5000);
+    private static final int THREADS = Integer.getInteger("activemq.benchmark.threads", 8);
+
+    private static final String[][] USERS = {{"alice", "password"}, {"bob", "security"}, {"dave", "security"}};
+
+    private static BrokerService broker;
+    private static String brokerAddress;
+    private static CachingAuthenticationPlugin cachingPlugin;
+    private static AuthorizationPlugin authorizationPlugin;
+
+    @org.junit.BeforeClass
+    public static void startBroker() throws Exception {
+
+        String basedir = System.getProperty("basedir");
+        if (basedir == null) {
+            basedir = new File(".").getCanonicalPath();
+        }
+
+        // Read in jaas file
+        File f = new File(basedir + "/src/test/resources/activemq.jaas");
+        System.setProperty("java.security.auth.login.config", f.getPath());
+
+        // Add authorization data
+        AuthorizationEntry authorizationEntry = new AuthorizationEntry();
+        authorizationEntry.setAdmin("guest");
+        authorizationEntry.setRead("consumer");
+        authorizationEntry.setWrite("producer");
+        authorizationEntry.setQueue("testqueue");
+
+        AuthorizationEntry advisoryEntry = new AuthorizationEntry();
+        advisoryEntry.setAdmin("guest");
+        advisoryEntry.setRead("guest");
+        advisoryEntry.setWrite("guest");
+        advisoryEntry.setTopic("ActiveMQ.Advisory.>");
+
+        List<DestinationMapEntry> authzEntryList = Arrays.asList(authorizationEntry, advisoryEntry);
+        AuthorizationMap authorizationMap = new DefaultAuthorizationMap(authzEntryList);
+        authorizationPlugin = new AuthorizationPlugin(authorizationMap);
+
+        // The cache must be installed after the authentication plugin, so that it is called first
+        cachingPlugin = new CachingAuthenticationPlugin();
+        broker = createBroker(createJaasPlugin(), cachingPlugin, authorizationPlugin);
+        brokerAddress = broker.getTransportConnectors().get(0).getConnectUri().toString();
+        broker.start();
+    }
+
+    @org.junit.AfterClass
+    public static void stopBroker() throws Exception {
+        if (broker != null) {
+            broker.stop();
+        }
+        System.clearProperty("java.security.auth.login.config");
+    }
+
+    @org.junit.Test
+    public void testCachedAuthentication() throws Exception {
+        cachingPlugin.revoke("alice");
+        long logins = TimedPropertiesLoginModule.getLogins();
+
+        assertEquals("Some txt", produceAndConsume("alice", "password"));
+        assertEquals(logins + 1, TimedPropertiesLoginModule.getLogins());
+
+        // The second connection uses the cached authentication, with the same groups
+        long hits = cachingPlugin.getHits();
+        assertEquals("Some txt", produceAndConsume("alice", "password"));
+        assertEquals(logins + 1, TimedPropertiesLoginModule.getLogins());
+        assertEquals(hits + 1, cachingPlugin.getHits());
+
+        // bob can't produce, whether the authentication is cached or not
+        for (int i = 0; i < 2; i++) {
+            try {
+                produceAndConsume("bob", "security");
+                fail("Expected failure as bob can't produce");
+            } catch (JMSException ex) {
+                // expected
+            }
+        }
+    }
+
+    @org.junit.Test
+    public void testFailedAuthenticationIsNotCached() throws Exception {
+        long logins = TimedPropertiesLoginModule.getLogins();
+        for (int i = 0; i < 2; i++) {
+            try {
+                connect("alice", "wrongpassword").close();
+                fail("Failure expected on a wrong password");
+            } catch (JMSException ex) {
+                // expected
+            }
+        }
+        // Both attempts are checked by the login module
+        assertEquals(logins + 2, TimedPropertiesLoginModule.getLogins());
+    }
+
+    @org.junit.Test
+    public void testRevoke() throws Exception {
+        connect("bob", "security").close();
+        long logins = TimedPropertiesLoginModule.getLogins();
+        connect("bob", "security").close();
+        assertEquals(logins, TimedPropertiesLoginModule.getLogins());
+
+        cachingPlugin.revoke("bob");
+        connect("bob", "security").close();
+        assertEquals(logins + 1, TimedPropertiesLoginModule.getLogins());
+    }
+
+    @org.junit.Test
+    public void testTimeToLive() throws Exception {
+        long timeToLive = cachingPlugin.getTimeToLive();
+        cachingPlugin.setTimeToLive(100L);
+        try {
+            cachingPlugin.revoke("dave");
+            long logins = TimedPropertiesLoginModule.getLogins();
+            connect("dave", "security").close();
+            assertEquals(logins + 1, TimedPropertiesLoginModule.getLogins());
+
+            Thread.sleep(200L);
+            connect("dave", "security").close();
+            assertEquals(logins + 2, TimedPropertiesLoginModule.getLogins());
+        } finally {
+            cachingPlugin.setTimeToLive(timeToLive);
+        }
+    }
+
+    @org.junit.Test
+    public void testSecurityContextPerConnection() throws Exception {
+        // Record the SecurityContext of each connection, behind the authentication plugin
+        final List<SecurityContext> securityContexts = new CopyOnWriteArrayList<>();
+        BrokerPlugin recordingPlugin = new BrokerPlugin() {
+            public Broker installPlugin(Broker broker) throws Exception {
+                return new BrokerFilter(broker) {
+                    @Override
+                    public void addConnection(ConnectionContext context, ConnectionInfo info) throws Exception {
+                        securityContexts.add(context.getSecurityContext());
+                        super.addConnection(context, info);
+                    }
+                };
+            }
+        };
+        BrokerService testBroker =
+            createBroker(recordingPlugin, createJaasPlugin(), new CachingAuthenticationPlugin(), authorizationPlugin);
+        testBroker.setUseJmx(false);
+        testBroker.start();
+        try {
+            ActiveMQConnectionFactory factory =
+                new ActiveMQConnectionFactory(testBroker.getTransportConnectors().get(0).getConnectUri());
+            factory.setWatchTopicAdvisories(false);
+            factory.setAlwaysSyncSend(true);
+            Connection first = factory.createConnection("alice", "password");
+            first.start();
+            // The second and third connections use the cached authentication, but not the same SecurityContext
+            Connection second = factory.createConnection("alice", "password");
+            second.start();
+            Connection third = factory.createConnection("alice", "password");
+            third.start();
+            assertEquals(3, securityContexts.size());
+            assertNotSame(securityContexts.get(0), securityContexts.get(1));
+            assertNotSame(securityContexts.get(1), securityContexts.get(2));
+
+            Session session = third.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(session.createQueue("testqueue"));
+            producer.send(session.createTextMessage("Some txt"));
+            producer.close();
+            assertFalse(securityContexts.get(2).getAuthorizedWriteDests().isEmpty());
+
+            // Closing a connection doesn't stop the others from being refreshed
+            second.close();
+            testBroker.getBroker().getAdaptor(AbstractAuthenticationBroker.class).refresh();
+            assertTrue(securityContexts.get(2).getAuthorizedWriteDests().isEmpty());
+
+            first.close();
+            third.close();
+        } finally {
+            testBroker.stop();
+            testBroker.waitUntilStopped();
+        }
+    }
+
+    @org.junit.Test
+    public void testConnectionStorm() throws Exception {
+        System.out.println("Testing " + CONNECTIONS + " connections with " + THREADS + " threads");
+        System.out.println(String.format("%-12s %10s %10s %10s %14s %8s %14s", "plugin", "conns/sec", "p50 (ms)",
+                                         "p99 (ms)", "CPU (ms)", "logins", "login CPU (ms)"));
+
+        measure("jaas", true, createJaasPlugin());
+        measure("jaas-cached", true, createJaasPlugin(), new CachingAuthenticationPlugin());
+
+        ShiroPlugin shiroPlugin = new ShiroPlugin();
+        shiroPlugin.setIniResourcePath("src/test/resources/securityconfig.ini");
+        measure("shiro", false, shiroPlugin);
+    }
+
+    private static void measure(String name, boolean jaas, BrokerPlugin... plugins) throws Exception {
+        BrokerService benchmarkBroker = createBroker(plugins);
+        benchmarkBroker.setUseJmx(false);
+        benchmarkBroker.start();
+        try {
+            final ActiveMQConnectionFactory factory =
+                new ActiveMQConnectionFactory(benchmarkBroker.getTransportConnectors().get(0).getConnectUri());
+            // Only measure the connection, and not the creation of a consumer for the advisory topics
+            factory.setWatchTopicAdvisories(false);
+
+            // Warm up
+            storm(factory, Math.max(THREADS, CONNECTIONS / 10));
+
+            OperatingSystemMXBean osMXBean = ManagementFactory.getOperatingSystemMXBean();
+            long cpuStart = getProcessCpuTime(osMXBean);
+            long logins = TimedPropertiesLoginModule.getLogins();
+            long loginCpuTime = TimedPropertiesLoginModule.getLoginCpuTime();
+            long start = System.nanoTime();
+            long[] latencies = storm(factory, CONNECTIONS);
+            double seconds = (System.nanoTime() - start) / 1000000000.0;
+            long cpuTime = getProcessCpuTime(osMXBean) - cpuStart;
+
+            Arrays.sort(latencies);
+            System.out.println(String.format("%-12s %10.0f %10.2f %10.2f %14d %8s %14s", name,
+                                             latencies.length / seconds, latencies[latencies.length / 2] / 1000000.0,
+                                             latencies[(int)Math.ceil(latencies.length * 0.99) - 1] / 1000000.0,
+                                             cpuTime / 1000000L,
+                                             jaas ? String.valueOf(TimedPropertiesLoginModule.getLogins() - logins)
+                                                 : "-",
+                                             jaas ? String.valueOf((TimedPropertiesLoginModule.getLoginCpuTime()
+                                                 - loginCpuTime) / 1000000L) : "-"));
+        } finally {
+            benchmarkBroker.stop();
+            benchmarkBroker.waitUntilStopped();
+        }
+    }
+
+    /**
+     * Open and close the given number of connections, spread over the threads, and return the latency of each
+     */
+    private static long[] storm(final ActiveMQConnectionFactory factory, int connections) throws Exception {
+        List<Callable<long[]>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int count = connections / THREADS + (t < connections % THREADS ? 1 : 0);
+            final int thread = t;
+            tasks.add(new Callable<long[]>() {
+                public long[] call() throws Exception {
+                    long[] latencies = new long[count];
+                    for (int i = 0; i < count; i++) {
+                        String[] user = USERS[(thread + i) % USERS.length];
+                        long start = System.nanoTime();
+                        Connection connection = factory.createConnection(user[0], user[1]);
+                        // The connection is only sent to the broker when it is started
+                        connection.start();
+                        latencies[i] = System.nanoTime() - start;
+                        connection.close();
+                    }
+                    return latencies;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long[] latencies = new long[connections];
+        int index = 0;
+        try {
+            for (Future<long[]> future : executor.invokeAll(tasks)) {
+                long[] threadLatencies = future.get();
+                System.arraycopy(threadLatencies, 0, latencies, index, threadLatencies.length);
+                index += threadLatencies.length;
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return latencies;
+    }
+
+    private static long getProcessCpuTime(OperatingSystemMXBean osMXBean) {
+        if (osMXBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean)osMXBean).getProcessCpuTime();
+        }
+        return 0L;
+    }
+
+    private static JaasAuthenticationPlugin createJaasPlugin() {
+        JaasAuthenticationPlugin authenticationPlugin = new JaasAuthenticationPlugin();
+        authenticationPlugin.setConfiguration("activemq-timed");
+        return authenticationPlugin;
+    }
+
+    private static BrokerService createBroker(BrokerPlugin... plugins) throws Exception {
+        BrokerService brokerService = new BrokerService();
+        brokerService.setPersistenceAdapter(new MemoryPersistenceAdapter());
+        brokerService.setDataDirectory("target/activemq-data");
+        brokerService.setPlugins(plugins);
+
+        ServerSocket serverSocket = new ServerSocket(0);
+        int brokerPort = serverSocket.getLocalPort();
+        serverSocket.close();
+
+        brokerService.addConnector("tcp://localhost:" + brokerPort);
+        return brokerService;
+    }
+
+    private static Connection connect(String user, String password) throws JMSException {
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(brokerAddress);
+        Connection connection = factory.createConnection(user, password);
+        try {
+            connection.start();
+        } catch (JMSException ex) {
+            connection.close();
+            throw ex;
+        }
+        return connection;
+    }
+
+    private static String produceAndConsume(String user, String password) throws JMSException {
+        Connection connection = connect(user, password);
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Destination queue = session.createQueue("testqueue");
+            MessageProducer producer = session.createProducer(queue);
+
+            TextMessage message = session.createTextMessage("Some txt");
+            message.setStringProperty("some header", "some value");
+
+            producer.send(message);
+
+            MessageConsumer consumer = session.createConsumer(queue);
+            TextMessage receivedMessage = (TextMessage)consumer.receive(1000L);
+            assertEquals("some value", receivedMessage.getStringProperty("some header"));
+            return receivedMessage.getText();
+        } finally {
+            connection.close();
+        }
+    }
+
+}
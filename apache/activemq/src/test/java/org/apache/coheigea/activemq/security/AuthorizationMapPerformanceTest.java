@@ -0,0 +1,461 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.activemq.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.filter.DestinationMapEntry;
+import org.apache.activemq.jaas.GroupPrincipal;
+import org.apache.activemq.security.AuthenticationUser;
+import org.apache.activemq.security.AuthorizationEntry;
+import org.apache.activemq.security.AuthorizationMap;
+import org.apache.activemq.security.AuthorizationPlugin;
+import org.apache.activemq.security.DefaultAuthorizationMap;
+import org.apache.activemq.security.SimpleAuthenticationPlugin;
+import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests for the DestinationTrieAuthorizationMap (with the same entries as WildcardAuthorizationTest), including a
+ * reload of the file while the broker is running, and a benchmark of the latency of creating a producer and a
+ * consumer on a broker with a DefaultAuthorizationMap compared to a DestinationTrieAuthorizationMap.
+ *
+ * The benchmark has an entry per queue, for a number of queues (set via "activemq.benchmark.destinations", the
+ * default is 50000) in a four level hierarchy, plus wildcard entries at each level of the hierarchy. It creates a
+ * number of producers and consumers on random queues (set via "activemq.benchmark.creates", the default is 2000),
+ * and also times the lookup of wildcard destinations on each map directly.
+ */
+public class AuthorizationMapPerformanceTest {
+
+    private static final int DESTINATIONS = Integer.getInteger("activemq.benchmark.destinations", 50000);
+    private static final int CREATES = Integer.getInteger("activemq.benchmark.creates", 2000);
+
+    private static final long REFRESH_INTERVAL = 100L;
+
+    private static BrokerService broker;
+    private static String brokerAddress;
+    private static File authorizationFile;
+    private static DestinationTrieAuthorizationMap authorizationMap;
+
+    @org.junit.BeforeClass
+    public static void startBroker() throws Exception {
+        // Copy the entries, as testReload changes them
+        authorizationFile = new File("target/activemq-data/destination-authorization.properties");
+        FileUtils.copyFile(new File("src/test/resources/destination-authorization.properties"), authorizationFile);
+        authorizationMap = new DestinationTrieAuthorizationMap(authorizationFile, REFRESH_INTERVAL);
+
+        broker = createBroker(authorizationMap);
+        brokerAddress = broker.getTransportConnectors().get(0).getConnectUri().toString();
+        broker.start();
+    }
+
+    @org.junit.AfterClass
+    public static void stopBroker() throws Exception {
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @org.junit.Test
+    public void testResolvedACLs() throws Exception {
+        assertEquals(groups("consumer"), authorizationMap.getReadACLs(new ActiveMQQueue("testqueue.foo")));
+        assertEquals(groups("producer"), authorizationMap.getReadACLs(new ActiveMQQueue("testqueue.bar")));
+        // A wildcard destination gets the ACLs of every entry that it matches
+        assertEquals(groups("consumer", "producer"), authorizationMap.getReadACLs(new ActiveMQQueue("testqueue.*")));
+        assertEquals(groups("consumer", "producer"), authorizationMap.getReadACLs(new ActiveMQQueue("testqueue.>")));
+        // A composite destination only gets the groups that are allowed on all of its destinations
+        ActiveMQQueue compositeQueue = new ActiveMQQueue("testqueue.foo,testqueue.bar");
+        assertEquals(groups("producer"), authorizationMap.getWriteACLs(compositeQueue));
+        assertEquals(groups(), authorizationMap.getReadACLs(compositeQueue));
+
+        assertEquals(groups("guest"), authorizationMap.getReadACLs(new ActiveMQTopic("ActiveMQ.Advisory.Queue")));
+        assertEquals(groups(), authorizationMap.getReadACLs(new ActiveMQTopic("testqueue.foo")));
+        assertEquals(groups(), authorizationMap.getReadACLs(new ActiveMQQueue("unknownqueue")));
+        assertNull(authorizationMap.getTempDestinationReadACLs());
+    }
+
+    @org.junit.Test
+    public void testAliceCanConsume() throws Exception {
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(brokerAddress);
+        Connection connection = factory.createConnection("alice", "password");
+        Connection consumerConnection = factory.createConnection("alice", "password");
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            sendMessage(session, "testqueue.foo");
+            sendMessage(session, "testqueue.bar");
+
+            consumerConnection.start();
+            Session consumerSession = consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            assertEquals(2, receiveMessages(consumerSession, "testqueue.*"));
+        } finally {
+            connection.close();
+            consumerConnection.close();
+        }
+    }
+
+    @org.junit.Test
+    public void testBobCantConsume() throws Exception {
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(brokerAddress);
+        Connection connection = factory.createConnection("alice", "password");
+        Connection consumerConnection = factory.createConnection("bob", "security");
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            sendMessage(session, "testqueue.foo");
+            sendMessage(session, "testqueue.bar");
+
+            // Only the message on testqueue.foo is received
+            consumerConnection.start();
+            Session consumerSession = consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            assertEquals(1, receiveMessages(consumerSession, "testqueue.*"));
+        } finally {
+            // Remove the message on testqueue.bar
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            connection.start();
+            receiveMessages(session, "testqueue.bar");
+            connection.close();
+            consumerConnection.close();
+        }
+    }
+
+    @org.junit.Test
+    public void testReload() throws Exception {
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(brokerAddress);
+        Connection connection = factory.createConnection("dave", "security");
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            sendMessage(session, "reloadqueue");
+            fail("Failure expected on a write by dave");
+        } catch (JMSException ex) {
+            // expected
+        } finally {
+            connection.close();
+        }
+
+        // Allow dave to write to reloadqueue, without restarting the broker
+        Properties properties = new Properties();
+        try (InputStream inputStream = new FileInputStream(authorizationFile)) {
+            properties.load(inputStream);
+        }
+        properties.setProperty("queue.reloadqueue.write", "producer,guest");
+        long reloads = authorizationMap.getReloadCount();
+        store(properties, authorizationFile);
+        waitForReload(reloads);
+
+        connection = factory.createConnection("dave", "security");
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            sendMessage(session, "reloadqueue");
+        } finally {
+            connection.close();
+        }
+
+        // A file that can't be parsed is not loaded, and the current entries are kept
+        properties.setProperty("queue.reloadqueue.execute", "guest");
+        long failures = authorizationMap.getReloadFailures();
+        store(properties, authorizationFile);
+        assertFalse(authorizationMap.reload());
+        assertEquals(failures + 1, authorizationMap.getReloadFailures());
+        assertEquals(groups("producer", "guest"), authorizationMap.getWriteACLs(new ActiveMQQueue("reloadqueue")));
+    }
+
+    @org.junit.Test
+    public void testMatchesDefaultAuthorizationMap() throws Exception {
+        List<String[]> entries = new ArrayList<>();
+        entries.add(new String[] {"queue.USERS.>", "users", "users", "admins"});
+        entries.add(new String[] {"queue.USERS.alice", "alice", "alice", ""});
+        entries.add(new String[] {"queue.FOO.BAR", "foobar", "", ""});
+        entries.add(new String[] {"queue.FOO.BAR.>", "foobarall", "", ""});
+        entries.add(new String[] {"queue.FOO.*", "fooany", "", ""});
+        entries.add(new String[] {"queue.FOO.*.BAZ", "", "baz", ""});
+        entries.add(new String[] {"queue.>", "", "", "admins"});
+        entries.add(new String[] {"topic.ActiveMQ.Advisory.>", "guest", "guest", "guest"});
+
+        File file = new File("target/activemq-data/matching-authorization.properties");
+        store(createProperties(entries), file);
+        DefaultAuthorizationMap defaultMap = new DefaultAuthorizationMap(createAuthorizationEntries(entries));
+        DestinationTrieAuthorizationMap trieMap = new DestinationTrieAuthorizationMap(file, -1L);
+
+        // "USERS.>" also applies to USERS itself
+        assertEquals(groups("users"), trieMap.getReadACLs(new ActiveMQQueue("USERS")));
+        assertEquals(groups("foobar", "foobarall", "fooany"), trieMap.getReadACLs(new ActiveMQQueue("FOO.BAR")));
+
+        String[] queues = {"USERS", "USERS.alice", "USERS.bob", "USERS.alice.inbox", "USERS.*", "FOO", "FOO.BAR",
+                           "FOO.BAR.X", "FOO.X", "FOO.X.BAZ", "FOO.*", "FOO.*.BAZ", "*.BAR", "unknown"};
+        for (String queue : queues) {
+            ActiveMQQueue destination = new ActiveMQQueue(queue);
+            assertEquals(queue, defaultMap.getReadACLs(destination), trieMap.getReadACLs(destination));
+            assertEquals(queue, defaultMap.getWriteACLs(destination), trieMap.getWriteACLs(destination));
+            assertEquals(queue, defaultMap.getAdminACLs(destination), trieMap.getAdminACLs(destination));
+        }
+        for (String topic : new String[] {"ActiveMQ.Advisory", "ActiveMQ.Advisory.Queue", "USERS"}) {
+            ActiveMQTopic destination = new ActiveMQTopic(topic);
+            assertEquals(topic, defaultMap.getReadACLs(destination), trieMap.getReadACLs(destination));
+        }
+    }
+
+    @org.junit.Test
+    public void testCreateLatency() throws Exception {
+        System.out.println("Testing producer and consumer creation with " + DESTINATIONS + " destinations and "
+            + CREATES + " creates");
+
+        List<String[]> entries = createBenchmarkEntries();
+        List<DestinationMapEntry> authorizationEntries = createAuthorizationEntries(entries);
+        File benchmarkFile = new File("target/activemq-data/benchmark-authorization.properties");
+        store(createProperties(entries), benchmarkFile);
+
+        long start = System.nanoTime();
+        DefaultAuthorizationMap defaultMap = new DefaultAuthorizationMap(authorizationEntries);
+        System.out.println(String.format("%-8s loaded in %d ms", "default", (System.nanoTime() - start) / 1000000L));
+        start = System.nanoTime();
+        DestinationTrieAuthorizationMap trieMap = new DestinationTrieAuthorizationMap(benchmarkFile, -1L);
+        System.out.println(String.format("%-8s loaded in %d ms", "trie", (System.nanoTime() - start) / 1000000L));
+
+        System.out.println(String.format("%-8s %-10s %10s %10s", "map", "operation", "p50 (us)", "p99 (us)"));
+        measure("default", defaultMap);
+        measure("trie", trieMap);
+    }
+
+    private static void measure(String name, AuthorizationMap map) throws Exception {
+        // Wildcard destinations at each level of the hierarchy
+        Random random = new Random(42L);
+        long[] latencies = new long[CREATES];
+        for (int i = 0; i < CREATES; i++) {
+            int queue = random.nextInt(DESTINATIONS);
+            String wildcard;
+            switch (i % 3) {
+                case 0:
+                    wildcard = "bench.r" + (queue % 10) + ".>";
+                    break;
+                case 1:
+                    wildcard = "bench.*.s" + (queue / 10 % 20) + ".*.>";
+                    break;
+                default:
+                    wildcard = "bench.r" + (queue % 10) + ".*.t" + (queue / 200 % 25) + ".*";
+                    break;
+            }
+            long start = System.nanoTime();
+            map.getReadACLs(new ActiveMQQueue(wildcard));
+            latencies[i] = System.nanoTime() - start;
+        }
+        report(name, "lookup", latencies);
+
+        BrokerService benchmarkBroker = createBroker(map);
+        benchmarkBroker.setUseJmx(false);
+        benchmarkBroker.start();
+        Connection connection =
+            new ActiveMQConnectionFactory(benchmarkBroker.getTransportConnectors().get(0).getConnectUri())
+                .createConnection("alice", "password");
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+            random = new Random(42L);
+            long[] producerLatencies = new long[CREATES];
+            long[] consumerLatencies = new long[CREATES];
+            for (int i = 0; i < CREATES; i++) {
+                Destination queue = session.createQueue(getQueueName(random.nextInt(DESTINATIONS)));
+
+                long start = System.nanoTime();
+                MessageProducer producer = session.createProducer(queue);
+                producerLatencies[i] = System.nanoTime() - start;
+                producer.close();
+
+                start = System.nanoTime();
+                MessageConsumer consumer = session.createConsumer(queue);
+                consumerLatencies[i] = System.nanoTime() - start;
+                consumer.close();
+            }
+            report(name, "producer", producerLatencies);
+            report(name, "consumer", consumerLatencies);
+        } finally {
+            connection.close();
+            benchmarkBroker.stop();
+            benchmarkBroker.waitUntilStopped();
+        }
+    }
+
+    private static void report(String name, String operation, long[] latencies) {
+        Arrays.sort(latencies);
+        System.out.println(String.format("%-8s %-10s %10.1f %10.1f", name, operation,
+                                         latencies[latencies.length / 2] / 1000.0,
+                                         latencies[(int)Math.ceil(latencies.length * 0.99) - 1] / 1000.0));
+    }
+
+    /**
+     * Return the benchmark entries, as {destination, read, write, admin}. Each queue is only readable by "consumer"
+     * and writable by "producer", and the wildcard entries add other groups at each level of the hierarchy.
+     */
+    private static List<String[]> createBenchmarkEntries() {
+        List<String[]> entries = new ArrayList<>();
+        for (int i = 0; i < DESTINATIONS; i++) {
+            entries.add(new String[] {"queue." + getQueueName(i), "consumer", "producer", "guest"});
+        }
+        for (int r = 0; r < 10; r++) {
+            entries.add(new String[] {"queue.bench.r" + r + ".>", "auditor" + r, "", "guest"});
+        }
+        for (int s = 0; s < 20; s++) {
+            entries.add(new String[] {"queue.bench.*.s" + s + ".>", "reader" + s % 4, "", ""});
+        }
+        for (int t = 0; t < 25; t++) {
+            entries.add(new String[] {"queue.bench.*.*.t" + t + ".*", "", "writer" + t % 4, ""});
+        }
+        entries.add(new String[] {"topic.ActiveMQ.Advisory.>", "guest", "guest", "guest"});
+        return entries;
+    }
+
+    private static List<DestinationMapEntry> createAuthorizationEntries(List<String[]> entries) throws Exception {
+        List<DestinationMapEntry> authorizationEntries = new ArrayList<>();
+        for (String[] entry : entries) {
+            AuthorizationEntry authorizationEntry = new AuthorizationEntry();
+            if (entry[0].startsWith("queue.")) {
+                authorizationEntry.setQueue(entry[0].substring("queue.".length()));
+            } else {
+                authorizationEntry.setTopic(entry[0].substring("topic.".length()));
+            }
+            authorizationEntry.setRead(entry[1]);
+            authorizationEntry.setWrite(entry[2]);
+            authorizationEntry.setAdmin(entry[3]);
+            authorizationEntries.add(authorizationEntry);
+        }
+        return authorizationEntries;
+    }
+
+    private static Properties createProperties(List<String[]> entries) {
+        Properties properties = new Properties();
+        for (String[] entry : entries) {
+            properties.setProperty(entry[0] + ".read", entry[1]);
+            properties.setProperty(entry[0] + ".write", entry[2]);
+            properties.setProperty(entry[0] + ".admin", entry[3]);
+        }
+        return properties;
+    }
+
+    private static String getQueueName(int i) {
+        return "bench.r" + (i % 10) + ".s" + (i / 10 % 20) + ".t" + (i / 200 % 25) + ".q" + i;
+    }
+
+    private static BrokerService createBroker(AuthorizationMap map) throws Exception {
+        BrokerService brokerService = new BrokerService();
+        brokerService.setPersistenceAdapter(new MemoryPersistenceAdapter());
+        brokerService.setDataDirectory("target/activemq-data");
+
+        // Add authentication data
+        AuthenticationUser alice = new AuthenticationUser("alice", "password", "producer,consumer,guest");
+        AuthenticationUser bob = new AuthenticationUser("bob", "security", "consumer,guest");
+        AuthenticationUser dave = new AuthenticationUser("dave", "security", "guest");
+        SimpleAuthenticationPlugin authenticationPlugin = new SimpleAuthenticationPlugin();
+        authenticationPlugin.setUsers(Arrays.asList(alice, bob, dave));
+
+        AuthorizationPlugin authorizationPlugin = new AuthorizationPlugin(map);
+        brokerService.setPlugins(new BrokerPlugin[] {authenticationPlugin, authorizationPlugin});
+
+        ServerSocket serverSocket = new ServerSocket(0);
+        int brokerPort = serverSocket.getLocalPort();
+        serverSocket.close();
+
+        brokerService.addConnector("tcp://localhost:" + brokerPort);
+        return brokerService;
+    }
+
+    private static void waitForReload(long reloads) throws InterruptedException {
+        // The file is checked on a lookup, at most every REFRESH_INTERVAL milliseconds
+        long timeout = System.currentTimeMillis() + 10000L;
+        while (authorizationMap.getReloadCount() == reloads && System.currentTimeMillis() < timeout) {
+            Thread.sleep(REFRESH_INTERVAL);
+            authorizationMap.getWriteACLs(new ActiveMQQueue("reloadqueue"));
+        }
+        assertEquals(reloads + 1, authorizationMap.getReloadCount());
+    }
+
+    private static void store(Properties properties, File file) throws Exception {
+        long lastModified = file.lastModified();
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            properties.store(outputStream, null);
+        }
+        // The modification time may only have a granularity of a second
+        if (file.lastModified() <= lastModified) {
+            file.setLastModified(lastModified + 1000L);
+        }
+    }
+
+    private static HashSet<GroupPrincipal> groups(String... names) {
+        HashSet<GroupPrincipal> groups = new HashSet<>();
+        for (String name : names) {
+            groups.add(new GroupPrincipal(name));
+        }
+        return groups;
+    }
+
+    private static void sendMessage(Session session, String queueName) throws JMSException {
+        Destination queue = session.createQueue(queueName);
+        MessageProducer producer = session.createProducer(queue);
+
+        TextMessage message = session.createTextMessage("Some txt");
+        message.setStringProperty("some header", "some value");
+
+        producer.send(message);
+    }
+
+    /**
+     * Receive messages until none is received within a second, and return how many were received
+     */
+    private static int receiveMessages(Session session, String queueName) throws JMSException {
+        Destination queue = session.createQueue(queueName);
+        MessageConsumer consumer = session.createConsumer(queue);
+        int received = 0;
+        TextMessage receivedMessage;
+        while ((receivedMessage = (TextMessage)consumer.receive(1000L)) != null) {
+            assertEquals("Some txt", receivedMessage.getText());
+            assertEquals("some value", receivedMessage.getStringProperty("some header"));
+            received++;
+        }
+        consumer.close();
+        return received;
+    }
+
+}
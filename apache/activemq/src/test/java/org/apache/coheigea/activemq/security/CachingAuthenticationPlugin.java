@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.activemq.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ConnectionInfo;
+import org.apache.activemq.security.AbstractAuthenticationBroker;
+import org.apache.activemq.security.AuthenticationBroker;
+import org.apache.activemq.security.SecurityContext;
+
+/**
+ * A BrokerPlugin that caches the result of a successful authentication, so that a client that connects again with
+ * the same credentials is not authenticated again by the login module. It must be installed after (i.e. in front
+ * of) an authentication plugin that only authenticates a connection if it has no SecurityContext yet, such as the
+ * JaasAuthenticationPlugin or the SimpleAuthenticationPlugin:
+ *
+ *   broker.setPlugins(new BrokerPlugin[] {jaasAuthenticationPlugin, cachingPlugin, authorizationPlugin});
+ *
+ * - The cache maps a salted SHA-256 hash of the user name and password to the user name and principals of the
+ *   SecurityContext that the authentication plugin created for them. The password itself is not kept, and the salt
+ *   is random per plugin.
+ * - Failed authentications, and connections without a user name and password, are not cached.
+ * - The cache holds at most "maxEntries" entries (the least recently used one is evicted), and an entry expires
+ *   "timeToLive" milliseconds after the authentication.
+ * - revoke(userName) removes the entries of a user (e.g. when the password is changed or the user is disabled), so
+ *   that the next connection of that user is authenticated by the login module. Existing connections are not closed.
+ *
+ * Each connection that uses a cached authentication gets a new SecurityContext, which this plugin tracks (as the
+ * authentication plugins do), so that refresh() clears the destinations it has been authorized for. The plugin is not
+ * suitable for the ShiroPlugin, which creates a Subject per connection and logs it out when the connection is removed.
+ */
+public class CachingAuthenticationPlugin implements BrokerPlugin {
+
+    private final byte[] salt = new byte[16];
+    private final Map<String, CachedAuthentication> cache =
+        new LinkedHashMap<String, CachedAuthentication>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedAuthentication> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile int maxEntries = 10000;
+    private volatile long timeToLive = 5L * 60L * 1000L;
+
+    public CachingAuthenticationPlugin() {
+        new SecureRandom().nextBytes(salt);
+    }
+
+    @Override
+    public Broker installPlugin(Broker broker) throws Exception {
+        return new CachingAuthenticationBroker(broker);
+    }
+
+    /**
+     * Remove the cached authentications of the given user
+     */
+    public void revoke(String userName) {
+        synchronized (cache) {
+            Iterator<CachedAuthentication> iterator = cache.values().iterator();
+            while (iterator.hasNext()) {
+                if (userName.equals(iterator.next().userName)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all of the cached authentications
+     */
+    public void revokeAll() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Set how long (in milliseconds) an authentication is cached for. This only applies to new entries.
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private CachedAuthentication getCachedAuthentication(String key) {
+        synchronized (cache) {
+            CachedAuthentication cachedAuthentication = cache.get(key);
+            if (cachedAuthentication == null) {
+                return null;
+            }
+            if (cachedAuthentication.expires <= System.currentTimeMillis()) {
+                cache.remove(key);
+                return null;
+            }
+            return cachedAuthentication;
+        }
+    }
+
+    private void cacheAuthentication(String key, SecurityContext securityContext) {
+        CachedAuthentication cachedAuthentication =
+            new CachedAuthentication(securityContext.getUserName(), securityContext.getPrincipals(),
+                                     System.currentTimeMillis() + timeToLive);
+        synchronized (cache) {
+            cache.put(key, cachedAuthentication);
+        }
+    }
+
+    private String hash(String userName, String password) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(salt);
+        digest.update(userName.getBytes(StandardCharsets.UTF_8));
+        // Separate the user name from the password, so that e.g. "ab" + "c" and "a" + "bc" are different
+        digest.update((byte)0);
+        digest.update(password.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private final class CachingAuthenticationBroker extends AbstractAuthenticationBroker {
+
+        CachingAuthenticationBroker(Broker next) {
+            super(next);
+        }
+
+        @Override
+        public void addConnection(ConnectionContext context, ConnectionInfo info) throws Exception {
+            if (context.getSecurityContext() != null || info.getUserName() == null || info.getPassword() == null) {
+                super.addConnection(context, info);
+                return;
+            }
+
+            String key = hash(info.getUserName(), info.getPassword());
+            CachedAuthentication cachedAuthentication = getCachedAuthentication(key);
+            if (cachedAuthentication != null) {
+                hits.incrementAndGet();
+                SecurityContext securityContext = cachedAuthentication.newSecurityContext();
+                context.setSecurityContext(securityContext);
+                securityContexts.add(securityContext);
+                try {
+                    super.addConnection(context, info);
+                } catch (Exception ex) {
+                    securityContexts.remove(securityContext);
+                    context.setSecurityContext(null);
+                    throw ex;
+                }
+                return;
+            }
+
+            misses.incrementAndGet();
+            // The authentication plugin sets the SecurityContext, or throws a SecurityException
+            super.addConnection(context, info);
+            SecurityContext securityContext = context.getSecurityContext();
+            if (securityContext != null && info.getUserName().equals(securityContext.getUserName())) {
+                cacheAuthentication(key, securityContext);
+            }
+        }
+
+        @Override
+        public SecurityContext authenticate(String userName, String password, X509Certificate[] peerCertificates)
+            throws SecurityException {
+            AuthenticationBroker authenticationBroker = next.getAdaptor(AuthenticationBroker.class);
+            if (authenticationBroker == null) {
+                throw new SecurityException("No authentication plugin is installed behind the cache");
+            }
+            return authenticationBroker.authenticate(userName, password, peerCertificates);
+        }
+
+        /**
+         * Clear the authorized destinations of the connections that used a cached authentication, and of the
+         * connections that the authentication plugin authenticated itself
+         */
+        @Override
+        public void refresh() {
+            super.refresh();
+            AbstractAuthenticationBroker authenticationBroker = next.getAdaptor(AbstractAuthenticationBroker.class);
+            if (authenticationBroker != null) {
+                authenticationBroker.refresh();
+            }
+        }
+    }
+
+    private static final class CachedAuthentication {
+        private final String userName;
+        private final Set<Principal> principals;
+        private final long expires;
+
+        CachedAuthentication(String userName, Set<Principal> principals, long expires) {
+            this.userName = userName;
+            this.principals = Collections.unmodifiableSet(new HashSet<>(principals));
+            this.expires = expires;
+        }
+
+        SecurityContext newSecurityContext() {
+            return new SecurityContext(userName) {
+                @Override
+                public Set<Principal> getPrincipals() {
+                    return principals;
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,433 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.activemq.security;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.jaas.GroupPrincipal;
+import org.apache.activemq.security.AuthorizationMap;
+
+/**
+ * An AuthorizationMap for the AuthorizationPlugin, which is loaded from a properties file and reloaded when the
+ * file changes, without restarting the broker. Each property is "<queue|topic>.<destination>.<read|write|admin>",
+ * and the value is a comma separated list of groups, e.g.:
+ *
+ *   queue.testqueue.foo.read=consumer
+ *   queue.testqueue.>.admin=guest
+ *   topic.ActiveMQ.Advisory.>.read=guest
+ *
+ * "default.<operation>" applies to every destination, and "temp.<operation>" to temporary destinations (these are
+ * not restricted if there is no "temp" entry, as with the DefaultAuthorizationMap). The destinations may contain the
+ * "*" and ">" wildcards.
+ *
+ * As with the DefaultAuthorizationMap, the ACL of a destination is the union of the ACLs of all entries that match
+ * it. However:
+ *
+ * - The entries are compiled into a trie over the destination segments, which is immutable and so is read without
+ *   locking.
+ * - The read/write/admin ACLs resolved for a destination are cached, so that a lookup of a destination that has been
+ *   seen before (e.g. when a producer or consumer is created) is a single map lookup, with no allocation.
+ * - On a reload, a new trie (with an empty cache) is built from the file and then swapped in atomically. If the file
+ *   can't be parsed, the current trie is kept.
+ *
+ * The file is checked for changes at most every "refreshInterval" milliseconds, on a lookup (in the same way as the
+ * refreshInterval of the CachedLDAPAuthorizationMap), or on a call to reload().
+ */
+public class DestinationTrieAuthorizationMap implements AuthorizationMap {
+
+    private static final int MAX_CACHED_DESTINATIONS = 100000;
+
+    private static final String READ = "read";
+    private static final String WRITE = "write";
+    private static final String ADMIN = "admin";
+
+    private final File file;
+    private final long refreshInterval;
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong reloadFailures = new AtomicLong();
+
+    private volatile Snapshot snapshot;
+    private volatile long lastModified;
+    private volatile long lastChecked;
+
+    /**
+     * Load the map from the given file. It is checked for changes at most every refreshInterval milliseconds (a
+     * negative refreshInterval means that it is only reloaded via reload()).
+     */
+    public DestinationTrieAuthorizationMap(File file, long refreshInterval) throws IOException {
+        this.file = file;
+        this.refreshInterval = refreshInterval;
+        this.lastModified = file.lastModified();
+        this.lastChecked = System.currentTimeMillis();
+        this.snapshot = load(file);
+    }
+
+    @Override
+    public Set<?> getTempDestinationAdminACLs() {
+        Acls tempAcls = getSnapshot().tempAcls;
+        return tempAcls == null ? null : tempAcls.admin;
+    }
+
+    @Override
+    public Set<?> getTempDestinationReadACLs() {
+        Acls tempAcls = getSnapshot().tempAcls;
+        return tempAcls == null ? null : tempAcls.read;
+    }
+
+    @Override
+    public Set<?> getTempDestinationWriteACLs() {
+        Acls tempAcls = getSnapshot().tempAcls;
+        return tempAcls == null ? null : tempAcls.write;
+    }
+
+    @Override
+    public Set<?> getAdminACLs(ActiveMQDestination destination) {
+        return getSnapshot().getAcls(destination).admin;
+    }
+
+    @Override
+    public Set<?> getReadACLs(ActiveMQDestination destination) {
+        return getSnapshot().getAcls(destination).read;
+    }
+
+    @Override
+    public Set<?> getWriteACLs(ActiveMQDestination destination) {
+        return getSnapshot().getAcls(destination).write;
+    }
+
+    /**
+     * Reload the file now, returning whether it could be loaded. If not, the current entries are kept.
+     */
+    public boolean reload() {
+        reloadLock.lock();
+        try {
+            return doReload();
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    public long getReloadCount() {
+        return reloads.get();
+    }
+
+    public long getReloadFailures() {
+        return reloadFailures.get();
+    }
+
+    /**
+     * Return the number of destinations with cached ACLs
+     */
+    public int getCachedDestinationCount() {
+        return snapshot.cache.size();
+    }
+
+    private Snapshot getSnapshot() {
+        if (refreshInterval >= 0) {
+            long now = System.currentTimeMillis();
+            // Only one thread checks the file, the others carry on with the current entries
+            if (now - lastChecked >= refreshInterval && reloadLock.tryLock()) {
+                try {
+                    lastChecked = now;
+                    if (file.lastModified() != lastModified) {
+                        doReload();
+                    }
+                } finally {
+                    reloadLock.unlock();
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private boolean doReload() {
+        long modified = file.lastModified();
+        try {
+            snapshot = load(file);
+            reloads.incrementAndGet();
+            return true;
+        } catch (IOException | RuntimeException ex) {
+            reloadFailures.incrementAndGet();
+            return false;
+        } finally {
+            // Don't retry a file that can't be parsed until it changes again
+            lastModified = modified;
+        }
+    }
+
+    private static Snapshot load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream inputStream = new FileInputStream(file)) {
+            properties.load(inputStream);
+        }
+
+        Map<String, Set<GroupPrincipal>[]> entries = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            int lastDot = key.lastIndexOf('.');
+            if (lastDot < 0) {
+                throw new IllegalArgumentException("Invalid authorization entry: " + key);
+            }
+            String destination = key.substring(0, lastDot);
+            int operation = getOperation(key.substring(lastDot + 1));
+            if (!destination.startsWith("queue.") && !destination.startsWith("topic.")
+                && !"default".equals(destination) && !"temp".equals(destination)) {
+                throw new IllegalArgumentException("Invalid authorization entry: " + key);
+            }
+
+            Set<GroupPrincipal>[] acls = entries.get(destination);
+            if (acls == null) {
+                acls = newAcls();
+                entries.put(destination, acls);
+            }
+            for (String group : properties.getProperty(key).split(",")) {
+                if (!group.trim().isEmpty()) {
+                    acls[operation].add(new GroupPrincipal(group.trim()));
+                }
+            }
+        }
+
+        Node queues = new Node();
+        Node topics = new Node();
+        Acls defaultAcls = null;
+        Acls tempAcls = null;
+        for (Map.Entry<String, Set<GroupPrincipal>[]> entry : entries.entrySet()) {
+            String destination = entry.getKey();
+            Acls acls = new Acls(entry.getValue());
+            if ("default".equals(destination)) {
+                defaultAcls = acls;
+            } else if ("temp".equals(destination)) {
+                tempAcls = acls;
+            } else if (destination.startsWith("queue.")) {
+                queues.add(destination.substring("queue.".length()).split("\\."), 0, acls);
+            } else {
+                topics.add(destination.substring("topic.".length()).split("\\."), 0, acls);
+            }
+        }
+        return new Snapshot(queues, topics, defaultAcls, tempAcls);
+    }
+
+    private static int getOperation(String operation) {
+        if (READ.equals(operation)) {
+            return 0;
+        } else if (WRITE.equals(operation)) {
+            return 1;
+        } else if (ADMIN.equals(operation)) {
+            return 2;
+        }
+        throw new IllegalArgumentException("Unknown operation: " + operation);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<GroupPrincipal>[] newAcls() {
+        return new Set[] {new HashSet<GroupPrincipal>(), new HashSet<GroupPrincipal>(),
+                          new HashSet<GroupPrincipal>()};
+    }
+
+    /**
+     * The compiled entries, and the ACLs resolved from them, which are replaced together on a reload
+     */
+    private static final class Snapshot {
+        private final Node queues;
+        private final Node topics;
+        private final Acls defaultAcls;
+        private final Acls tempAcls;
+        private final ConcurrentMap<ActiveMQDestination, Acls> cache = new ConcurrentHashMap<>();
+
+        Snapshot(Node queues, Node topics, Acls defaultAcls, Acls tempAcls) {
+            this.queues = queues;
+            this.topics = topics;
+            this.defaultAcls = defaultAcls;
+            this.tempAcls = tempAcls;
+        }
+
+        Acls getAcls(ActiveMQDestination destination) {
+            Acls acls = cache.get(destination);
+            if (acls == null) {
+                acls = resolve(destination);
+                if (cache.size() >= MAX_CACHED_DESTINATIONS) {
+                    cache.clear();
+                }
+                cache.put(destination, acls);
+            }
+            return acls;
+        }
+
+        private Acls resolve(ActiveMQDestination destination) {
+            if (destination.isComposite()) {
+                // As with the DefaultAuthorizationMap, a group must be allowed on every destination of a composite
+                Set<GroupPrincipal>[] acls = null;
+                for (ActiveMQDestination compositeDestination : destination.getCompositeDestinations()) {
+                    Acls compositeAcls = getAcls(compositeDestination);
+                    if (acls == null) {
+                        acls = newAcls();
+                        acls[0].addAll(compositeAcls.read);
+                        acls[1].addAll(compositeAcls.write);
+                        acls[2].addAll(compositeAcls.admin);
+                    } else {
+                        acls[0].retainAll(compositeAcls.read);
+                        acls[1].retainAll(compositeAcls.write);
+                        acls[2].retainAll(compositeAcls.admin);
+                    }
+                }
+                return new Acls(acls == null ? newAcls() : acls);
+            }
+
+            Set<GroupPrincipal>[] acls = newAcls();
+            if (defaultAcls != null) {
+                defaultAcls.addTo(acls);
+            }
+            Node root = destination.isQueue() ? queues : topics;
+            root.collect(destination.getPhysicalName().split("\\."), 0, acls);
+            return new Acls(acls);
+        }
+    }
+
+    /**
+     * A node of the trie, for a destination segment. "*" and ">" are kept apart from the other child segments.
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Node anyChild;
+        private Node anyDescendant;
+        private Acls acls;
+
+        void add(String[] segments, int index, Acls entryAcls) {
+            if (index == segments.length) {
+                acls = entryAcls;
+                return;
+            }
+            String segment = segments[index];
+            Node child;
+            if ("*".equals(segment)) {
+                if (anyChild == null) {
+                    anyChild = new Node();
+                }
+                child = anyChild;
+            } else if (">".equals(segment)) {
+                if (anyDescendant == null) {
+                    anyDescendant = new Node();
+                }
+                child = anyDescendant;
+            } else {
+                child = children.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    children.put(segment, child);
+                }
+            }
+            child.add(segments, index + 1, entryAcls);
+        }
+
+        /**
+         * Add the ACLs of every entry that matches the given destination segments (from index). If the destination
+         * contains wildcards, this is every entry that matches any destination that the wildcards match, as with
+         * the DestinationMap that the DefaultAuthorizationMap is built on. As there, a trailing ">" also matches
+         * the destination it follows, so that "FOO.BAR.>" applies to FOO.BAR.
+         */
+        void collect(String[] segments, int index, Set<GroupPrincipal>[] result) {
+            if (index == segments.length) {
+                if (acls != null) {
+                    acls.addTo(result);
+                }
+                if (anyDescendant != null && anyDescendant.acls != null) {
+                    anyDescendant.acls.addTo(result);
+                }
+                return;
+            }
+            // ">" matches any remaining segments
+            if (anyDescendant != null) {
+                anyDescendant.collectAll(result);
+            }
+
+            String segment = segments[index];
+            if (">".equals(segment)) {
+                for (Node child : children.values()) {
+                    child.collectAll(result);
+                }
+                if (anyChild != null) {
+                    anyChild.collectAll(result);
+                }
+            } else if ("*".equals(segment)) {
+                for (Node child : children.values()) {
+                    child.collect(segments, index + 1, result);
+                }
+                if (anyChild != null) {
+                    anyChild.collect(segments, index + 1, result);
+                }
+            } else {
+                Node child = children.get(segment);
+                if (child != null) {
+                    child.collect(segments, index + 1, result);
+                }
+                if (anyChild != null) {
+                    anyChild.collect(segments, index + 1, result);
+                }
+            }
+        }
+
+        void collectAll(Set<GroupPrincipal>[] result) {
+            if (acls != null) {
+                acls.addTo(result);
+            }
+            for (Node child : children.values()) {
+                child.collectAll(result);
+            }
+            if (anyChild != null) {
+                anyChild.collectAll(result);
+            }
+            if (anyDescendant != null) {
+                anyDescendant.collectAll(result);
+            }
+        }
+    }
+
+    private static final class Acls {
+        private final Set<GroupPrincipal> read;
+        private final Set<GroupPrincipal> write;
+        private final Set<GroupPrincipal> admin;
+
+        Acls(Set<GroupPrincipal>[] acls) {
+            this.read = Collections.unmodifiableSet(acls[0]);
+            this.write = Collections.unmodifiableSet(acls[1]);
+            this.admin = Collections.unmodifiableSet(acls[2]);
+        }
+
+        void addTo(Set<GroupPrincipal>[] result) {
+            result[0].addAll(read);
+            result[1].addAll(write);
+            result[2].addAll(admin);
+        }
+    }
+
+}
@@ -0,0 +1,242 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.activemq.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.ServerSocket;
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.jaas.GroupPrincipal;
+import org.apache.activemq.jaas.UserPrincipal;
+import org.apache.activemq.security.AuthenticationUser;
+import org.apache.activemq.security.MessageAuthorizationPolicy;
+import org.apache.activemq.security.SecurityContext;
+import org.apache.activemq.security.SimpleAuthenticationPlugin;
+import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
+
+/**
+ * Tests for the PrecompiledMessageAuthorizationPolicy, and a benchmark of the cost per dispatched message of the
+ * per-message policy of MessageAuthorizationTest compared to the precompiled policy (with and without a selector).
+ * The benchmark calls isAllowedToConsume directly, for a number of consumer connections (set via
+ * "activemq.benchmark.consumers", the default is 100) and messages (set via "activemq.benchmark.dispatches", the
+ * default is 5000000), and reports the throughput and the memory allocated per call.
+ */
+public class MessageAuthorizationPerformanceTest {
+
+    private static final int CONSUMERS = Integer.getInteger("activemq.benchmark.consumers", 100);
+    private static final int DISPATCHES = Integer.getInteger("activemq.benchmark.dispatches", 5000000);
+
+    private static final String SELECTOR = "classification IS NULL OR classification <> 'secret'";
+
+    private static BrokerService broker;
+    private static String brokerAddress;
+    private static PrecompiledMessageAuthorizationPolicy policy;
+
+    @org.junit.BeforeClass
+    public static void startBroker() throws Exception {
+
+        broker = new BrokerService();
+        broker.setPersistenceAdapter(new MemoryPersistenceAdapter());
+        broker.setDataDirectory("target/activemq-data");
+
+        // Add authentication data
+        AuthenticationUser alice = new AuthenticationUser("alice", "password", "producer,consumer,guest");
+        AuthenticationUser bob = new AuthenticationUser("bob", "security", "consumer,guest");
+        AuthenticationUser dave = new AuthenticationUser("dave", "security", "guest");
+        SimpleAuthenticationPlugin authenticationPlugin = new SimpleAuthenticationPlugin();
+        authenticationPlugin.setUsers(Arrays.asList(alice, bob, dave));
+
+        // The policy is also a plugin, so that the decision of a connection is removed with the connection
+        policy = new PrecompiledMessageAuthorizationPolicy(
+            new HashSet<>(Arrays.asList(new GroupPrincipal("producer"), new GroupPrincipal("consumer"))), SELECTOR);
+        broker.setPlugins(new BrokerPlugin[] {authenticationPlugin, policy});
+        broker.setMessageAuthorizationPolicy(policy);
+
+        ServerSocket serverSocket = new ServerSocket(0);
+        int brokerPort = serverSocket.getLocalPort();
+        serverSocket.close();
+
+        brokerAddress = "tcp://localhost:" + brokerPort;
+        broker.addConnector(brokerAddress);
+        broker.start();
+    }
+
+    @org.junit.AfterClass
+    public static void stopBroker() throws Exception {
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @org.junit.Test
+    public void testPrecompiledPolicy() throws Exception {
+        assertEquals("Some txt", sendAndReceive("alice", "password", "aliceq", null));
+        assertEquals("Some txt", sendAndReceive("bob", "security", "bobq", "public"));
+        // The selector stops bob from consuming a secret message
+        assertNull(sendAndReceive("bob", "security", "bobsecretq", "secret"));
+        // dave is not in an allowed group
+        assertNull(sendAndReceive("dave", "security", "daveq", null));
+
+        // The decisions are removed with the connections
+        long timeout = System.currentTimeMillis() + 10000L;
+        while (policy.getDecisionCount() > 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50L);
+        }
+        assertEquals(0, policy.getDecisionCount());
+    }
+
+    @org.junit.Test
+    public void testSecurityContextChange() throws Exception {
+        PrecompiledMessageAuthorizationPolicy precompiledPolicy =
+            new PrecompiledMessageAuthorizationPolicy(new HashSet<>(Arrays.asList(new GroupPrincipal("consumer"))));
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        ConnectionContext context = new ConnectionContext();
+
+        context.setSecurityContext(createSecurityContext("bob", "consumer"));
+        assertTrue(precompiledPolicy.isAllowedToConsume(context, message));
+
+        // e.g. if the connection re-authenticates as another user
+        context.setSecurityContext(createSecurityContext("dave", "guest"));
+        assertFalse(precompiledPolicy.isAllowedToConsume(context, message));
+    }
+
+    @org.junit.Test
+    public void testDispatchPerformance() throws Exception {
+        MessageAuthorizationPolicy perMessagePolicy = new MessageAuthorizationTest.CustomMessageAuthorizationPolicy();
+        Set<Principal> allowedPrincipals =
+            new HashSet<Principal>(Arrays.asList(new GroupPrincipal("producer"), new GroupPrincipal("consumer")));
+        MessageAuthorizationPolicy precompiledPolicy = new PrecompiledMessageAuthorizationPolicy(allowedPrincipals);
+        MessageAuthorizationPolicy selectorPolicy =
+            new PrecompiledMessageAuthorizationPolicy(allowedPrincipals, SELECTOR);
+
+        // Every fourth consumer is not in an allowed group
+        ConnectionContext[] contexts = new ConnectionContext[CONSUMERS];
+        for (int i = 0; i < CONSUMERS; i++) {
+            contexts[i] = new ConnectionContext();
+            contexts[i].setSecurityContext(createSecurityContext("user" + i, i % 4 == 3 ? "guest" : "consumer"));
+        }
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setText("Some txt");
+        message.setStringProperty("classification", "public");
+
+        System.out.println("Testing dispatch authorization with " + CONSUMERS + " consumers");
+        long perMessageAllowed = measure("per-message", perMessagePolicy, contexts, message);
+        long precompiledAllowed = measure("precompiled", precompiledPolicy, contexts, message);
+        long selectorAllowed = measure("selector", selectorPolicy, contexts, message);
+        assertEquals(perMessageAllowed, precompiledAllowed);
+        assertEquals(perMessageAllowed, selectorAllowed);
+    }
+
+    private static long measure(String name, MessageAuthorizationPolicy policy, ConnectionContext[] contexts,
+                                ActiveMQTextMessage message) {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        // Warm up
+        long allowed = dispatch(policy, contexts, message);
+
+        long allocatedStart = getAllocatedBytes(threadMXBean);
+        long start = System.nanoTime();
+        allowed = dispatch(policy, contexts, message);
+        double seconds = (System.nanoTime() - start) / 1000000000.0;
+        double allocated = (getAllocatedBytes(threadMXBean) - allocatedStart) / (double)DISPATCHES;
+
+        System.out.println(String.format("%-12s %12.0f dispatches/sec %10.1f bytes allocated per dispatch", name,
+                                         DISPATCHES / seconds, allocated));
+        return allowed;
+    }
+
+    private static long dispatch(MessageAuthorizationPolicy policy, ConnectionContext[] contexts,
+                                 ActiveMQTextMessage message) {
+        long allowed = 0;
+        for (int i = 0; i < DISPATCHES; i++) {
+            if (policy.isAllowedToConsume(contexts[i % contexts.length], message)) {
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+
+    private static long getAllocatedBytes(ThreadMXBean threadMXBean) {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)threadMXBean).getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+        }
+        return 0L;
+    }
+
+    private static SecurityContext createSecurityContext(String user, String group) {
+        final Set<Principal> principals =
+            new HashSet<Principal>(Arrays.asList(new UserPrincipal(user), new GroupPrincipal(group)));
+        return new SecurityContext(user) {
+            @Override
+            public Set<Principal> getPrincipals() {
+                return principals;
+            }
+        };
+    }
+
+    private static String sendAndReceive(String user, String password, String queueName, String classification)
+        throws Exception {
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(brokerAddress);
+        // Produce as alice, who can consume anything
+        Connection producerConnection = factory.createConnection("alice", "password");
+        Connection connection = factory.createConnection(user, password);
+        try {
+            Session producerSession = producerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = producerSession.createProducer(producerSession.createQueue(queueName));
+            TextMessage message = producerSession.createTextMessage("Some txt");
+            if (classification != null) {
+                message.setStringProperty("classification", classification);
+            }
+            producer.send(message);
+
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Destination queue = session.createQueue(queueName);
+            MessageConsumer consumer = session.createConsumer(queue);
+            TextMessage receivedMessage = (TextMessage)consumer.receive(1000L);
+            return receivedMessage == null ? null : receivedMessage.getText();
+        } finally {
+            connection.close();
+            producerConnection.close();
+        }
+    }
+
+}
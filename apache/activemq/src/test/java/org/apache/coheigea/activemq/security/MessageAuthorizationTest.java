@@ -161,7 +161,7 @@ public class MessageAuthorizationTest {
     }
     
 
-    private static class CustomMessageAuthorizationPolicy implements MessageAuthorizationPolicy {
+    static class CustomMessageAuthorizationPolicy implements MessageAuthorizationPolicy {
 
         @Override
         public boolean isAllowedToConsume(ConnectionContext context, Message message) {
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.activemq.security;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.jms.InvalidSelectorException;
+import javax.jms.JMSException;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerFilter;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ConnectionInfo;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.security.MessageAuthorizationPolicy;
+import org.apache.activemq.security.SecurityContext;
+import org.apache.activemq.selector.SelectorParser;
+
+/**
+ * A MessageAuthorizationPolicy that is cheap enough to call for every dispatched message:
+ *
+ * - The set of allowed principals is built once, rather than per message.
+ * - Whether a connection is allowed to consume is decided once per connection, and memoized. The decision is
+ *   recomputed if the SecurityContext of the connection changes, and is removed when the connection is removed
+ *   (this class must also be installed as a BrokerPlugin for that).
+ * - An optional selector (in JMS selector syntax, e.g. "classification <> 'secret'") is compiled once, and then
+ *   evaluated against the properties of each message that a connection is allowed to consume.
+ */
+public class PrecompiledMessageAuthorizationPolicy implements MessageAuthorizationPolicy, BrokerPlugin {
+
+    private static final int MAX_DECISIONS = 100000;
+
+    private final Set<Principal> allowedPrincipals;
+    private final BooleanExpression selector;
+    private final ConcurrentMap<ConnectionContext, Decision> decisions = new ConcurrentHashMap<>();
+    private final ThreadLocal<MessageEvaluationContext> evaluationContexts =
+        new ThreadLocal<MessageEvaluationContext>() {
+            @Override
+            protected MessageEvaluationContext initialValue() {
+                return new MessageEvaluationContext();
+            }
+        };
+
+    public PrecompiledMessageAuthorizationPolicy(Set<? extends Principal> allowedPrincipals) {
+        this.allowedPrincipals = Collections.unmodifiableSet(new HashSet<Principal>(allowedPrincipals));
+        this.selector = null;
+    }
+
+    public PrecompiledMessageAuthorizationPolicy(Set<? extends Principal> allowedPrincipals, String selector)
+        throws InvalidSelectorException {
+        this.allowedPrincipals = Collections.unmodifiableSet(new HashSet<Principal>(allowedPrincipals));
+        this.selector = selector == null ? null : SelectorParser.parse(selector);
+    }
+
+    @Override
+    public boolean isAllowedToConsume(ConnectionContext context, Message message) {
+        SecurityContext securityContext = context.getSecurityContext();
+        if (securityContext == null) {
+            return false;
+        }
+
+        Decision decision = decisions.get(context);
+        if (decision == null || decision.securityContext != securityContext) {
+            decision = new Decision(securityContext, isAllowed(securityContext));
+            if (decisions.size() >= MAX_DECISIONS) {
+                decisions.clear();
+            }
+            decisions.put(context, decision);
+        }
+        if (!decision.allowed) {
+            return false;
+        }
+        return selector == null || matches(message);
+    }
+
+    private boolean isAllowed(SecurityContext securityContext) {
+        if (securityContext.isBrokerContext()) {
+            return true;
+        }
+        // Unlike SecurityContext.isInOneOf, this does not copy the principals of the connection
+        for (Principal principal : securityContext.getPrincipals()) {
+            if (allowedPrincipals.contains(principal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(Message message) {
+        MessageEvaluationContext evaluationContext = evaluationContexts.get();
+        try {
+            evaluationContext.setMessageReference(message);
+            return selector.matches(evaluationContext);
+        } catch (JMSException ex) {
+            return false;
+        } finally {
+            evaluationContext.clear();
+        }
+    }
+
+    /**
+     * Return the number of connections with a memoized decision
+     */
+    public int getDecisionCount() {
+        return decisions.size();
+    }
+
+    @Override
+    public Broker installPlugin(Broker broker) throws Exception {
+        return new BrokerFilter(broker) {
+            @Override
+            public void removeConnection(ConnectionContext context, ConnectionInfo info, Throwable error)
+                throws Exception {
+                try {
+                    super.removeConnection(context, info, error);
+                } finally {
+                    decisions.remove(context);
+                }
+            }
+        };
+    }
+
+    private static final class Decision {
+        private final SecurityContext securityContext;
+        private final boolean allowed;
+
+        Decision(SecurityContext securityContext, boolean allowed) {
+            this.securityContext = securityContext;
+            this.allowed = allowed;
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.activemq.security;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.security.auth.Subject;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.login.LoginException;
+import javax.security.auth.spi.LoginModule;
+
+import org.apache.activemq.jaas.PropertiesLoginModule;
+
+/**
+ * A LoginModule that delegates to the PropertiesLoginModule (with the same options), and counts the number of logins
+ * and the CPU time that they take, for AuthenticationCachePerformanceTest.
+ */
+public class TimedPropertiesLoginModule implements LoginModule {
+
+    private static final AtomicLong LOGINS = new AtomicLong();
+    private static final AtomicLong LOGIN_CPU_TIME = new AtomicLong();
+
+    private final LoginModule delegate = new PropertiesLoginModule();
+
+    @Override
+    public void initialize(Subject subject, CallbackHandler callbackHandler, Map<String, ?> sharedState,
+                           Map<String, ?> options) {
+        delegate.initialize(subject, callbackHandler, sharedState, options);
+    }
+
+    @Override
+    public boolean login() throws LoginException {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        long start = threadMXBean.getCurrentThreadCpuTime();
+        try {
+            return delegate.login();
+        } finally {
+            LOGINS.incrementAndGet();
+            LOGIN_CPU_TIME.addAndGet(threadMXBean.getCurrentThreadCpuTime() - start);
+        }
+    }
+
+    @Override
+    public boolean commit() throws LoginException {
+        return delegate.commit();
+    }
+
+    @Override
+    public boolean abort() throws LoginException {
+        return delegate.abort();
+    }
+
+    @Override
+    public boolean logout() throws LoginException {
+        return delegate.logout();
+    }
+
+    public static long getLogins() {
+        return LOGINS.get();
+    }
+
+    /**
+     * Return the CPU time of all of the logins so far, in nanoseconds
+     */
+    public static long getLoginCpuTime() {
+        return LOGIN_CPU_TIME.get();
+    }
+
+}
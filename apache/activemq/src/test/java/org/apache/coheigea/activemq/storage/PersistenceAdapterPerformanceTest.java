@@ -0,0 +1,244 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.activemq.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Destination;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.leveldb.LevelDBStore;
+import org.apache.activemq.store.PersistenceAdapter;
+import org.apache.activemq.store.kahadb.KahaDBStore;
+import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
+
+/**
+ * A load harness that compares the persistence adapters of the broker: KahaDB (with each journal disk sync
+ * strategy), LevelDB and the MemoryPersistenceAdapter. For each adapter, a number of producers and consumers (each
+ * with its own connection) send and receive messages of each size, in persistent and non-persistent mode. It reports
+ * the throughput, the end-to-end latency (from send to receive) and how much the data directory grew.
+ *
+ * It takes several minutes, so it only runs with -Dactivemq.benchmark=true. It is configured via system properties:
+ *
+ *  - activemq.benchmark.stores: The adapters to test, where "kahadb-<strategy>" is KahaDB with the given journal disk
+ *    sync strategy (default "memory,kahadb-always,kahadb-periodic,kahadb-never,leveldb")
+ *  - activemq.benchmark.producers / activemq.benchmark.consumers: The number of each (default 4)
+ *  - activemq.benchmark.messages: The number of messages per run (default 10000)
+ *  - activemq.benchmark.sizes: The message sizes in bytes (default "256,4096")
+ *  - activemq.benchmark.modes: The delivery modes (default "persistent,non-persistent")
+ *  - activemq.benchmark.kahadb.batch.size: The KahaDB journal max write batch size (default 4MB)
+ *  - activemq.benchmark.kahadb.index.batch.size: The KahaDB index write batch size (default 1000)
+ */
+public class PersistenceAdapterPerformanceTest {
+
+    private static final String SEND_TIME = "sendTime";
+
+    private static final String[] STORES =
+        System.getProperty("activemq.benchmark.stores",
+                           "memory,kahadb-always,kahadb-periodic,kahadb-never,leveldb").split(",");
+    private static final int PRODUCERS = Integer.getInteger("activemq.benchmark.producers", 4);
+    private static final int CONSUMERS = Integer.getInteger("activemq.benchmark.consumers", 4);
+    private static final int MESSAGES = Integer.getInteger("activemq.benchmark.messages", 10000);
+    private static final String[] SIZES = System.getProperty("activemq.benchmark.sizes", "256,4096").split(",");
+    private static final String[] MODES =
+        System.getProperty("activemq.benchmark.modes", "persistent,non-persistent").split(",");
+    private static final int KAHADB_BATCH_SIZE =
+        Integer.getInteger("activemq.benchmark.kahadb.batch.size", 4 * 1024 * 1024);
+    private static final int KAHADB_INDEX_BATCH_SIZE =
+        Integer.getInteger("activemq.benchmark.kahadb.index.batch.size", 1000);
+
+    @org.junit.Test
+    public void testPersistenceAdapters() throws Exception {
+        Assume.assumeTrue("Set -Dactivemq.benchmark=true to run the benchmark",
+                          Boolean.getBoolean("activemq.benchmark"));
+
+        System.out.println(String.format("Testing persistence adapters with %d producers, %d consumers and %d messages",
+                                         PRODUCERS, CONSUMERS, MESSAGES));
+        System.out.println(String.format("%-16s %-15s %8s %12s %10s %10s %12s", "store", "mode", "size",
+                                         "msgs/sec", "p50 (ms)", "p99 (ms)", "disk (KB)"));
+
+        for (String store : STORES) {
+            File dataDir = new File("target/activemq-benchmark/" + store.trim());
+            FileUtils.deleteQuietly(dataDir);
+            dataDir.mkdirs();
+
+            BrokerService broker = new BrokerService();
+            broker.setUseJmx(false);
+            broker.setDataDirectoryFile(dataDir);
+            broker.setPersistenceAdapter(createPersistenceAdapter(store.trim(), dataDir));
+
+            ServerSocket serverSocket = new ServerSocket(0);
+            int brokerPort = serverSocket.getLocalPort();
+            serverSocket.close();
+
+            String brokerAddress = "tcp://localhost:" + brokerPort;
+            broker.addConnector(brokerAddress);
+            broker.start();
+            try {
+                for (String mode : MODES) {
+                    for (String size : SIZES) {
+                        run(brokerAddress, store.trim(), mode.trim(), Integer.parseInt(size.trim()), dataDir);
+                    }
+                }
+            } finally {
+                broker.stop();
+                broker.waitUntilStopped();
+            }
+        }
+    }
+
+    private static PersistenceAdapter createPersistenceAdapter(String store, File dataDir) {
+        if ("memory".equals(store)) {
+            return new MemoryPersistenceAdapter();
+        } else if ("leveldb".equals(store)) {
+            LevelDBStore leveldb = new LevelDBStore();
+            leveldb.setDirectory(new File(dataDir, "leveldb"));
+            return leveldb;
+        } else if (store.startsWith("kahadb-")) {
+            KahaDBStore kaha = new KahaDBStore();
+            kaha.setDirectory(new File(dataDir, "kahadb"));
+            // "always", "periodic" or "never"
+            kaha.setJournalDiskSyncStrategy(store.substring("kahadb-".length()));
+            kaha.setJournalMaxWriteBatchSize(KAHADB_BATCH_SIZE);
+            kaha.setIndexWriteBatchSize(KAHADB_INDEX_BATCH_SIZE);
+            return kaha;
+        }
+        throw new IllegalArgumentException("Unknown store: " + store);
+    }
+
+    private static void run(String brokerAddress, String store, String mode, int size, File dataDir)
+        throws Exception {
+        final ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(brokerAddress);
+        final String queueName = "benchmark." + mode + "." + size;
+        final int deliveryMode = "persistent".equals(mode) ? DeliveryMode.PERSISTENT : DeliveryMode.NON_PERSISTENT;
+        final byte[] payload = new byte[size];
+        Arrays.fill(payload, (byte)'x');
+        final AtomicInteger remaining = new AtomicInteger(MESSAGES);
+        long diskBefore = FileUtils.sizeOfDirectory(dataDir);
+
+        List<Callable<long[]>> tasks = new ArrayList<>();
+        for (int c = 0; c < CONSUMERS; c++) {
+            tasks.add(new Callable<long[]>() {
+                public long[] call() throws Exception {
+                    return consume(factory, queueName, remaining);
+                }
+            });
+        }
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int count = MESSAGES / PRODUCERS + (p < MESSAGES % PRODUCERS ? 1 : 0);
+            tasks.add(new Callable<long[]>() {
+                public long[] call() throws Exception {
+                    produce(factory, queueName, deliveryMode, payload, count);
+                    return new long[0];
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        long[] latencies = new long[MESSAGES];
+        int received = 0;
+        long start = System.nanoTime();
+        try {
+            for (Future<long[]> future : executor.invokeAll(tasks)) {
+                long[] consumerLatencies = future.get();
+                System.arraycopy(consumerLatencies, 0, latencies, received, consumerLatencies.length);
+                received += consumerLatencies.length;
+            }
+        } finally {
+            executor.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1000000000.0;
+        assertEquals(MESSAGES, received);
+
+        Arrays.sort(latencies);
+        System.out.println(String.format("%-16s %-15s %8d %12.0f %10.2f %10.2f %12d", store, mode, size,
+                                         MESSAGES / seconds, latencies[MESSAGES / 2] / 1000000.0,
+                                         latencies[(int)Math.ceil(MESSAGES * 0.99) - 1] / 1000000.0,
+                                         (FileUtils.sizeOfDirectory(dataDir) - diskBefore) / 1024));
+    }
+
+    private static void produce(ActiveMQConnectionFactory factory, String queueName, int deliveryMode,
+                                byte[] payload, int count) throws Exception {
+        Connection connection = factory.createConnection();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Destination queue = session.createQueue(queueName);
+            MessageProducer producer = session.createProducer(queue);
+            producer.setDeliveryMode(deliveryMode);
+
+            for (int i = 0; i < count; i++) {
+                BytesMessage message = session.createBytesMessage();
+                message.writeBytes(payload);
+                message.setLongProperty(SEND_TIME, System.nanoTime());
+                producer.send(message);
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Receive messages until all of them have been received (by any consumer), returning the latency of each
+     */
+    private static long[] consume(ActiveMQConnectionFactory factory, String queueName, AtomicInteger remaining)
+        throws Exception {
+        long[] latencies = new long[MESSAGES];
+        int received = 0;
+        Connection connection = factory.createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Destination queue = session.createQueue(queueName);
+            MessageConsumer consumer = session.createConsumer(queue);
+
+            while (remaining.get() > 0) {
+                Message message = consumer.receive(100L);
+                if (message != null) {
+                    latencies[received++] = System.nanoTime() - message.getLongProperty(SEND_TIME);
+                    remaining.decrementAndGet();
+                }
+            }
+        } finally {
+            connection.close();
+        }
+        return Arrays.copyOf(latencies, received);
+    }
+
+}
@@ -32,34 +32,29 @@ import org.apache.hadoop.hbase.client.Admin.MasterSwitchType;
 import org.apache.hadoop.hbase.coprocessor.MasterCoprocessorEnvironment;
 import org.apache.hadoop.hbase.coprocessor.MasterObserver;
 import org.apache.hadoop.hbase.coprocessor.ObserverContext;
-import org.apache.hadoop.hbase.ipc.RpcServer;
 import org.apache.hadoop.hbase.master.RegionPlan;
 import org.apache.hadoop.hbase.master.procedure.MasterProcedureEnv;
 import org.apache.hadoop.hbase.procedure2.ProcedureExecutor;
 import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos.SnapshotDescription;
 import org.apache.hadoop.hbase.protobuf.generated.QuotaProtos.Quotas;
-import org.apache.hadoop.hbase.security.AccessDeniedException;
-import org.apache.hadoop.hbase.security.User;
 
 /**
- * A custom HBase MasterObserver which allows the process owner access, but no other user.
+ * A custom HBase MasterObserver which allows the process owner access, but no other user. The decisions are made by
+ * the ObserverDecisionEngine, so that the request user is only resolved once for all of the hooks that are called for
+ * an RPC (e.g. preCreateTable and postCreateTable when creating a table).
  */
 public class CustomMasterObserver implements MasterObserver {
     
-    private void authorizeUser() throws IOException {
-        User user = RpcServer.getRequestUser();
-        if (user == null) {
-            user = User.getCurrent();
-        }
-        String loggedInUser = System.getProperty("user.name");
-        if (user.getShortName() == null || !user.getShortName().startsWith(loggedInUser)) {
-            throw new AccessDeniedException("Access is denied for: " + user.getShortName());
-        }
+    private ObserverDecisionEngine engine;
+
+    private void authorizeUser(String hook) throws IOException {
+        engine.authorize(hook);
     }
 
     @Override
     public void start(CoprocessorEnvironment arg0) throws IOException {
         // Allow anyone to start to make the test setup easier
+        engine = ObserverDecisionEngine.getInstance("master", arg0.getConfiguration());
     }
 
     @Override
@@ -69,7 +64,7 @@ public class CustomMasterObserver implements MasterObserver {
 
     @Override
     public void postAbortProcedure(ObserverContext<MasterCoprocessorEnvironment> arg0) throws IOException {
-        authorizeUser();
+        authorizeUser("postAbortProcedure");
         
     }
 
@@ -77,7 +72,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postAddColumn(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                               HColumnDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postAddColumn");
         
     }
 
@@ -85,21 +80,21 @@ public class CustomMasterObserver implements MasterObserver {
     public void postAddColumnHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                      HColumnDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postAddColumnHandler");
         
     }
 
     @Override
     public void postAssign(ObserverContext<MasterCoprocessorEnvironment> arg0, HRegionInfo arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postAssign");
         
     }
 
     @Override
     public void postBalance(ObserverContext<MasterCoprocessorEnvironment> arg0, List<RegionPlan> arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postBalance");
         
     }
 
@@ -107,7 +102,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postBalanceSwitch(ObserverContext<MasterCoprocessorEnvironment> arg0, boolean arg1,
                                   boolean arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postBalanceSwitch");
         
     }
 
@@ -115,7 +110,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postCloneSnapshot(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                   SnapshotDescription arg1, HTableDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postCloneSnapshot");
         
     }
 
@@ -123,7 +118,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postCreateNamespace(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                     NamespaceDescriptor arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postCreateNamespace");
         
     }
 
@@ -131,7 +126,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postCreateTable(ObserverContext<MasterCoprocessorEnvironment> arg0, HTableDescriptor arg1,
                                 HRegionInfo[] arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postCreateTable");
         
     }
 
@@ -139,7 +134,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postCreateTableHandler(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                        HTableDescriptor arg1, HRegionInfo[] arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postCreateTableHandler");
         
     }
 
@@ -147,7 +142,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postDeleteColumn(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                  byte[] arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postDeleteColumn");
         
     }
 
@@ -155,14 +150,14 @@ public class CustomMasterObserver implements MasterObserver {
     public void postDeleteColumnHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                         byte[] arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postDeleteColumnHandler");
         
     }
 
     @Override
     public void postDeleteNamespace(ObserverContext<MasterCoprocessorEnvironment> arg0, String arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postDeleteNamespace");
         
     }
 
@@ -170,77 +165,77 @@ public class CustomMasterObserver implements MasterObserver {
     public void postDeleteSnapshot(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                    SnapshotDescription arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postDeleteSnapshot");
         
     }
 
     @Override
     public void postDeleteTable(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postDeleteTable");
         
     }
 
     @Override
     public void postDeleteTableHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postDeleteTableHandler");
         
     }
 
     @Override
     public void postDisableTable(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postDisableTable");
         
     }
 
     @Override
     public void postDisableTableHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postDisableTableHandler");
         
     }
 
     public void postDispatchMerge(ObserverContext<MasterCoprocessorEnvironment> arg0, HRegionInfo arg1,
                                   HRegionInfo arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postDispatchMerge");
 
     }
 
      public void postSetSplitOrMergeEnabled(ObserverContext<MasterCoprocessorEnvironment> arg0, boolean arg1,
                                            MasterSwitchType arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postSetSplitOrMergeEnabled");
 
     }
 
     public void preDispatchMerge(ObserverContext<MasterCoprocessorEnvironment> arg0, HRegionInfo arg1,
                                  HRegionInfo arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preDispatchMerge");
 
     }
 
      public boolean preSetSplitOrMergeEnabled(ObserverContext<MasterCoprocessorEnvironment> arg0, boolean arg1,
                                              MasterSwitchType arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preSetSplitOrMergeEnabled");
         return false;
     }
 
     @Override
     public void postEnableTable(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postEnableTable");
         
     }
 
     @Override
     public void postEnableTableHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postEnableTableHandler");
         
     }
 
@@ -248,7 +243,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postGetNamespaceDescriptor(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                            NamespaceDescriptor arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postGetNamespaceDescriptor");
         
     }
 
@@ -256,7 +251,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postGetTableDescriptors(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                         List<HTableDescriptor> arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postGetTableDescriptors");
         
     }
 
@@ -264,7 +259,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postGetTableDescriptors(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                         List<TableName> arg1, List<HTableDescriptor> arg2, String arg3)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postGetTableDescriptors");
         
     }
 
@@ -272,7 +267,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postGetTableNames(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                   List<HTableDescriptor> arg1, String arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postGetTableNames");
         
     }
 
@@ -280,7 +275,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postListNamespaceDescriptors(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                              List<NamespaceDescriptor> arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postListNamespaceDescriptors");
         
     }
 
@@ -288,14 +283,14 @@ public class CustomMasterObserver implements MasterObserver {
     public void postListProcedures(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                    List<ProcedureInfo> arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postListProcedures");
         
     }
 
     @Override
     public void postListSnapshot(ObserverContext<MasterCoprocessorEnvironment> arg0, SnapshotDescription arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postListSnapshot");
         
     }
 
@@ -303,7 +298,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postModifyColumn(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                  HColumnDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postModifyColumn");
         
     }
 
@@ -311,7 +306,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postModifyColumnHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                         HColumnDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postModifyColumnHandler");
         
     }
 
@@ -319,7 +314,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postModifyNamespace(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                     NamespaceDescriptor arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postModifyNamespace");
         
     }
 
@@ -327,7 +322,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postModifyTable(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                 HTableDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postModifyTable");
         
     }
 
@@ -335,7 +330,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postModifyTableHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                        HTableDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postModifyTableHandler");
         
     }
 
@@ -343,14 +338,14 @@ public class CustomMasterObserver implements MasterObserver {
     public void postMove(ObserverContext<MasterCoprocessorEnvironment> arg0, HRegionInfo arg1,
                          ServerName arg2, ServerName arg3)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postMove");
         
     }
 
     @Override
     public void postRegionOffline(ObserverContext<MasterCoprocessorEnvironment> arg0, HRegionInfo arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postRegionOffline");
         
     }
 
@@ -358,7 +353,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postRestoreSnapshot(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                     SnapshotDescription arg1, HTableDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postRestoreSnapshot");
         
     }
 
@@ -366,7 +361,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postSetNamespaceQuota(ObserverContext<MasterCoprocessorEnvironment> arg0, String arg1,
                                       Quotas arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postSetNamespaceQuota");
         
     }
 
@@ -374,14 +369,14 @@ public class CustomMasterObserver implements MasterObserver {
     public void postSetTableQuota(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                   Quotas arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postSetTableQuota");
         
     }
 
     @Override
     public void postSetUserQuota(ObserverContext<MasterCoprocessorEnvironment> arg0, String arg1, Quotas arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postSetUserQuota");
         
     }
 
@@ -389,7 +384,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postSetUserQuota(ObserverContext<MasterCoprocessorEnvironment> arg0, String arg1,
                                  TableName arg2, Quotas arg3)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postSetUserQuota");
         
     }
 
@@ -397,7 +392,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postSetUserQuota(ObserverContext<MasterCoprocessorEnvironment> arg0, String arg1, String arg2,
                                  Quotas arg3)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postSetUserQuota");
         
     }
 
@@ -405,34 +400,34 @@ public class CustomMasterObserver implements MasterObserver {
     public void postSnapshot(ObserverContext<MasterCoprocessorEnvironment> arg0, SnapshotDescription arg1,
                              HTableDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postSnapshot");
         
     }
 
     @Override
     public void postStartMaster(ObserverContext<MasterCoprocessorEnvironment> arg0) throws IOException {
-        authorizeUser();
+        authorizeUser("postStartMaster");
         
     }
 
     @Override
     public void postTableFlush(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postTableFlush");
         
     }
 
     @Override
     public void postTruncateTable(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postTruncateTable");
         
     }
 
     @Override
     public void postTruncateTableHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postTruncateTableHandler");
         
     }
 
@@ -440,7 +435,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void postUnassign(ObserverContext<MasterCoprocessorEnvironment> arg0, HRegionInfo arg1,
                              boolean arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postUnassign");
         
     }
 
@@ -448,7 +443,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preAbortProcedure(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                   ProcedureExecutor<MasterProcedureEnv> arg1, long arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preAbortProcedure");
         
     }
 
@@ -456,7 +451,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preAddColumn(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                              HColumnDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preAddColumn");
         
     }
 
@@ -464,27 +459,27 @@ public class CustomMasterObserver implements MasterObserver {
     public void preAddColumnHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                     HColumnDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preAddColumnHandler");
         
     }
 
     @Override
     public void preAssign(ObserverContext<MasterCoprocessorEnvironment> arg0, HRegionInfo arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preAssign");
         
     }
 
     @Override
     public void preBalance(ObserverContext<MasterCoprocessorEnvironment> arg0) throws IOException {
-        authorizeUser();
+        authorizeUser("preBalance");
         
     }
 
     @Override
     public boolean preBalanceSwitch(ObserverContext<MasterCoprocessorEnvironment> arg0, boolean arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preBalanceSwitch");
         return false;
     }
 
@@ -492,7 +487,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preCloneSnapshot(ObserverContext<MasterCoprocessorEnvironment> arg0, SnapshotDescription arg1,
                                  HTableDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preCloneSnapshot");
         
     }
 
@@ -500,7 +495,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preCreateNamespace(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                    NamespaceDescriptor arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preCreateNamespace");
         
     }
 
@@ -508,7 +503,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preCreateTable(ObserverContext<MasterCoprocessorEnvironment> arg0, HTableDescriptor arg1,
                                HRegionInfo[] arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preCreateTable");
         
     }
 
@@ -516,7 +511,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preCreateTableHandler(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                       HTableDescriptor arg1, HRegionInfo[] arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preCreateTableHandler");
         
     }
 
@@ -524,7 +519,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preDeleteColumn(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                 byte[] arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preDeleteColumn");
         
     }
 
@@ -532,14 +527,14 @@ public class CustomMasterObserver implements MasterObserver {
     public void preDeleteColumnHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                        byte[] arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preDeleteColumnHandler");
         
     }
 
     @Override
     public void preDeleteNamespace(ObserverContext<MasterCoprocessorEnvironment> arg0, String arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preDeleteNamespace");
         
     }
 
@@ -547,56 +542,56 @@ public class CustomMasterObserver implements MasterObserver {
     public void preDeleteSnapshot(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                   SnapshotDescription arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preDeleteSnapshot");
         
     }
 
     @Override
     public void preDeleteTable(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preDeleteTable");
         
     }
 
     @Override
     public void preDeleteTableHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preDeleteTableHandler");
         
     }
 
     @Override
     public void preDisableTable(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preDisableTable");
         
     }
 
     @Override
     public void preDisableTableHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preDisableTableHandler");
         
     }
 
     @Override
     public void preEnableTable(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preEnableTable");
         
     }
 
     @Override
     public void preEnableTableHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preEnableTableHandler");
         
     }
 
     @Override
     public void preGetNamespaceDescriptor(ObserverContext<MasterCoprocessorEnvironment> arg0, String arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preGetNamespaceDescriptor");
         
     }
 
@@ -604,7 +599,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preGetTableDescriptors(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                        List<TableName> arg1, List<HTableDescriptor> arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preGetTableDescriptors");
         
     }
 
@@ -612,7 +607,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preGetTableDescriptors(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                        List<TableName> arg1, List<HTableDescriptor> arg2, String arg3)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preGetTableDescriptors");
         
     }
 
@@ -620,7 +615,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preGetTableNames(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                  List<HTableDescriptor> arg1, String arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preGetTableNames");
         
     }
 
@@ -628,27 +623,27 @@ public class CustomMasterObserver implements MasterObserver {
     public void preListNamespaceDescriptors(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                             List<NamespaceDescriptor> arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preListNamespaceDescriptors");
         
     }
 
     @Override
     public void preListProcedures(ObserverContext<MasterCoprocessorEnvironment> arg0) throws IOException {
-        authorizeUser();
+        authorizeUser("preListProcedures");
         
     }
 
     @Override
     public void preListSnapshot(ObserverContext<MasterCoprocessorEnvironment> arg0, SnapshotDescription arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preListSnapshot");
         
     }
 
     @Override
     public void preMasterInitialization(ObserverContext<MasterCoprocessorEnvironment> arg0)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preMasterInitialization");
         
     }
 
@@ -656,7 +651,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preModifyColumn(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                 HColumnDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preModifyColumn");
         
     }
 
@@ -664,7 +659,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preModifyColumnHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                        HColumnDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preModifyColumnHandler");
         
     }
 
@@ -672,7 +667,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preModifyNamespace(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                    NamespaceDescriptor arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preModifyNamespace");
         
     }
 
@@ -680,7 +675,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preModifyTable(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                HTableDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preModifyTable");
         
     }
 
@@ -688,7 +683,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preModifyTableHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                       HTableDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preModifyTableHandler");
         
     }
 
@@ -696,14 +691,14 @@ public class CustomMasterObserver implements MasterObserver {
     public void preMove(ObserverContext<MasterCoprocessorEnvironment> arg0, HRegionInfo arg1, ServerName arg2,
                         ServerName arg3)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preMove");
         
     }
 
     @Override
     public void preRegionOffline(ObserverContext<MasterCoprocessorEnvironment> arg0, HRegionInfo arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preRegionOffline");
         
     }
 
@@ -711,7 +706,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preRestoreSnapshot(ObserverContext<MasterCoprocessorEnvironment> arg0,
                                    SnapshotDescription arg1, HTableDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preRestoreSnapshot");
         
     }
 
@@ -719,7 +714,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preSetNamespaceQuota(ObserverContext<MasterCoprocessorEnvironment> arg0, String arg1,
                                      Quotas arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preSetNamespaceQuota");
         
     }
 
@@ -727,14 +722,14 @@ public class CustomMasterObserver implements MasterObserver {
     public void preSetTableQuota(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1,
                                  Quotas arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preSetTableQuota");
         
     }
 
     @Override
     public void preSetUserQuota(ObserverContext<MasterCoprocessorEnvironment> arg0, String arg1, Quotas arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preSetUserQuota");
         
     }
 
@@ -742,7 +737,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preSetUserQuota(ObserverContext<MasterCoprocessorEnvironment> arg0, String arg1,
                                 TableName arg2, Quotas arg3)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preSetUserQuota");
         
     }
 
@@ -750,13 +745,13 @@ public class CustomMasterObserver implements MasterObserver {
     public void preSetUserQuota(ObserverContext<MasterCoprocessorEnvironment> arg0, String arg1, String arg2,
                                 Quotas arg3)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preSetUserQuota");
         
     }
 
     @Override
     public void preShutdown(ObserverContext<MasterCoprocessorEnvironment> arg0) throws IOException {
-        authorizeUser();
+        authorizeUser("preShutdown");
         
     }
 
@@ -764,34 +759,34 @@ public class CustomMasterObserver implements MasterObserver {
     public void preSnapshot(ObserverContext<MasterCoprocessorEnvironment> arg0, SnapshotDescription arg1,
                             HTableDescriptor arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preSnapshot");
         
     }
 
     @Override
     public void preStopMaster(ObserverContext<MasterCoprocessorEnvironment> arg0) throws IOException {
-        authorizeUser();
+        authorizeUser("preStopMaster");
         
     }
 
     @Override
     public void preTableFlush(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preTableFlush");
         
     }
 
     @Override
     public void preTruncateTable(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preTruncateTable");
         
     }
 
     @Override
     public void preTruncateTableHandler(ObserverContext<MasterCoprocessorEnvironment> arg0, TableName arg1)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preTruncateTableHandler");
         
     }
 
@@ -799,7 +794,7 @@ public class CustomMasterObserver implements MasterObserver {
     public void preUnassign(ObserverContext<MasterCoprocessorEnvironment> arg0, HRegionInfo arg1,
                             boolean arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preUnassign");
         
     }
 }
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.util.List;
 
 import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CoprocessorEnvironment;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Durability;
 import org.apache.hadoop.hbase.client.Get;
@@ -28,38 +29,45 @@ import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.coprocessor.BaseRegionObserver;
 import org.apache.hadoop.hbase.coprocessor.ObserverContext;
 import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
-import org.apache.hadoop.hbase.ipc.RpcServer;
 import org.apache.hadoop.hbase.regionserver.wal.WALEdit;
-import org.apache.hadoop.hbase.security.AccessDeniedException;
-import org.apache.hadoop.hbase.security.User;
 
 /**
  * A custom HBase RegionObserver which allows the process owner access for a limited number of operations, but no other user.
+ *
+ * The decisions are made by the ObserverDecisionEngine, which resolves the request user once per RPC and compiles the
+ * rules into a lookup table per hook, so no System properties or configuration are read on the write path. The engine
+ * can be configured via the coprocessor configuration:
+ *
+ * - custom.authorization.allowed.user: the user to allow (default the process owner). Each distinct allowed user and
+ *   set of rules has its own engine, so tables with a different policy never share decisions.
+ * - custom.authorization.rules: the ObserverDecisionEngine rules (default "*:owner")
  */
 public class CustomRegionObserver extends BaseRegionObserver {
-    
-    private void authorizeUser() throws IOException {
-        User user = RpcServer.getRequestUser();
-        if (user == null) {
-            user = User.getCurrent();
-        }
-        String loggedInUser = System.getProperty("user.name");
-        if (user.getShortName() == null || !user.getShortName().startsWith(loggedInUser)) {
-            throw new AccessDeniedException("Access is denied for: " + user.getShortName());
-        }
+
+    public static final String ALLOWED_USER = ObserverDecisionEngine.ALLOWED_USER;
+
+    private ObserverDecisionEngine engine;
+
+    @Override
+    public void start(CoprocessorEnvironment env) throws IOException {
+        engine = ObserverDecisionEngine.getInstance("region", env.getConfiguration());
+    }
+
+    private void authorizeUser(String hook) throws IOException {
+        engine.authorize(hook);
     }
 
     @Override
     public void postDelete(ObserverContext<RegionCoprocessorEnvironment> arg0, Delete arg1, WALEdit arg2,
                            Durability arg3)
         throws IOException {
-        authorizeUser();
+        authorizeUser("postDelete");
     }
 
     @Override
     public void preGetOp(ObserverContext<RegionCoprocessorEnvironment> arg0, Get arg1, List<Cell> arg2)
         throws IOException {
-        authorizeUser();
+        authorizeUser("preGetOp");
         
     }
 
@@ -67,8 +75,7 @@ public class CustomRegionObserver extends BaseRegionObserver {
     public void prePut(ObserverContext<RegionCoprocessorEnvironment> arg0, Put arg1, WALEdit arg2,
                        Durability arg3)
         throws IOException {
-        authorizeUser();
+        authorizeUser("prePut");
         
     }
 }
-
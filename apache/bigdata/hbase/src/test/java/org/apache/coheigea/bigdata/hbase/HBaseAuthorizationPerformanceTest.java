@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.hbase;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Coprocessor;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.Assert;
+
+/**
+ * Measures the puts and gets per second against a mini-cluster with and without the CustomRegionObserver. The
+ * CustomRegionObserver is loaded as a table coprocessor on one table, and not on the other, so that the cost of the
+ * authorization check on the write path is measured against the same cluster.
+ *
+ * The number of operations per thread can be set via the "hbase.benchmark.operations" system property (the default is
+ * 5000), and the number of client threads via "hbase.benchmark.threads" (the default is 4).
+ *
+ * It also measures a DDL-heavy workload (creating tables and adding column families) with the CustomMasterObserver,
+ * and prints the per-hook counters of the ObserverDecisionEngine from JMX. The number of tables can be set via the
+ * "hbase.benchmark.tables" system property (the default is 20).
+ */
+public class HBaseAuthorizationPerformanceTest {
+
+    private static final int OPERATIONS = Integer.getInteger("hbase.benchmark.operations", 5000);
+    private static final int THREADS = Integer.getInteger("hbase.benchmark.threads", 4);
+    private static final int TABLES = Integer.getInteger("hbase.benchmark.tables", 20);
+    private static final byte[] FAMILY = Bytes.toBytes("colfam1");
+    private static final byte[] QUALIFIER = Bytes.toBytes("col1");
+
+    private static int port;
+    private static HBaseTestingUtility utility;
+
+    @org.junit.BeforeClass
+    public static void setup() throws Exception {
+        port = getFreePort();
+
+        utility = new HBaseTestingUtility();
+        utility.getConfiguration().set("test.hbase.zookeeper.property.clientPort", "" + port);
+        utility.getConfiguration().set("hbase.master.port", "" + getFreePort());
+        utility.getConfiguration().set("hbase.master.info.port", "" + getFreePort());
+        utility.getConfiguration().set("hbase.regionserver.port", "" + getFreePort());
+        utility.getConfiguration().set("hbase.regionserver.info.port", "" + getFreePort());
+        utility.getConfiguration().set("zookeeper.znode.parent", "/hbase-unsecure");
+        utility.getConfiguration().set("hbase.security.authorization", "true");
+        utility.getConfiguration().set("hbase.coprocessor.master.classes", CustomMasterObserver.class.getName());
+
+        utility.startMiniCluster();
+
+        Connection conn = ConnectionFactory.createConnection(getConfiguration());
+        Admin admin = conn.getAdmin();
+        createTable(admin, "observer", true);
+        createTable(admin, "plain", false);
+        conn.close();
+    }
+
+    @org.junit.AfterClass
+    public static void cleanup() throws Exception {
+        utility.shutdownMiniCluster();
+    }
+
+    @org.junit.Test
+    public void testPutGetPerformance() throws Exception {
+        System.out.println("Testing Put/Get Performance with " + THREADS + " threads and " + OPERATIONS
+            + " operations per thread");
+
+        // Warm up both tables first
+        runPuts("plain", OPERATIONS / 10);
+        runPuts("observer", OPERATIONS / 10);
+
+        for (String table : new String[] {"plain", "observer"}) {
+            double putsPerSecond = runPuts(table, OPERATIONS);
+            double getsPerSecond = runGets(table, OPERATIONS);
+            System.out.println(String.format("%-10s %10.0f puts/sec %10.0f gets/sec", table, putsPerSecond, getsPerSecond));
+        }
+    }
+
+    @org.junit.Test
+    public void testDenial() throws Exception {
+        String user = "bob";
+        if ("bob".equals(System.getProperty("user.name"))) {
+            user = "alice";
+        }
+        UserGroupInformation ugi = UserGroupInformation.createUserForTesting(user, new String[] {"IT"});
+        ugi.doAs(new PrivilegedExceptionAction<Void>() {
+            public Void run() throws Exception {
+                Connection conn = ConnectionFactory.createConnection(getConfiguration());
+                Table table = conn.getTable(TableName.valueOf("observer"));
+
+                // The second attempt is a new RPC, and so is denied again
+                for (int i = 0; i < 2; i++) {
+                    try {
+                        table.get(new Get(Bytes.toBytes("row0")));
+                        Assert.fail("Failure expected on an unauthorized user");
+                    } catch (IOException ex) {
+                        // expected
+                    }
+                }
+
+                conn.close();
+                return null;
+            }
+        });
+    }
+
+    @org.junit.Test
+    public void testTableCreationPerformance() throws Exception {
+        Connection conn = ConnectionFactory.createConnection(getConfiguration());
+        Admin admin = conn.getAdmin();
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < TABLES; i++) {
+                TableName tableName = TableName.valueOf("ddl" + i);
+                HTableDescriptor tableDescriptor = new HTableDescriptor(tableName);
+                tableDescriptor.addFamily(new HColumnDescriptor(FAMILY));
+                admin.createTable(tableDescriptor);
+                admin.addColumn(tableName, new HColumnDescriptor("colfam2"));
+            }
+            double elapsed = (System.nanoTime() - start) / 1000000000.0;
+            System.out.println(String.format("Created %d tables (with an extra column family) in %.3f seconds",
+                                             TABLES, elapsed));
+        } finally {
+            conn.close();
+        }
+
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName query =
+            new ObjectName("org.apache.coheigea.bigdata.hbase:type=ObserverDecisionEngine,name=master,*");
+        Set<ObjectName> names = mbeanServer.queryNames(query, null);
+        Assert.assertFalse("The ObserverDecisionEngine MBean is not registered", names.isEmpty());
+        for (ObjectName name : names) {
+            Map<String, Long> counts = toMap(mbeanServer.getAttribute(name, "InvocationCounts"));
+            Map<String, Long> latencies = toMap(mbeanServer.getAttribute(name, "TotalLatencyNanos"));
+            long hookCalls = 0;
+            for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                hookCalls += entry.getValue();
+                System.out.println(String.format("%-30s %8d calls %10.3f us/call", entry.getKey(), entry.getValue(),
+                                                 latencies.get(entry.getKey()) / 1000.0 / entry.getValue()));
+            }
+            System.out.println(hookCalls + " hook calls, " + mbeanServer.getAttribute(name, "UserResolutions")
+                + " user resolutions");
+
+            Assert.assertTrue(counts.get("preCreateTable") >= TABLES);
+            Assert.assertTrue(counts.get("preAddColumn") >= TABLES);
+        }
+    }
+
+    private static Map<String, Long> toMap(Object tabularData) {
+        // MXBean maps are exposed as TabularData, with a "key" and a "value" for each row
+        Map<String, Long> map = new HashMap<>();
+        for (Object row : ((TabularData)tabularData).values()) {
+            CompositeData data = (CompositeData)row;
+            map.put((String)data.get("key"), (Long)data.get("value"));
+        }
+        return map;
+    }
+
+    private static double runPuts(final String tableName, final int operations) throws Exception {
+        return run(tableName, new TableOperation() {
+            public void run(Table table, int thread, int i) throws IOException {
+                Put put = new Put(Bytes.toBytes("row-" + thread + "-" + i));
+                put.addColumn(FAMILY, QUALIFIER, Bytes.toBytes("val" + i));
+                table.put(put);
+            }
+        }, operations);
+    }
+
+    private static double runGets(final String tableName, final int operations) throws Exception {
+        return run(tableName, new TableOperation() {
+            public void run(Table table, int thread, int i) throws IOException {
+                table.get(new Get(Bytes.toBytes("row-" + thread + "-" + i)));
+            }
+        }, operations);
+    }
+
+    private static double run(final String tableName, final TableOperation operation, final int operations)
+        throws Exception {
+        final Connection conn = ConnectionFactory.createConnection(getConfiguration());
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                tasks.add(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        // Table instances are not thread-safe, so each thread has its own
+                        try (Table table = conn.getTable(TableName.valueOf(tableName))) {
+                            for (int i = 0; i < operations; i++) {
+                                operation.run(table, thread, i);
+                            }
+                        }
+                        return null;
+                    }
+                });
+            }
+
+            long start = System.nanoTime();
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+            double elapsed = (System.nanoTime() - start) / 1000000000.0;
+            return THREADS * operations / elapsed;
+        } finally {
+            executor.shutdown();
+            conn.close();
+        }
+    }
+
+    private static void createTable(Admin admin, String name, boolean withObserver) throws IOException {
+        HTableDescriptor tableDescriptor = new HTableDescriptor(TableName.valueOf(name));
+        tableDescriptor.addFamily(new HColumnDescriptor(FAMILY));
+        if (withObserver) {
+            tableDescriptor.addCoprocessor(CustomRegionObserver.class.getName(), null, Coprocessor.PRIORITY_USER,
+                                           null);
+        }
+
+        admin.createTable(tableDescriptor);
+    }
+
+    private static Configuration getConfiguration() {
+        Configuration conf = HBaseConfiguration.create();
+        conf.set("hbase.zookeeper.quorum", "localhost");
+        conf.set("hbase.zookeeper.property.clientPort", "" + port);
+        conf.set("zookeeper.znode.parent", "/hbase-unsecure");
+        return conf;
+    }
+
+    private static int getFreePort() throws IOException {
+        ServerSocket serverSocket = new ServerSocket(0);
+        int port = serverSocket.getLocalPort();
+        serverSocket.close();
+        return port;
+    }
+
+    private interface TableOperation {
+        void run(Table table, int thread, int i) throws IOException;
+    }
+
+}
@@ -0,0 +1,314 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.hbase;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.ipc.RpcCallContext;
+import org.apache.hadoop.hbase.ipc.RpcServer;
+import org.apache.hadoop.hbase.security.AccessDeniedException;
+import org.apache.hadoop.hbase.security.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The authorization decisions for the CustomMasterObserver and the CustomRegionObserver.
+ *
+ * - The request user, and whether it is the allowed user, are resolved once per RPC, and reused by all of the hooks
+ *   that are called for the same RPC (e.g. preCreateTable and postCreateTable). Outside of an RPC (e.g. in a procedure
+ *   thread) the current user is resolved every time.
+ * - The rules are read from "custom.authorization.rules", as a comma separated list of "hook:action", where "hook" is a
+ *   hook name, a prefix ending in "*" or "*" for all hooks, and "action" is "allow", "owner" (only the allowed user, see
+ *   "custom.authorization.allowed.user") or "deny". The first matching rule applies. The default is "*:owner". The
+ *   rules are compiled into a lookup table from the hook name to the action the first time that a hook is seen.
+ * - The number of calls, the number of denials and the time spent making the decision are recorded per hook, and are
+ *   available via JMX under "org.apache.coheigea.bigdata.hbase:type=ObserverDecisionEngine".
+ *
+ * There is one engine per observer name and policy, which is shared by all of the observer instances in the JVM.
+ */
+public class ObserverDecisionEngine implements ObserverDecisionEngineMXBean {
+    private static final Logger LOG = LoggerFactory.getLogger(ObserverDecisionEngine.class);
+
+    public static final String RULES = "custom.authorization.rules";
+    public static final String ALLOWED_USER = "custom.authorization.allowed.user";
+
+    private static final String DEFAULT_RULES = "*:owner";
+    private static final ConcurrentMap<String, ObserverDecisionEngine> ENGINES = new ConcurrentHashMap<>();
+
+    private enum Action {
+        ALLOW, OWNER, DENY
+    }
+
+    private final String rules;
+    private final String allowedUser;
+    private final List<Rule> compiledRules;
+    private final ConcurrentMap<String, Hook> hooks = new ConcurrentHashMap<>();
+    private final AtomicLong userResolutions = new AtomicLong();
+    private final ThreadLocal<Caller> callers = new ThreadLocal<Caller>() {
+        @Override
+        protected Caller initialValue() {
+            return new Caller();
+        }
+    };
+
+    ObserverDecisionEngine(String rules, String allowedUser) {
+        this.rules = rules;
+        this.allowedUser = allowedUser;
+        this.compiledRules = parseRules(rules);
+    }
+
+    /**
+     * Return the (shared) engine for the given observer name and configuration
+     */
+    public static ObserverDecisionEngine getInstance(String observerName, Configuration conf) {
+        String rules = conf.get(RULES, DEFAULT_RULES);
+        String allowedUser = conf.get(ALLOWED_USER, System.getProperty("user.name"));
+        String key = observerName + "|" + allowedUser + "|" + rules;
+
+        ObserverDecisionEngine engine = ENGINES.get(key);
+        if (engine == null) {
+            engine = new ObserverDecisionEngine(rules, allowedUser);
+            ObserverDecisionEngine existing = ENGINES.putIfAbsent(key, engine);
+            if (existing != null) {
+                return existing;
+            }
+            engine.register(observerName);
+        }
+        return engine;
+    }
+
+    /**
+     * A description of the policy that this engine enforces, which changes if the rules or the allowed user change
+     */
+    public String getPolicy() {
+        return allowedUser + "|" + rules;
+    }
+
+    /**
+     * Check that the caller is allowed to call the given hook, and throw an AccessDeniedException if not
+     */
+    public void authorize(String hookName) throws IOException {
+        long start = System.nanoTime();
+        Hook hook = getHook(hookName);
+
+        boolean allowed;
+        String userName = null;
+        if (hook.action == Action.ALLOW) {
+            allowed = true;
+        } else {
+            Caller caller = resolveCaller();
+            userName = caller.userName;
+            allowed = hook.action == Action.OWNER && caller.owner;
+        }
+
+        hook.record(System.nanoTime() - start, allowed);
+        if (!allowed) {
+            throw new AccessDeniedException("Access is denied for: " + userName);
+        }
+    }
+
+    private Hook getHook(String hookName) {
+        Hook hook = hooks.get(hookName);
+        if (hook == null) {
+            Action action = Action.OWNER;
+            for (Rule rule : compiledRules) {
+                if (rule.matches(hookName)) {
+                    action = rule.action;
+                    break;
+                }
+            }
+            hook = new Hook(action);
+            Hook existing = hooks.putIfAbsent(hookName, hook);
+            if (existing != null) {
+                hook = existing;
+            }
+        }
+        return hook;
+    }
+
+    private Caller resolveCaller() throws IOException {
+        Caller caller = callers.get();
+        RpcCallContext call = RpcServer.getCurrentCall();
+        if (call != null && caller.call != null && caller.call.get() == call) {
+            return caller;
+        }
+
+        User user = RpcServer.getRequestUser();
+        if (user == null) {
+            user = User.getCurrent();
+        }
+        userResolutions.incrementAndGet();
+
+        // Only remember the RPC weakly, so that the request is not kept alive after it completes
+        caller.call = call == null ? null : new WeakReference<Object>(call);
+        caller.userName = user.getShortName();
+        caller.owner = caller.userName != null && caller.userName.startsWith(allowedUser);
+        return caller;
+    }
+
+    private void register(String observerName) {
+        try {
+            ObjectName name = new ObjectName("org.apache.coheigea.bigdata.hbase:type=ObserverDecisionEngine,name="
+                + observerName + ",policy=" + ObjectName.quote(getPolicy()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        } catch (InstanceAlreadyExistsException ex) {
+            LOG.debug("ObserverDecisionEngine: the MBean is already registered", ex);
+        } catch (JMException ex) {
+            LOG.warn("ObserverDecisionEngine: failed to register the MBean", ex);
+        }
+    }
+
+    private static List<Rule> parseRules(String rules) {
+        List<Rule> parsed = new ArrayList<>();
+        for (String rule : rules.split(",")) {
+            rule = rule.trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            int separator = rule.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid authorization rule: " + rule);
+            }
+            String pattern = rule.substring(0, separator).trim();
+            Action action = Action.valueOf(rule.substring(separator + 1).trim().toUpperCase());
+            parsed.add(new Rule(pattern, action));
+        }
+        return parsed;
+    }
+
+    @Override
+    public String getRules() {
+        return rules;
+    }
+
+    @Override
+    public Map<String, Long> getInvocationCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, Hook> entry : hooks.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().invocations.get());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getDeniedCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, Hook> entry : hooks.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().denied.get());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getTotalLatencyNanos() {
+        Map<String, Long> latencies = new TreeMap<>();
+        for (Map.Entry<String, Hook> entry : hooks.entrySet()) {
+            latencies.put(entry.getKey(), entry.getValue().totalNanos.get());
+        }
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Long> getMaxLatencyNanos() {
+        Map<String, Long> latencies = new TreeMap<>();
+        for (Map.Entry<String, Hook> entry : hooks.entrySet()) {
+            latencies.put(entry.getKey(), entry.getValue().maxNanos.get());
+        }
+        return latencies;
+    }
+
+    @Override
+    public long getUserResolutions() {
+        return userResolutions.get();
+    }
+
+    @Override
+    public void resetCounters() {
+        for (Hook hook : hooks.values()) {
+            hook.invocations.set(0);
+            hook.denied.set(0);
+            hook.totalNanos.set(0);
+            hook.maxNanos.set(0);
+        }
+        userResolutions.set(0);
+    }
+
+    private static final class Rule {
+        private final String prefix;
+        private final boolean wildcard;
+        private final Action action;
+
+        Rule(String pattern, Action action) {
+            this.wildcard = pattern.endsWith("*");
+            this.prefix = wildcard ? pattern.substring(0, pattern.length() - 1) : pattern;
+            this.action = action;
+        }
+
+        boolean matches(String hookName) {
+            return wildcard ? hookName.startsWith(prefix) : hookName.equals(prefix);
+        }
+    }
+
+    private static final class Hook {
+        private final Action action;
+        private final AtomicLong invocations = new AtomicLong();
+        private final AtomicLong denied = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        Hook(Action action) {
+            this.action = action;
+        }
+
+        void record(long nanos, boolean allowed) {
+            invocations.incrementAndGet();
+            if (!allowed) {
+                denied.incrementAndGet();
+            }
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+    }
+
+    /**
+     * The request user that was last resolved on a handler thread, and the RPC that it was resolved for
+     */
+    private static final class Caller {
+        private WeakReference<Object> call;
+        private String userName;
+        private boolean owner;
+    }
+
+}
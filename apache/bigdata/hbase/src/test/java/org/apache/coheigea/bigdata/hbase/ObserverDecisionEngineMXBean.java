@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.hbase;
+
+import java.util.Map;
+
+/**
+ * The JMX view of an ObserverDecisionEngine. The maps are keyed on the name of the observer hook.
+ */
+public interface ObserverDecisionEngineMXBean {
+
+    String getRules();
+
+    Map<String, Long> getInvocationCounts();
+
+    Map<String, Long> getDeniedCounts();
+
+    Map<String, Long> getTotalLatencyNanos();
+
+    Map<String, Long> getMaxLatencyNanos();
+
+    /**
+     * The number of times that the request user was resolved, as opposed to reused within the same RPC
+     */
+    long getUserResolutions();
+
+    void resetCounters();
+
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.hdfs;
+
+import java.io.File;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.Assert;
+import org.junit.Assume;
+
+/**
+ * Measures the overhead of the PathTrieAccessControlEnforcer on a metadata-heavy workload: listing every directory and
+ * opening every file (which only fetches the block locations from the NameNode, as the files are empty) as a
+ * non-superuser. It compares the default enforcer, the PathTrieAccessControlEnforcer without a decision cache and the
+ * PathTrieAccessControlEnforcer with a decision cache, by restarting the NameNode with a different configuration.
+ *
+ * The number of files can be set via the "hdfs.benchmark.files" system property (the default is 100000 - use 1000000
+ * for a full run), and the number of client threads via "hdfs.benchmark.threads" (the default is 8). The benchmark only
+ * runs with -Dhdfs.benchmark=true, while the path rules are always tested on a small set of files.
+ */
+public class HDFSAccessControlPerformanceTest {
+
+    private static final int FILES = Integer.getInteger("hdfs.benchmark.files", 100000);
+    private static final int THREADS = Integer.getInteger("hdfs.benchmark.threads", 8);
+    private static final int FILES_PER_DIR = 1000;
+
+    private static final File baseDir = new File("./target/hdfs-perf/").getAbsoluteFile();
+    private static MiniDFSCluster hdfsCluster;
+
+    @org.junit.BeforeClass
+    public static void setup() throws Exception {
+        Configuration conf = new Configuration();
+        conf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, baseDir.getAbsolutePath());
+        conf.set("dfs.namenode.inode.attributes.provider.class", PathTrieINodeAttributeProvider.class.getName());
+        conf.set(PathTrieINodeAttributeProvider.RULES, "/bench bob r-x; /bench/private alice rwx; "
+            + "/bench/shared bob rwx; /bench/shared/data/private alice rwx; /bench/tmp * rwx");
+        MiniDFSCluster.Builder builder = new MiniDFSCluster.Builder(conf);
+        hdfsCluster = builder.build();
+
+        // Create the files as the superuser, which is not subject to the AccessControlEnforcer
+        FileSystem fileSystem = hdfsCluster.getFileSystem();
+        fileSystem.mkdirs(new Path("/bench/private"));
+        fileSystem.create(new Path("/bench/shared/data/private/file")).close();
+        // A sticky directory, like /tmp
+        fileSystem.mkdirs(new Path("/bench/tmp"));
+        fileSystem.setPermission(new Path("/bench/tmp"), new FsPermission((short)01777));
+        fileSystem.create(new Path("/bench/tmp/alice-file")).close();
+        fileSystem.setOwner(new Path("/bench/tmp/alice-file"), "alice", null);
+        fileSystem.create(getPath(0)).close();
+    }
+
+    @org.junit.AfterClass
+    public static void cleanup() throws Exception {
+        FileUtil.fullyDelete(baseDir);
+        hdfsCluster.shutdown();
+    }
+
+    @org.junit.Test
+    public void testPathRules() throws Exception {
+        restartNameNode(true, 1000);
+
+        UserGroupInformation.createRemoteUser("bob").doAs(new PrivilegedExceptionAction<Void>() {
+            public Void run() throws Exception {
+                FileSystem fs = getFileSystem();
+                fs.open(getPath(0)).close();
+                fs.listStatus(new Path("/bench/dir0"));
+                try {
+                    fs.create(new Path("/bench/dir0/new-file")).close();
+                    Assert.fail("Failure expected on an incorrect permission");
+                } catch (AccessControlException ex) {
+                    // expected
+                }
+                try {
+                    fs.listStatus(new Path("/bench/private"));
+                    Assert.fail("Failure expected on an incorrect permission");
+                } catch (AccessControlException ex) {
+                    // expected
+                }
+
+                Path sharedFile = new Path("/bench/shared/new-file");
+                fs.create(sharedFile).close();
+                Assert.assertTrue(fs.delete(sharedFile, false));
+
+                // The rule on /bench/shared does not cover /bench/shared/data/private, so bob can't delete it
+                try {
+                    fs.delete(new Path("/bench/shared/data"), true);
+                    Assert.fail("Failure expected on an incorrect permission");
+                } catch (AccessControlException ex) {
+                    // expected
+                }
+
+                // The rule on /bench/tmp lets bob write to it, but the sticky bit stops bob deleting other users' files
+                Path tmpFile = new Path("/bench/tmp/bob-file");
+                fs.create(tmpFile).close();
+                Assert.assertTrue(fs.delete(tmpFile, false));
+                try {
+                    fs.delete(new Path("/bench/tmp/alice-file"), false);
+                    Assert.fail("Failure expected on the sticky bit");
+                } catch (AccessControlException ex) {
+                    // expected
+                }
+                fs.close();
+                return null;
+            }
+        });
+        Assert.assertTrue(hdfsCluster.getFileSystem().exists(new Path("/bench/shared/data/private/file")));
+        Assert.assertTrue(hdfsCluster.getFileSystem().exists(new Path("/bench/tmp/alice-file")));
+
+        UserGroupInformation.createRemoteUser("eve").doAs(new PrivilegedExceptionAction<Void>() {
+            public Void run() throws Exception {
+                FileSystem fs = getFileSystem();
+                try {
+                    fs.open(getPath(0));
+                    Assert.fail("Failure expected on an incorrect permission");
+                } catch (AccessControlException ex) {
+                    // expected
+                }
+                fs.close();
+                return null;
+            }
+        });
+    }
+
+    @org.junit.Test
+    public void testEnforcementOverhead() throws Exception {
+        Assume.assumeTrue("Set -Dhdfs.benchmark=true to run the benchmark", Boolean.getBoolean("hdfs.benchmark"));
+
+        // Create the files as the superuser, which is not subject to the AccessControlEnforcer
+        long start = System.nanoTime();
+        run(new FileOperation() {
+            public void run(FileSystem fs, int file) throws Exception {
+                fs.create(getPath(file), true).close();
+            }
+        }, hdfsCluster.getFileSystem());
+        System.out.println(String.format("Created %d files in %.1f seconds", FILES,
+                                         (System.nanoTime() - start) / 1000000000.0));
+
+        System.out.println("Testing list/open performance with " + FILES + " files and " + THREADS + " threads");
+
+        String[] names = {"default", "trie", "trie + cache"};
+        boolean[] enabled = {false, true, true};
+        int[] cacheSizes = {0, 0, FILES * 2};
+        for (int i = 0; i < names.length; i++) {
+            restartNameNode(enabled[i], cacheSizes[i]);
+            final String name = names[i];
+
+            UserGroupInformation.createRemoteUser("bob").doAs(new PrivilegedExceptionAction<Void>() {
+                public Void run() throws Exception {
+                    FileSystem fs = getFileSystem();
+                    // The first pass warms up the NameNode (and fills the cache)
+                    for (int pass = 0; pass < 2; pass++) {
+                        long start = System.nanoTime();
+                        for (int dir = 0; dir * FILES_PER_DIR < FILES; dir++) {
+                            FileStatus[] statuses = fs.listStatus(new Path("/bench/dir" + dir));
+                            Assert.assertTrue(statuses.length > 0);
+                        }
+                        double listSeconds = (System.nanoTime() - start) / 1000000000.0;
+
+                        start = System.nanoTime();
+                        run(new FileOperation() {
+                            public void run(FileSystem fs, int file) throws Exception {
+                                fs.open(getPath(file)).close();
+                            }
+                        }, fs);
+                        double openSeconds = (System.nanoTime() - start) / 1000000000.0;
+
+                        if (pass == 1) {
+                            System.out.println(String.format("%-14s %10.3f s to list %10.0f opens/sec",
+                                                             name, listSeconds, FILES / openSeconds));
+                        }
+                    }
+                    fs.close();
+                    return null;
+                }
+            });
+        }
+    }
+
+    private static void restartNameNode(boolean enabled, int cacheSize) throws Exception {
+        Configuration conf = hdfsCluster.getConfiguration(0);
+        conf.setBoolean(PathTrieINodeAttributeProvider.ENABLED, enabled);
+        conf.setInt(PathTrieINodeAttributeProvider.CACHE_SIZE, cacheSize);
+        hdfsCluster.restartNameNode(true);
+    }
+
+    private static FileSystem getFileSystem() throws Exception {
+        Configuration conf = new Configuration();
+        conf.set("fs.defaultFS", hdfsCluster.getConfiguration(0).get("fs.defaultFS"));
+        return FileSystem.get(conf);
+    }
+
+    private static Path getPath(int file) {
+        return new Path("/bench/dir" + (file / FILES_PER_DIR) + "/file" + file);
+    }
+
+    private static void run(final FileOperation operation, final FileSystem fs) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                tasks.add(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        for (int file = thread; file < FILES; file += THREADS) {
+                            operation.run(fs, file);
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private interface FileOperation {
+        void run(FileSystem fs, int file) throws Exception;
+    }
+
+}
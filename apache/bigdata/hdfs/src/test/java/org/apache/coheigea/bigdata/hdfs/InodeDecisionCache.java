@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.hdfs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.permission.FsAction;
+
+/**
+ * A bounded cache of the PathRuleTrie decisions, keyed on the user, the inode id and the action. It is split into
+ * segments, each with its own lock and LRU eviction, so that NameNode handlers only contend when they hit the same
+ * segment.
+ *
+ * A decision is keyed on the inode rather than the path, so a rename of the inode (or of one of its parents) is only
+ * seen after the decision expires. The TTL should be kept short for that reason. For the same reason, the decisions
+ * for a snapshot path must not be cached: /data/.snapshot/s1/private/f has the same inode id as /data/private/f, but is
+ * matched against a different rule (the PathTrieAccessControlEnforcer doesn't use the cache for them).
+ */
+public class InodeDecisionCache {
+
+    public static final byte MISS = -1;
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final long ttlNanos;
+
+    public InodeDecisionCache(int maxSize, long ttl, TimeUnit unit) {
+        if (maxSize <= 0 || ttl <= 0) {
+            throw new IllegalArgumentException("The size and TTL of the cache must be positive");
+        }
+        int segmentSize = (maxSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * Return the cached decision, or MISS if there is no (current) decision
+     */
+    public byte get(String user, long inodeId, FsAction action) {
+        Key key = new Key(user, inodeId, action);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Decision decision = segment.get(key);
+            if (decision == null || System.nanoTime() - decision.expiresAt > 0) {
+                segment.misses++;
+                return MISS;
+            }
+            segment.hits++;
+            return decision.decision;
+        }
+    }
+
+    public void put(String user, long inodeId, FsAction action, byte decision) {
+        Key key = new Key(user, inodeId, action);
+        Decision value = new Decision(decision, System.nanoTime() + ttlNanos);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    public long getHits() {
+        long hits = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+    public long getMisses() {
+        long misses = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENT_COUNT - 1)];
+    }
+
+    private static final class Segment extends LinkedHashMap<Key, Decision> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+        private long hits;
+        private long misses;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Decision> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private static final class Key {
+        private final String user;
+        private final long inodeId;
+        private final FsAction action;
+        private final int hash;
+
+        Key(String user, long inodeId, FsAction action) {
+            this.user = user;
+            this.inodeId = inodeId;
+            this.action = action;
+            this.hash = 31 * (31 * user.hashCode() + (int)(inodeId ^ (inodeId >>> 32))) + action.ordinal();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)obj;
+            return inodeId == other.inodeId && action == other.action && user.equals(other.user);
+        }
+    }
+
+    private static final class Decision {
+        private final byte decision;
+        private final long expiresAt;
+
+        Decision(byte decision, long expiresAt) {
+            this.decision = decision;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
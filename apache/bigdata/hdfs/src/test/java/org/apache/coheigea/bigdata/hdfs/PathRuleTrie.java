@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.hdfs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.security.UserGroupInformation;
+
+/**
+ * Path prefix rules, compiled into a trie that is keyed on the path components as byte arrays. This means that a path
+ * can be matched directly against the "pathByNameArr" that the NameNode passes to an AccessControlEnforcer, without
+ * building a String path.
+ *
+ * The rules are a semicolon separated list of "path principals actions", e.g. "/data bob,@analysts r-x; /data/tmp * rwx",
+ * where the principals are comma separated user names, group names prefixed with "@", or "*" for everyone, and the
+ * actions are the FsAction symbol. The rule on the longest matching prefix of a path applies to it (and so to
+ * everything below it, unless there is a more specific rule below it - see hasRulesBelow).
+ */
+public class PathRuleTrie {
+
+    public static final byte NO_RULE = 0;
+    public static final byte ALLOW = 1;
+    public static final byte DENY = 2;
+
+    private final Node root = new Node();
+
+    public PathRuleTrie(String rules) {
+        for (String rule : rules.split(";")) {
+            rule = rule.trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            String[] parts = rule.split("\\s+");
+            if (parts.length != 3 || !parts[0].startsWith("/")) {
+                throw new IllegalArgumentException("Invalid path rule: " + rule);
+            }
+            FsAction action = FsAction.getFsAction(parts[2]);
+            if (action == null) {
+                throw new IllegalArgumentException("Invalid actions in the path rule: " + rule);
+            }
+
+            Node node = root;
+            for (String component : parts[0].split("/")) {
+                if (!component.isEmpty()) {
+                    node = node.addChild(component.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            for (String principal : parts[1].split(",")) {
+                if ("*".equals(principal)) {
+                    node.everyone = node.everyone.or(action);
+                } else if (principal.startsWith("@")) {
+                    node.addGroup(principal.substring(1), action);
+                } else {
+                    node.addUser(principal, action);
+                }
+            }
+            node.hasRule = true;
+        }
+        root.compile();
+    }
+
+    /**
+     * Decide whether the user has the given access to the path made up of the components up to and including the
+     * given index. The first component is the (empty) root component, as in the NameNode's pathByNameArr.
+     */
+    public byte evaluate(UserGroupInformation ugi, String user, byte[][] components, int index, FsAction access) {
+        Node node = root;
+        Node matched = root.hasRule ? root : null;
+        for (int i = 1; i <= index; i++) {
+            node = node.getChild(components[i]);
+            if (node == null) {
+                break;
+            }
+            if (node.hasRule) {
+                matched = node;
+            }
+        }
+        if (matched == null) {
+            return NO_RULE;
+        }
+        return decide(matched, ugi, user, access);
+    }
+
+    /**
+     * Decide whether the user can traverse (EXECUTE) every directory up to and including the given index that is
+     * covered by a rule, walking the trie once. The directories above getFirstRuleIndex are not covered.
+     */
+    public byte evaluateTraverse(UserGroupInformation ugi, String user, byte[][] components, int index) {
+        Node node = root;
+        Node matched = root.hasRule ? root : null;
+        byte decision = matched == null ? NO_RULE : decide(matched, ugi, user, FsAction.EXECUTE);
+        for (int i = 1; i <= index && decision != DENY && node != null; i++) {
+            node = node.getChild(components[i]);
+            // A directory is only decided again if it has a more specific rule than its parent
+            if (node != null && node.hasRule) {
+                matched = node;
+                decision = decide(matched, ugi, user, FsAction.EXECUTE);
+            }
+        }
+        return decision;
+    }
+
+    /**
+     * Return the index of the first component (up to the given index) that is covered by a rule, or index + 1 if none
+     * of them are. As the rule on a prefix applies to everything below it, all of the later components are covered.
+     */
+    public int getFirstRuleIndex(byte[][] components, int index) {
+        if (root.hasRule) {
+            return 0;
+        }
+        Node node = root;
+        for (int i = 1; i <= index; i++) {
+            node = node.getChild(components[i]);
+            if (node == null) {
+                break;
+            }
+            if (node.hasRule) {
+                return i;
+            }
+        }
+        return index + 1;
+    }
+
+    /**
+     * Return true if there is a rule on a path below the path made up of the components up to and including the given
+     * index, in which case the rule for the path itself does not apply to its whole subtree.
+     */
+    public boolean hasRulesBelow(byte[][] components, int index) {
+        Node node = root;
+        for (int i = 1; i <= index && node != null; i++) {
+            node = node.getChild(components[i]);
+        }
+        return node != null && node.rulesBelow;
+    }
+
+    private static byte decide(Node matched, UserGroupInformation ugi, String user, FsAction access) {
+        FsAction granted = matched.everyone;
+        FsAction userAction = matched.users == null ? null : matched.users.get(user);
+        if (userAction != null) {
+            granted = granted.or(userAction);
+        }
+        // The groups are only looked up if they might make a difference
+        if (matched.groups != null && !granted.implies(access)) {
+            for (String group : ugi.getGroupNames()) {
+                FsAction groupAction = matched.groups.get(group);
+                if (groupAction != null) {
+                    granted = granted.or(groupAction);
+                }
+            }
+        }
+        return granted.implies(access) ? ALLOW : DENY;
+    }
+
+    private static final class Node {
+        // An open addressing table of the child components, built once in compile()
+        private byte[][] keys;
+        private Node[] children;
+        private Map<ByteKey, Node> pending = new HashMap<>();
+
+        private boolean hasRule;
+        private boolean rulesBelow;
+        private FsAction everyone = FsAction.NONE;
+        private Map<String, FsAction> users;
+        private Map<String, FsAction> groups;
+
+        Node addChild(byte[] component) {
+            ByteKey key = new ByteKey(component);
+            Node child = pending.get(key);
+            if (child == null) {
+                child = new Node();
+                pending.put(key, child);
+            }
+            return child;
+        }
+
+        void addUser(String user, FsAction action) {
+            if (users == null) {
+                users = new HashMap<>();
+            }
+            FsAction existing = users.get(user);
+            users.put(user, existing == null ? action : existing.or(action));
+        }
+
+        void addGroup(String group, FsAction action) {
+            if (groups == null) {
+                groups = new HashMap<>();
+            }
+            FsAction existing = groups.get(group);
+            groups.put(group, existing == null ? action : existing.or(action));
+        }
+
+        void compile() {
+            if (!pending.isEmpty()) {
+                int capacity = Integer.highestOneBit(pending.size() * 2 - 1) << 1;
+                keys = new byte[capacity][];
+                children = new Node[capacity];
+                for (Map.Entry<ByteKey, Node> entry : pending.entrySet()) {
+                    byte[] key = entry.getKey().bytes;
+                    int slot = hash(key) & (capacity - 1);
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & (capacity - 1);
+                    }
+                    keys[slot] = key;
+                    children[slot] = entry.getValue();
+                    entry.getValue().compile();
+                    rulesBelow |= entry.getValue().hasRule || entry.getValue().rulesBelow;
+                }
+            }
+            pending = null;
+        }
+
+        Node getChild(byte[] component) {
+            if (keys == null) {
+                return null;
+            }
+            int mask = keys.length - 1;
+            int slot = hash(component) & mask;
+            byte[] key;
+            while ((key = keys[slot]) != null) {
+                if (Arrays.equals(key, component)) {
+                    return children[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+    }
+
+    private static int hash(byte[] bytes) {
+        int h = 1;
+        for (byte b : bytes) {
+            h = 31 * h + b;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static final class ByteKey {
+        private final byte[] bytes;
+
+        ByteKey(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ByteKey && Arrays.equals(bytes, ((ByteKey)obj).bytes);
+        }
+    }
+}
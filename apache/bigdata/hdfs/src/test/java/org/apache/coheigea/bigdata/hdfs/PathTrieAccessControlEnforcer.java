@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.hdfs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.server.namenode.INode;
+import org.apache.hadoop.hdfs.server.namenode.INodeAttributeProvider.AccessControlEnforcer;
+import org.apache.hadoop.hdfs.server.namenode.INodeAttributes;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+
+/**
+ * An AccessControlEnforcer that enforces the rules in a PathRuleTrie. The path is matched directly against the
+ * pathByNameArr components. The ancestor, parent, access and sub-access checks are each decided by the rule on the
+ * longest matching prefix of the corresponding path, and the decision is cached per (user, inode id, action) if there
+ * is an InodeDecisionCache. If any of the checks is not covered by a rule then the default (POSIX) enforcer makes the
+ * decision instead. The same applies to a sub-access check (e.g. a recursive delete) if there is a more specific rule
+ * anywhere below the path, as the rule for the path itself does not then cover the whole subtree.
+ *
+ * As in the default enforcer, the caller must also be able to traverse (EXECUTE) every ancestor directory. The
+ * directories that are covered by a rule are checked against the rules, and the directories above the first rule are
+ * checked against their permission bits. The sticky bit of the parent directory is also checked as in the default
+ * enforcer, so that a rule that allows writes to a directory such as /tmp doesn't let a user delete or rename the files
+ * of other users in it.
+ *
+ * The decisions for a snapshot path are not cached - see InodeDecisionCache.
+ *
+ * The NameNode asks for the external enforcer for every permission check, passing in the default enforcer for that
+ * call, so this class is cheap to create - the compiled rules and the cache are shared.
+ */
+public class PathTrieAccessControlEnforcer implements AccessControlEnforcer {
+
+    private static final byte[] DOT_SNAPSHOT_DIR = ".snapshot".getBytes(StandardCharsets.UTF_8);
+
+    private final PathRuleTrie rules;
+    private final InodeDecisionCache cache;
+    private final AccessControlEnforcer defaultEnforcer;
+
+    public PathTrieAccessControlEnforcer(PathRuleTrie rules, InodeDecisionCache cache,
+                                         AccessControlEnforcer defaultEnforcer) {
+        this.rules = rules;
+        this.cache = cache;
+        this.defaultEnforcer = defaultEnforcer;
+    }
+
+    @Override
+    public void checkPermission(String fsOwner, String superGroup, UserGroupInformation ugi,
+                                INodeAttributes[] inodeAttrs, INode[] inodes, byte[][] pathByNameArr,
+                                int snapshotId, String path, int ancestorIndex, boolean doCheckOwner,
+                                FsAction ancestorAccess, FsAction parentAccess, FsAction access,
+                                FsAction subAccess, boolean ignoreEmptyDir) throws AccessControlException {
+        String user = ugi.getShortUserName();
+        int last = pathByNameArr.length - 1;
+        boolean covered = true;
+        boolean useCache = cache != null && !isSnapshotPath(pathByNameArr);
+
+        // As in the default enforcer, the ancestor is the closest existing inode
+        while (ancestorIndex > 0 && inodes[ancestorIndex] == null) {
+            ancestorIndex--;
+        }
+        covered &= checkTraverse(ugi, user, inodeAttrs, pathByNameArr, ancestorIndex, path);
+
+        if (ancestorAccess != null && last > 0) {
+            covered &= check(ugi, user, inodes, pathByNameArr, ancestorIndex, ancestorAccess, path, useCache);
+        }
+        if (parentAccess != null && last > 0) {
+            covered &= check(ugi, user, inodes, pathByNameArr, last - 1, parentAccess, path, useCache);
+        }
+        if (parentAccess != null && parentAccess.implies(FsAction.WRITE) && inodeAttrs.length > 1
+            && inodeAttrs[inodeAttrs.length - 1] != null) {
+            checkStickyBit(user, inodeAttrs[inodeAttrs.length - 2], inodeAttrs[inodeAttrs.length - 1], path);
+        }
+        if (access != null) {
+            covered &= check(ugi, user, inodes, pathByNameArr, last, access, path, useCache);
+        }
+        if (subAccess != null) {
+            // The rule on a path also applies to everything below it, unless there is a more specific rule below it
+            covered &= check(ugi, user, inodes, pathByNameArr, last, subAccess, path, useCache)
+                && !rules.hasRulesBelow(pathByNameArr, last);
+        }
+        if (doCheckOwner) {
+            INodeAttributes attributes = inodeAttrs[inodeAttrs.length - 1];
+            if (attributes == null || !user.equals(attributes.getUserName())) {
+                throw new AccessControlException("Permission denied. user=" + user + " is not the owner of " + path);
+            }
+        }
+
+        if (!covered || (ancestorAccess == null && parentAccess == null && access == null && subAccess == null)) {
+            defaultEnforcer.checkPermission(fsOwner, superGroup, ugi, inodeAttrs, inodes, pathByNameArr, snapshotId,
+                                            path, ancestorIndex, doCheckOwner, ancestorAccess, parentAccess, access,
+                                            subAccess, ignoreEmptyDir);
+        }
+    }
+
+    /**
+     * Check that the user can traverse every directory up to and including the given index. Returns false if one of
+     * the directories above the first rule has an ACL, which is left to the default enforcer.
+     */
+    private boolean checkTraverse(UserGroupInformation ugi, String user, INodeAttributes[] inodeAttrs,
+                                  byte[][] pathByNameArr, int index, String path) throws AccessControlException {
+        int firstRule = rules.getFirstRuleIndex(pathByNameArr, index);
+        for (int i = 0; i < firstRule; i++) {
+            INodeAttributes attributes = inodeAttrs[i];
+            if (attributes == null) {
+                continue;
+            }
+            if (attributes.getAclFeature() != null) {
+                return false;
+            }
+            if (!isPermitted(ugi, user, attributes, FsAction.EXECUTE)) {
+                throw denied(user, FsAction.EXECUTE, path);
+            }
+        }
+        if (firstRule <= index
+            && rules.evaluateTraverse(ugi, user, pathByNameArr, index) == PathRuleTrie.DENY) {
+            throw denied(user, FsAction.EXECUTE, path);
+        }
+        return true;
+    }
+
+    /**
+     * A user can only delete or rename an inode in a directory with the sticky bit if they own the directory or the
+     * inode, as in the default enforcer
+     */
+    private static void checkStickyBit(String user, INodeAttributes parent, INodeAttributes inode, String path)
+        throws AccessControlException {
+        if (parent == null || !parent.getFsPermission().getStickyBit()) {
+            return;
+        }
+        if (user.equals(parent.getUserName()) || user.equals(inode.getUserName())) {
+            return;
+        }
+        throw new AccessControlException("Permission denied by sticky bit: user=" + user + ", path=\"" + path + "\"");
+    }
+
+    private static boolean isSnapshotPath(byte[][] pathByNameArr) {
+        for (byte[] component : pathByNameArr) {
+            if (Arrays.equals(DOT_SNAPSHOT_DIR, component)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check the permission bits of an inode, as the default enforcer does when there is no ACL
+     */
+    private static boolean isPermitted(UserGroupInformation ugi, String user, INodeAttributes attributes,
+                                       FsAction action) {
+        FsPermission mode = attributes.getFsPermission();
+        if (user.equals(attributes.getUserName())) {
+            return mode.getUserAction().implies(action);
+        }
+        boolean otherAllowed = mode.getOtherAction().implies(action);
+        // The groups are only looked up if they might make a difference
+        if (mode.getGroupAction().implies(action) == otherAllowed) {
+            return otherAllowed;
+        }
+        for (String group : ugi.getGroupNames()) {
+            if (group.equals(attributes.getGroupName())) {
+                return !otherAllowed;
+            }
+        }
+        return otherAllowed;
+    }
+
+    /**
+     * Returns false if there is no rule for the check, and throws an AccessControlException if the access is denied
+     */
+    private boolean check(UserGroupInformation ugi, String user, INode[] inodes, byte[][] pathByNameArr, int index,
+                          FsAction action, String path, boolean useCache) throws AccessControlException {
+        INode inode = useCache && index < inodes.length ? inodes[index] : null;
+
+        byte decision = InodeDecisionCache.MISS;
+        if (inode != null) {
+            decision = cache.get(user, inode.getId(), action);
+        }
+        if (decision == InodeDecisionCache.MISS) {
+            decision = rules.evaluate(ugi, user, pathByNameArr, index, action);
+            if (inode != null) {
+                cache.put(user, inode.getId(), action, decision);
+            }
+        }
+
+        if (decision == PathRuleTrie.DENY) {
+            throw denied(user, action, path);
+        }
+        return decision == PathRuleTrie.ALLOW;
+    }
+
+    private static AccessControlException denied(String user, FsAction action, String path) {
+        return new AccessControlException("Permission denied: user=" + user + ", access=" + action
+                                          + ", path=\"" + path + "\"");
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.hdfs;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.server.namenode.INodeAttributeProvider;
+import org.apache.hadoop.hdfs.server.namenode.INodeAttributes;
+
+/**
+ * An INodeAttributeProvider that plugs the PathTrieAccessControlEnforcer into the NameNode. It is configured via the
+ * NameNode configuration:
+ *
+ * - custom.enforcer.enabled: whether to use the PathTrieAccessControlEnforcer (default true), otherwise the default
+ *   enforcer is used
+ * - custom.enforcer.rules: the PathRuleTrie rules
+ * - custom.enforcer.cache.size: the maximum number of decisions to cache, or 0 to disable the cache (default 100000)
+ * - custom.enforcer.cache.ttl.ms: how long a decision is cached for (default 10000)
+ */
+public class PathTrieINodeAttributeProvider extends INodeAttributeProvider implements Configurable {
+
+    public static final String ENABLED = "custom.enforcer.enabled";
+    public static final String RULES = "custom.enforcer.rules";
+    public static final String CACHE_SIZE = "custom.enforcer.cache.size";
+    public static final String CACHE_TTL = "custom.enforcer.cache.ttl.ms";
+
+    private Configuration conf;
+    private boolean enabled;
+    private PathRuleTrie rules;
+    private InodeDecisionCache cache;
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    @Override
+    public void start() {
+        enabled = conf.getBoolean(ENABLED, true);
+        rules = new PathRuleTrie(conf.get(RULES, ""));
+        int cacheSize = conf.getInt(CACHE_SIZE, 100000);
+        if (cacheSize > 0) {
+            cache = new InodeDecisionCache(cacheSize, conf.getLong(CACHE_TTL, 10000L), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public INodeAttributes getAttributes(String[] pathElements, INodeAttributes inode) {
+        return inode;
+    }
+
+    @Override
+    public AccessControlEnforcer getExternalAccessControlEnforcer(AccessControlEnforcer defaultEnforcer) {
+        if (!enabled) {
+            return defaultEnforcer;
+        }
+        return new PathTrieAccessControlEnforcer(rules, cache, defaultEnforcer);
+    }
+
+    public InodeDecisionCache getCache() {
+        return cache;
+    }
+
+}
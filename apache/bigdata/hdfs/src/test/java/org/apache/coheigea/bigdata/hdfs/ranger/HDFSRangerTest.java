@@ -19,8 +19,14 @@ package org.apache.coheigea.bigdata.hdfs.ranger;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.security.PrivilegedExceptionAction;
 
+import javax.management.JMX;
+import javax.management.ObjectName;
+
+import org.apache.coheigea.bigdata.ranger.AsyncBatchingAuditHandler;
+import org.apache.coheigea.bigdata.ranger.AsyncBatchingAuditHandlerMXBean;
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
@@ -56,6 +62,7 @@ import org.junit.Assert;
  */
 public class HDFSRangerTest {
     
+    private static final int AUDIT_OPENS = Integer.getInteger("audit.benchmark.opens", 1000);
     private static final File baseDir = new File("./target/hdfs/").getAbsoluteFile();
     private static MiniDFSCluster hdfsCluster;
     private static String defaultFs;
@@ -499,5 +506,58 @@ public class HDFSRangerTest {
             }
         });
     }
-    
+
+    /**
+     * Measures the cost of auditing on the authorization path, with the AsyncBatchingAuditHandler plugged in via
+     * "ranger-hdfs-audit.xml". Each open of the file is authorized (and audited) by the Ranger plugin in the NameNode.
+     * The number of opens can be set via the "audit.benchmark.opens" system property (the default is 1000).
+     */
+    @org.junit.Test
+    public void auditPerformanceTest() throws Exception {
+        FileSystem fileSystem = hdfsCluster.getFileSystem();
+
+        // Write a file - the AccessControlEnforcer won't be invoked as we are the "superuser"
+        final Path file = new Path("/tmp/tmpdir/audit-file");
+        fileSystem.create(file).close();
+        fileSystem.setPermission(file, new FsPermission(FsAction.READ, FsAction.NONE, FsAction.NONE));
+
+        final AsyncBatchingAuditHandlerMXBean auditHandler =
+            JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                               new ObjectName(AsyncBatchingAuditHandler.OBJECT_NAME_PREFIX + "batch"),
+                               AsyncBatchingAuditHandlerMXBean.class);
+
+        // Open the file as "bob" - this should be allowed (by the policy - user)
+        UserGroupInformation ugi = UserGroupInformation.createUserForTesting("bob", new String[] {});
+        ugi.doAs(new PrivilegedExceptionAction<Void>() {
+
+            public Void run() throws Exception {
+                Configuration conf = new Configuration();
+                conf.set("fs.defaultFS", defaultFs);
+
+                FileSystem fs = FileSystem.get(conf);
+
+                // Warm up
+                for (int i = 0; i < AUDIT_OPENS / 10; i++) {
+                    fs.open(file).close();
+                }
+
+                long received = auditHandler.getReceivedCount();
+                long start = System.nanoTime();
+                for (int i = 0; i < AUDIT_OPENS; i++) {
+                    fs.open(file).close();
+                }
+                double micros = (System.nanoTime() - start) / 1000.0 / AUDIT_OPENS;
+                Assert.assertTrue(auditHandler.getReceivedCount() - received >= AUDIT_OPENS);
+
+                System.out.println(String.format(
+                    "%d opens: %.1f us per open, audit enqueue p50 %d ns, p99 %d ns, max %d ns, max queue depth %d, "
+                    + "%d dropped, %d spilled", AUDIT_OPENS, micros, auditHandler.getP50EnqueueLatencyNanos(),
+                    auditHandler.getP99EnqueueLatencyNanos(), auditHandler.getMaxEnqueueLatencyNanos(),
+                    auditHandler.getMaxQueueDepth(), auditHandler.getDroppedCount(), auditHandler.getSpilledCount()));
+
+                fs.close();
+                return null;
+            }
+        });
+    }
 }
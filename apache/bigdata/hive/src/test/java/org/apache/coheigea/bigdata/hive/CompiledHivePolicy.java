@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.hive;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.hive.ql.security.authorization.plugin.HivePrivilegeObject;
+
+/**
+ * A select/row filter/column masking policy, compiled so that the cost of checking a query does not grow with the
+ * width of the table. The policy is a semicolon separated list of rules:
+ *
+ * - "select user table columns", where the columns are comma separated, or "*" for all of the columns
+ * - "rowfilter user table expression"
+ * - "mask user table column expression", where "{col}" in the expression is replaced by the column name
+ *
+ * The table is "db.table", or "*" for any table. The "*" rules are merged into the rules of every table.
+ *
+ * For each table, the columns that are named in the rules are numbered, and the columns that each user may select are
+ * compiled into a BitSet. A user that may select all of the columns skips the column check completely. The row filter
+ * and the column masks are compiled per (user, table), and the last HivePrivilegeObject that was built for them is
+ * cached and reused for as long as the query asks for the same columns.
+ */
+public class CompiledHivePolicy {
+
+    private static final String ANY_TABLE = "*";
+
+    private final Map<String, TablePolicy> tables = new HashMap<>();
+    private final TablePolicy anyTable = new TablePolicy();
+    private final Set<String> maskedUsers = new HashSet<>();
+
+    public CompiledHivePolicy(String policy) {
+        List<String[]> rules = new ArrayList<>();
+        for (String rule : policy.split(";")) {
+            rule = rule.trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            String[] parts = rule.split("\\s+", 4);
+            if (parts.length < 4) {
+                throw new IllegalArgumentException("Invalid Hive policy rule: " + rule);
+            }
+            parts[2] = parts[2].toLowerCase();
+            rules.add(parts);
+            if (!ANY_TABLE.equals(parts[2]) && !tables.containsKey(parts[2])) {
+                tables.put(parts[2], new TablePolicy());
+            }
+        }
+
+        // Apply the "*" rules to every table first, so that the table rules can add to them
+        for (String[] rule : rules) {
+            if (ANY_TABLE.equals(rule[2])) {
+                anyTable.add(rule);
+                for (TablePolicy table : tables.values()) {
+                    table.add(rule);
+                }
+            }
+        }
+        for (String[] rule : rules) {
+            if (!ANY_TABLE.equals(rule[2])) {
+                tables.get(rule[2]).add(rule);
+            }
+            if (!"select".equals(rule[0])) {
+                maskedUsers.add(rule[1]);
+            }
+        }
+    }
+
+    /**
+     * Return true if the user may select the given columns of the table. An empty list of columns requires access to
+     * all of the columns.
+     */
+    public boolean isSelectAllowed(String user, String dbName, String tableName, List<String> columns) {
+        TablePolicy table = getTablePolicy(dbName, tableName);
+        ColumnGrant grant = table.grants.get(user);
+        if (grant == null) {
+            return false;
+        }
+        if (grant.allColumns) {
+            return true;
+        }
+        if (columns == null || columns.isEmpty()) {
+            return false;
+        }
+        for (String column : columns) {
+            Integer index = table.columnIndex.get(column);
+            if (index == null || !grant.columns.get(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return true if the user has a row filter or a column mask on any table
+     */
+    public boolean hasRowFilterOrMask(String user) {
+        return maskedUsers.contains(user);
+    }
+
+    /**
+     * Return a HivePrivilegeObject with the row filter and the column masks for the user on the table, or null if
+     * there are none
+     */
+    public HivePrivilegeObject getRowFilterAndMasks(String user, HivePrivilegeObject tableObject) {
+        TablePolicy table = getTablePolicy(tableObject.getDbname(), tableObject.getObjectName());
+        TableMask mask = table.masks.get(user);
+        return mask == null ? null : mask.apply(tableObject);
+    }
+
+    private TablePolicy getTablePolicy(String dbName, String tableName) {
+        if (!tables.isEmpty() && dbName != null && tableName != null) {
+            // Hive has already lower-cased the names
+            TablePolicy table = tables.get(dbName + "." + tableName);
+            if (table != null) {
+                return table;
+            }
+        }
+        return anyTable;
+    }
+
+    private static final class TablePolicy {
+        private final Map<String, Integer> columnIndex = new HashMap<>();
+        private final Map<String, ColumnGrant> grants = new HashMap<>();
+        private final Map<String, TableMask> masks = new HashMap<>();
+
+        void add(String[] rule) {
+            String user = rule[1];
+            if ("select".equals(rule[0])) {
+                ColumnGrant grant = grants.get(user);
+                if (grant == null) {
+                    grant = new ColumnGrant();
+                    grants.put(user, grant);
+                }
+                for (String column : rule[3].split(",")) {
+                    column = column.trim().toLowerCase();
+                    if ("*".equals(column)) {
+                        grant.allColumns = true;
+                    } else {
+                        grant.columns.set(getColumnIndex(column));
+                    }
+                }
+            } else if ("rowfilter".equals(rule[0])) {
+                getMask(user).rowFilter = rule[3];
+            } else if ("mask".equals(rule[0])) {
+                String[] columnAndExpression = rule[3].split("\\s+", 2);
+                if (columnAndExpression.length != 2) {
+                    throw new IllegalArgumentException("Invalid Hive mask rule: " + rule[3]);
+                }
+                getMask(user).columnMasks.put(columnAndExpression[0].toLowerCase(), columnAndExpression[1]);
+            } else {
+                throw new IllegalArgumentException("Unknown Hive policy rule: " + rule[0]);
+            }
+        }
+
+        private int getColumnIndex(String column) {
+            Integer index = columnIndex.get(column);
+            if (index == null) {
+                index = columnIndex.size();
+                columnIndex.put(column, index);
+            }
+            return index;
+        }
+
+        private TableMask getMask(String user) {
+            TableMask mask = masks.get(user);
+            if (mask == null) {
+                mask = new TableMask();
+                masks.put(user, mask);
+            }
+            return mask;
+        }
+    }
+
+    private static final class ColumnGrant {
+        private boolean allColumns;
+        private final BitSet columns = new BitSet();
+    }
+
+    private static final class TableMask {
+        private String rowFilter;
+        private final Map<String, String> columnMasks = new LinkedHashMap<>();
+        private volatile MaskedObject last;
+
+        HivePrivilegeObject apply(HivePrivilegeObject tableObject) {
+            MaskedObject cached = last;
+            if (cached != null && cached.matches(tableObject)) {
+                return cached.result;
+            }
+
+            List<String> columns = tableObject.getColumns();
+            HivePrivilegeObject result =
+                new HivePrivilegeObject(tableObject.getType(), tableObject.getDbname(), tableObject.getObjectName(),
+                                        tableObject.getPartKeys(), columns);
+            if (rowFilter != null) {
+                result.setRowFilterExpression(rowFilter);
+            }
+            if (!columnMasks.isEmpty() && columns != null) {
+                // The transformers must line up with the columns, where an unmasked column is its own transformer
+                List<String> transformers = new ArrayList<>(columns.size());
+                for (String column : columns) {
+                    String expression = columnMasks.get(column.toLowerCase());
+                    transformers.add(expression == null ? column : expression.replace("{col}", column));
+                }
+                result.setCellValueTransformers(transformers);
+            }
+            last = new MaskedObject(tableObject.getDbname(), tableObject.getObjectName(), columns, result);
+            return result;
+        }
+    }
+
+    private static final class MaskedObject {
+        private final String dbName;
+        private final String tableName;
+        private final List<String> columns;
+        private final HivePrivilegeObject result;
+
+        MaskedObject(String dbName, String tableName, List<String> columns, HivePrivilegeObject result) {
+            this.dbName = dbName;
+            this.tableName = tableName;
+            this.columns = columns;
+            this.result = result;
+        }
+
+        boolean matches(HivePrivilegeObject tableObject) {
+            return equals(dbName, tableObject.getDbname()) && equals(tableName, tableObject.getObjectName())
+                && equals(columns, tableObject.getColumns());
+        }
+
+        private static boolean equals(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+}
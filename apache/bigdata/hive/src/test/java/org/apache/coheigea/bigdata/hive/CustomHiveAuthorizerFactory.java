@@ -17,6 +17,7 @@
 
 package org.apache.coheigea.bigdata.hive;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.hadoop.hive.conf.HiveConf;
@@ -34,32 +35,55 @@ import org.apache.hadoop.hive.ql.security.authorization.plugin.HivePrincipal;
 import org.apache.hadoop.hive.ql.security.authorization.plugin.HivePrivilege;
 import org.apache.hadoop.hive.ql.security.authorization.plugin.HivePrivilegeInfo;
 import org.apache.hadoop.hive.ql.security.authorization.plugin.HivePrivilegeObject;
+import org.apache.hadoop.hive.ql.security.authorization.plugin.HivePrivilegeObject.HivePrivilegeObjectType;
 import org.apache.hadoop.hive.ql.security.authorization.plugin.HiveRoleGrant;
 
 public class CustomHiveAuthorizerFactory implements HiveAuthorizerFactory {
 
+    /**
+     * The CompiledHivePolicy rules for the users other than the logged in user
+     */
+    public static final String POLICY = "custom.authorizer.policy";
+    public static final String DEFAULT_POLICY = "select bob * *; select alice * count";
+
+    // An authorizer is created per session, so the compiled policy is shared between them
+    private static volatile CompiledHivePolicy compiledPolicy;
+    private static volatile String compiledPolicySource;
+
     @Override
     public HiveAuthorizer createHiveAuthorizer(HiveMetastoreClientFactory metastoreClientFactory,
                                                HiveConf conf,
                                                HiveAuthenticationProvider hiveAuthenticator,
                                                HiveAuthzSessionContext sessionContext)
         throws HiveAuthzPluginException {
-        return new CustomHiveAuthorizer(hiveAuthenticator);
+        return new CustomHiveAuthorizer(hiveAuthenticator.getUserName(),
+                                        getCompiledPolicy(conf.get(POLICY, DEFAULT_POLICY)));
+    }
+
+    static synchronized CompiledHivePolicy getCompiledPolicy(String policy) {
+        if (!policy.equals(compiledPolicySource)) {
+            compiledPolicy = new CompiledHivePolicy(policy);
+            compiledPolicySource = policy;
+        }
+        return compiledPolicy;
     }
 
 
     /**
-     * A trivial CustomHiveAuthorizer that allows the following:
+     * A CustomHiveAuthorizer that allows the following:
      * a) The logged in user can do anything
-     * b) "bob" can do a select on the tables
-     * c) "alice" can do a select only on the "count" column
+     * b) Other users can do a select on the tables and columns that the CompiledHivePolicy allows (by default,
+     *    "bob" can do a select on the tables, and "alice" can do a select only on the "count" column), subject
+     *    to the row filters and column masks in the policy
      */
     protected static class CustomHiveAuthorizer implements HiveAuthorizer {
 
-        private String remoteUser;
+        private final String remoteUser;
+        private final CompiledHivePolicy policy;
 
-        CustomHiveAuthorizer(HiveAuthenticationProvider hiveAuthenticator) {
-            remoteUser = hiveAuthenticator.getUserName();
+        CustomHiveAuthorizer(String remoteUser, CompiledHivePolicy policy) {
+            this.remoteUser = remoteUser;
+            this.policy = policy;
         }
 
         @Override
@@ -67,10 +91,22 @@ public class CustomHiveAuthorizerFactory implements HiveAuthorizerFactory {
 
         }
 
-        public List<HivePrivilegeObject> applyRowFilterAndColumnMasking(HiveAuthzContext arg0,
-                                                                        List<HivePrivilegeObject> arg1)
+        public List<HivePrivilegeObject> applyRowFilterAndColumnMasking(HiveAuthzContext context,
+                                                                        List<HivePrivilegeObject> privObjs)
             throws SemanticException {
-            return null;
+            List<HivePrivilegeObject> ret = new ArrayList<>();
+            if (isLoggedInUser(remoteUser) || privObjs == null) {
+                return ret;
+            }
+            for (HivePrivilegeObject obj : privObjs) {
+                if (obj.getType() == HivePrivilegeObjectType.TABLE_OR_VIEW) {
+                    HivePrivilegeObject masked = policy.getRowFilterAndMasks(remoteUser, obj);
+                    if (masked != null) {
+                        ret.add(masked);
+                    }
+                }
+            }
+            return ret;
         }
 
         @Override
@@ -82,22 +118,10 @@ public class CustomHiveAuthorizerFactory implements HiveAuthorizerFactory {
                 return;
             }
 
-            if ("bob".equals(remoteUser) && "QUERY".equals(hiveOpType.name())) {
+            if (hiveOpType == HiveOperationType.QUERY && isSelectAllowed(inputHObjs)) {
                 return;
             }
 
-            if ("alice".equals(remoteUser)) {
-                boolean correctColumn = true;
-                for (HivePrivilegeObject obj : inputHObjs) {
-                    if (!obj.getColumns().contains("count") || obj.getColumns().size() > 1) {
-                        correctColumn = false;
-                    }
-                }
-                if (correctColumn) {
-                    return;
-                }
-            }
-
             throw new RuntimeException("Authorization failed for user: " + remoteUser);
         }
 
@@ -165,7 +189,8 @@ public class CustomHiveAuthorizerFactory implements HiveAuthorizerFactory {
         }
 
         public boolean needTransform() {
-            return false;
+            // Hive only rewrites the query for the row filters and column masks if this returns true
+            return !isLoggedInUser(remoteUser) && policy.hasRowFilterOrMask(remoteUser);
         }
 
         @Override
@@ -192,6 +217,19 @@ public class CustomHiveAuthorizerFactory implements HiveAuthorizerFactory {
             return null;
         }
 
+        private boolean isSelectAllowed(List<HivePrivilegeObject> inputHObjs) {
+            if (inputHObjs == null) {
+                return true;
+            }
+            for (HivePrivilegeObject obj : inputHObjs) {
+                if (obj.getType() == HivePrivilegeObjectType.TABLE_OR_VIEW
+                    && !policy.isSelectAllowed(remoteUser, obj.getDbname(), obj.getObjectName(), obj.getColumns())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         private boolean isLoggedInUser(String remoteUser) {
             return remoteUser != null && remoteUser.equals(System.getProperty("user.name"));
         }
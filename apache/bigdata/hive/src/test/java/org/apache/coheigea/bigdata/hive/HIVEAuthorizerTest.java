@@ -38,6 +38,8 @@ import org.junit.Assert;
  *   a) The logged in user can do anything
  *   b) "bob" can do a select on the tables
  *   c) "alice" can do a select only on the "count" column
+ *   d) "carol" can do a select on the "words" table, but only sees the rows with a count of at least 100, and the
+ *      words in upper case
  */
 public class HIVEAuthorizerTest {
 
@@ -75,6 +77,9 @@ public class HIVEAuthorizerTest {
         conf.set(HiveConf.ConfVars.HIVE_SERVER2_ENABLE_DOAS.varname, "true");
         conf.set(HiveConf.ConfVars.HIVE_AUTHORIZATION_MANAGER.varname,
                  "org.apache.coheigea.bigdata.hive.CustomHiveAuthorizerFactory");
+        conf.set(CustomHiveAuthorizerFactory.POLICY, CustomHiveAuthorizerFactory.DEFAULT_POLICY
+            + "; select carol authz.words *; rowfilter carol authz.words count >= 100"
+            + "; mask carol authz.words word upper({col})");
         //conf.set(HiveConf.ConfVars.HIVE_METASTORE_AUTHORIZATION_MANAGER.varname,
         //         "org.apache.hadoop.hive.ql.security.authorization.StorageBasedAuthorizationProvider");
         conf.set(HiveConf.ConfVars.HIVE_SERVER2_WEBUI_PORT.varname, "0");
@@ -230,4 +235,25 @@ public class HIVEAuthorizerTest {
         connection.close();
     }
 
+    @org.junit.Test
+    public void testHiveRowFilterAndMaskAsCarol() throws Exception {
+
+        String url = "jdbc:hive2://localhost:" + port + "/authz";
+        Connection connection = DriverManager.getConnection(url, "carol", "carol");
+        Statement statement = connection.createStatement();
+
+        // The word is masked
+        ResultSet resultSet = statement.executeQuery("SELECT * FROM words where count == '100'");
+        resultSet.next();
+        Assert.assertEquals("MR.", resultSet.getString(1));
+        Assert.assertEquals(100, resultSet.getInt(2));
+
+        // The rows with a count below 100 are filtered out
+        resultSet = statement.executeQuery("SELECT * FROM words where count < '100'");
+        Assert.assertFalse(resultSet.next());
+
+        statement.close();
+        connection.close();
+    }
+
 }
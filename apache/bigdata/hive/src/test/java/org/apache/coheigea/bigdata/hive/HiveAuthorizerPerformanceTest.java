@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.hive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.coheigea.bigdata.hive.CustomHiveAuthorizerFactory.CustomHiveAuthorizer;
+import org.apache.hadoop.hive.ql.security.authorization.plugin.HiveOperationType;
+import org.apache.hadoop.hive.ql.security.authorization.plugin.HivePrivilegeObject;
+import org.apache.hadoop.hive.ql.security.authorization.plugin.HivePrivilegeObject.HivePrivilegeObjectType;
+import org.junit.Assert;
+
+/**
+ * Measures the time that the CustomHiveAuthorizer spends per query on tables of increasing width (up to 5000 columns),
+ * by calling checkPrivileges and applyRowFilterAndColumnMasking directly, as Hive does while planning a query:
+ *
+ * - "bob" may select all of the columns, so the column check is skipped
+ * - "alice" may select the columns one by one, and selects either 10 of them or all of them
+ * - "naive" is the same check as for "alice" when selecting all of the columns, but looking up each column in the
+ *   list of allowed columns, as the authorizer used to do
+ * - "carol" has a row filter and a masked column, with the same columns requested each time (cached) or with
+ *   alternating columns (rebuilt)
+ *
+ * Each measurement runs for "hive.benchmark.millis" milliseconds (the default is 500).
+ */
+public class HiveAuthorizerPerformanceTest {
+
+    private static final long MILLIS = Long.getLong("hive.benchmark.millis", 500L);
+    private static final int[] WIDTHS = {10, 100, 1000, 5000};
+
+    @org.junit.Test
+    public void testWideTables() throws Exception {
+        System.out.println(String.format("%8s %12s %12s %12s %12s %12s %12s", "columns", "bob", "alice(10)",
+                                         "alice(all)", "naive(all)", "carol", "carol(new)"));
+        for (int width : WIDTHS) {
+            final List<String> columns = new ArrayList<>();
+            for (int i = 0; i < width; i++) {
+                columns.add("col" + i);
+            }
+            final List<String> otherColumns = new ArrayList<>(columns.subList(1, width));
+
+            StringBuilder policy = new StringBuilder("select bob * *; select carol * *");
+            policy.append("; rowfilter carol db.wide col0 > 0; mask carol db.wide col1 mask({col})");
+            policy.append("; select alice db.wide ");
+            for (int i = 0; i < width; i++) {
+                policy.append(i == 0 ? "" : ",").append(columns.get(i));
+            }
+            CompiledHivePolicy compiledPolicy = new CompiledHivePolicy(policy.toString());
+            final CustomHiveAuthorizer bob = new CustomHiveAuthorizer("bob", compiledPolicy);
+            final CustomHiveAuthorizer alice = new CustomHiveAuthorizer("alice", compiledPolicy);
+            final CustomHiveAuthorizer carol = new CustomHiveAuthorizer("carol", compiledPolicy);
+
+            final List<HivePrivilegeObject> allColumns = Collections.singletonList(getTable(columns));
+            final List<HivePrivilegeObject> tenColumns =
+                Collections.singletonList(getTable(columns.subList(0, Math.min(10, width))));
+            final List<HivePrivilegeObject> alternateColumns = Collections.singletonList(getTable(otherColumns));
+            final List<String> allowedColumns = new ArrayList<>(columns);
+
+            double bobTime = measure(new Callable<Object>() {
+                public Object call() throws Exception {
+                    bob.checkPrivileges(HiveOperationType.QUERY, allColumns, null, null);
+                    return null;
+                }
+            });
+            double aliceTenTime = measure(new Callable<Object>() {
+                public Object call() throws Exception {
+                    alice.checkPrivileges(HiveOperationType.QUERY, tenColumns, null, null);
+                    return null;
+                }
+            });
+            double aliceAllTime = measure(new Callable<Object>() {
+                public Object call() throws Exception {
+                    alice.checkPrivileges(HiveOperationType.QUERY, allColumns, null, null);
+                    return null;
+                }
+            });
+            double naiveTime = measure(new Callable<Object>() {
+                public Object call() throws Exception {
+                    for (HivePrivilegeObject obj : allColumns) {
+                        for (String column : obj.getColumns()) {
+                            if (!allowedColumns.contains(column)) {
+                                throw new RuntimeException("Authorization failed for column: " + column);
+                            }
+                        }
+                    }
+                    return null;
+                }
+            });
+            double carolTime = measure(new Callable<Object>() {
+                public Object call() throws Exception {
+                    Assert.assertEquals(1, carol.applyRowFilterAndColumnMasking(null, allColumns).size());
+                    return null;
+                }
+            });
+            double carolNewTime = measure(new Callable<Object>() {
+                private boolean alternate;
+
+                public Object call() throws Exception {
+                    alternate = !alternate;
+                    carol.applyRowFilterAndColumnMasking(null, alternate ? alternateColumns : allColumns);
+                    return null;
+                }
+            });
+
+            System.out.println(String.format("%8d %9.0f ns %9.0f ns %9.0f ns %9.0f ns %9.0f ns %9.0f ns", width,
+                                             bobTime, aliceTenTime, aliceAllTime, naiveTime, carolTime,
+                                             carolNewTime));
+        }
+    }
+
+    @org.junit.Test
+    public void testColumnMasks() throws Exception {
+        CompiledHivePolicy policy = new CompiledHivePolicy(
+            "select carol db.wide *; rowfilter carol db.wide a > 1; mask carol db.wide b mask({col})");
+        CustomHiveAuthorizer carol = new CustomHiveAuthorizer("carol", policy);
+        Assert.assertTrue(carol.needTransform());
+
+        List<HivePrivilegeObject> tables = Collections.singletonList(getTable(Arrays.asList("a", "b", "c")));
+        List<HivePrivilegeObject> masked = carol.applyRowFilterAndColumnMasking(null, tables);
+        Assert.assertEquals(1, masked.size());
+        Assert.assertEquals("a > 1", masked.get(0).getRowFilterExpression());
+        Assert.assertEquals(Arrays.asList("a", "mask(b)", "c"), masked.get(0).getCellValueTransformers());
+
+        Assert.assertFalse(new CustomHiveAuthorizer("bob", policy).needTransform());
+    }
+
+    private static HivePrivilegeObject getTable(List<String> columns) {
+        return new HivePrivilegeObject(HivePrivilegeObjectType.TABLE_OR_VIEW, "db", "wide", null, columns);
+    }
+
+    /**
+     * Return the average time in nanoseconds per call
+     */
+    private static double measure(Callable<Object> call) throws Exception {
+        // Warm up
+        long end = System.nanoTime() + MILLIS * 1000000L / 5;
+        while (System.nanoTime() < end) {
+            call.call();
+        }
+
+        long calls = 0;
+        long start = System.nanoTime();
+        end = start + MILLIS * 1000000L;
+        long now;
+        do {
+            for (int i = 0; i < 16; i++) {
+                call.call();
+            }
+            calls += 16;
+            now = System.nanoTime();
+        } while (now < end);
+        return (now - start) / (double)calls;
+    }
+
+}
@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.kafka;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.kafka.common.security.auth.KafkaPrincipal;
+
+import kafka.security.auth.Acl;
+import kafka.security.auth.All$;
+import kafka.security.auth.Deny$;
+import kafka.security.auth.Describe$;
+import kafka.security.auth.Operation;
+import kafka.security.auth.Read$;
+import kafka.security.auth.Resource;
+import kafka.security.auth.ResourceType;
+import kafka.security.auth.Write$;
+
+/**
+ * An immutable index of the ACLs, by resource type and resource name. For each resource type, the ACLs on a literal
+ * resource name are kept in a hash map, the ACLs on the wildcard resource "*" in a list, and the ACLs on a prefix
+ * (a resource name that ends with "*", e.g. "test*") in a character trie, so that all of the ACLs that apply to a
+ * resource are found in one walk over its name.
+ *
+ * Each index has its own cache of decisions, keyed on (principal, host, operation, resource type, resource name). A
+ * change to the ACLs creates a new index, which invalidates all of the cached decisions at once. The cache is a
+ * ConcurrentHashMap, so a lookup does not take a lock. It is cleared if it reaches its maximum size.
+ */
+public class AclIndex {
+
+    private static final String WILDCARD = "*";
+
+    private final Map<ResourceType, TypeIndex> types = new HashMap<>();
+    private final boolean hostAcls;
+    private final ConcurrentMap<DecisionKey, Boolean> decisions;
+    private final int maxDecisions;
+
+    public AclIndex(Map<Resource, Set<Acl>> acls, int maxDecisions) {
+        boolean hasHostAcls = false;
+        Map<ResourceType, Map<String, List<Acl>>> literals = new HashMap<>();
+        for (Map.Entry<Resource, Set<Acl>> entry : acls.entrySet()) {
+            Resource resource = entry.getKey();
+            TypeIndex typeIndex = types.get(resource.resourceType());
+            if (typeIndex == null) {
+                typeIndex = new TypeIndex();
+                types.put(resource.resourceType(), typeIndex);
+                literals.put(resource.resourceType(), new HashMap<String, List<Acl>>());
+            }
+
+            Acl[] resourceAcls = entry.getValue().toArray(new Acl[0]);
+            for (Acl acl : resourceAcls) {
+                hasHostAcls |= !WILDCARD.equals(acl.host());
+            }
+            String name = resource.name();
+            if (WILDCARD.equals(name)) {
+                typeIndex.wildcard = concat(typeIndex.wildcard, resourceAcls);
+            } else if (name.endsWith(WILDCARD)) {
+                typeIndex.prefixes.add(name, 0, name.length() - 1, resourceAcls);
+            } else {
+                Map<String, List<Acl>> typeLiterals = literals.get(resource.resourceType());
+                List<Acl> literalAcls = typeLiterals.get(name);
+                if (literalAcls == null) {
+                    literalAcls = new ArrayList<>();
+                    typeLiterals.put(name, literalAcls);
+                }
+                literalAcls.addAll(Arrays.asList(resourceAcls));
+            }
+        }
+        for (Map.Entry<ResourceType, Map<String, List<Acl>>> entry : literals.entrySet()) {
+            Map<String, Acl[]> typeLiterals = types.get(entry.getKey()).literals;
+            for (Map.Entry<String, List<Acl>> literal : entry.getValue().entrySet()) {
+                typeLiterals.put(literal.getKey(), literal.getValue().toArray(new Acl[0]));
+            }
+        }
+
+        this.hostAcls = hasHostAcls;
+        this.maxDecisions = maxDecisions;
+        this.decisions = maxDecisions > 0 ? new ConcurrentHashMap<DecisionKey, Boolean>() : null;
+    }
+
+    /**
+     * Decide whether the principal (connecting from the given address) may carry out the operation on the resource. A
+     * deny ACL takes precedence over an allow ACL, and if there is no matching ACL then the access is denied.
+     */
+    public boolean authorize(KafkaPrincipal principal, InetAddress clientAddress, Operation operation,
+                             ResourceType resourceType, String resourceName) {
+        // The host is only part of the decision if there are ACLs for specific hosts
+        String host = hostAcls && clientAddress != null ? clientAddress.getHostAddress() : null;
+        if (decisions == null) {
+            return evaluate(principal, host, operation, resourceType, resourceName);
+        }
+
+        DecisionKey key = new DecisionKey(principal, host, operation, resourceType, resourceName);
+        Boolean decision = decisions.get(key);
+        if (decision == null) {
+            decision = evaluate(principal, host, operation, resourceType, resourceName);
+            if (decisions.size() >= maxDecisions) {
+                decisions.clear();
+            }
+            decisions.put(key, decision);
+        }
+        return decision;
+    }
+
+    private boolean evaluate(KafkaPrincipal principal, String host, Operation operation, ResourceType resourceType,
+                             String resourceName) {
+        TypeIndex typeIndex = types.get(resourceType);
+        if (typeIndex == null) {
+            return false;
+        }
+
+        int result = match(typeIndex.wildcard, principal, host, operation);
+        result |= match(typeIndex.literals.get(resourceName), principal, host, operation);
+        PrefixNode node = typeIndex.prefixes;
+        for (int i = 0; i < resourceName.length() && node != null && (result & DENIED) == 0; i++) {
+            node = node.getChild(resourceName.charAt(i));
+            if (node != null) {
+                result |= match(node.acls, principal, host, operation);
+            }
+        }
+        return (result & DENIED) == 0 && (result & ALLOWED) != 0;
+    }
+
+    private static final int ALLOWED = 1;
+    private static final int DENIED = 2;
+
+    private static int match(Acl[] acls, KafkaPrincipal principal, String host, Operation operation) {
+        if (acls == null) {
+            return 0;
+        }
+        int result = 0;
+        for (Acl acl : acls) {
+            if (matchesPrincipal(acl.principal(), principal) && (host == null || WILDCARD.equals(acl.host())
+                || host.equals(acl.host()))) {
+                if (acl.permissionType() == Deny$.MODULE$) {
+                    if (matchesOperation(acl.operation(), operation)) {
+                        return DENIED;
+                    }
+                } else if (implies(acl.operation(), operation)) {
+                    result = ALLOWED;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean matchesPrincipal(KafkaPrincipal aclPrincipal, KafkaPrincipal principal) {
+        return WILDCARD.equals(aclPrincipal.getName()) || aclPrincipal.equals(principal);
+    }
+
+    private static boolean matchesOperation(Operation aclOperation, Operation operation) {
+        return aclOperation == All$.MODULE$ || aclOperation == operation;
+    }
+
+    /**
+     * As in the SimpleAclAuthorizer, Read and Write also allow Describe
+     */
+    private static boolean implies(Operation aclOperation, Operation operation) {
+        return matchesOperation(aclOperation, operation)
+            || operation == Describe$.MODULE$ && (aclOperation == Read$.MODULE$ || aclOperation == Write$.MODULE$);
+    }
+
+    private static Acl[] concat(Acl[] a, Acl[] b) {
+        if (a == null) {
+            return b;
+        }
+        Acl[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static final class TypeIndex {
+        private final Map<String, Acl[]> literals = new HashMap<>();
+        private Acl[] wildcard;
+        private final PrefixNode prefixes = new PrefixNode();
+    }
+
+    private static final class PrefixNode {
+        private char[] keys = new char[0];
+        private PrefixNode[] children = new PrefixNode[0];
+        private Acl[] acls;
+
+        void add(String prefix, int offset, int end, Acl[] prefixAcls) {
+            if (offset == end) {
+                acls = concat(acls, prefixAcls);
+                return;
+            }
+            char c = prefix.charAt(offset);
+            PrefixNode child = getChild(c);
+            if (child == null) {
+                child = new PrefixNode();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                keys[keys.length - 1] = c;
+                children = Arrays.copyOf(children, children.length + 1);
+                children[children.length - 1] = child;
+            }
+            child.add(prefix, offset + 1, end, prefixAcls);
+        }
+
+        PrefixNode getChild(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class DecisionKey {
+        private final KafkaPrincipal principal;
+        private final String host;
+        private final Operation operation;
+        private final ResourceType resourceType;
+        private final String resourceName;
+        private final int hash;
+
+        DecisionKey(KafkaPrincipal principal, String host, Operation operation, ResourceType resourceType,
+                    String resourceName) {
+            this.principal = principal;
+            this.host = host;
+            this.operation = operation;
+            this.resourceType = resourceType;
+            this.resourceName = resourceName;
+            int h = principal.hashCode();
+            h = 31 * h + (host == null ? 0 : host.hashCode());
+            h = 31 * h + System.identityHashCode(operation);
+            h = 31 * h + System.identityHashCode(resourceType);
+            this.hash = 31 * h + resourceName.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof DecisionKey)) {
+                return false;
+            }
+            DecisionKey other = (DecisionKey)obj;
+            // The operations and resource types are singletons
+            return hash == other.hash && operation == other.operation && resourceType == other.resourceType
+                && resourceName.equals(other.resourceName) && principal.equals(other.principal)
+                && (host == null ? other.host == null : host.equals(other.host));
+        }
+    }
+
+}
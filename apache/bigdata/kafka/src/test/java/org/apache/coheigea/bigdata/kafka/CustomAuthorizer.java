@@ -18,94 +18,77 @@
 package org.apache.coheigea.bigdata.kafka;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.kafka.common.security.auth.KafkaPrincipal;
 
 import kafka.network.RequestChannel.Session;
 import kafka.security.auth.Acl;
-import kafka.security.auth.Authorizer;
+import kafka.security.auth.All$;
+import kafka.security.auth.Allow$;
+import kafka.security.auth.Cluster$;
+import kafka.security.auth.Create$;
+import kafka.security.auth.Describe$;
+import kafka.security.auth.Group$;
 import kafka.security.auth.Operation;
+import kafka.security.auth.Read$;
 import kafka.security.auth.Resource;
-import scala.collection.immutable.Set;
+import kafka.security.auth.ResourceType;
+import kafka.security.auth.Topic$;
+import kafka.security.auth.Write$;
 
 /**
- * A trivial Kafka Authorizer for use with SSL client authentication.
- * 
- * The principal that starts with "CN=Broker" can do anything,
- * The principal that starts with "CN=Service" can read/describe/write on all topics.
- * the principal with "CN=Client" can only read/describe on the "test*" topics
+ * A trivial Kafka Authorizer for use with SSL client authentication. The SSL client principal is mapped to its common
+ * name, and the following ACLs are added to the IndexedAclAuthorizer:
+ *
+ * The principal "Broker" can do anything,
+ * The principal "Service" can read/describe/write/create on all resources.
+ * the principal "Client" can only read/describe on the "test*" topics (and groups)
+ * Everyone can describe all resources.
  */
-public class CustomAuthorizer implements Authorizer {
-
-    @Override
-    public void configure(Map<String, ?> arg0) {
-        // TODO Auto-generated method stub
-        
-    }
-
-    @Override
-    public void addAcls(Set<Acl> arg0, Resource arg1) {
-        // TODO Auto-generated method stub
-        
-    }
+public class CustomAuthorizer extends IndexedAclAuthorizer {
 
-    @Override
-    public boolean authorize(Session arg0, Operation arg1, Resource arg2) {
-        if (arg0.principal() == null) {
-            return false;
-        }
-        String principal = arg0.principal().getName();
-        
-        if ("Describe".equals(arg1.name())) {
-            return true;
-        } else if (principal.startsWith("CN=Client")
-            && ("Read".equals(arg1.name()) || "Describe".equals(arg1.name()))
-            && arg2.name().startsWith("test")) {
-            return true;
-        } else if (principal.startsWith("CN=Service") && ("Read".equals(arg1.name()) || "Describe".equals(arg1.name())
-            || "Write".equals(arg1.name()) || "Create".equals(arg1.name()))) {
-            return true;
-        } else if (principal.startsWith("CN=Broker")) {
-            return true;
-        }
-        
-        return false;
-    }
+    private static final ResourceType[] RESOURCE_TYPES = {Topic$.MODULE$, Group$.MODULE$, Cluster$.MODULE$};
 
-    @Override
-    public void close() {
-        // TODO Auto-generated method stub
-        
-    }
+    private final ConcurrentMap<KafkaPrincipal, KafkaPrincipal> principals = new ConcurrentHashMap<>();
 
     @Override
-    public scala.collection.immutable.Map<Resource, Set<Acl>> getAcls() {
-        // TODO Auto-generated method stub
-        return null;
-    }
+    public void configure(Map<String, ?> configs) {
+        super.configure(configs);
 
-    @Override
-    public Set<Acl> getAcls(Resource arg0) {
-        // TODO Auto-generated method stub
-        return null;
+        for (ResourceType resourceType : RESOURCE_TYPES) {
+            Resource resource = new Resource(resourceType, "*");
+            addAcls(resource, allow("*", Describe$.MODULE$));
+            addAcls(resource, allow("Service", Read$.MODULE$), allow("Service", Write$.MODULE$),
+                    allow("Service", Create$.MODULE$));
+            addAcls(resource, allow("Broker", All$.MODULE$));
+        }
+        addAcls(new Resource(Topic$.MODULE$, "test*"), allow("Client", Read$.MODULE$));
+        addAcls(new Resource(Group$.MODULE$, "test*"), allow("Client", Read$.MODULE$));
     }
 
-    @Override
-    public scala.collection.immutable.Map<Resource, Set<Acl>> getAcls(KafkaPrincipal arg0) {
-        // TODO Auto-generated method stub
-        return null;
+    private static Acl allow(String user, Operation operation) {
+        return new Acl(new KafkaPrincipal(KafkaPrincipal.USER_TYPE, user), Allow$.MODULE$, "*", operation);
     }
 
+    /**
+     * Map "CN=Client,O=Apache,..." to "User:Client". The mapping is cached, as it is needed on every request.
+     */
     @Override
-    public boolean removeAcls(Resource arg0) {
-        // TODO Auto-generated method stub
-        return false;
+    protected KafkaPrincipal getPrincipal(Session session) {
+        KafkaPrincipal principal = session.principal();
+        KafkaPrincipal mappedPrincipal = principals.get(principal);
+        if (mappedPrincipal == null) {
+            String name = principal.getName();
+            if (name.startsWith("CN=")) {
+                int end = name.indexOf(',');
+                name = name.substring(3, end == -1 ? name.length() : end).trim();
+            }
+            mappedPrincipal = new KafkaPrincipal(principal.getPrincipalType(), name);
+            principals.putIfAbsent(principal, mappedPrincipal);
+        }
+        return mappedPrincipal;
     }
 
-    @Override
-    public boolean removeAcls(Set<Acl> arg0, Resource arg1) {
-        // TODO Auto-generated method stub
-        return false;
-    }
-    
 }
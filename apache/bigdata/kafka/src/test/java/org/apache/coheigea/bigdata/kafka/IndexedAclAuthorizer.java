@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.kafka;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.apache.kafka.common.security.auth.KafkaPrincipal;
+
+import kafka.network.RequestChannel.Session;
+import kafka.security.auth.Acl;
+import kafka.security.auth.Authorizer;
+import kafka.security.auth.Operation;
+import kafka.security.auth.Resource;
+import scala.Tuple2;
+import scala.collection.JavaConverters;
+import scala.collection.immutable.Set;
+
+/**
+ * A Kafka Authorizer that keeps the ACLs in memory, in an AclIndex. A resource name that ends with "*" (e.g. "test*")
+ * is a prefix that matches every resource name that starts with it, and "*" matches every resource of the type.
+ *
+ * The ACLs are copied on write: a change to the ACLs builds a new AclIndex (with an empty decision cache), which is
+ * then published to the request threads, which never take a lock. The ACLs are not stored in ZooKeeper, and so must
+ * be added on each broker, e.g. by a subclass in "configure".
+ *
+ * The maximum number of cached decisions is set via "custom.authorizer.cache.size" in the broker configuration (the
+ * default is 100000, 0 disables the cache).
+ */
+public class IndexedAclAuthorizer implements Authorizer {
+
+    public static final String CACHE_SIZE = "custom.authorizer.cache.size";
+
+    private final Object lock = new Object();
+    private Map<Resource, java.util.Set<Acl>> acls = Collections.emptyMap();
+    private int cacheSize = 100000;
+    private volatile AclIndex index = new AclIndex(acls, cacheSize);
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object size = configs.get(CACHE_SIZE);
+        synchronized (lock) {
+            if (size != null) {
+                cacheSize = Integer.parseInt(size.toString().trim());
+            }
+            index = new AclIndex(acls, cacheSize);
+        }
+    }
+
+    @Override
+    public boolean authorize(Session session, Operation operation, Resource resource) {
+        if (session.principal() == null) {
+            return false;
+        }
+        return index.authorize(getPrincipal(session), session.clientAddress(), operation, resource.resourceType(),
+                               resource.name());
+    }
+
+    /**
+     * Return the principal to match against the ACLs
+     */
+    protected KafkaPrincipal getPrincipal(Session session) {
+        return session.principal();
+    }
+
+    /**
+     * Add the given ACLs on the resource
+     */
+    public void addAcls(Resource resource, Acl... resourceAcls) {
+        addAcls(Collections.singletonMap(resource, Arrays.asList(resourceAcls)));
+    }
+
+    /**
+     * Add the given ACLs on each resource, building a single new index
+     */
+    public void addAcls(Map<Resource, ? extends Collection<Acl>> resourceAcls) {
+        synchronized (lock) {
+            Map<Resource, java.util.Set<Acl>> newAcls = new HashMap<>(acls);
+            for (Map.Entry<Resource, ? extends Collection<Acl>> entry : resourceAcls.entrySet()) {
+                java.util.Set<Acl> newResourceAcls = new HashSet<>(entry.getValue());
+                if (acls.containsKey(entry.getKey())) {
+                    newResourceAcls.addAll(acls.get(entry.getKey()));
+                }
+                newAcls.put(entry.getKey(), Collections.unmodifiableSet(newResourceAcls));
+            }
+            publish(newAcls);
+        }
+    }
+
+    @Override
+    public void addAcls(Set<Acl> resourceAcls, Resource resource) {
+        addAcls(resource, JavaConverters.setAsJavaSetConverter(resourceAcls).asJava().toArray(new Acl[0]));
+    }
+
+    @Override
+    public boolean removeAcls(Set<Acl> resourceAcls, Resource resource) {
+        synchronized (lock) {
+            java.util.Set<Acl> existingAcls = acls.get(resource);
+            if (existingAcls == null) {
+                return false;
+            }
+            java.util.Set<Acl> newResourceAcls = new HashSet<>(existingAcls);
+            if (!newResourceAcls.removeAll(JavaConverters.setAsJavaSetConverter(resourceAcls).asJava())) {
+                return false;
+            }
+            Map<Resource, java.util.Set<Acl>> newAcls = new HashMap<>(acls);
+            if (newResourceAcls.isEmpty()) {
+                newAcls.remove(resource);
+            } else {
+                newAcls.put(resource, Collections.unmodifiableSet(newResourceAcls));
+            }
+            publish(newAcls);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean removeAcls(Resource resource) {
+        synchronized (lock) {
+            if (!acls.containsKey(resource)) {
+                return false;
+            }
+            Map<Resource, java.util.Set<Acl>> newAcls = new HashMap<>(acls);
+            newAcls.remove(resource);
+            publish(newAcls);
+            return true;
+        }
+    }
+
+    private void publish(Map<Resource, java.util.Set<Acl>> newAcls) {
+        acls = Collections.unmodifiableMap(newAcls);
+        index = new AclIndex(acls, cacheSize);
+    }
+
+    @Override
+    public Set<Acl> getAcls(Resource resource) {
+        java.util.Set<Acl> resourceAcls;
+        synchronized (lock) {
+            resourceAcls = acls.get(resource);
+        }
+        return toScala(resourceAcls == null ? Collections.<Acl>emptySet() : resourceAcls);
+    }
+
+    @Override
+    public scala.collection.immutable.Map<Resource, Set<Acl>> getAcls(KafkaPrincipal principal) {
+        return getAcls(principal, currentAcls());
+    }
+
+    @Override
+    public scala.collection.immutable.Map<Resource, Set<Acl>> getAcls() {
+        return getAcls(null, currentAcls());
+    }
+
+    private Map<Resource, java.util.Set<Acl>> currentAcls() {
+        synchronized (lock) {
+            return acls;
+        }
+    }
+
+    private static scala.collection.immutable.Map<Resource, Set<Acl>> getAcls(KafkaPrincipal principal,
+                                                                              Map<Resource, java.util.Set<Acl>> acls) {
+        scala.collection.immutable.Map<Resource, Set<Acl>> result = scala.collection.immutable.Map$.MODULE$.empty();
+        for (Map.Entry<Resource, java.util.Set<Acl>> entry : acls.entrySet()) {
+            java.util.Set<Acl> resourceAcls = entry.getValue();
+            if (principal != null) {
+                resourceAcls = new HashSet<>();
+                for (Acl acl : entry.getValue()) {
+                    if (principal.equals(acl.principal())) {
+                        resourceAcls.add(acl);
+                    }
+                }
+            }
+            if (!resourceAcls.isEmpty()) {
+                result = result.$plus(new Tuple2<Resource, Set<Acl>>(entry.getKey(), toScala(resourceAcls)));
+            }
+        }
+        return result;
+    }
+
+    private static Set<Acl> toScala(java.util.Set<Acl> resourceAcls) {
+        return JavaConverters.asScalaSetConverter(resourceAcls).asScala().toSet();
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.kafka;
+
+import java.net.InetAddress;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.kafka.common.security.auth.KafkaPrincipal;
+import org.junit.Assert;
+
+import kafka.network.RequestChannel.Session;
+import kafka.security.auth.Acl;
+import kafka.security.auth.Allow$;
+import kafka.security.auth.Authorizer;
+import kafka.security.auth.Deny$;
+import kafka.security.auth.Describe$;
+import kafka.security.auth.Group$;
+import kafka.security.auth.Operation;
+import kafka.security.auth.PermissionType;
+import kafka.security.auth.Read$;
+import kafka.security.auth.Resource;
+import kafka.security.auth.Topic$;
+import kafka.security.auth.Write$;
+import scala.collection.JavaConverters;
+
+/**
+ * Drives the produce (Write on a topic) and fetch (Read on a topic) authorization checks directly against the
+ * IndexedAclAuthorizer, from several threads, and reports the number of decisions per second, against a target of
+ * 1M decisions per second. The ACLs are:
+ *
+ * - each producer "p<n>" may write to the topics with the prefix "p<n>."
+ * - each topic has a literal ACL that allows one consumer "c<n>" to read it
+ * - nobody may write to the topics with the prefix "p0.secret"
+ *
+ * It compares the IndexedAclAuthorizer with and without the decision cache, and a linear scan over all of the ACLs.
+ * The number of topics can be set via "kafka.benchmark.topics" (the default is 10000), the number of producers and
+ * consumers via "kafka.benchmark.principals" (the default is 100), the number of threads via
+ * "kafka.benchmark.threads" (the default is 8) and the length of each measurement via "kafka.benchmark.millis" (the
+ * default is 1000).
+ */
+public class KafkaAuthorizerPerformanceTest {
+
+    private static final int TOPICS = Integer.getInteger("kafka.benchmark.topics", 10000);
+    private static final int PRINCIPALS = Integer.getInteger("kafka.benchmark.principals", 100);
+    private static final int THREADS = Integer.getInteger("kafka.benchmark.threads", 8);
+    private static final long MILLIS = Long.getLong("kafka.benchmark.millis", 1000L);
+    private static final double TARGET = 1000000.0;
+
+    @org.junit.Test
+    public void testProduceFetchThroughput() throws Exception {
+        System.out.println(String.format("Testing produce/fetch authorization with %d topics, %d principals and %d "
+                                         + "threads", TOPICS, PRINCIPALS, THREADS));
+
+        final Resource[] topics = new Resource[TOPICS];
+        final Session[] producers = new Session[PRINCIPALS];
+        final Session[] consumers = new Session[PRINCIPALS];
+        InetAddress address = InetAddress.getLoopbackAddress();
+        for (int i = 0; i < PRINCIPALS; i++) {
+            producers[i] = new Session(new KafkaPrincipal(KafkaPrincipal.USER_TYPE, "p" + i), address);
+            consumers[i] = new Session(new KafkaPrincipal(KafkaPrincipal.USER_TYPE, "c" + i), address);
+        }
+
+        IndexedAclAuthorizer cached = new IndexedAclAuthorizer();
+        cached.configure(Collections.singletonMap(IndexedAclAuthorizer.CACHE_SIZE, TOPICS * 4));
+        IndexedAclAuthorizer uncached = new IndexedAclAuthorizer();
+        uncached.configure(Collections.singletonMap(IndexedAclAuthorizer.CACHE_SIZE, 0));
+        Map<Resource, List<Acl>> acls = new HashMap<>();
+        for (int i = 0; i < PRINCIPALS; i++) {
+            acls.put(new Resource(Topic$.MODULE$, "p" + i + ".*"),
+                     Collections.singletonList(acl(Allow$.MODULE$, "p" + i, Write$.MODULE$)));
+        }
+        for (int t = 0; t < TOPICS; t++) {
+            topics[t] = new Resource(Topic$.MODULE$, "p" + (t % PRINCIPALS) + ".topic" + t);
+            acls.put(topics[t], Collections.singletonList(acl(Allow$.MODULE$, "c" + (t % PRINCIPALS), Read$.MODULE$)));
+        }
+        acls.put(new Resource(Topic$.MODULE$, "p0.secret*"),
+                 Collections.singletonList(acl(Deny$.MODULE$, "*", Write$.MODULE$)));
+        cached.addAcls(acls);
+        uncached.addAcls(acls);
+        LinearAclAuthorizer linear = new LinearAclAuthorizer(cached.getAcls());
+
+        System.out.println(String.format("%-16s %16s %10s", "authorizer", "decisions/sec", "target"));
+        Authorizer[] authorizers = {linear, uncached, cached};
+        String[] names = {"linear", "index", "index + cache"};
+        for (int i = 0; i < authorizers.length; i++) {
+            final Authorizer authorizer = authorizers[i];
+            // Warm up
+            measure(authorizer, topics, producers, consumers, MILLIS / 5);
+            double rate = measure(authorizer, topics, producers, consumers, MILLIS);
+            System.out.println(String.format("%-16s %16.0f %10s", names[i], rate, rate >= TARGET ? "met" : "missed"));
+        }
+    }
+
+    @org.junit.Test
+    public void testAclStore() throws Exception {
+        IndexedAclAuthorizer authorizer = new IndexedAclAuthorizer();
+        authorizer.configure(Collections.<String, Object>emptyMap());
+        InetAddress address = InetAddress.getLoopbackAddress();
+        Session alice = new Session(new KafkaPrincipal(KafkaPrincipal.USER_TYPE, "alice"), address);
+        Session bob = new Session(new KafkaPrincipal(KafkaPrincipal.USER_TYPE, "bob"), address);
+
+        Resource prefix = new Resource(Topic$.MODULE$, "orders*");
+        Resource secret = new Resource(Topic$.MODULE$, "orders.secret");
+        Resource topic = new Resource(Topic$.MODULE$, "orders.eu");
+        authorizer.addAcls(prefix, acl(Allow$.MODULE$, "alice", Read$.MODULE$));
+        authorizer.addAcls(new Resource(Topic$.MODULE$, "*"), acl(Allow$.MODULE$, "*", Describe$.MODULE$));
+        authorizer.addAcls(secret, acl(Deny$.MODULE$, "alice", Read$.MODULE$));
+
+        Assert.assertTrue(authorizer.authorize(alice, Read$.MODULE$, topic));
+        Assert.assertTrue(authorizer.authorize(alice, Describe$.MODULE$, topic));
+        Assert.assertFalse(authorizer.authorize(alice, Write$.MODULE$, topic));
+        Assert.assertFalse(authorizer.authorize(alice, Read$.MODULE$, secret));
+        Assert.assertFalse(authorizer.authorize(alice, Read$.MODULE$, new Resource(Topic$.MODULE$, "order")));
+        Assert.assertFalse(authorizer.authorize(alice, Read$.MODULE$, new Resource(Group$.MODULE$, "orders")));
+        Assert.assertFalse(authorizer.authorize(bob, Read$.MODULE$, topic));
+        Assert.assertTrue(authorizer.authorize(bob, Describe$.MODULE$, topic));
+
+        Assert.assertEquals(3, authorizer.getAcls().size());
+        Assert.assertEquals(2, authorizer.getAcls(alice.principal()).size());
+        Assert.assertEquals(1, authorizer.getAcls(prefix).size());
+        Assert.assertEquals(0, authorizer.getAcls(new Resource(Group$.MODULE$, "orders")).size());
+
+        // A change to the ACLs invalidates the cached decisions
+        Assert.assertTrue(authorizer.removeAcls(secret));
+        Assert.assertFalse(authorizer.removeAcls(secret));
+        Assert.assertTrue(authorizer.authorize(alice, Read$.MODULE$, secret));
+        authorizer.addAcls(topic, acl(Allow$.MODULE$, "bob", Read$.MODULE$));
+        Assert.assertTrue(authorizer.authorize(bob, Read$.MODULE$, topic));
+        Assert.assertTrue(authorizer.removeAcls(authorizer.getAcls(topic), topic));
+        Assert.assertFalse(authorizer.authorize(bob, Read$.MODULE$, topic));
+    }
+
+    private static Acl acl(PermissionType permissionType, String user, Operation operation) {
+        return new Acl(new KafkaPrincipal(KafkaPrincipal.USER_TYPE, user), permissionType, "*", operation);
+    }
+
+    /**
+     * Return the number of decisions per second, over all of the threads. Each thread alternates between the produce
+     * check of a topic by its producer and the fetch check of a topic by its consumer, on pseudo-random topics.
+     */
+    private static double measure(final Authorizer authorizer, final Resource[] topics, final Session[] producers,
+                                  final Session[] consumers, long millis) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final long end = System.nanoTime() + millis * 1000000L;
+            List<Callable<Long>> tasks = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int seed = t + 1;
+                tasks.add(new Callable<Long>() {
+                    public Long call() throws Exception {
+                        int random = seed * 0x9E3779B9;
+                        long decisions = 0;
+                        while (System.nanoTime() < end) {
+                            for (int i = 0; i < 64; i++) {
+                                random ^= random << 13;
+                                random ^= random >>> 17;
+                                random ^= random << 5;
+                                int topic = (random & 0x7fffffff) % topics.length;
+                                boolean allowed = (i & 1) == 0
+                                    ? authorizer.authorize(producers[topic % producers.length], Write$.MODULE$,
+                                                           topics[topic])
+                                    : authorizer.authorize(consumers[topic % consumers.length], Read$.MODULE$,
+                                                           topics[topic]);
+                                if (!allowed) {
+                                    throw new IllegalStateException("Unexpected denial on " + topics[topic]);
+                                }
+                            }
+                            decisions += 64;
+                        }
+                        return decisions;
+                    }
+                });
+            }
+            long start = System.nanoTime();
+            long decisions = 0;
+            for (Future<Long> future : executor.invokeAll(tasks)) {
+                decisions += future.get();
+            }
+            return decisions / ((System.nanoTime() - start) / 1000000000.0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Checks every ACL in turn, with the same semantics as the AclIndex, as a baseline
+     */
+    private static final class LinearAclAuthorizer extends IndexedAclAuthorizer {
+        private final List<Map.Entry<Resource, java.util.Set<Acl>>> entries = new ArrayList<>();
+
+        LinearAclAuthorizer(scala.collection.immutable.Map<Resource, scala.collection.immutable.Set<Acl>> acls) {
+            for (Map.Entry<Resource, scala.collection.immutable.Set<Acl>> entry
+                : JavaConverters.mapAsJavaMapConverter(acls).asJava().entrySet()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<Resource, java.util.Set<Acl>>(
+                    entry.getKey(), JavaConverters.setAsJavaSetConverter(entry.getValue()).asJava()));
+            }
+        }
+
+        @Override
+        public boolean authorize(Session session, Operation operation, Resource resource) {
+            boolean allowed = false;
+            for (Map.Entry<Resource, java.util.Set<Acl>> entry : entries) {
+                Resource aclResource = entry.getKey();
+                String name = aclResource.name();
+                if (aclResource.resourceType() != resource.resourceType()
+                    || !("*".equals(name) || name.equals(resource.name())
+                        || name.endsWith("*") && resource.name().regionMatches(0, name, 0, name.length() - 1))) {
+                    continue;
+                }
+                for (Acl acl : entry.getValue()) {
+                    if (("*".equals(acl.principal().getName()) || acl.principal().equals(session.principal()))
+                        && acl.operation() == operation) {
+                        if (acl.permissionType() == Deny$.MODULE$) {
+                            return false;
+                        }
+                        allowed = true;
+                    }
+                }
+            }
+            return allowed;
+        }
+    }
+
+}
@@ -17,14 +17,20 @@
 
 package org.apache.coheigea.bigdata.kafka.ranger;
 
+import java.lang.management.ManagementFactory;
 import java.net.ServerSocket;
 import java.util.Arrays;
 import java.util.Properties;
 import java.util.concurrent.Future;
 
+import javax.management.JMX;
+import javax.management.ObjectName;
+
 import org.I0Itec.zkclient.ZkClient;
 import org.I0Itec.zkclient.ZkConnection;
 import org.apache.coheigea.bigdata.kafka.KafkaAuthorizerTest;
+import org.apache.coheigea.bigdata.ranger.AsyncBatchingAuditHandler;
+import org.apache.coheigea.bigdata.ranger.AsyncBatchingAuditHandlerMXBean;
 import org.apache.curator.test.TestingServer;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.kafka.clients.CommonClientConfigs;
@@ -62,6 +68,7 @@ import kafka.utils.ZkUtils;
  */
 public class KafkaRangerAuthorizerTest {
     
+    private static final int AUDIT_MESSAGES = Integer.getInteger("audit.benchmark.messages", 1000);
     private static KafkaServerStartable kafkaServer;
     private static TestingServer zkServer;
     private static int port;
@@ -214,6 +221,57 @@ public class KafkaRangerAuthorizerTest {
         producer.close();
     }
     
+    /**
+     * Measures the cost of auditing on the authorization path, with the AsyncBatchingAuditHandler plugged in via
+     * "ranger-kafka-audit.xml". Each message is sent (and acknowledged) before the next, so that each produce request
+     * is authorized (and audited) by the Ranger plugin in the broker. The number of messages can be set via the
+     * "audit.benchmark.messages" system property (the default is 1000).
+     */
+    @org.junit.Test
+    public void testAuditPerformance() throws Exception {
+        // Create the Producer
+        Properties producerProps = new Properties();
+        producerProps.put("bootstrap.servers", "localhost:" + port);
+        producerProps.put("acks", "all");
+        producerProps.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+        producerProps.put("value.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+        producerProps.put(CommonClientConfigs.SECURITY_PROTOCOL_CONFIG, "SSL");
+        producerProps.put(SslConfigs.SSL_KEYSTORE_TYPE_CONFIG, "JKS");
+        producerProps.put(SslConfigs.SSL_KEYSTORE_LOCATION_CONFIG, this.getClass().getResource("/servicestore.jks").getPath());
+        producerProps.put(SslConfigs.SSL_KEYSTORE_PASSWORD_CONFIG, "sspass");
+        producerProps.put(SslConfigs.SSL_KEY_PASSWORD_CONFIG, "skpass");
+        producerProps.put(SslConfigs.SSL_TRUSTSTORE_LOCATION_CONFIG, this.getClass().getResource("/truststore.jks").getPath());
+        producerProps.put(SslConfigs.SSL_TRUSTSTORE_PASSWORD_CONFIG, "security");
+        
+        final Producer<String, String> producer = new KafkaProducer<>(producerProps);
+        
+        AsyncBatchingAuditHandlerMXBean auditHandler =
+            JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                               new ObjectName(AsyncBatchingAuditHandler.OBJECT_NAME_PREFIX + "batch"),
+                               AsyncBatchingAuditHandlerMXBean.class);
+        
+        // Warm up
+        for (int i = 0; i < AUDIT_MESSAGES / 10; i++) {
+            producer.send(new ProducerRecord<String, String>("dev", "somekey", "somevalue")).get();
+        }
+        
+        long received = auditHandler.getReceivedCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < AUDIT_MESSAGES; i++) {
+            producer.send(new ProducerRecord<String, String>("dev", "somekey", "somevalue" + i)).get();
+        }
+        double micros = (System.nanoTime() - start) / 1000.0 / AUDIT_MESSAGES;
+        Assert.assertTrue(auditHandler.getReceivedCount() - received >= AUDIT_MESSAGES);
+        
+        System.out.println(String.format(
+            "%d messages: %.1f us per message, audit enqueue p50 %d ns, p99 %d ns, max %d ns, max queue depth %d, "
+            + "%d dropped, %d spilled", AUDIT_MESSAGES, micros, auditHandler.getP50EnqueueLatencyNanos(),
+            auditHandler.getP99EnqueueLatencyNanos(), auditHandler.getMaxEnqueueLatencyNanos(),
+            auditHandler.getMaxQueueDepth(), auditHandler.getDroppedCount(), auditHandler.getSpilledCount()));
+        
+        producer.close();
+    }
+    
     // The "public" group can't write to "dev"
     @org.junit.Test
     public void testUnauthorizedWrite() throws Exception {
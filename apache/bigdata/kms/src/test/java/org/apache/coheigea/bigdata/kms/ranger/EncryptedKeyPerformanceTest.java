@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.kms.ranger;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.crypto.key.KeyProvider.KeyVersion;
+import org.apache.hadoop.crypto.key.KeyProvider.Options;
+import org.apache.hadoop.crypto.key.KeyProviderCryptoExtension;
+import org.apache.hadoop.crypto.key.KeyProviderCryptoExtension.EncryptedKeyVersion;
+import org.apache.hadoop.crypto.key.RangerKeyStoreProvider;
+import org.apache.hadoop.crypto.key.kms.server.KMSConfiguration;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+
+/**
+ * Measures the throughput of generating and decrypting encrypted keys (EEKs) with the RangerKeyStoreProvider, from
+ * many concurrent clients (as an HDFS NameNode does for file creates in an encryption zone), with and without a pool
+ * of pre-generated EEKs in front of it (PooledKeyProviderCryptoExtension).
+ *
+ * The number of client threads is set via "kms.benchmark.threads" (the default is 16), the number of calls per thread
+ * via "kms.benchmark.calls" (the default is 1000), and the pool capacity via "kms.benchmark.pool.size" (the default
+ * is 500, with a low watermark of 30%).
+ */
+public class EncryptedKeyPerformanceTest {
+
+    private static final int THREADS = Integer.getInteger("kms.benchmark.threads", 16);
+    private static final int CALLS = Integer.getInteger("kms.benchmark.calls", 1000);
+    private static final int POOL_SIZE = Integer.getInteger("kms.benchmark.pool.size", 500);
+
+    private static final String KEY_NAME = "eekkey";
+
+    private static RangerKeyStoreProvider keyProvider;
+
+    @BeforeClass
+    public static void startServers() throws Exception {
+        DerbyTestUtils.startDerby();
+
+        Path configDir = Paths.get("src/test/resources/kms");
+        System.setProperty(KMSConfiguration.KMS_CONFIG_DIR, configDir.toFile().getAbsolutePath());
+
+        Configuration conf = new Configuration();
+        keyProvider = new RangerKeyStoreProvider(conf);
+        Options options = new Options(conf);
+        options.setBitLength(128);
+        options.setCipher("AES/CTR/NoPadding");
+        keyProvider.createKey(KEY_NAME, options);
+        keyProvider.flush();
+    }
+
+    @AfterClass
+    public static void stopServers() throws Exception {
+        DerbyTestUtils.stopDerby();
+    }
+
+    @org.junit.Test
+    public void testPooledEncryptedKeys() throws Throwable {
+        Configuration conf = new Configuration();
+        Options options = new Options(conf);
+        options.setBitLength(128);
+        options.setCipher("AES/CTR/NoPadding");
+        keyProvider.createKey("rollkey", options);
+        keyProvider.flush();
+
+        PooledKeyProviderCryptoExtension pooledProvider =
+            new PooledKeyProviderCryptoExtension(
+                KeyProviderCryptoExtension.createKeyProviderCryptoExtension(keyProvider), 100, 30, 2);
+        try {
+            EncryptedKeyVersion encryptedKey = pooledProvider.generateEncryptedKey("rollkey");
+            Assert.assertEquals("rollkey@0", encryptedKey.getEncryptionKeyVersionName());
+            KeyVersion decryptedKey = pooledProvider.decryptEncryptedKey(encryptedKey);
+            Assert.assertEquals(KeyProviderCryptoExtension.EEK, decryptedKey.getVersionName());
+            Assert.assertEquals(128 / 8, decryptedKey.getMaterial().length);
+
+            // The first call fills up the pool in the background
+            waitForPoolSize(pooledProvider, "rollkey", 100);
+            for (int i = 0; i < 50; i++) {
+                pooledProvider.generateEncryptedKey("rollkey");
+            }
+            Assert.assertEquals(1L, pooledProvider.getPoolMisses());
+            Assert.assertEquals(50L, pooledProvider.getPoolHits());
+
+            // The EEKs of the old key version must not be handed out after a rollover
+            pooledProvider.rollNewVersion("rollkey");
+            keyProvider.flush();
+            encryptedKey = pooledProvider.generateEncryptedKey("rollkey");
+            Assert.assertEquals("rollkey@1", encryptedKey.getEncryptionKeyVersionName());
+            Assert.assertEquals(128 / 8, pooledProvider.decryptEncryptedKey(encryptedKey).getMaterial().length);
+        } finally {
+            pooledProvider.close();
+        }
+    }
+
+    @org.junit.Test
+    public void testEncryptedKeyThroughput() throws Throwable {
+        System.out.println("Testing EEK throughput with " + THREADS + " threads and " + CALLS + " calls per thread");
+
+        KeyProviderCryptoExtension directProvider =
+            KeyProviderCryptoExtension.createKeyProviderCryptoExtension(keyProvider);
+        measure("direct", directProvider);
+
+        PooledKeyProviderCryptoExtension pooledProvider =
+            new PooledKeyProviderCryptoExtension(directProvider, POOL_SIZE, POOL_SIZE * 3 / 10, 4);
+        try {
+            pooledProvider.warmUpEncryptedKeys(KEY_NAME);
+            measure("pooled", pooledProvider);
+            System.out.println(String.format("Pool: %d hits, %d misses, %d refills", pooledProvider.getPoolHits(),
+                                             pooledProvider.getPoolMisses(), pooledProvider.getRefills()));
+        } finally {
+            pooledProvider.close();
+        }
+    }
+
+    private static void measure(String name, final KeyProviderCryptoExtension provider) throws Exception {
+        final Queue<EncryptedKeyVersion> encryptedKeys = new ConcurrentLinkedQueue<>();
+        long start = System.nanoTime();
+        run(new Callable<Void>() {
+            public Void call() throws Exception {
+                for (int i = 0; i < CALLS; i++) {
+                    encryptedKeys.add(provider.generateEncryptedKey(KEY_NAME));
+                }
+                return null;
+            }
+        });
+        report(name + " generate", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        run(new Callable<Void>() {
+            public Void call() throws Exception {
+                EncryptedKeyVersion encryptedKey;
+                while ((encryptedKey = encryptedKeys.poll()) != null) {
+                    Assert.assertEquals(128 / 8, provider.decryptEncryptedKey(encryptedKey).getMaterial().length);
+                }
+                return null;
+            }
+        });
+        report(name + " decrypt", System.nanoTime() - start);
+    }
+
+    private static void report(String name, long nanos) {
+        long calls = (long)THREADS * CALLS;
+        System.out.println(String.format("%-20s %10.0f calls/sec %10.1f us/call", name,
+                                         calls / (nanos / 1000000000.0), nanos / 1000.0 / calls * THREADS));
+    }
+
+    private static void run(Callable<Void> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                tasks.add(task);
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void waitForPoolSize(PooledKeyProviderCryptoExtension provider, String keyName, int size)
+        throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 30000L;
+        while (provider.getPoolSize(keyName) < size && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(size, provider.getPoolSize(keyName));
+    }
+
+}
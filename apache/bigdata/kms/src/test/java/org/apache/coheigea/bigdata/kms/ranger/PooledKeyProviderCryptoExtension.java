@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.kms.ranger;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.crypto.key.KeyProviderCryptoExtension;
+
+/**
+ * A KeyProviderCryptoExtension that puts a pool of pre-generated encrypted keys (EEKs) in front of another one, e.g.
+ * one created from the RangerKeyStoreProvider via KeyProviderCryptoExtension.createKeyProviderCryptoExtension. An
+ * HDFS file create in an encryption zone blocks on generateEncryptedKey, so the EEKs are generated ahead of time:
+ *
+ * - There is a queue of EEKs per key name, which is filled up to "capacity" EEKs on the first request for that key
+ *   name (or via warmUpEncryptedKeys).
+ * - When a queue drops below "lowWatermark" EEKs, it is refilled asynchronously, on one of "refillThreads" threads.
+ * - If a queue is empty, the EEK is generated on the caller's thread, so that any error is reported to the caller.
+ * - The queue of a key name is drained when the key is rolled over or deleted, so that the EEKs of an old key
+ *   version are not handed out.
+ *
+ * This is the same approach as the EagerKeyGeneratorKeyProviderCryptoExtension of the Hadoop KMS, with counters for
+ * the pool hits and misses.
+ */
+public class PooledKeyProviderCryptoExtension extends KeyProviderCryptoExtension {
+
+    public PooledKeyProviderCryptoExtension(KeyProviderCryptoExtension keyProvider, int capacity, int lowWatermark,
+                                            int refillThreads) {
+        super(keyProvider, new EncryptedKeyPool(keyProvider, capacity, lowWatermark, refillThreads));
+    }
+
+    @Override
+    public KeyVersion rollNewVersion(String name) throws NoSuchAlgorithmException, IOException {
+        KeyVersion keyVersion = super.rollNewVersion(name);
+        getExtension().drain(name);
+        return keyVersion;
+    }
+
+    @Override
+    public KeyVersion rollNewVersion(String name, byte[] material) throws IOException {
+        KeyVersion keyVersion = super.rollNewVersion(name, material);
+        getExtension().drain(name);
+        return keyVersion;
+    }
+
+    @Override
+    public void deleteKey(String name) throws IOException {
+        super.deleteKey(name);
+        getExtension().drain(name);
+    }
+
+    /**
+     * Stop refilling the pool. The underlying key provider is not closed, as it may be shared.
+     */
+    public void close() {
+        ((EncryptedKeyPool)getExtension()).close();
+    }
+
+    /**
+     * Return the number of EEKs that are currently pooled for the given key name
+     */
+    public int getPoolSize(String keyName) {
+        return ((EncryptedKeyPool)getExtension()).getPoolSize(keyName);
+    }
+
+    public long getPoolHits() {
+        return ((EncryptedKeyPool)getExtension()).hits.get();
+    }
+
+    public long getPoolMisses() {
+        return ((EncryptedKeyPool)getExtension()).misses.get();
+    }
+
+    public long getRefills() {
+        return ((EncryptedKeyPool)getExtension()).refills.get();
+    }
+
+    private static final class EncryptedKeyPool implements CryptoExtension {
+        private final KeyProviderCryptoExtension keyProvider;
+        private final int capacity;
+        private final int lowWatermark;
+        private final ExecutorService refillExecutor;
+        private final ConcurrentMap<String, KeyQueue> queues = new ConcurrentHashMap<>();
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong refills = new AtomicLong();
+
+        EncryptedKeyPool(KeyProviderCryptoExtension keyProvider, int capacity, int lowWatermark, int refillThreads) {
+            if (capacity < 1 || lowWatermark < 0 || lowWatermark > capacity) {
+                throw new IllegalArgumentException("The low watermark must be between 0 and the pool capacity");
+            }
+            this.keyProvider = keyProvider;
+            this.capacity = capacity;
+            this.lowWatermark = lowWatermark;
+            this.refillExecutor = Executors.newFixedThreadPool(refillThreads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "EEK-refill-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        @Override
+        public void warmUpEncryptedKeys(String... keyNames) throws IOException {
+            for (String keyName : keyNames) {
+                KeyQueue queue = getQueue(keyName);
+                try {
+                    while (queue.size.get() < capacity) {
+                        queue.add(keyProvider.generateEncryptedKey(keyName));
+                    }
+                } catch (GeneralSecurityException ex) {
+                    throw new IOException("Error generating the encrypted keys of " + keyName, ex);
+                }
+            }
+        }
+
+        @Override
+        public void drain(String keyName) {
+            queues.remove(keyName);
+        }
+
+        @Override
+        public EncryptedKeyVersion generateEncryptedKey(String encryptionKeyName)
+            throws IOException, GeneralSecurityException {
+            KeyQueue queue = getQueue(encryptionKeyName);
+            EncryptedKeyVersion encryptedKey = queue.keys.poll();
+            if (encryptedKey != null) {
+                hits.incrementAndGet();
+                if (queue.size.decrementAndGet() < lowWatermark) {
+                    scheduleRefill(encryptionKeyName, queue);
+                }
+                return encryptedKey;
+            }
+
+            misses.incrementAndGet();
+            scheduleRefill(encryptionKeyName, queue);
+            return keyProvider.generateEncryptedKey(encryptionKeyName);
+        }
+
+        @Override
+        public KeyVersion decryptEncryptedKey(EncryptedKeyVersion encryptedKeyVersion)
+            throws IOException, GeneralSecurityException {
+            return keyProvider.decryptEncryptedKey(encryptedKeyVersion);
+        }
+
+        int getPoolSize(String keyName) {
+            KeyQueue queue = queues.get(keyName);
+            return queue == null ? 0 : queue.size.get();
+        }
+
+        void close() {
+            refillExecutor.shutdownNow();
+        }
+
+        private KeyQueue getQueue(String keyName) {
+            KeyQueue queue = queues.get(keyName);
+            if (queue == null) {
+                queue = new KeyQueue();
+                KeyQueue existing = queues.putIfAbsent(keyName, queue);
+                if (existing != null) {
+                    queue = existing;
+                }
+            }
+            return queue;
+        }
+
+        private void scheduleRefill(final String keyName, final KeyQueue queue) {
+            if (!queue.refilling.compareAndSet(false, true)) {
+                return;
+            }
+            refillExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        // Stop if the queue is drained (e.g. on a rollover) while it is being refilled
+                        while (queue.size.get() < capacity && queues.get(keyName) == queue) {
+                            queue.add(keyProvider.generateEncryptedKey(keyName));
+                        }
+                        refills.incrementAndGet();
+                    } catch (Exception ex) {
+                        // The next request that finds the queue empty generates the EEK itself, and gets the error
+                    } finally {
+                        queue.refilling.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    private static final class KeyQueue {
+        private final ConcurrentLinkedQueue<EncryptedKeyVersion> keys = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean refilling = new AtomicBoolean();
+
+        void add(EncryptedKeyVersion encryptedKey) {
+            keys.offer(encryptedKey);
+            size.incrementAndGet();
+        }
+    }
+
+}
@@ -17,11 +17,10 @@
 
 package org.apache.coheigea.bigdata.kms.ranger;
 
-import java.io.File;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
+import java.io.Closeable;
 import java.util.List;
 
+import org.apache.coheigea.bigdata.ranger.LocalPolicySource;
 import org.apache.ranger.admin.client.RangerAdminClient;
 import org.apache.ranger.plugin.util.GrantRevokeRequest;
 import org.apache.ranger.plugin.util.ServicePolicies;
@@ -29,38 +28,29 @@ import org.apache.ranger.plugin.util.ServiceTags;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
 /**
- * A test implementation of the RangerAdminClient interface that just reads policies in from a file and returns them
+ * A test implementation of the RangerAdminClient interface that just reads policies in from a file and returns them.
+ * The file is only read in again if it has changed, and null is returned if the policy version has not changed.
+ * The clients share a LocalPolicySource for the file, which is released when a client is closed or initialized again.
  */
-public class RangerAdminClientImpl implements RangerAdminClient {
+public class RangerAdminClientImpl implements RangerAdminClient, Closeable {
     private static final Logger LOG = LoggerFactory.getLogger(RangerAdminClientImpl.class);
     private final static String cacheFilename = "kms-policies.json";
-    private Gson gson;
+    private LocalPolicySource policySource;
 
     public void init(String serviceName, String appId, String configPropertyPrefix) {
-        Gson gson = null;
+        close();
         try {
-            gson = new GsonBuilder().setDateFormat("yyyyMMdd-HH:mm:ss.SSS-Z").setPrettyPrinting().create();
+            policySource = LocalPolicySource.open(
+                LocalPolicySource.resolve("src/test/resources", cacheFilename),
+                null);
         } catch(Throwable excp) {
-            LOG.error("RangerAdminClientImpl: failed to create GsonBuilder object", excp);
+            LOG.error("RangerAdminClientImpl: failed to create the LocalPolicySource", excp);
         }
-        this.gson = gson;
     }
 
     public ServicePolicies getServicePoliciesIfUpdated(long lastKnownVersion) throws Exception {
-
-        String basedir = System.getProperty("basedir");
-        if (basedir == null) {
-            basedir = new File(".").getCanonicalPath();
-        }
-
-        java.nio.file.Path cachePath = FileSystems.getDefault().getPath(basedir, "/src/test/resources/" + cacheFilename);
-        byte[] cacheBytes = Files.readAllBytes(cachePath);
-
-        return gson.fromJson(new String(cacheBytes), ServicePolicies.class);
+        return policySource.getServicePoliciesIfUpdated(lastKnownVersion);
     }
 
     public ServicePolicies getServicePoliciesIfUpdated(long lastKnownVersion, long lastActivationTimeInMillis) throws Exception {
@@ -76,8 +66,7 @@ public class RangerAdminClientImpl implements RangerAdminClient {
     }
 
     public ServiceTags getServiceTagsIfUpdated(long lastKnownVersion) throws Exception {
-        return null;
-        
+        return policySource.getServiceTagsIfUpdated(lastKnownVersion);
     }
 
     public ServiceTags getServiceTagsIfUpdated(long lastKnownVersion, long lastActivationTimeInMillis) throws Exception {
@@ -88,5 +77,13 @@ public class RangerAdminClientImpl implements RangerAdminClient {
         return null;
     }
 
+    @Override
+    public synchronized void close() {
+        if (policySource != null) {
+            policySource.close();
+            policySource = null;
+        }
+    }
+
     
 }
@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.ranger.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.ranger.plugin.contextenricher.RangerContextEnricher;
+import org.apache.ranger.plugin.contextenricher.RangerTagEnricher;
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.model.RangerPolicy.RangerPolicyItem;
+import org.apache.ranger.plugin.model.RangerPolicy.RangerPolicyItemAccess;
+import org.apache.ranger.plugin.model.RangerPolicy.RangerPolicyResource;
+import org.apache.ranger.plugin.model.RangerServiceDef;
+import org.apache.ranger.plugin.model.RangerServiceDef.RangerAccessTypeDef;
+import org.apache.ranger.plugin.model.RangerServiceDef.RangerContextEnricherDef;
+import org.apache.ranger.plugin.model.RangerServiceDef.RangerResourceDef;
+import org.apache.ranger.plugin.model.RangerServiceResource;
+import org.apache.ranger.plugin.model.RangerTag;
+import org.apache.ranger.plugin.model.RangerTagDef;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequest;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequestImpl;
+import org.apache.ranger.plugin.policyengine.RangerAccessResourceImpl;
+import org.apache.ranger.plugin.policyengine.RangerPolicyEngine;
+import org.apache.ranger.plugin.policyengine.RangerPolicyEngineImpl;
+import org.apache.ranger.plugin.policyengine.RangerPolicyEngineOptions;
+import org.apache.ranger.plugin.util.ServicePolicies;
+import org.apache.ranger.plugin.util.ServiceTags;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Loads the policies of a service (e.g. "hdfs-policies.json", as used by the functional tests of that service), and
+ * adds synthetic policies and tags to them, so that the cost of evaluating a request can be measured as the number of
+ * policies and tags grows:
+ *
+ * - Synthetic policy "n" is on the top-level resource "bench<n>" ("/bench/<n>" for a path), with "*" for each of the
+ *   resources below it, and allows "user<n % 100>" the first access type of the service.
+ * - Tag "n" (there are at most as many tags as synthetic policies) is a tag of type "BenchTag<n>" on the top-level
+ *   resource of synthetic policy "n", with a tag policy that allows the same user the same access.
+ *
+ * The tag policies and the tag service definition are taken from the policy file of the service, or from the HDFS
+ * policy file for the services that have none. The TagEnricher is given the tags directly, rather than via a tag
+ * retriever.
+ */
+public class BenchmarkPolicies {
+
+    public static final String[] SERVICES = {"hdfs", "hive", "hbase", "kafka", "solr", "knox", "kms", "storm"};
+
+    static final int USERS = 100;
+
+    private static final long FIRST_SYNTHETIC_ID = 100000L;
+    private static final String PATH_MATCHER = "RangerPathResourceMatcher";
+
+    private static final Gson GSON = new GsonBuilder().setDateFormat("yyyyMMdd-HH:mm:ss.SSS-Z").create();
+
+    private final String service;
+    private final int policyCount;
+    private final ServicePolicies servicePolicies;
+    private final ServiceTags serviceTags;
+    private final List<String> resourceHierarchy = new ArrayList<>();
+    private final boolean pathResource;
+    private final String accessType;
+
+    public BenchmarkPolicies(String service, int policyCount, int tagCount) throws IOException {
+        if (policyCount < 1 || tagCount > policyCount) {
+            throw new IllegalArgumentException("There must be at least one synthetic policy, and no more tags than "
+                                               + "synthetic policies");
+        }
+        this.service = service;
+        this.policyCount = policyCount;
+        servicePolicies = readServicePolicies(service);
+
+        // Follow the first resource at each level of the service definition, e.g. database -> table -> column
+        RangerServiceDef serviceDef = servicePolicies.getServiceDef();
+        String parent = "";
+        RangerResourceDef resourceDef;
+        boolean path = false;
+        while ((resourceDef = getChild(serviceDef, parent)) != null) {
+            if (resourceHierarchy.isEmpty()) {
+                path = resourceDef.getMatcher() != null && resourceDef.getMatcher().endsWith(PATH_MATCHER);
+            }
+            resourceHierarchy.add(resourceDef.getName());
+            parent = resourceDef.getName();
+        }
+        pathResource = path;
+        accessType = serviceDef.getAccessTypes().get(0).getName();
+
+        List<RangerPolicy> policies = new ArrayList<>(servicePolicies.getPolicies());
+        for (int i = 0; i < policyCount; i++) {
+            Map<String, RangerPolicyResource> resources = new HashMap<>();
+            for (int level = 0; level < resourceHierarchy.size(); level++) {
+                resources.put(resourceHierarchy.get(level),
+                              new RangerPolicyResource(level == 0 ? getTopLevelValue(i) : "*", false, pathResource));
+            }
+            policies.add(createPolicy(FIRST_SYNTHETIC_ID + i, "bench-" + i, servicePolicies.getServiceName(),
+                                      resources, accessType, i));
+        }
+        servicePolicies.setPolicies(policies);
+
+        if (tagCount == 0) {
+            servicePolicies.setTagPolicies(null);
+            serviceTags = null;
+        } else {
+            serviceTags = createTags(tagCount);
+        }
+    }
+
+    /**
+     * Create a new policy engine, as a plugin of the service would, and give it the tags
+     */
+    public RangerPolicyEngine createPolicyEngine() {
+        RangerPolicyEngineOptions options = new RangerPolicyEngineOptions();
+        RangerPolicyEngine policyEngine = new RangerPolicyEngineImpl(service, servicePolicies, options);
+        if (serviceTags != null) {
+            for (RangerContextEnricher enricher : policyEngine.getAllContextEnrichers()) {
+                if (enricher instanceof RangerTagEnricher) {
+                    ((RangerTagEnricher)enricher).setServiceTags(serviceTags);
+                }
+            }
+        }
+        return policyEngine;
+    }
+
+    /**
+     * Create a stream of requests on the resources of the synthetic policies. One request in four is from a user that
+     * is not allowed access by any policy, so that every policy that matches the resource is evaluated.
+     */
+    public RangerAccessRequest[] createRequests(int count, long seed) {
+        Random random = new Random(seed);
+        RangerAccessRequest[] requests = new RangerAccessRequest[count];
+        for (int r = 0; r < count; r++) {
+            int policy = random.nextInt(policyCount);
+            RangerAccessResourceImpl resource = new RangerAccessResourceImpl();
+            for (int level = 0; level < resourceHierarchy.size(); level++) {
+                String value;
+                if (level > 0) {
+                    value = resourceHierarchy.get(level) + r;
+                } else if (pathResource) {
+                    value = getTopLevelValue(policy) + "/file" + r;
+                } else {
+                    value = getTopLevelValue(policy);
+                }
+                resource.setValue(resourceHierarchy.get(level), value);
+            }
+            String user = r % 4 == 3 ? "nobody" : "user" + (policy % USERS);
+            RangerAccessRequestImpl request =
+                new RangerAccessRequestImpl(resource, accessType, user, Collections.<String>emptySet());
+            request.setAction(accessType);
+            requests[r] = request;
+        }
+        return requests;
+    }
+
+    private String getTopLevelValue(int policy) {
+        return pathResource ? "/bench/" + policy : "bench" + policy;
+    }
+
+    private ServiceTags createTags(int tagCount) throws IOException {
+        ServicePolicies.TagPolicies tagPolicies = servicePolicies.getTagPolicies();
+        if (tagPolicies == null) {
+            tagPolicies = readServicePolicies("hdfs").getTagPolicies();
+            tagPolicies.setPolicies(new ArrayList<RangerPolicy>());
+            servicePolicies.setTagPolicies(tagPolicies);
+        }
+
+        // The tags are given to the TagEnricher directly, so it must not start a tag retriever
+        RangerServiceDef tagServiceDef = tagPolicies.getServiceDef();
+        for (RangerContextEnricherDef enricherDef : tagServiceDef.getContextEnrichers()) {
+            enricherDef.setEnricherOptions(new HashMap<String, String>());
+        }
+
+        // The tag service definition must have the access types of the service, e.g. "kms:create"
+        String serviceType = servicePolicies.getServiceDef().getName();
+        String tagAccessType = serviceType + ":" + accessType;
+        long maxItemId = 0L;
+        boolean found = false;
+        for (RangerAccessTypeDef accessTypeDef : tagServiceDef.getAccessTypes()) {
+            maxItemId = Math.max(maxItemId, accessTypeDef.getItemId());
+            found |= tagAccessType.equals(accessTypeDef.getName());
+        }
+        if (!found) {
+            RangerAccessTypeDef accessTypeDef = new RangerAccessTypeDef();
+            accessTypeDef.setItemId(maxItemId + 1);
+            accessTypeDef.setName(tagAccessType);
+            accessTypeDef.setLabel(tagAccessType);
+            tagServiceDef.getAccessTypes().add(accessTypeDef);
+        }
+
+        List<RangerPolicy> policies = new ArrayList<>(tagPolicies.getPolicies());
+        Map<Long, RangerTag> tags = new HashMap<>();
+        List<RangerServiceResource> serviceResources = new ArrayList<>();
+        Map<Long, List<Long>> resourceToTagIds = new HashMap<>();
+        for (int i = 0; i < tagCount; i++) {
+            long id = i + 1L;
+            RangerTag tag = new RangerTag();
+            tag.setId(id);
+            tag.setType("BenchTag" + i);
+            tags.put(id, tag);
+
+            RangerServiceResource serviceResource = new RangerServiceResource();
+            serviceResource.setId(id);
+            serviceResource.setServiceName(servicePolicies.getServiceName());
+            serviceResource.setResourceElements(Collections.singletonMap(
+                resourceHierarchy.get(0), new RangerPolicyResource(getTopLevelValue(i), false, pathResource)));
+            serviceResources.add(serviceResource);
+            resourceToTagIds.put(id, Collections.singletonList(id));
+
+            policies.add(createPolicy(FIRST_SYNTHETIC_ID + i, "bench-tag-" + i, tagPolicies.getServiceName(),
+                                      Collections.singletonMap("tag", new RangerPolicyResource("BenchTag" + i)),
+                                      tagAccessType, i));
+        }
+        tagPolicies.setPolicies(policies);
+
+        ServiceTags result = new ServiceTags();
+        result.setServiceName(servicePolicies.getServiceName());
+        result.setTagVersion(1L);
+        result.setTagDefinitions(new HashMap<Long, RangerTagDef>());
+        result.setTags(tags);
+        result.setServiceResources(serviceResources);
+        result.setResourceToTagIds(resourceToTagIds);
+        return result;
+    }
+
+    private static RangerPolicy createPolicy(long id, String name, String serviceName,
+                                             Map<String, RangerPolicyResource> resources, String accessType,
+                                             int user) {
+        RangerPolicy policy = new RangerPolicy();
+        policy.setId(id);
+        policy.setService(serviceName);
+        policy.setName(name);
+        policy.setIsAuditEnabled(false);
+        policy.setResources(resources);
+
+        RangerPolicyItem item = new RangerPolicyItem();
+        item.setAccesses(Collections.singletonList(new RangerPolicyItemAccess(accessType, true)));
+        item.setUsers(Collections.singletonList("user" + (user % USERS)));
+        policy.setPolicyItems(Collections.singletonList(item));
+        return policy;
+    }
+
+    private static RangerResourceDef getChild(RangerServiceDef serviceDef, String parent) {
+        for (RangerResourceDef resourceDef : serviceDef.getResources()) {
+            String resourceParent = resourceDef.getParent() == null ? "" : resourceDef.getParent();
+            if (resourceParent.equals(parent)) {
+                return resourceDef;
+            }
+        }
+        return null;
+    }
+
+    private static ServicePolicies readServicePolicies(String service) throws IOException {
+        String fileName = "/" + service + "-policies.json";
+        InputStream inputStream = BenchmarkPolicies.class.getResourceAsStream(fileName);
+        if (inputStream == null) {
+            throw new IOException("The policy file " + fileName + " could not be found");
+        }
+        try (Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+            return GSON.fromJson(reader, ServicePolicies.class);
+        }
+    }
+
+}
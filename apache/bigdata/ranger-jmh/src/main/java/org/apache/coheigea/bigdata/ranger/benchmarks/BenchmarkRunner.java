@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.ranger.benchmarks;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count, writing the results for each run as JSON, so that they can be compared
+ * between Ranger releases. It is configured via system properties:
+ *
+ *  - benchmarks: A regular expression for the benchmarks to run (default "RangerPolicyEngine")
+ *  - threads: A comma separated list of thread counts (default "1,4,16")
+ *  - resultDir: The directory to write the results to (default "target/jmh-results")
+ *  - ranger.version: Used to name the results sub-directory (default "current")
+ *  - param.<name>: Overrides the values of the given @Param, e.g. -Dparam.service=hdfs,hive
+ *  - prof: A comma separated list of profilers to enable, e.g. -Dprof=gc for allocation rates
+ */
+public final class BenchmarkRunner {
+
+    private static final String PARAM_PREFIX = "param.";
+
+    private BenchmarkRunner() {
+        // complete
+    }
+
+    public static void main(String[] args) throws Exception {
+        String benchmarks = System.getProperty("benchmarks", "RangerPolicyEngine");
+        String[] threadCounts = System.getProperty("threads", "1,4,16").split(",");
+        File resultDir =
+            new File(System.getProperty("resultDir", "target/jmh-results"),
+                     "ranger-" + System.getProperty("ranger.version", "current"));
+        resultDir.mkdirs();
+
+        for (String threadCount : threadCounts) {
+            int threads = Integer.parseInt(threadCount.trim());
+            File result = new File(resultDir, "threads-" + threads + ".json");
+
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(benchmarks)
+                .threads(threads)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.getPath());
+
+            String profilers = System.getProperty("prof");
+            if (profilers != null) {
+                for (String profiler : profilers.split(",")) {
+                    options.addProfiler(profiler.trim());
+                }
+            }
+
+            for (String name : System.getProperties().stringPropertyNames()) {
+                if (name.startsWith(PARAM_PREFIX)) {
+                    options.param(name.substring(PARAM_PREFIX.length()), System.getProperty(name).split(","));
+                }
+            }
+
+            new Runner(options.build()).run();
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.ranger.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.policyengine.RangerAccessRequest;
+import org.apache.ranger.plugin.policyengine.RangerAccessResult;
+import org.apache.ranger.plugin.policyengine.RangerPolicyEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput and latency (via the SampleTime mode) of an authorization decision by the Ranger plugin of
+ * each service, with the policies of the functional tests of that service plus a given number of synthetic policies
+ * and tags (see BenchmarkPolicies). Each decision is what RangerBasePlugin.isAccessAllowed does for every request,
+ * i.e. the request is enriched with its tags, and then evaluated against the access policies, without auditing.
+ *
+ * The policy engine is shared by all of the threads, as it is by a plugin. Each thread has its own stream of
+ * requests, which is generated in advance.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RangerPolicyEngineBenchmark {
+
+    private static final int REQUESTS = 4096;
+
+    @State(Scope.Benchmark)
+    public static class PolicyEngineState {
+
+        @Param({"hdfs", "hive", "hbase", "kafka", "solr", "knox", "kms", "storm"})
+        String service;
+
+        @Param({"10", "100", "1000", "10000"})
+        int policyCount;
+
+        // The number of tags, as a percentage of the synthetic policies (there can't be more tags than policies)
+        @Param({"0", "10", "100"})
+        int tagPercent;
+
+        BenchmarkPolicies policies;
+        RangerPolicyEngine policyEngine;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            if (tagPercent < 0 || tagPercent > 100) {
+                throw new IllegalArgumentException("tagPercent must be between 0 and 100, not " + tagPercent);
+            }
+            policies = new BenchmarkPolicies(service, policyCount, policyCount * tagPercent / 100);
+            policyEngine = policies.createPolicyEngine();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            policyEngine.cleanup();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RequestState {
+
+        RangerAccessRequest[] requests;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(PolicyEngineState engineState) {
+            requests = engineState.policies.createRequests(REQUESTS, Thread.currentThread().getId());
+        }
+
+        RangerAccessRequest nextRequest() {
+            RangerAccessRequest request = requests[next];
+            next = (next + 1) % requests.length;
+            return request;
+        }
+    }
+
+    @Benchmark
+    public RangerAccessResult isAccessAllowed(PolicyEngineState engineState, RequestState requestState) {
+        RangerAccessRequest request = requestState.nextRequest();
+        engineState.policyEngine.preProcess(request);
+        return engineState.policyEngine.evaluatePolicies(request, RangerPolicy.POLICY_TYPE_ACCESS, null);
+    }
+
+}
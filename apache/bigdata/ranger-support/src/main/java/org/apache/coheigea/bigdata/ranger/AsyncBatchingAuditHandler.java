@@ -0,0 +1,557 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.ranger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ranger.audit.model.AuditEventBase;
+import org.apache.ranger.audit.provider.AuditHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * A Ranger audit destination that queues the audit events in a bounded ring buffer, and writes them in batches to a
+ * local file (a stand-in for Solr) on a background thread, so that the authorization path only pays for an enqueue.
+ * It is plugged in via the "ranger-<service>-audit.xml" file of a plugin:
+ *
+ * xasecure.audit.destination.batch=true
+ * xasecure.audit.destination.batch.classname=org.apache.coheigea.bigdata.ranger.AsyncBatchingAuditHandler
+ * xasecure.audit.destination.batch.queue=none
+ *
+ * The "queue=none" stops Ranger from putting its own batch queue in front of this destination. The other properties
+ * (all prefixed with "xasecure.audit.destination.batch.") are:
+ *
+ * - dir: The directory to write "<name>-audit.log" (and "<name>-spill.log") to (default "target/audit")
+ * - buffer.size: The capacity of the ring buffer (default 8192). 0 writes each event inline, on the caller's thread.
+ * - batch.size: The maximum number of events per write (default 500)
+ * - flush.interval.ms: How long to wait for a full batch before writing a partial one (default 1000)
+ * - overflow: What to do with an event when the ring buffer is full, "spill" (to "<name>-spill.log", default) or
+ *   "drop". Spilled events are written to the audit log once the ring buffer has drained, so they are out of order.
+ * - sink.latency.ms: A delay per write, to simulate the round trip to a remote audit store (default 0)
+ *
+ * The queue depth, the counts and the enqueue latency are published via JMX, as
+ * "org.apache.coheigea.bigdata.ranger:type=AsyncBatchingAuditHandler,name=<name>".
+ */
+public class AsyncBatchingAuditHandler implements AuditHandler, AsyncBatchingAuditHandlerMXBean {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncBatchingAuditHandler.class);
+
+    public static final String OBJECT_NAME_PREFIX =
+        "org.apache.coheigea.bigdata.ranger:type=AsyncBatchingAuditHandler,name=";
+    public static final String DEFAULT_PROPERTY_PREFIX = "xasecure.audit.destination.batch";
+
+    private final Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss.SSS").create();
+
+    private String name = "batch";
+    private Path auditFile;
+    private Path spillFile;
+    private Path replayFile;
+    private int capacity;
+    private int batchSize;
+    private long flushIntervalMs;
+    private long sinkLatencyMs;
+    private boolean spill;
+
+    private EventRingBuffer buffer;
+    private Thread flusher;
+    private volatile boolean running;
+
+    private final Object sinkLock = new Object();
+    private Writer auditWriter;
+    private final Object spillLock = new Object();
+    private Writer spillWriter;
+    private volatile boolean spillPending;
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private final LatencyHistogram enqueueLatency = new LatencyHistogram();
+
+    @Override
+    public void init(Properties props) {
+        init(props, DEFAULT_PROPERTY_PREFIX);
+    }
+
+    @Override
+    public void init(Properties props, String basePropertyName) {
+        name = basePropertyName.substring(basePropertyName.lastIndexOf('.') + 1);
+        Path dir = Paths.get(getProperty(props, basePropertyName, "dir", "target/audit"));
+        auditFile = dir.resolve(name + "-audit.log");
+        spillFile = dir.resolve(name + "-spill.log");
+        replayFile = dir.resolve(name + "-spill.replay");
+        capacity = Integer.parseInt(getProperty(props, basePropertyName, "buffer.size", "8192"));
+        batchSize = Integer.parseInt(getProperty(props, basePropertyName, "batch.size", "500"));
+        flushIntervalMs = Long.parseLong(getProperty(props, basePropertyName, "flush.interval.ms", "1000"));
+        sinkLatencyMs = Long.parseLong(getProperty(props, basePropertyName, "sink.latency.ms", "0"));
+
+        String overflow = getProperty(props, basePropertyName, "overflow", "spill");
+        if (!"spill".equalsIgnoreCase(overflow) && !"drop".equalsIgnoreCase(overflow)) {
+            throw new IllegalArgumentException("Unknown audit overflow policy: " + overflow);
+        }
+        spill = "spill".equalsIgnoreCase(overflow);
+        buffer = capacity > 0 ? new EventRingBuffer(capacity, batchSize) : null;
+    }
+
+    private static String getProperty(Properties props, String basePropertyName, String key, String defaultValue) {
+        String value = props == null ? null : props.getProperty(basePropertyName + "." + key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    @Override
+    public void start() {
+        try {
+            Files.createDirectories(auditFile.getParent());
+            auditWriter = Files.newBufferedWriter(auditFile, StandardCharsets.UTF_8,
+                                                  StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException ex) {
+            throw new RuntimeException("Error opening the audit log " + auditFile, ex);
+        }
+        registerMBean();
+
+        if (buffer != null) {
+            running = true;
+            flusher = new Thread(new Runnable() {
+                public void run() {
+                    flushLoop();
+                }
+            }, "AuditFlusher-" + name);
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (flusher != null) {
+            buffer.wakeUp();
+            try {
+                flusher.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            flusher = null;
+        }
+        synchronized (spillLock) {
+            closeQuietly(spillWriter);
+            spillWriter = null;
+        }
+        synchronized (sinkLock) {
+            closeQuietly(auditWriter);
+            auditWriter = null;
+        }
+        unregisterMBean();
+    }
+
+    @Override
+    public void waitToComplete() {
+        waitToComplete(-1L);
+    }
+
+    /**
+     * Wait until the ring buffer is empty and the spilled events have been written, or until the timeout (in
+     * milliseconds) expires. A negative timeout waits indefinitely.
+     */
+    @Override
+    public void waitToComplete(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (buffer != null && running && (buffer.size() > 0 || spillPending)
+            && (timeout < 0 || System.currentTimeMillis() < deadline)) {
+            try {
+                Thread.sleep(10L);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        synchronized (sinkLock) {
+            try {
+                if (auditWriter != null) {
+                    auditWriter.flush();
+                }
+            } catch (IOException ex) {
+                LOG.warn("AsyncBatchingAuditHandler: failed to flush the audit log", ex);
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean log(AuditEventBase event) {
+        return enqueue(event);
+    }
+
+    @Override
+    public boolean log(Collection<AuditEventBase> events) {
+        for (AuditEventBase event : events) {
+            enqueue(event);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean logJSON(String event) {
+        return enqueue(event);
+    }
+
+    @Override
+    public boolean logJSON(Collection<String> events) {
+        for (String event : events) {
+            enqueue(event);
+        }
+        return true;
+    }
+
+    /**
+     * Queue the event (an AuditEventBase, or a String that is already JSON). The event is serialized on the flusher
+     * thread, unless it is written inline or spilled.
+     */
+    private boolean enqueue(Object event) {
+        long start = System.nanoTime();
+        received.incrementAndGet();
+        if (buffer == null) {
+            write(Collections.singletonList(event));
+        } else {
+            int depth = buffer.offer(event);
+            if (depth < 0) {
+                overflow(event);
+            } else {
+                int max = maxQueueDepth.get();
+                while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+                    max = maxQueueDepth.get();
+                }
+            }
+        }
+        enqueueLatency.record(System.nanoTime() - start);
+        return true;
+    }
+
+    private void overflow(Object event) {
+        if (!spill) {
+            dropped.incrementAndGet();
+            return;
+        }
+        synchronized (spillLock) {
+            try {
+                if (spillWriter == null) {
+                    spillWriter = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                                                          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                spillWriter.write(toJson(event));
+                spillWriter.write('\n');
+                spilled.incrementAndGet();
+                spillPending = true;
+            } catch (IOException ex) {
+                LOG.warn("AsyncBatchingAuditHandler: failed to spill an audit event to " + spillFile, ex);
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    private void flushLoop() {
+        List<Object> batch = new ArrayList<>(batchSize);
+        while (true) {
+            boolean stopping = !running;
+            buffer.drainTo(batch, stopping ? 0L : flushIntervalMs);
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            } else if (spillPending) {
+                // The ring buffer has drained, so write the events that were spilled while it was full
+                replaySpill(batch);
+            } else if (stopping) {
+                return;
+            }
+        }
+    }
+
+    private void replaySpill(List<Object> batch) {
+        synchronized (spillLock) {
+            spillPending = false;
+            try {
+                closeQuietly(spillWriter);
+                spillWriter = null;
+                Files.move(spillFile, replayFile, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                LOG.warn("AsyncBatchingAuditHandler: failed to replay the spilled audit events in " + spillFile, ex);
+                return;
+            }
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                batch.add(line);
+                if (batch.size() >= batchSize) {
+                    write(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+            Files.delete(replayFile);
+        } catch (IOException ex) {
+            LOG.warn("AsyncBatchingAuditHandler: failed to replay the spilled audit events in " + replayFile, ex);
+        }
+    }
+
+    private void write(List<Object> events) {
+        long start = System.nanoTime();
+        synchronized (sinkLock) {
+            try {
+                for (Object event : events) {
+                    auditWriter.write(toJson(event));
+                    auditWriter.write('\n');
+                }
+                auditWriter.flush();
+                if (sinkLatencyMs > 0) {
+                    Thread.sleep(sinkLatencyMs);
+                }
+                written.addAndGet(events.size());
+            } catch (IOException ex) {
+                LOG.warn("AsyncBatchingAuditHandler: failed to write " + events.size() + " audit events", ex);
+                dropped.addAndGet(events.size());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                written.addAndGet(events.size());
+            }
+        }
+        batches.incrementAndGet();
+        flushNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    private String toJson(Object event) {
+        return event instanceof String ? (String)event : gson.toJson(event);
+    }
+
+    private static void closeQuietly(Writer writer) {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                LOG.debug("AsyncBatchingAuditHandler: failed to close a writer", ex);
+            }
+        }
+    }
+
+    private void registerMBean() {
+        try {
+            // The last handler with a given name wins, e.g. if a plugin is started more than once in the same JVM
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (Exception ex) {
+            LOG.warn("AsyncBatchingAuditHandler: failed to register the MBean", ex);
+        }
+    }
+
+    private void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (Exception ex) {
+            LOG.debug("AsyncBatchingAuditHandler: failed to unregister the MBean", ex);
+        }
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return buffer == null ? 0 : buffer.size();
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    @Override
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    @Override
+    public double getAverageFlushMillis() {
+        long count = batches.get();
+        return count == 0 ? 0.0 : flushNanos.get() / 1000000.0 / count;
+    }
+
+    @Override
+    public long getP50EnqueueLatencyNanos() {
+        return enqueueLatency.getPercentile(0.5);
+    }
+
+    @Override
+    public long getP99EnqueueLatencyNanos() {
+        return enqueueLatency.getPercentile(0.99);
+    }
+
+    @Override
+    public long getMaxEnqueueLatencyNanos() {
+        return enqueueLatency.getMax();
+    }
+
+    /**
+     * A bounded ring buffer of events, with many producers and a single consumer (the flusher thread). The consumer is
+     * woken up when a full batch is available.
+     */
+    private static final class EventRingBuffer {
+        private final Object[] slots;
+        private final int batchSize;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition batchAvailable = lock.newCondition();
+        private int head;
+        private int count;
+
+        EventRingBuffer(int capacity, int batchSize) {
+            this.slots = new Object[capacity];
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Add the event, returning the new depth, or -1 if the ring buffer is full
+         */
+        int offer(Object event) {
+            lock.lock();
+            try {
+                if (count == slots.length) {
+                    return -1;
+                }
+                slots[(head + count) % slots.length] = event;
+                count++;
+                if (count == batchSize) {
+                    batchAvailable.signal();
+                }
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Move up to a batch of events to the given list, waiting up to "waitMs" for a full batch
+         */
+        void drainTo(List<Object> batch, long waitMs) {
+            lock.lock();
+            try {
+                if (count < batchSize && waitMs > 0) {
+                    batchAvailable.await(waitMs, TimeUnit.MILLISECONDS);
+                }
+                int n = Math.min(count, batchSize);
+                for (int i = 0; i < n; i++) {
+                    int index = (head + i) % slots.length;
+                    batch.add(slots[index]);
+                    slots[index] = null;
+                }
+                head = (head + n) % slots.length;
+                count -= n;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void wakeUp() {
+            lock.lock();
+            try {
+                batchAvailable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+}
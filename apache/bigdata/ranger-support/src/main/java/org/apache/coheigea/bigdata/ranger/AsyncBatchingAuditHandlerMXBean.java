@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.ranger;
+
+/**
+ * The metrics of an AsyncBatchingAuditHandler. The enqueue latencies are the time spent in "log" by the caller
+ * (i.e. on the authorization path), and the percentiles are the upper bounds of power-of-two histogram buckets.
+ */
+public interface AsyncBatchingAuditHandlerMXBean {
+
+    int getQueueCapacity();
+
+    int getQueueDepth();
+
+    int getMaxQueueDepth();
+
+    long getReceivedCount();
+
+    long getWrittenCount();
+
+    long getDroppedCount();
+
+    long getSpilledCount();
+
+    long getBatchCount();
+
+    double getAverageFlushMillis();
+
+    long getP50EnqueueLatencyNanos();
+
+    long getP99EnqueueLatencyNanos();
+
+    long getMaxEnqueueLatencyNanos();
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.ranger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies with a bucket per power of two nanoseconds, which is cheap enough to record on
+ * the authorization path. The percentiles are the upper bounds of the buckets they fall in.
+ */
+public final class LatencyHistogram {
+
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(64);
+
+    public void record(long latency) {
+        histogram.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(latency, 1L)) - 1);
+        long max = maxLatency.get();
+        while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+            max = maxLatency.get();
+        }
+    }
+
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            total += histogram.get(i);
+        }
+        long rank = (long)Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            seen += histogram.get(i);
+            if (seen >= rank && seen > 0) {
+                return i == 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+        }
+        return 0L;
+    }
+
+    public long getMax() {
+        return maxLatency.get();
+    }
+
+}
@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.ranger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.util.ServicePolicies;
+import org.apache.ranger.plugin.util.ServiceTags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Reads Ranger policies (and optionally tags) in from local files, for use by the test implementations
+ * of the RangerAdminClient interface. Unlike reading and parsing the files on every refresh:
+ *
+ * - The files are only read in again when a WatchService reports that they have changed.
+ * - getServicePoliciesIfUpdated/getServiceTagsIfUpdated return null if the version has not changed.
+ * - The policies are parsed one at a time from a streaming JsonReader, rather than first reading the
+ *   whole file into a String.
+ * - Policy deltas are read in from "<policy file name>-delta.json" (e.g. "hdfs-policies-delta.json").
+ *   This has the same format as a Ranger 2.x delta response, i.e. a "policyVersion" and a list of
+ *   "policyDeltas", each with a "changeType" (0 = create, 1 = update, 2 = delete) and a "policy". The
+ *   deltas are applied to the policies that were last read in if the delta version is newer. Ranger
+ *   1.x plugins do not support deltas, so the result is still returned as a full set of policies.
+ *
+ * Each LocalPolicySource has its own WatchService (and so a watch thread), which is released by close().
+ * The RangerAdminClient interface has no close method, and a plugin creates a new client every time it is
+ * initialized, so the clients use open() instead of the constructor. This returns a shared, reference counted
+ * LocalPolicySource for the given files, which is only closed when every client that opened it has closed it.
+ *
+ * A LocalPolicySource is thread-safe.
+ */
+public class LocalPolicySource implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(LocalPolicySource.class);
+
+    public static final int CHANGE_TYPE_POLICY_CREATE = 0;
+    public static final int CHANGE_TYPE_POLICY_UPDATE = 1;
+    public static final int CHANGE_TYPE_POLICY_DELETE = 2;
+
+    private static final Map<List<Path>, LocalPolicySource> SHARED_SOURCES = new HashMap<>();
+
+    private final Path policyFile;
+    private final Path deltaFile;
+    private final Path tagFile;
+    private final Gson gson;
+    private final JsonParser jsonParser = new JsonParser();
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    private WatchService watchService;
+    // Guarded by SHARED_SOURCES
+    private List<Path> sharedKey;
+    private int references = 1;
+
+    private boolean policiesChanged = true;
+    private boolean deltasChanged = true;
+    private boolean tagsChanged = true;
+    private ServicePolicies servicePolicies;
+    private ServiceTags serviceTags;
+
+    /**
+     * Create a new LocalPolicySource. The tag file is optional.
+     */
+    public LocalPolicySource(Path policyFile, Path tagFile) {
+        this.policyFile = policyFile.toAbsolutePath();
+        String fileName = this.policyFile.getFileName().toString();
+        String deltaFileName = fileName.endsWith(".json")
+            ? fileName.substring(0, fileName.length() - ".json".length()) + "-delta.json"
+            : fileName + "-delta";
+        this.deltaFile = this.policyFile.resolveSibling(deltaFileName);
+        this.tagFile = tagFile == null ? null : tagFile.toAbsolutePath();
+        this.gson = new GsonBuilder().setDateFormat("yyyyMMdd-HH:mm:ss.SSS-Z").create();
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            watch(this.policyFile.getParent());
+            if (this.tagFile != null) {
+                watch(this.tagFile.getParent());
+            }
+        } catch (IOException ex) {
+            LOG.warn("LocalPolicySource: failed to watch the policy files, they will be read in on every refresh", ex);
+            closeWatchService();
+        }
+    }
+
+    /**
+     * Return a shared LocalPolicySource for the given files, creating it if it is not open. The tag file is
+     * optional. The caller must close the LocalPolicySource when it is finished with it.
+     */
+    public static LocalPolicySource open(Path policyFile, Path tagFile) {
+        List<Path> key = Arrays.asList(policyFile.toAbsolutePath(), tagFile == null ? null : tagFile.toAbsolutePath());
+        synchronized (SHARED_SOURCES) {
+            LocalPolicySource source = SHARED_SOURCES.get(key);
+            if (source != null) {
+                source.references++;
+                return source;
+            }
+            source = new LocalPolicySource(policyFile, tagFile);
+            source.sharedKey = key;
+            SHARED_SOURCES.put(key, source);
+            return source;
+        }
+    }
+
+    /**
+     * Return the given file, relative to the "basedir" system property (or the current directory if it
+     * is not set), e.g. resolve("src/test/resources", "hdfs-policies.json").
+     */
+    public static Path resolve(String relativeDir, String fileName) throws IOException {
+        String basedir = System.getProperty("basedir");
+        if (basedir == null) {
+            basedir = new File(".").getCanonicalPath();
+        }
+        return FileSystems.getDefault().getPath(basedir, relativeDir, fileName);
+    }
+
+    /**
+     * Return the policies if their version is not "lastKnownVersion", otherwise null
+     */
+    public synchronized ServicePolicies getServicePoliciesIfUpdated(long lastKnownVersion) throws IOException {
+        pollChanges();
+
+        if (policiesChanged || servicePolicies == null) {
+            ServicePolicies loaded = readServicePolicies(policyFile);
+            policiesChanged = false;
+            // The deltas must be applied again on top of the new policies if they are newer
+            deltasChanged = true;
+            servicePolicies = loaded;
+        }
+        if (deltasChanged) {
+            deltasChanged = false;
+            if (Files.exists(deltaFile)) {
+                servicePolicies = applyDeltas(servicePolicies, deltaFile);
+            }
+        }
+
+        Long version = servicePolicies.getPolicyVersion();
+        if (version != null && version.longValue() == lastKnownVersion) {
+            return null;
+        }
+        return servicePolicies;
+    }
+
+    /**
+     * Return the tags if their version is not "lastKnownVersion", otherwise null. This also returns
+     * null if there is no tag file.
+     */
+    public synchronized ServiceTags getServiceTagsIfUpdated(long lastKnownVersion) throws IOException {
+        if (tagFile == null) {
+            return null;
+        }
+        pollChanges();
+
+        if (tagsChanged || serviceTags == null) {
+            try (Reader reader = Files.newBufferedReader(tagFile, StandardCharsets.UTF_8)) {
+                serviceTags = gson.fromJson(reader, ServiceTags.class);
+            }
+            tagsChanged = false;
+        }
+
+        Long version = serviceTags.getTagVersion();
+        if (version != null && version.longValue() == lastKnownVersion) {
+            return null;
+        }
+        return serviceTags;
+    }
+
+    /**
+     * Read in the policies from the given file. The policies are read in one at a time, and all of the
+     * other (small) fields are read in as a tree and then converted.
+     */
+    ServicePolicies readServicePolicies(Path file) throws IOException {
+        List<RangerPolicy> policies = null;
+        JsonObject otherFields = new JsonObject();
+
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("policies".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    policies = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        RangerPolicy policy = gson.fromJson(reader, RangerPolicy.class);
+                        policies.add(policy);
+                    }
+                    reader.endArray();
+                } else {
+                    otherFields.add(name, jsonParser.parse(reader));
+                }
+            }
+            reader.endObject();
+        }
+
+        ServicePolicies result = gson.fromJson(otherFields, ServicePolicies.class);
+        result.setPolicies(policies);
+        return result;
+    }
+
+    /**
+     * Apply the policy deltas in the given file to the policies, if the delta version is newer. The
+     * policies are not modified - a new ServicePolicies is returned instead.
+     */
+    ServicePolicies applyDeltas(ServicePolicies policies, Path file) throws IOException {
+        Long deltaVersion = null;
+        List<PolicyDelta> deltas = new ArrayList<>();
+
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("policyVersion".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                    deltaVersion = reader.nextLong();
+                } else if ("policyDeltas".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        PolicyDelta delta = gson.fromJson(reader, PolicyDelta.class);
+                        deltas.add(delta);
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        Long currentVersion = policies.getPolicyVersion();
+        if (deltaVersion == null || (currentVersion != null && deltaVersion <= currentVersion)) {
+            LOG.debug("LocalPolicySource: ignoring the policy deltas with version {}", deltaVersion);
+            return policies;
+        }
+
+        Map<Long, RangerPolicy> policiesById = new LinkedHashMap<>();
+        List<RangerPolicy> policiesWithoutId = new ArrayList<>();
+        if (policies.getPolicies() != null) {
+            for (RangerPolicy policy : policies.getPolicies()) {
+                if (policy.getId() == null) {
+                    policiesWithoutId.add(policy);
+                } else {
+                    policiesById.put(policy.getId(), policy);
+                }
+            }
+        }
+
+        for (PolicyDelta delta : deltas) {
+            if (delta.policy == null || delta.policy.getId() == null) {
+                LOG.warn("LocalPolicySource: ignoring a policy delta without a policy id");
+                continue;
+            }
+            switch (delta.changeType) {
+            case CHANGE_TYPE_POLICY_CREATE:
+            case CHANGE_TYPE_POLICY_UPDATE:
+                policiesById.put(delta.policy.getId(), delta.policy);
+                break;
+            case CHANGE_TYPE_POLICY_DELETE:
+                policiesById.remove(delta.policy.getId());
+                break;
+            default:
+                LOG.warn("LocalPolicySource: ignoring a policy delta with an unknown change type {}", delta.changeType);
+            }
+        }
+
+        List<RangerPolicy> updatedPolicies = new ArrayList<>(policiesWithoutId);
+        updatedPolicies.addAll(policiesById.values());
+
+        ServicePolicies result = new ServicePolicies();
+        result.setServiceName(policies.getServiceName());
+        result.setServiceId(policies.getServiceId());
+        result.setServiceDef(policies.getServiceDef());
+        result.setAuditMode(policies.getAuditMode());
+        result.setTagPolicies(policies.getTagPolicies());
+        result.setPolicies(updatedPolicies);
+        result.setPolicyVersion(deltaVersion);
+        result.setPolicyUpdateTime(new Date());
+        return result;
+    }
+
+    /**
+     * Close the LocalPolicySource, or if it is shared, release it, so that it is closed when it has been
+     * closed as many times as it was opened
+     */
+    @Override
+    public void close() {
+        synchronized (SHARED_SOURCES) {
+            if (--references > 0) {
+                return;
+            }
+            if (sharedKey != null && SHARED_SOURCES.get(sharedKey) == this) {
+                SHARED_SOURCES.remove(sharedKey);
+            }
+        }
+        closeWatchService();
+    }
+
+    private synchronized void closeWatchService() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ex) {
+                LOG.debug("LocalPolicySource: failed to close the WatchService", ex);
+            }
+            watchService = null;
+        }
+    }
+
+    private void watch(Path dir) throws IOException {
+        if (!watchedDirs.containsValue(dir)) {
+            WatchKey key = dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirs.put(key, dir);
+        }
+    }
+
+    private void pollChanges() {
+        if (watchService == null) {
+            // The files are not being watched, so assume that they have changed
+            policiesChanged = true;
+            tagsChanged = true;
+            return;
+        }
+
+        try {
+            WatchKey key;
+            while ((key = watchService.poll()) != null) {
+                Path dir = watchedDirs.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        policiesChanged = true;
+                        tagsChanged = true;
+                    } else if (dir != null) {
+                        Path changed = dir.resolve((Path)event.context());
+                        if (changed.equals(policyFile)) {
+                            policiesChanged = true;
+                        } else if (changed.equals(deltaFile)) {
+                            deltasChanged = true;
+                        } else if (changed.equals(tagFile)) {
+                            tagsChanged = true;
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    LOG.warn("LocalPolicySource: {} can no longer be watched", dir);
+                    closeWatchService();
+                    policiesChanged = true;
+                    tagsChanged = true;
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException ex) {
+            watchService = null;
+            policiesChanged = true;
+            tagsChanged = true;
+        }
+    }
+
+    /**
+     * A policy delta, in the same format as a Ranger 2.x RangerPolicyDelta
+     */
+    private static class PolicyDelta {
+        private int changeType;
+        private RangerPolicy policy;
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.ranger;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.ranger.audit.model.AuthzAuditEvent;
+import org.junit.Assert;
+
+/**
+ * Measures the cost of auditing on the authorization path, by logging audit events from several threads to an
+ * AsyncBatchingAuditHandler with a slow sink (a stand-in for Solr, with a delay per write). It compares writing each
+ * event inline with queueing the events in the ring buffer, and dropping or spilling them to disk when it is full.
+ *
+ * Each thread logs up to "audit.benchmark.events" events (the default is 50000), for at most "audit.benchmark.millis"
+ * milliseconds (the default is 2000). The number of threads is set via "audit.benchmark.threads" (the default is 8),
+ * and the delay per write via "audit.benchmark.sink.latency.ms" (the default is 2).
+ */
+public class AuditPipelinePerformanceTest {
+
+    private static final int THREADS = Integer.getInteger("audit.benchmark.threads", 8);
+    private static final int EVENTS = Integer.getInteger("audit.benchmark.events", 50000);
+    private static final long MILLIS = Long.getLong("audit.benchmark.millis", 2000L);
+    private static final String SINK_LATENCY = System.getProperty("audit.benchmark.sink.latency.ms", "2");
+
+    private static final String PREFIX = AsyncBatchingAuditHandler.DEFAULT_PROPERTY_PREFIX;
+
+    @org.junit.Test
+    public void testNoEventsLost() throws Exception {
+        Path dir = Paths.get("target", "audit-spill").toAbsolutePath();
+        deleteAuditFiles(dir);
+        Properties props = new Properties();
+        props.put(PREFIX + ".dir", dir.toString());
+        props.put(PREFIX + ".buffer.size", "64");
+        props.put(PREFIX + ".batch.size", "16");
+        props.put(PREFIX + ".flush.interval.ms", "10");
+        props.put(PREFIX + ".sink.latency.ms", "1");
+
+        AsyncBatchingAuditHandler handler = new AsyncBatchingAuditHandler();
+        handler.init(props);
+        handler.start();
+        run(handler, 5000, Long.MAX_VALUE);
+        handler.waitToComplete(60000L);
+        handler.stop();
+
+        // The ring buffer is far too small, so most of the events are spilled, but none are lost
+        Assert.assertEquals(THREADS * 5000L, handler.getReceivedCount());
+        Assert.assertTrue(handler.getSpilledCount() > 0);
+        Assert.assertEquals(0L, handler.getDroppedCount());
+        Assert.assertEquals(handler.getReceivedCount(), handler.getWrittenCount());
+        Assert.assertEquals(handler.getReceivedCount(), countLines(dir.resolve("batch-audit.log")));
+        Assert.assertFalse(Files.exists(dir.resolve("batch-spill.log")));
+    }
+
+    @org.junit.Test
+    public void testAuditPerformance() throws Exception {
+        System.out.println(String.format("Testing audit performance with %d threads, and a %s ms delay per write",
+                                         THREADS, SINK_LATENCY));
+        System.out.println(String.format("%-8s %12s %10s %10s %10s %10s %10s %10s %10s", "mode", "events/sec",
+                                         "p50 (ns)", "p99 (ns)", "max (ns)", "max depth", "dropped", "spilled",
+                                         "written"));
+        measure("inline", "0", "spill");
+        measure("drop", "8192", "drop");
+        measure("spill", "8192", "spill");
+    }
+
+    private static void measure(String mode, String bufferSize, String overflow) throws Exception {
+        Path dir = Paths.get("target", "audit-" + mode).toAbsolutePath();
+        deleteAuditFiles(dir);
+        Properties props = new Properties();
+        props.put(PREFIX + ".dir", dir.toString());
+        props.put(PREFIX + ".buffer.size", bufferSize);
+        props.put(PREFIX + ".overflow", overflow);
+        props.put(PREFIX + ".sink.latency.ms", SINK_LATENCY);
+
+        AsyncBatchingAuditHandler handler = new AsyncBatchingAuditHandler();
+        handler.init(props);
+        handler.start();
+        long start = System.nanoTime();
+        run(handler, EVENTS, System.currentTimeMillis() + MILLIS);
+        double seconds = (System.nanoTime() - start) / 1000000000.0;
+        handler.waitToComplete(60000L);
+        handler.stop();
+
+        System.out.println(String.format("%-8s %12.0f %10d %10d %10d %10d %10d %10d %10d", mode,
+                                         handler.getReceivedCount() / seconds, handler.getP50EnqueueLatencyNanos(),
+                                         handler.getP99EnqueueLatencyNanos(), handler.getMaxEnqueueLatencyNanos(),
+                                         handler.getMaxQueueDepth(), handler.getDroppedCount(),
+                                         handler.getSpilledCount(), handler.getWrittenCount()));
+        Assert.assertEquals(handler.getReceivedCount(), handler.getWrittenCount() + handler.getDroppedCount());
+    }
+
+    /**
+     * Log up to "events" audit events on each thread, until the deadline
+     */
+    private static void run(final AsyncBatchingAuditHandler handler, final int events, final long deadline)
+        throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                tasks.add(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        for (int i = 0; i < events && System.currentTimeMillis() < deadline; i++) {
+                            handler.log(createEvent(thread, i));
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static AuthzAuditEvent createEvent(int thread, int i) {
+        AuthzAuditEvent event = new AuthzAuditEvent();
+        event.setRepositoryName("cl1_hadoop");
+        event.setUser("user" + thread);
+        event.setEventTime(new Date());
+        event.setAccessType("read");
+        event.setResourcePath("/tmp/tmpdir/file" + i);
+        event.setResourceType("path");
+        event.setAccessResult((short)(i % 4 == 3 ? 0 : 1));
+        event.setAclEnforcer("ranger-acl");
+        event.setPolicyId(i % 10);
+        return event;
+    }
+
+    private static long countLines(Path file) throws Exception {
+        long lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            while (reader.readLine() != null) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static void deleteAuditFiles(Path dir) throws Exception {
+        Files.deleteIfExists(dir.resolve("batch-audit.log"));
+        Files.deleteIfExists(dir.resolve("batch-spill.log"));
+        Files.deleteIfExists(dir.resolve("batch-spill.replay"));
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.ranger;
+
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.ranger.plugin.model.RangerPolicy;
+import org.apache.ranger.plugin.model.RangerPolicy.RangerPolicyItem;
+import org.apache.ranger.plugin.model.RangerPolicy.RangerPolicyItemAccess;
+import org.apache.ranger.plugin.model.RangerPolicy.RangerPolicyResource;
+import org.apache.ranger.plugin.util.ServicePolicies;
+import org.junit.Assert;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Measures the CPU time and the memory allocated per policy refresh for a large number of policies
+ * (10000 by default, set via the "policy.count" system property). It compares reading the whole file in
+ * and parsing it with Gson on every refresh (what the RangerAdminClientImpl stand-ins used to do) with
+ * the LocalPolicySource, both when the policies have changed (a full streaming parse or a delta) and
+ * when they have not (which should be close to free).
+ */
+public class PolicyRefreshPerformanceTest {
+
+    private static final int POLICY_COUNT = Integer.getInteger("policy.count", 10000);
+    private static final int RUNS = Integer.getInteger("policy.refresh.runs", 20);
+    private static final int DELTA_COUNT = 10;
+
+    private static Gson gson = new GsonBuilder().setDateFormat("yyyyMMdd-HH:mm:ss.SSS-Z").create();
+    private static Path dir;
+    private static Path policyFile;
+    private static Path deltaFile;
+
+    @org.junit.BeforeClass
+    public static void setup() throws Exception {
+        dir = Paths.get("target", "policy-refresh").toAbsolutePath();
+        Files.createDirectories(dir);
+        policyFile = dir.resolve("test-policies.json");
+        deltaFile = dir.resolve("test-policies-delta.json");
+        Files.deleteIfExists(deltaFile);
+
+        ServicePolicies servicePolicies = new ServicePolicies();
+        servicePolicies.setServiceName("cl1_hadoop");
+        servicePolicies.setServiceId(1L);
+        servicePolicies.setPolicyVersion(1L);
+        servicePolicies.setPolicyUpdateTime(new Date());
+        servicePolicies.setAuditMode("audit-default");
+        List<RangerPolicy> policies = new ArrayList<>();
+        for (int i = 0; i < POLICY_COUNT; i++) {
+            policies.add(createPolicy(i, "read"));
+        }
+        servicePolicies.setPolicies(policies);
+
+        try (Writer writer = Files.newBufferedWriter(policyFile, StandardCharsets.UTF_8)) {
+            gson.toJson(servicePolicies, writer);
+        }
+        System.out.println("Wrote " + POLICY_COUNT + " policies (" + (Files.size(policyFile) / 1024) + "KB)");
+    }
+
+    @org.junit.Test
+    public void testStreamingParse() throws Exception {
+        try (LocalPolicySource source = new LocalPolicySource(policyFile, null)) {
+            ServicePolicies expected = gson.fromJson(new String(Files.readAllBytes(policyFile)), ServicePolicies.class);
+            ServicePolicies actual = source.getServicePoliciesIfUpdated(-1);
+
+            Assert.assertEquals(expected.getPolicyVersion(), actual.getPolicyVersion());
+            Assert.assertEquals(expected.getServiceName(), actual.getServiceName());
+            Assert.assertEquals(expected.getPolicies().size(), actual.getPolicies().size());
+            Assert.assertEquals(expected.getPolicies().get(POLICY_COUNT - 1).getName(),
+                                actual.getPolicies().get(POLICY_COUNT - 1).getName());
+
+            // The version has not changed
+            Assert.assertNull(source.getServicePoliciesIfUpdated(actual.getPolicyVersion()));
+        }
+    }
+
+    @org.junit.Test
+    public void testSharedSource() throws Exception {
+        LocalPolicySource source = LocalPolicySource.open(policyFile, null);
+        try {
+            // A plugin that is initialized again gets the same LocalPolicySource, rather than watching the file again
+            LocalPolicySource other = LocalPolicySource.open(policyFile, null);
+            Assert.assertSame(source, other);
+            other.close();
+            Assert.assertNotNull(source.getServicePoliciesIfUpdated(-1));
+        } finally {
+            source.close();
+        }
+
+        // It was closed as many times as it was opened, so a new LocalPolicySource is created
+        try (LocalPolicySource reopened = LocalPolicySource.open(policyFile, null)) {
+            Assert.assertNotSame(source, reopened);
+        }
+    }
+
+    @org.junit.Test
+    public void testPolicyDeltas() throws Exception {
+        try (LocalPolicySource source = new LocalPolicySource(policyFile, null)) {
+            ServicePolicies policies = source.getServicePoliciesIfUpdated(-1);
+            long version = policies.getPolicyVersion();
+
+            writeDeltas(deltaFile, version + 1);
+
+            // Wait for the WatchService to report the new delta file
+            ServicePolicies updated = null;
+            long timeout = System.currentTimeMillis() + 30000L;
+            while (updated == null && System.currentTimeMillis() < timeout) {
+                Thread.sleep(100L);
+                updated = source.getServicePoliciesIfUpdated(version);
+            }
+
+            Assert.assertNotNull("The policy deltas were not picked up", updated);
+            Assert.assertEquals(Long.valueOf(version + 1), updated.getPolicyVersion());
+            // The first delta deletes a policy, the others update one
+            Assert.assertEquals(POLICY_COUNT - 1, updated.getPolicies().size());
+            Assert.assertNull(source.getServicePoliciesIfUpdated(version + 1));
+        } finally {
+            Files.deleteIfExists(deltaFile);
+        }
+    }
+
+    @org.junit.Test
+    public void testRefreshPerformance() throws Exception {
+        final LocalPolicySource source = new LocalPolicySource(policyFile, null);
+        try {
+            final ServicePolicies policies = source.getServicePoliciesIfUpdated(-1);
+            final long version = policies.getPolicyVersion();
+            // The LocalPolicySource does not watch this file, so that the policies are not changed
+            final Path unwatchedDeltaFile = dir.resolve("test-deltas.json");
+            writeDeltas(unwatchedDeltaFile, version + 1);
+
+            System.out.println("Testing Policy Refresh Performance with " + POLICY_COUNT + " policies");
+            measure("Read + Gson parse", new Callable<Object>() {
+                public Object call() throws Exception {
+                    byte[] cacheBytes = Files.readAllBytes(policyFile);
+                    return gson.fromJson(new String(cacheBytes), ServicePolicies.class);
+                }
+            });
+            measure("Streaming parse", new Callable<Object>() {
+                public Object call() throws Exception {
+                    return source.readServicePolicies(policyFile);
+                }
+            });
+            measure("Apply " + DELTA_COUNT + " deltas", new Callable<Object>() {
+                public Object call() throws Exception {
+                    return source.applyDeltas(policies, unwatchedDeltaFile);
+                }
+            });
+            measure("Unchanged", new Callable<Object>() {
+                public Object call() throws Exception {
+                    Assert.assertNull(source.getServicePoliciesIfUpdated(version));
+                    return null;
+                }
+            });
+        } finally {
+            source.close();
+        }
+    }
+
+    private static void measure(String name, Callable<Object> refresh) throws Exception {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        // Warm up
+        for (int i = 0; i < RUNS; i++) {
+            refresh.call();
+        }
+
+        long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+        long allocatedStart = getAllocatedBytes(threadMXBean);
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            refresh.call();
+        }
+        double wall = (System.nanoTime() - start) / 1000000.0 / RUNS;
+        double cpu = (threadMXBean.getCurrentThreadCpuTime() - cpuStart) / 1000000.0 / RUNS;
+        double allocated = (getAllocatedBytes(threadMXBean) - allocatedStart) / (1024.0 * 1024.0) / RUNS;
+
+        System.out.println(String.format(
+            "%-20s %10.3f ms wall %10.3f ms cpu %10.3f MB allocated per refresh", name, wall, cpu, allocated));
+    }
+
+    private static long getAllocatedBytes(ThreadMXBean threadMXBean) {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)threadMXBean).getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+        }
+        return 0L;
+    }
+
+    private static void writeDeltas(Path file, long version) throws Exception {
+        JsonArray deltas = new JsonArray();
+        for (int i = 0; i < DELTA_COUNT; i++) {
+            JsonObject delta = new JsonObject();
+            int changeType = i == 0 ? LocalPolicySource.CHANGE_TYPE_POLICY_DELETE
+                : LocalPolicySource.CHANGE_TYPE_POLICY_UPDATE;
+            delta.addProperty("changeType", changeType);
+            delta.add("policy", gson.toJsonTree(createPolicy(i, "write")));
+            deltas.add(delta);
+        }
+        JsonObject deltaResponse = new JsonObject();
+        deltaResponse.addProperty("policyVersion", version);
+        deltaResponse.add("policyDeltas", deltas);
+
+        // Write it to a temporary file first, so that the WatchService does not see a partial file
+        Path tmp = dir.resolve("test-policies-delta.tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            gson.toJson(deltaResponse, writer);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static RangerPolicy createPolicy(int id, String accessType) {
+        RangerPolicy policy = new RangerPolicy();
+        policy.setId((long)id);
+        policy.setService("cl1_hadoop");
+        policy.setName("/data/dir" + id);
+        policy.setIsAuditEnabled(true);
+
+        Map<String, RangerPolicyResource> resources = new HashMap<>();
+        resources.put("path", new RangerPolicyResource("/data/dir" + id, false, true));
+        policy.setResources(resources);
+
+        RangerPolicyItem item = new RangerPolicyItem();
+        item.setAccesses(Collections.singletonList(new RangerPolicyItemAccess(accessType, true)));
+        item.setUsers(Collections.singletonList("user" + (id % 100)));
+        item.setGroups(Collections.singletonList("group" + (id % 10)));
+        policy.setPolicyItems(Collections.singletonList(item));
+        return policy;
+    }
+
+}
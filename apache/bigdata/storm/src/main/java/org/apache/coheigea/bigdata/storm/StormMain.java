@@ -20,6 +20,7 @@ package org.apache.coheigea.bigdata.storm;
 import org.apache.storm.Config;
 import org.apache.storm.StormSubmitter;
 import org.apache.storm.topology.TopologyBuilder;
+import org.apache.storm.tuple.Fields;
 
 /**
  * A simple test that wires a WordSpout + WordCounterBolt into a topology and runs it.
@@ -28,14 +29,27 @@ import org.apache.storm.topology.TopologyBuilder;
  * Deploy it via:
  *
  * mvn assembly:assembly
- * bin/storm jar target/bigdata-storm-demo-1.0-jar-with-dependencies.jar org.apache.coheigea.bigdata.storm.StormMain <path to words.txt>
+ * bin/storm jar target/bigdata-storm-demo-1.0-jar-with-dependencies.jar org.apache.coheigea.bigdata.storm.StormMain <path to words.txt> [shuffle|fields] [parallelism]
+ *
+ * In "shuffle" mode (the default) the words are distributed randomly over the WordCounterBolt tasks,
+ * which output a tuple per word. In "fields" mode each word is always sent to the same task, which
+ * outputs the changed counts once a second.
  */
 public class StormMain {
 
     public static void main(String[] args) throws Exception {
+        String grouping = args.length > 1 ? args[1] : "shuffle";
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
         final TopologyBuilder builder = new TopologyBuilder();
         builder.setSpout("words", new WordSpout(args[0]));
-        builder.setBolt("counter", new WordCounterBolt()).shuffleGrouping("words");
+        if ("fields".equals(grouping)) {
+            builder.setBolt("counter", new WordCounterBolt(1), parallelism).fieldsGrouping("words", new Fields("word"));
+        } else if ("shuffle".equals(grouping)) {
+            builder.setBolt("counter", new WordCounterBolt(), parallelism).shuffleGrouping("words");
+        } else {
+            throw new IllegalArgumentException("Unknown grouping: " + grouping);
+        }
 
         final Config conf = new Config();
         conf.setDebug(true);
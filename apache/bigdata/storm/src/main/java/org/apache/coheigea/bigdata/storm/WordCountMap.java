@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.storm;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing (linear probing) map from a word to a primitive long count, so that counting a
+ * word does not box the count or allocate a map entry. The map also keeps the change in each count
+ * since the last call to drainDeltas, and the slots that have changed, so that the changed counts can
+ * be emitted in a batch without scanning the whole table.
+ *
+ * It is not thread-safe - a bolt executor only calls a bolt from a single thread.
+ */
+public class WordCountMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private String[] keys;
+    private long[] counts;
+    private long[] deltas;
+    private int[] changedSlots;
+    private int changedSize;
+    private int size;
+    private int mask;
+
+    public WordCountMap() {
+        this(1024);
+    }
+
+    public WordCountMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, (int)(expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Add the given (positive) amount to the count of a word, and return the new count
+     */
+    public long add(String word, long amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("The amount must be positive");
+        }
+        int slot = slot(word);
+        if (keys[slot] == null) {
+            keys[slot] = word;
+            if (++size > keys.length * LOAD_FACTOR) {
+                rehash();
+                slot = slot(word);
+            }
+        }
+        if (deltas[slot] == 0) {
+            if (changedSize == changedSlots.length) {
+                changedSlots = Arrays.copyOf(changedSlots, changedSize * 2);
+            }
+            changedSlots[changedSize++] = slot;
+        }
+        deltas[slot] += amount;
+        return counts[slot] += amount;
+    }
+
+    /**
+     * Return the count of a word, or 0 if it has not been seen
+     */
+    public long get(String word) {
+        int slot = slot(word);
+        return keys[slot] == null ? 0 : counts[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Pass each word whose count has changed since the last call to the consumer, together with the
+     * change and the current count, and then reset the changes. Returns the number of words passed.
+     */
+    public int drainDeltas(DeltaConsumer consumer) {
+        int drained = changedSize;
+        for (int i = 0; i < changedSize; i++) {
+            int slot = changedSlots[i];
+            long delta = deltas[slot];
+            deltas[slot] = 0;
+            consumer.accept(keys[slot], delta, counts[slot]);
+        }
+        changedSize = 0;
+        return drained;
+    }
+
+    private int slot(String word) {
+        int h = word.hashCode() * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & mask;
+        String key;
+        while ((key = keys[slot]) != null && !key.equals(word)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        counts = new long[capacity];
+        deltas = new long[capacity];
+        changedSlots = new int[Math.max(16, capacity / 4)];
+        mask = capacity - 1;
+    }
+
+    private void rehash() {
+        String[] oldKeys = keys;
+        long[] oldCounts = counts;
+        long[] oldDeltas = deltas;
+        allocate(oldKeys.length * 2);
+
+        changedSize = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+                deltas[slot] = oldDeltas[i];
+                if (oldDeltas[i] != 0) {
+                    if (changedSize == changedSlots.length) {
+                        changedSlots = Arrays.copyOf(changedSlots, changedSize * 2);
+                    }
+                    changedSlots[changedSize++] = slot;
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the changed counts from drainDeltas
+     */
+    public interface DeltaConsumer {
+        void accept(String word, long delta, long count);
+    }
+
+}
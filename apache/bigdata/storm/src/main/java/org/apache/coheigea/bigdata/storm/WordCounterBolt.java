@@ -20,6 +20,7 @@ package org.apache.coheigea.bigdata.storm;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.storm.Config;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
@@ -27,40 +28,78 @@ import org.apache.storm.topology.base.BaseRichBolt;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.TupleUtils;
 
 /**
- * A Storm Bolt which reads in a word and counts it + outputs the word + current count
+ * A Storm Bolt which reads in a word and counts it + outputs the word + current count + the change
+ * in the count.
+ *
+ * By default a tuple is output for every word that is read in. If an emit frequency is given then
+ * the bolt instead asks Storm for a tick tuple every "emitFrequencySecs" seconds, and only outputs
+ * the words whose count has changed since the last tick, so that the output rate does not depend on
+ * the input rate. In this case the input tuples are acked when they are counted, and so the counts
+ * that have not been output yet are lost if the worker fails. The bolt should be wired with a
+ * fieldsGrouping on "word", so that each word is only counted by one task.
  */
 public class WordCounterBolt extends BaseRichBolt {
+    private final int emitFrequencySecs;
     private OutputCollector outputCollector;
-    private Map<String, Integer> countMap = new HashMap<>();
+    private WordCountMap countMap;
+    private WordCountMap.DeltaConsumer deltaEmitter;
+
+    public WordCounterBolt() {
+        this(0);
+    }
+
+    public WordCounterBolt(int emitFrequencySecs) {
+        if (emitFrequencySecs < 0) {
+            throw new IllegalArgumentException("The emit frequency must not be negative");
+        }
+        this.emitFrequencySecs = emitFrequencySecs;
+    }
 
     @Override
     public void execute(Tuple tuple) {
+        if (TupleUtils.isTick(tuple)) {
+            countMap.drainDeltas(deltaEmitter);
+            outputCollector.ack(tuple);
+            return;
+        }
+
         String word = tuple.getString(0);
-        
-        int count = 0;
-        if (countMap.containsKey(word)) {
-            count = countMap.get(word);
-            count++;
+        long count = countMap.add(word, 1);
+
+        if (emitFrequencySecs == 0) {
+            outputCollector.emit(new Values(word, count, 1L));
         }
-        count++;
-        countMap.put(word, count);
-        
-        outputCollector.emit(new Values(word, count));
         outputCollector.ack(tuple);
-        
     }
 
     @Override
     public void prepare(Map arg0, TopologyContext arg1, OutputCollector outputCollector) {
         this.outputCollector = outputCollector;
+        this.countMap = new WordCountMap();
+        this.deltaEmitter = new WordCountMap.DeltaConsumer() {
+            @Override
+            public void accept(String word, long delta, long count) {
+                WordCounterBolt.this.outputCollector.emit(new Values(word, count, delta));
+            }
+        };
     }
 
     @Override
     public void declareOutputFields(OutputFieldsDeclarer declarer) {
-        declarer.declare(new Fields("word", "count"));
+        declarer.declare(new Fields("word", "count", "delta"));
     }
-    
-    
+
+    @Override
+    public Map<String, Object> getComponentConfiguration() {
+        if (emitFrequencySecs == 0) {
+            return null;
+        }
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, emitFrequencySecs);
+        return conf;
+    }
+
 }
@@ -0,0 +1,333 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.storm;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.coheigea.bigdata.ranger.LatencyHistogram;
+import org.apache.storm.Config;
+import org.apache.storm.security.auth.IAuthorizer;
+import org.apache.storm.security.auth.ReqContext;
+
+/**
+ * An IAuthorizer that evaluates a set of rules, compiled once in "prepare". The rules are configured via
+ * "custom.authorizer.rules" in the Storm configuration, as a semicolon separated list of "user topologies operations":
+ *
+ * - the user is a principal name, or "*" for any authenticated principal
+ * - the topologies are a topology name, a prefix (e.g. "word-*"), or "*" for any topology, including the operations
+ *   that are not on a topology (e.g. "getClusterInfo")
+ * - the operations are a comma separated list of Nimbus operations (e.g. "submitTopology,getTopologyInfo"), or "*"
+ *
+ * The default is "alice * *", the same as the CustomIAuthorizer. Access is denied unless a rule matches. The
+ * decisions are cached per (principal, operation, topology), up to "custom.authorizer.cache.size" decisions (the
+ * default is 10000, 0 disables the cache).
+ *
+ * The permit/deny counts and the latency of each operation are published via JMX, as
+ * "org.apache.coheigea.bigdata.storm:type=RuleBasedIAuthorizer".
+ */
+public class RuleBasedIAuthorizer implements IAuthorizer, RuleBasedIAuthorizerMXBean {
+
+    public static final String RULES = "custom.authorizer.rules";
+    public static final String CACHE_SIZE = "custom.authorizer.cache.size";
+    public static final String OBJECT_NAME = "org.apache.coheigea.bigdata.storm:type=RuleBasedIAuthorizer";
+
+    private static final String ANY = "*";
+
+    private String rules;
+    private final Map<String, Integer> operationIndex = new HashMap<>();
+    private final Map<String, List<Rule>> userRules = new HashMap<>();
+    private final List<Rule> anyUserRules = new ArrayList<>();
+    private ConcurrentMap<DecisionKey, Boolean> decisions;
+    private int cacheSize;
+
+    private final ConcurrentMap<String, OperationMetrics> metrics = new ConcurrentHashMap<>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    @Override
+    public void prepare(Map storm_conf) {
+        Object configuredRules = storm_conf.get(RULES);
+        rules = configuredRules == null ? "alice * *" : configuredRules.toString();
+        for (String rule : rules.split(";")) {
+            rule = rule.trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            String[] parts = rule.split("\\s+");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid Storm authorization rule: " + rule);
+            }
+            Rule compiledRule = new Rule(parts[1], parts[2], operationIndex);
+            if (ANY.equals(parts[0])) {
+                anyUserRules.add(compiledRule);
+            } else {
+                List<Rule> compiledRules = userRules.get(parts[0]);
+                if (compiledRules == null) {
+                    compiledRules = new ArrayList<>();
+                    userRules.put(parts[0], compiledRules);
+                }
+                compiledRules.add(compiledRule);
+            }
+        }
+
+        Object configuredCacheSize = storm_conf.get(CACHE_SIZE);
+        cacheSize = configuredCacheSize == null ? 10000 : Integer.parseInt(configuredCacheSize.toString());
+        decisions = cacheSize > 0 ? new ConcurrentHashMap<DecisionKey, Boolean>() : null;
+
+        registerMBean();
+    }
+
+    private void registerMBean() {
+        try {
+            // A LocalCluster may be started more than once in the same JVM, so the last authorizer wins
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (Exception ex) {
+            throw new RuntimeException("Error registering the RuleBasedIAuthorizer MBean", ex);
+        }
+    }
+
+    @Override
+    public boolean permit(ReqContext context, String operation, Map topology_conf) {
+        long start = System.nanoTime();
+        boolean permitted = false;
+        if (context.principal() != null) {
+            String user = context.principal().getName();
+            Object topology = topology_conf == null ? null : topology_conf.get(Config.TOPOLOGY_NAME);
+            String topologyName = topology == null ? null : topology.toString();
+
+            if (decisions == null) {
+                permitted = evaluate(user, operation, topologyName);
+            } else {
+                DecisionKey key = new DecisionKey(user, operation, topologyName);
+                Boolean decision = decisions.get(key);
+                if (decision == null) {
+                    cacheMisses.incrementAndGet();
+                    decision = evaluate(user, operation, topologyName);
+                    if (decisions.size() >= cacheSize) {
+                        decisions.clear();
+                    }
+                    decisions.put(key, decision);
+                } else {
+                    cacheHits.incrementAndGet();
+                }
+                permitted = decision;
+            }
+        }
+
+        getMetrics(operation).record(permitted, System.nanoTime() - start);
+        return permitted;
+    }
+
+    private boolean evaluate(String user, String operation, String topologyName) {
+        Integer index = operationIndex.get(operation);
+        int operationId = index == null ? -1 : index;
+        List<Rule> compiledRules = userRules.get(user);
+        if (compiledRules != null) {
+            for (Rule rule : compiledRules) {
+                if (rule.matches(operationId, topologyName)) {
+                    return true;
+                }
+            }
+        }
+        for (Rule rule : anyUserRules) {
+            if (rule.matches(operationId, topologyName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private OperationMetrics getMetrics(String operation) {
+        OperationMetrics operationMetrics = metrics.get(operation);
+        if (operationMetrics == null) {
+            operationMetrics = new OperationMetrics();
+            OperationMetrics existing = metrics.putIfAbsent(operation, operationMetrics);
+            if (existing != null) {
+                operationMetrics = existing;
+            }
+        }
+        return operationMetrics;
+    }
+
+    @Override
+    public String getRules() {
+        return rules;
+    }
+
+    @Override
+    public Map<String, Long> getPermitCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, OperationMetrics> entry : metrics.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().permits.get());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getDenyCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, OperationMetrics> entry : metrics.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().denials.get());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getP50LatencyNanos() {
+        return getLatencyPercentiles(0.5);
+    }
+
+    @Override
+    public Map<String, Long> getP99LatencyNanos() {
+        return getLatencyPercentiles(0.99);
+    }
+
+    private Map<String, Long> getLatencyPercentiles(double percentile) {
+        Map<String, Long> latencies = new TreeMap<>();
+        for (Map.Entry<String, OperationMetrics> entry : metrics.entrySet()) {
+            latencies.put(entry.getKey(), entry.getValue().latency.getPercentile(percentile));
+        }
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Long> getMaxLatencyNanos() {
+        Map<String, Long> latencies = new TreeMap<>();
+        for (Map.Entry<String, OperationMetrics> entry : metrics.entrySet()) {
+            latencies.put(entry.getKey(), entry.getValue().latency.getMax());
+        }
+        return latencies;
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    @Override
+    public void resetCounters() {
+        metrics.clear();
+        cacheHits.set(0L);
+        cacheMisses.set(0L);
+    }
+
+    private static final class Rule {
+        private final boolean anyTopology;
+        private final String topology;
+        private final boolean prefix;
+        private final boolean allOperations;
+        private final BitSet operations = new BitSet();
+
+        Rule(String topologies, String operationNames, Map<String, Integer> operationIndex) {
+            anyTopology = ANY.equals(topologies);
+            prefix = !anyTopology && topologies.endsWith(ANY);
+            topology = prefix ? topologies.substring(0, topologies.length() - 1) : topologies;
+
+            boolean all = false;
+            for (String operation : operationNames.split(",")) {
+                if (ANY.equals(operation)) {
+                    all = true;
+                } else {
+                    Integer index = operationIndex.get(operation);
+                    if (index == null) {
+                        index = operationIndex.size();
+                        operationIndex.put(operation, index);
+                    }
+                    operations.set(index);
+                }
+            }
+            allOperations = all;
+        }
+
+        boolean matches(int operationId, String topologyName) {
+            if (!allOperations && (operationId < 0 || !operations.get(operationId))) {
+                return false;
+            }
+            if (anyTopology) {
+                return true;
+            }
+            return topologyName != null && (prefix ? topologyName.startsWith(topology) : topologyName.equals(topology));
+        }
+    }
+
+    /**
+     * The permit/deny counts of an operation, and a histogram of its latency
+     */
+    private static final class OperationMetrics {
+        private final AtomicLong permits = new AtomicLong();
+        private final AtomicLong denials = new AtomicLong();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        void record(boolean permitted, long nanos) {
+            (permitted ? permits : denials).incrementAndGet();
+            latency.record(nanos);
+        }
+    }
+
+    private static final class DecisionKey {
+        private final String user;
+        private final String operation;
+        private final String topology;
+
+        DecisionKey(String user, String operation, String topology) {
+            this.user = user;
+            this.operation = operation;
+            this.topology = topology;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = user.hashCode();
+            hash = 31 * hash + operation.hashCode();
+            return 31 * hash + (topology == null ? 0 : topology.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof DecisionKey)) {
+                return false;
+            }
+            DecisionKey other = (DecisionKey)obj;
+            return user.equals(other.user) && operation.equals(other.operation)
+                && (topology == null ? other.topology == null : topology.equals(other.topology));
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.storm;
+
+import java.util.Map;
+
+/**
+ * The decision metrics of the RuleBasedIAuthorizer, per Nimbus operation. The latencies are the time spent in
+ * "permit", and the percentiles are the upper bounds of power-of-two histogram buckets.
+ */
+public interface RuleBasedIAuthorizerMXBean {
+
+    String getRules();
+
+    Map<String, Long> getPermitCounts();
+
+    Map<String, Long> getDenyCounts();
+
+    Map<String, Long> getP50LatencyNanos();
+
+    Map<String, Long> getP99LatencyNanos();
+
+    Map<String, Long> getMaxLatencyNanos();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    void resetCounters();
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.storm;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMX;
+import javax.management.ObjectName;
+import javax.security.auth.Subject;
+
+import org.apache.storm.Config;
+import org.apache.storm.LocalCluster;
+import org.apache.storm.generated.AuthorizationException;
+import org.apache.storm.generated.TopologySummary;
+import org.apache.storm.topology.TopologyBuilder;
+import org.junit.Assert;
+
+/**
+ * Measures the overhead of the RuleBasedIAuthorizer in Nimbus, by submitting some topologies and then firing thousands
+ * of getTopologyInfo calls at a LocalCluster from several threads, as "alice" (who may do anything), "bob" (who may
+ * only get the info of the "bench-*" topologies) and "eve" (who is denied). The per-operation permit/deny counts and
+ * the latency of the authorization decisions are then read back via JMX, and compared to the time per call.
+ *
+ * The number of topologies can be set via "storm.benchmark.topologies" (the default is 5), the number of
+ * getTopologyInfo calls via "storm.benchmark.calls" (the default is 10000), and the number of threads via
+ * "storm.benchmark.threads" (the default is 4).
+ */
+public class StormAuthorizerPerformanceTest {
+
+    private static final int TOPOLOGIES = Integer.getInteger("storm.benchmark.topologies", 5);
+    private static final int CALLS = Integer.getInteger("storm.benchmark.calls", 10000);
+    private static final int THREADS = Integer.getInteger("storm.benchmark.threads", 4);
+
+    private static LocalCluster cluster;
+
+    @org.junit.BeforeClass
+    public static void setup() throws Exception {
+        System.setProperty("storm.conf.file", "storm_rulesauth.yaml");
+        cluster = new LocalCluster();
+    }
+
+    @org.junit.AfterClass
+    public static void cleanup() throws Exception {
+        cluster.shutdown();
+        System.clearProperty("storm.conf.file");
+    }
+
+    @org.junit.Test
+    public void testNimbusOverhead() throws Exception {
+        final RuleBasedIAuthorizerMXBean authorizer =
+            JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                               new ObjectName(RuleBasedIAuthorizer.OBJECT_NAME), RuleBasedIAuthorizerMXBean.class);
+        System.out.println("Testing Nimbus authorization with the rules: " + authorizer.getRules());
+
+        final URI fileName = StormAuthorizerPerformanceTest.class.getResource("../../../../../words.txt").toURI();
+        final List<String> topologyIds = new ArrayList<>();
+        doAs("alice", new PrivilegedExceptionAction<Void>() {
+            public Void run() throws Exception {
+                long start = System.nanoTime();
+                for (int i = 0; i < TOPOLOGIES; i++) {
+                    TopologyBuilder builder = new TopologyBuilder();
+                    builder.setSpout("words", new WordSpout(fileName));
+                    builder.setBolt("counter", new WordCounterBolt()).shuffleGrouping("words");
+                    cluster.submitTopology("bench-" + i, new Config(), builder.createTopology());
+                }
+                System.out.println(String.format("Submitted %d topologies in %.1f ms", TOPOLOGIES,
+                                                 (System.nanoTime() - start) / 1000000.0));
+
+                for (TopologySummary summary : cluster.getClusterInfo().get_topologies()) {
+                    topologyIds.add(summary.get_id());
+                }
+                return null;
+            }
+        });
+        Assert.assertEquals(TOPOLOGIES, topologyIds.size());
+
+        authorizer.resetCounters();
+        for (String user : new String[] {"alice", "bob", "eve"}) {
+            final AtomicLong denied = new AtomicLong();
+            long start = System.nanoTime();
+            run(user, new Callable<Void>() {
+                public Void call() throws Exception {
+                    for (int i = 0; i < CALLS / THREADS; i++) {
+                        try {
+                            cluster.getTopologyInfo(topologyIds.get(i % topologyIds.size()));
+                        } catch (Exception ex) {
+                            // The LocalCluster does not declare the AuthorizationException
+                            if (!(ex instanceof AuthorizationException)) {
+                                throw ex;
+                            }
+                            denied.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }
+            });
+            double seconds = (System.nanoTime() - start) / 1000000000.0;
+            System.out.println(String.format("%-6s %10.0f getTopologyInfo calls/sec %8d denied", user,
+                                             (CALLS / THREADS * THREADS) / seconds, denied.get()));
+            Assert.assertEquals("eve".equals(user) ? CALLS / THREADS * THREADS : 0, denied.get());
+        }
+
+        Map<String, Long> permits = authorizer.getPermitCounts();
+        Map<String, Long> denials = authorizer.getDenyCounts();
+        Map<String, Long> p50 = authorizer.getP50LatencyNanos();
+        Map<String, Long> p99 = authorizer.getP99LatencyNanos();
+        Map<String, Long> max = authorizer.getMaxLatencyNanos();
+        System.out.println(String.format("%-20s %10s %10s %10s %10s %10s", "operation", "permits", "denials",
+                                         "p50 (ns)", "p99 (ns)", "max (ns)"));
+        for (String operation : permits.keySet()) {
+            System.out.println(String.format("%-20s %10d %10d %10d %10d %10d", operation, permits.get(operation),
+                                             denials.get(operation), p50.get(operation), p99.get(operation),
+                                             max.get(operation)));
+        }
+        System.out.println(String.format("Decision cache: %d hits, %d misses", authorizer.getCacheHits(),
+                                         authorizer.getCacheMisses()));
+        Assert.assertTrue(permits.get("getTopologyInfo") >= 2L * (CALLS / THREADS * THREADS));
+        Assert.assertTrue(denials.get("getTopologyInfo") >= CALLS / THREADS * THREADS);
+
+        doAs("alice", new PrivilegedExceptionAction<Void>() {
+            public Void run() throws Exception {
+                for (int i = 0; i < TOPOLOGIES; i++) {
+                    cluster.killTopology("bench-" + i);
+                }
+                return null;
+            }
+        });
+    }
+
+    private static void doAs(String user, PrivilegedExceptionAction<Void> action) throws Exception {
+        Subject subject = new Subject();
+        subject.getPrincipals().add(new SimplePrincipal(user));
+        Subject.doAs(subject, action);
+    }
+
+    /**
+     * Run the task as the user on each thread
+     */
+    private static void run(final String user, final Callable<Void> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                tasks.add(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        doAs(user, new PrivilegedExceptionAction<Void>() {
+                            public Void run() throws Exception {
+                                task.call();
+                                return null;
+                            }
+                        });
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.coheigea.bigdata.storm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.storm.Config;
+import org.apache.storm.LocalCluster;
+import org.apache.storm.spout.SpoutOutputCollector;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.OutputFieldsDeclarer;
+import org.apache.storm.topology.TopologyBuilder;
+import org.apache.storm.topology.base.BaseRichBolt;
+import org.apache.storm.topology.base.BaseRichSpout;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.TupleUtils;
+import org.apache.storm.utils.Utils;
+
+/**
+ * Measures the throughput (words counted per second) of the WordCounterBolt in a LocalCluster. A spout
+ * emits the words in words.txt over and over again, and a sink bolt reads the output of the
+ * WordCounterBolt. The original topology (shuffleGrouping, a tuple output per word) is compared with a
+ * fieldsGrouping topology where the WordCounterBolt outputs the changed counts once a second.
+ *
+ * The time for each topology to run can be set via the "storm.throughput.seconds" system property
+ * (the default is 10), and the number of WordCounterBolt tasks via "storm.throughput.parallelism"
+ * (the default is 4).
+ */
+public class WordCountThroughputTest {
+
+    private static final int SECONDS = Integer.getInteger("storm.throughput.seconds", 10);
+    private static final int PARALLELISM = Integer.getInteger("storm.throughput.parallelism", 4);
+
+    // The bolts run in the same JVM as the LocalCluster, so they can report back via static counters
+    private static final AtomicLong COUNTED = new AtomicLong();
+    private static final AtomicLong RECEIVED = new AtomicLong();
+
+    private static LocalCluster cluster;
+    private static List<String> words;
+
+    @org.junit.BeforeClass
+    public static void setup() throws Exception {
+        System.setProperty("storm.conf.file", "storm_noauth.yaml");
+        URI fileName = WordCountThroughputTest.class.getResource("../../../../../words.txt").toURI();
+        words = new ArrayList<>();
+        for (String word : IOUtils.readLines(new FileInputStream(new File(fileName)))) {
+            words.add(word.trim());
+        }
+        cluster = new LocalCluster();
+    }
+
+    @org.junit.AfterClass
+    public static void cleanup() throws Exception {
+        cluster.shutdown();
+        System.clearProperty("storm.conf.file");
+    }
+
+    @org.junit.Test
+    public void testShuffleGroupingPerWordEmission() throws Exception {
+        TopologyBuilder builder = new TopologyBuilder();
+        builder.setSpout("words", new RepeatingWordSpout(words));
+        builder.setBolt("counter", new CountingWordCounterBolt(0), PARALLELISM).shuffleGrouping("words");
+        runTopology("shuffle-per-word", builder);
+    }
+
+    @org.junit.Test
+    public void testFieldsGroupingPerWordEmission() throws Exception {
+        TopologyBuilder builder = new TopologyBuilder();
+        builder.setSpout("words", new RepeatingWordSpout(words));
+        builder.setBolt("counter", new CountingWordCounterBolt(0), PARALLELISM)
+            .fieldsGrouping("words", new Fields("word"));
+        runTopology("fields-per-word", builder);
+    }
+
+    @org.junit.Test
+    public void testFieldsGroupingBatchedEmission() throws Exception {
+        TopologyBuilder builder = new TopologyBuilder();
+        builder.setSpout("words", new RepeatingWordSpout(words));
+        builder.setBolt("counter", new CountingWordCounterBolt(1), PARALLELISM)
+            .fieldsGrouping("words", new Fields("word"));
+        runTopology("fields-batched", builder);
+    }
+
+    private void runTopology(String name, TopologyBuilder builder) throws Exception {
+        builder.setBolt("sink", new SinkBolt()).shuffleGrouping("counter");
+
+        Config conf = new Config();
+        conf.setDebug(false);
+        conf.setNumWorkers(1);
+
+        cluster.submitTopology(name, conf, builder.createTopology());
+
+        // Give the topology time to start up before measuring
+        Utils.sleep(5000);
+        long countedStart = COUNTED.get();
+        long receivedStart = RECEIVED.get();
+        long start = System.nanoTime();
+
+        Utils.sleep(SECONDS * 1000L);
+
+        long counted = COUNTED.get() - countedStart;
+        long received = RECEIVED.get() - receivedStart;
+        double elapsed = (System.nanoTime() - start) / 1000000000.0;
+
+        cluster.killTopology(name);
+        // Wait for the topology to be removed before the next one is submitted
+        Utils.sleep(5000);
+
+        System.out.println(String.format(
+            "%s: %.0f words counted/sec, %.0f counts output/sec", name, counted / elapsed, received / elapsed));
+        org.junit.Assert.assertTrue("No words were counted", counted > 0);
+    }
+
+    /**
+     * A Spout which emits the given words over and over again
+     */
+    private static class RepeatingWordSpout extends BaseRichSpout {
+        private final List<String> words;
+        private SpoutOutputCollector collector;
+        private int line = 0;
+
+        RepeatingWordSpout(List<String> words) {
+            this.words = words;
+        }
+
+        @Override
+        public void nextTuple() {
+            collector.emit(new Values(words.get(line)));
+            line = (line + 1) % words.size();
+        }
+
+        @Override
+        public void open(Map arg0, TopologyContext arg1, SpoutOutputCollector collector) {
+            this.collector = collector;
+        }
+
+        @Override
+        public void declareOutputFields(OutputFieldsDeclarer declarer) {
+            declarer.declare(new Fields("word"));
+        }
+    }
+
+    /**
+     * A WordCounterBolt which records how many words it has counted
+     */
+    private static class CountingWordCounterBolt extends WordCounterBolt {
+
+        CountingWordCounterBolt(int emitFrequencySecs) {
+            super(emitFrequencySecs);
+        }
+
+        @Override
+        public void execute(Tuple tuple) {
+            super.execute(tuple);
+            if (!TupleUtils.isTick(tuple)) {
+                COUNTED.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * A Bolt which records how many counts it has received from the WordCounterBolt
+     */
+    private static class SinkBolt extends BaseRichBolt {
+        private OutputCollector outputCollector;
+
+        @Override
+        public void execute(Tuple tuple) {
+            RECEIVED.incrementAndGet();
+            outputCollector.ack(tuple);
+        }
+
+        @Override
+        public void prepare(Map arg0, TopologyContext arg1, OutputCollector outputCollector) {
+            this.outputCollector = outputCollector;
+        }
+
+        @Override
+        public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        }
+    }
+
+}
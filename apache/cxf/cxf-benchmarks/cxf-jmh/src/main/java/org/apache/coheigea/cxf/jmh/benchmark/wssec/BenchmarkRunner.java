@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.cxf.jmh.benchmark.wssec;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the WS-Security benchmarks in Throughput and SampleTime (latency percentiles) modes, once
+ * per thread count, writing the results for each run as JSON. All threads share the same (static)
+ * Crypto instances, so a drop in throughput per thread, or a growing p99/p999 latency, as the
+ * number of threads increases points to contention inside WSS4J. It is configured via system
+ * properties:
+ *
+ *  - benchmarks: A regular expression for the benchmarks to run (default "wssec\.(Signature|Encryption|CryptoLookup)")
+ *  - threads: A comma separated list of thread counts (default "1,2,4,8,16")
+ *  - modes: A comma separated list of JMH modes (default "thrpt,sample")
+ *  - resultDir: The directory to write the results to (default "target/jmh-results")
+ *  - prof: A comma separated list of profilers to enable, e.g. -Dprof=gc
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+        // complete
+    }
+
+    public static void main(String[] args) throws Exception {
+        String benchmarks = System.getProperty("benchmarks", "wssec\\.(Signature|Encryption|CryptoLookup)");
+        String[] threadCounts = System.getProperty("threads", "1,2,4,8,16").split(",");
+        String[] modes = System.getProperty("modes", "thrpt,sample").split(",");
+        File resultDir = new File(System.getProperty("resultDir", "target/jmh-results"));
+        resultDir.mkdirs();
+
+        for (String modeName : modes) {
+            Mode mode = Mode.deepValueOf(modeName.trim());
+            for (String threadCount : threadCounts) {
+                int threads = Integer.parseInt(threadCount.trim());
+                File result = new File(resultDir, mode.shortLabel() + "-threads-" + threads + ".json");
+
+                ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(benchmarks)
+                    .mode(mode)
+                    .timeUnit(mode == Mode.Throughput ? TimeUnit.SECONDS : TimeUnit.MICROSECONDS)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(result.getPath());
+
+                String profilers = System.getProperty("prof");
+                if (profilers != null) {
+                    for (String profiler : profilers.split(",")) {
+                        options.addProfiler(profiler.trim());
+                    }
+                }
+
+                new Runner(options.build()).run();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,226 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.cxf.jmh.benchmark.wssec;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.apache.xml.security.encryption.Serializer;
+import org.apache.xml.security.encryption.XMLEncryptionException;
+import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * A Serializer that canonicalizes directly into a byte buffer that is reused across calls,
+ * instead of a new (synchronized) ByteArrayOutputStream that is grown and then copied for every
+ * call. serializeToBuffer returns a view of the buffer, which can be passed straight to
+ * Cipher.doFinal(ByteBuffer, ByteBuffer) without any copy. serializeToByteArray, which is what
+ * XMLCipher calls, has to return a byte[] and so makes a single copy of the exact size.
+ *
+ * Decryption parses the decrypted bytes from a stream of the namespace context, the bytes and
+ * the closing element, rather than first copying them into a new array with the context.
+ *
+ * A BufferedSerializer is not thread-safe.
+ */
+public class BufferedSerializer implements Serializer {
+
+    private static final byte[] CONTEXT_END = "</dummy>".getBytes(StandardCharsets.UTF_8);
+
+    private final Canonicalizer canonicalizer;
+    private final boolean secureValidation;
+    private final ReusableByteArrayOutputStream buffer;
+
+    public BufferedSerializer(boolean secureValidation) throws Exception {
+        this(Canonicalizer.ALGO_ID_C14N_PHYSICAL, secureValidation, 8192);
+    }
+
+    public BufferedSerializer(String canonicalizationMethod, boolean secureValidation, int initialCapacity)
+        throws Exception {
+        canonicalizer = Canonicalizer.getInstance(canonicalizationMethod);
+        this.secureValidation = secureValidation;
+        buffer = new ReusableByteArrayOutputStream(initialCapacity);
+    }
+
+    /**
+     * Serialize the Element into the internal buffer, and return a view of it. The view is only
+     * valid until the next call to this Serializer.
+     */
+    public ByteBuffer serializeToBuffer(Element element) throws Exception {
+        buffer.reset();
+        canonicalizer.canonicalizeSubtree(element, buffer);
+        return ByteBuffer.wrap(buffer.bytes, 0, buffer.count);
+    }
+
+    /**
+     * Serialize the NodeList into the internal buffer, and return a view of it. The view is only
+     * valid until the next call to this Serializer.
+     */
+    public ByteBuffer serializeToBuffer(NodeList content) throws Exception {
+        buffer.reset();
+        for (int i = 0; i < content.getLength(); i++) {
+            canonicalizer.canonicalizeSubtree(content.item(i), buffer);
+        }
+        return ByteBuffer.wrap(buffer.bytes, 0, buffer.count);
+    }
+
+    @Override
+    public byte[] serializeToByteArray(Element element) throws Exception {
+        serializeToBuffer(element);
+        return Arrays.copyOf(buffer.bytes, buffer.count);
+    }
+
+    @Override
+    public byte[] serializeToByteArray(NodeList content) throws Exception {
+        serializeToBuffer(content);
+        return Arrays.copyOf(buffer.bytes, buffer.count);
+    }
+
+    @Override
+    public Node deserialize(byte[] source, Node ctx) throws XMLEncryptionException {
+        InputStream fragment = new SequenceInputStream(
+            new SequenceInputStream(new ByteArrayInputStream(createContextStart(ctx)), new ByteArrayInputStream(source)),
+            new ByteArrayInputStream(CONTEXT_END)
+        );
+
+        try {
+            Document document = XMLUtils.read(fragment, secureValidation);
+            Document contextDocument =
+                Node.DOCUMENT_NODE == ctx.getNodeType() ? (Document)ctx : ctx.getOwnerDocument();
+
+            Element fragmentElement = (Element)contextDocument.importNode(document.getDocumentElement(), true);
+            DocumentFragment result = contextDocument.createDocumentFragment();
+            Node child = fragmentElement.getFirstChild();
+            while (child != null) {
+                fragmentElement.removeChild(child);
+                result.appendChild(child);
+                child = fragmentElement.getFirstChild();
+            }
+            return result;
+        } catch (Exception ex) {
+            throw new XMLEncryptionException(ex);
+        }
+    }
+
+    /**
+     * Create the start of a dummy element that declares all of the namespaces in scope for the
+     * context node, so that the decrypted bytes can be parsed.
+     */
+    private static byte[] createContextStart(Node ctx) {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><dummy");
+        Set<String> declaredPrefixes = new HashSet<>();
+        for (Node node = ctx; node != null; node = node.getParentNode()) {
+            NamedNodeMap attributes = node.getAttributes();
+            if (attributes == null) {
+                continue;
+            }
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Node attribute = attributes.item(i);
+                String name = attribute.getNodeName();
+                if (("xmlns".equals(name) || name.startsWith("xmlns:")) && declaredPrefixes.add(name)) {
+                    sb.append(' ').append(name).append("=\"");
+                    appendAttributeValue(sb, attribute.getNodeValue());
+                    sb.append('"');
+                }
+            }
+        }
+        sb.append('>');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Append an attribute value, escaping the characters that are not allowed in a (double quoted)
+     * attribute value, and the whitespace characters that would otherwise be normalized to a space
+     */
+    private static void appendAttributeValue(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '"':
+                sb.append("&quot;");
+                break;
+            case '\t':
+                sb.append("&#x9;");
+                break;
+            case '\n':
+                sb.append("&#xA;");
+                break;
+            case '\r':
+                sb.append("&#xD;");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * An unsynchronized output stream that keeps its array between uses
+     */
+    private static final class ReusableByteArrayOutputStream extends OutputStream {
+
+        private byte[] bytes;
+        private int count;
+
+        ReusableByteArrayOutputStream(int initialCapacity) {
+            bytes = new byte[initialCapacity];
+        }
+
+        void reset() {
+            count = 0;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            bytes[count++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, bytes, count, len);
+            count += len;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.cxf.jmh.benchmark.wssec;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+
+/**
+ * Benchmarks for the Crypto (Merlin) operations that the WS-Security benchmarks perform on every
+ * message, without any of the XML processing. A single Crypto instance is shared by all of the
+ * benchmark threads, as it is in a service, so running this with an increasing number of threads
+ * (see BenchmarkRunner) shows any contention in the keystore lookups and trust verification.
+ */
+public class CryptoLookupBenchmark {
+
+    static {
+        WSSConfig.init();
+    }
+
+    @State(Scope.Benchmark)
+    public static class CryptoState {
+        Crypto clientCrypto;
+        X509Certificate[] certs;
+        List<Pattern> certConstraints = Collections.singletonList(Pattern.compile(".*O=Apache.*"));
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            clientCrypto = CryptoFactory.getInstance("clientKeystore.properties");
+
+            CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+            cryptoType.setAlias("myclientkey");
+            certs = clientCrypto.getX509Certificates(cryptoType);
+            if (certs == null || certs.length == 0) {
+                throw new IllegalStateException("No certificate found for alias myclientkey");
+            }
+        }
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+    public X509Certificate[] getCertificatesByAlias(CryptoState state) throws Exception {
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("myclientkey");
+        return state.clientCrypto.getX509Certificates(cryptoType);
+    }
+
+    // This is the lookup that is done when processing a Signature with an IssuerSerial reference
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+    public X509Certificate[] getCertificatesByIssuerSerial(CryptoState state) throws Exception {
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ISSUER_SERIAL);
+        cryptoType.setIssuerSerial(
+            state.certs[0].getIssuerX500Principal().getName(), state.certs[0].getSerialNumber()
+        );
+        return state.clientCrypto.getX509Certificates(cryptoType);
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+    public PrivateKey getPrivateKey(CryptoState state) throws Exception {
+        return state.clientCrypto.getPrivateKey("myclientkey", "ckpass");
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+    public void verifyTrust(CryptoState state) throws Exception {
+        state.clientCrypto.verifyTrust(state.certs, false, state.certConstraints, null);
+    }
+
+    // Loads the keystore each time, which is what happens if the Crypto is not cached
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+    public Crypto loadCrypto() throws Exception {
+        return CryptoFactory.getInstance("clientKeystore.properties");
+    }
+
+}
@@ -20,8 +20,12 @@ package org.apache.coheigea.cxf.jmh.benchmark.wssec;
 
 import java.util.concurrent.TimeUnit;
 
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.engine.WSSConfig;
 import org.apache.wss4j.dom.engine.WSSecurityEngine;
@@ -100,7 +104,9 @@ public class EncryptionReferenceBenchmark {
         WSSecEncrypt builder = new WSSecEncrypt(secHeader);
         builder.setUserInfo("myservicekey", "skpass");
         builder.setKeyIdentifierType(identifier);
-        Document encryptedDoc = builder.build(serviceCrypto);
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        Document encryptedDoc = builder.build(serviceCrypto, symmetricKey);
 
         WSSecurityEngine engine = new WSSecurityEngine();
         
@@ -21,10 +21,14 @@ package org.apache.coheigea.cxf.jmh.benchmark.wssec;
 import java.io.StringReader;
 import java.util.concurrent.TimeUnit;
 
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
 import org.apache.cxf.staxutils.StaxUtils;
 import org.apache.cxf.ws.security.wss4j.StaxSerializer;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.engine.WSSConfig;
 import org.apache.wss4j.dom.engine.WSSecurityEngine;
@@ -110,7 +114,9 @@ public class EncryptionSerializerBenchmark {
         builder.setUserInfo("myservicekey", "skpass");
         builder.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
         builder.setEncryptionSerializer(serializer);
-        return builder.build(serviceCrypto);
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        return builder.build(serviceCrypto, symmetricKey);
     }
     
     private void doDecryption(Document encryptedDoc, Serializer serializer) throws Exception {
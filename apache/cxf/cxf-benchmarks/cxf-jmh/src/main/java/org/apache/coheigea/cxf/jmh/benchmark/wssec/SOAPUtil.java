@@ -42,6 +42,20 @@ public class SOAPUtil {
         +   "</SOAP-ENV:Body>" 
         + "</SOAP-ENV:Envelope>";
     
+    private static final String SOAP_MSG_START = 
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" 
+        + "<SOAP-ENV:Envelope "
+        +   "xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\" "
+        +   "xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" "
+        +   "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">" 
+        +   "<SOAP-ENV:Body>" 
+        +       "<add xmlns=\"http://ws.apache.org/counter/counter_port_type\">";
+    
+    private static final String SOAP_MSG_END = 
+        "</add>" 
+        +   "</SOAP-ENV:Body>" 
+        + "</SOAP-ENV:Envelope>";
+    
     private static DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
     
     static {
@@ -59,4 +73,21 @@ public class SOAPUtil {
         return doc;
     }
     
+    /**
+     * Create a SOAP Envelope as a String of (at least) the given size in KB, by repeating the 
+     * "value" element of the sample SOAP message in the SOAP Body.
+     */
+    public static String createSOAPMessage(int sizeKb) {
+        String value = "<value xmlns=\"\">15</value>";
+        int targetSize = sizeKb * 1024;
+        
+        StringBuilder sb = new StringBuilder(targetSize + SOAP_MSG_START.length() + SOAP_MSG_END.length());
+        sb.append(SOAP_MSG_START);
+        do {
+            sb.append(value);
+        } while (sb.length() + SOAP_MSG_END.length() < targetSize);
+        sb.append(SOAP_MSG_END);
+        return sb.toString();
+    }
+    
 }
@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.cxf.jmh.benchmark.wssec;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+import org.apache.cxf.ws.security.wss4j.StaxSerializer;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.xml.security.encryption.DocumentSerializer;
+import org.apache.xml.security.encryption.Serializer;
+import org.apache.xml.security.encryption.TransformSerializer;
+import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.utils.EncryptionConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+
+/**
+ * Compares the time and allocation of the Santuario TransformSerializer and DocumentSerializer,
+ * the CXF StaxSerializer and the BufferedSerializer for different payload sizes. The SOAP Body
+ * content is serialized on its own, serialized and encrypted with a Cipher, and encrypted and
+ * decrypted with an XMLCipher. Run it via the main method (or with "-prof gc") to see the
+ * allocation rate.
+ */
+public class SerializerBenchmark {
+
+    private static final String SYMMETRIC_ALGORITHM = XMLCipher.AES_256;
+
+    static {
+        WSSConfig.init();
+    }
+
+    @State(Scope.Thread)
+    public static class SerializerState {
+        @Param({"transform", "document", "stax", "buffered"})
+        String serializerName;
+
+        @Param({"1", "10", "100", "1024"})
+        int sizeKb;
+
+        Serializer serializer;
+        SecretKey key;
+        Cipher cipher;
+        IvParameterSpec iv;
+        ByteBuffer cipherOutput;
+
+        Document plaintextMessage;
+        Document encryptedMessage;
+        Document document;
+        Element body;
+        Document encryptedDocument;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            serializer = createSerializer(serializerName);
+
+            KeyGenerator keyGen = KeyGenerator.getInstance("AES");
+            keyGen.init(256);
+            key = keyGen.generateKey();
+
+            cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            byte[] ivBytes = new byte[16];
+            new SecureRandom().nextBytes(ivBytes);
+            iv = new IvParameterSpec(ivBytes);
+
+            plaintextMessage = SOAPUtil.toSOAPPart(SOAPUtil.createSOAPMessage(sizeKb));
+            Document document = copy(plaintextMessage);
+            encryptedMessage = encrypt(document, getBody(document), serializer, key);
+
+            // Check that the encrypted message can be decrypted once, rather than on every invocation
+            Document decrypted = decrypt(copy(encryptedMessage), serializer, key);
+            if (getBody(decrypted).getElementsByTagNameNS("", "value").getLength() == 0) {
+                throw new IllegalStateException("The decrypted message is not valid");
+            }
+        }
+
+        // Encryption and decryption modify the DOM tree, so each invocation uses a fresh copy
+        @Setup(Level.Invocation)
+        public void copyMessages() {
+            document = copy(plaintextMessage);
+            body = getBody(document);
+            encryptedDocument = copy(encryptedMessage);
+        }
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+    public byte[] serialize(SerializerState state) throws Exception {
+        return state.serializer.serializeToByteArray(state.body.getChildNodes());
+    }
+
+    // The BufferedSerializer passes its buffer straight to the Cipher, the others a new byte[]
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+    public ByteBuffer serializeAndCipher(SerializerState state) throws Exception {
+        state.cipher.init(Cipher.ENCRYPT_MODE, state.key, state.iv);
+        if (state.serializer instanceof BufferedSerializer) {
+            ByteBuffer input = ((BufferedSerializer)state.serializer).serializeToBuffer(state.body.getChildNodes());
+            int outputSize = state.cipher.getOutputSize(input.remaining());
+            if (state.cipherOutput == null || state.cipherOutput.capacity() < outputSize) {
+                state.cipherOutput = ByteBuffer.allocate(outputSize);
+            }
+            state.cipherOutput.clear();
+            state.cipher.doFinal(input, state.cipherOutput);
+            return state.cipherOutput;
+        }
+        byte[] input = state.serializer.serializeToByteArray(state.body.getChildNodes());
+        return ByteBuffer.wrap(state.cipher.doFinal(input));
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+    public Document encryption(SerializerState state) throws Exception {
+        return encrypt(state.document, state.body, state.serializer, state.key);
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+    public Document decryption(SerializerState state) throws Exception {
+        return decrypt(state.encryptedDocument, state.serializer, state.key);
+    }
+
+    private static Document encrypt(Document document, Element body, Serializer serializer, SecretKey key)
+        throws Exception {
+        XMLCipher cipher = XMLCipher.getInstance(serializer, SYMMETRIC_ALGORITHM);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        return cipher.doFinal(document, body, true);
+    }
+
+    private static Document decrypt(Document document, Serializer serializer, SecretKey key) throws Exception {
+        Element encryptedData = (Element)document.getElementsByTagNameNS(
+            EncryptionConstants.EncryptionSpecNS, EncryptionConstants._TAG_ENCRYPTEDDATA).item(0);
+
+        XMLCipher cipher = XMLCipher.getInstance(serializer, SYMMETRIC_ALGORITHM);
+        cipher.init(XMLCipher.DECRYPT_MODE, key);
+        return cipher.doFinal(document, encryptedData);
+    }
+
+    private static Serializer createSerializer(String name) throws Exception {
+        switch (name) {
+        case "transform":
+            return new TransformSerializer(true);
+        case "document":
+            return new DocumentSerializer(true);
+        case "stax":
+            return new StaxSerializer();
+        case "buffered":
+            return new BufferedSerializer(true);
+        default:
+            throw new IllegalArgumentException("Unknown serializer: " + name);
+        }
+    }
+
+    private static Element getBody(Document document) {
+        return (Element)document.getElementsByTagNameNS(
+            "http://schemas.xmlsoap.org/soap/envelope/", "Body").item(0);
+    }
+
+    private static Document copy(Document doc) {
+        return (Document)doc.cloneNode(true);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+            .include(SerializerBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+
+}
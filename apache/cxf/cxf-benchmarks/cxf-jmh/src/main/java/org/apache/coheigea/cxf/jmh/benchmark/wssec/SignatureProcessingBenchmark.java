@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.cxf.jmh.benchmark.wssec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecSignature;
+import org.apache.wss4j.dom.util.WSSecurityUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+
+/**
+ * Benchmarks for the per-message cost of WS-Security signature creation and verification. Unlike
+ * SignatureAlgorithmBenchmark, the Crypto, WSSConfig, WSSecurityEngine and RequestData are created
+ * once in the State objects, the signed messages are generated in advance for each payload size,
+ * and the results are only checked during setup and not in the measured code. Run it via the main
+ * method (or with "-prof gc") to see the allocation rate per message.
+ */
+public class SignatureProcessingBenchmark {
+
+    private static final String SIGNATURE_ALGORITHM = WSConstants.RSA_SHA256;
+    private static final String DIGEST_ALGORITHM = WSConstants.SHA256;
+
+    static {
+        WSSConfig.init();
+    }
+
+    @State(Scope.Benchmark)
+    public static class CryptoState {
+        Crypto clientCrypto;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            clientCrypto = CryptoFactory.getInstance("clientKeystore.properties");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class EngineState {
+        WSSecurityEngine engine;
+        RequestData data;
+
+        @Setup(Level.Trial)
+        public void setUp(CryptoState cryptoState) throws Exception {
+            engine = new WSSecurityEngine();
+
+            data = new RequestData();
+            data.setWssConfig(WSSConfig.getNewInstance());
+            data.setSigVerCrypto(cryptoState.clientCrypto);
+            data.setSubjectCertConstraints(Collections.singletonList(Pattern.compile(".*O=Apache.*")));
+
+            List<BSPRule> ignoredRules = new ArrayList<BSPRule>();
+            ignoredRules.add(BSPRule.R5404);
+            ignoredRules.add(BSPRule.R5406);
+            data.setIgnoredBSPRules(ignoredRules);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class MessageState {
+        @Param({"1", "10", "100", "1024"})
+        int sizeKb;
+
+        Document unsignedMessage;
+        Document signedMessage;
+
+        Document unsignedDoc;
+        Document signedDoc;
+
+        @Setup(Level.Trial)
+        public void setUp(CryptoState cryptoState, EngineState engineState) throws Exception {
+            unsignedMessage = SOAPUtil.toSOAPPart(SOAPUtil.createSOAPMessage(sizeKb));
+            signedMessage = sign(copy(unsignedMessage), cryptoState.clientCrypto);
+
+            // Check that the signed message is valid once, rather than on every invocation
+            WSHandlerResult results = verify(copy(signedMessage), engineState);
+            WSSecurityEngineResult actionResult =
+                results.getActionResults().get(WSConstants.SIGN).get(0);
+            if (actionResult.get(WSSecurityEngineResult.TAG_X509_CERTIFICATE) == null
+                || actionResult.get(WSSecurityEngineResult.TAG_X509_REFERENCE_TYPE) == null) {
+                throw new IllegalStateException("The signed message is not valid");
+            }
+        }
+
+        // Signing and verification work on the DOM tree, so each invocation uses a fresh copy
+        @Setup(Level.Invocation)
+        public void copyMessages() {
+            unsignedDoc = copy(unsignedMessage);
+            signedDoc = copy(signedMessage);
+        }
+
+        private static Document copy(Document doc) {
+            return (Document)doc.cloneNode(true);
+        }
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+    public Document signOnly(CryptoState cryptoState, MessageState messageState) throws Exception {
+        return sign(messageState.unsignedDoc, cryptoState.clientCrypto);
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+    public WSHandlerResult verifyOnly(EngineState engineState, MessageState messageState) throws Exception {
+        return verify(messageState.signedDoc, engineState);
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+    public WSHandlerResult roundTrip(
+        CryptoState cryptoState, EngineState engineState, MessageState messageState
+    ) throws Exception {
+        Document signedDoc = sign(messageState.unsignedDoc, cryptoState.clientCrypto);
+        return verify(signedDoc, engineState);
+    }
+
+    private static Document sign(Document doc, Crypto crypto) throws Exception {
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature builder = new WSSecSignature(secHeader);
+        builder.setUserInfo("myclientkey", "ckpass");
+        builder.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        builder.setSigCanonicalization(WSConstants.C14N_EXCL_OMIT_COMMENTS);
+        builder.setDigestAlgo(DIGEST_ALGORITHM);
+        builder.setSignatureAlgorithm(SIGNATURE_ALGORITHM);
+
+        return builder.build(crypto);
+    }
+
+    private static WSHandlerResult verify(Document signedDoc, EngineState engineState) throws Exception {
+        Element securityHeader = WSSecurityUtil.getSecurityHeader(signedDoc, "");
+        return engineState.engine.processSecurityHeader(securityHeader, engineState.data);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+            .include(SignatureProcessingBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+
+}
@@ -25,20 +25,38 @@ import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.security.Key;
 import java.security.KeyStore;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.crypto.KeyGenerator;
+import javax.xml.namespace.QName;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 import org.apache.cxf.staxutils.StaxUtils;
 import org.apache.xml.security.encryption.Serializer;
 import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.InboundXMLSec;
+import org.apache.xml.security.stax.ext.OutboundXMLSec;
+import org.apache.xml.security.stax.ext.SecurePart;
+import org.apache.xml.security.stax.ext.XMLSec;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.utils.XMLUtils;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -53,6 +71,8 @@ public abstract class AbstractPerformanceTest {
     protected XMLInputFactory xmlInputFactory;
     protected Key key;
     protected X509Certificate cert;
+    private OutboundXMLSec outboundEncryptionXMLSec;
+    private InboundXMLSec inboundDecryptionXMLSec;
 
     @BeforeClass
     public static void genKey() throws Exception {
@@ -76,6 +96,9 @@ public abstract class AbstractPerformanceTest {
         );
         key = keyStore.getKey("transmitter", "default".toCharArray());
         cert = (X509Certificate) keyStore.getCertificate("transmitter");
+
+        setUpOutboundEncryptionXMLSec();
+        setUpInboundEncryptionXMLSec();
     }
 
     protected File generateLargeXMLFile(int factor) throws Exception {
@@ -128,10 +151,11 @@ public abstract class AbstractPerformanceTest {
 
         Document document = StaxUtils.read(file);
 
-        XMLCipher cipher = XMLCipher.getInstance("http://www.w3.org/2001/04/xmlenc#aes256-cbc");
+        XMLCipher cipher = XMLCipher.getInstance(serializer, "http://www.w3.org/2001/04/xmlenc#aes256-cbc");
         cipher.init(XMLCipher.ENCRYPT_MODE, encryptionSymKey);
-        cipher.setSerializer(serializer);
-        document = cipher.doFinal(document, document.getDocumentElement());
+        // Encrypt the content of the root element, as the StaxSerializer cannot decrypt an
+        // EncryptedData element that is the document element
+        document = cipher.doFinal(document, document.getDocumentElement(), true);
         
         final File encryptedFile = new File(getTmpFilePath(), "encryption-dom-" + serializer.toString() + "-" + tagCount + ".xml");
         OutputStream outputStream = new FileOutputStream(encryptedFile);
@@ -146,9 +170,133 @@ public abstract class AbstractPerformanceTest {
 
         Document document = StaxUtils.read(file);
 
-        XMLCipher cipher = XMLCipher.getInstance("http://www.w3.org/2001/04/xmlenc#aes256-cbc");
+        XMLCipher cipher = XMLCipher.getInstance(serializer, "http://www.w3.org/2001/04/xmlenc#aes256-cbc");
         cipher.init(XMLCipher.DECRYPT_MODE, encryptionSymKey);
-        cipher.setSerializer(serializer);
-        cipher.doFinal(document, document.getDocumentElement());
+        Element encryptedData = (Element)document.getElementsByTagNameNS(
+            "http://www.w3.org/2001/04/xmlenc#", "EncryptedData").item(0);
+        cipher.doFinal(document, encryptedData);
+    }
+
+    protected void setUpOutboundEncryptionXMLSec() throws XMLSecurityException {
+        XMLSecurityProperties xmlSecurityProperties = new XMLSecurityProperties();
+        List<XMLSecurityConstants.Action> actions = new ArrayList<XMLSecurityConstants.Action>();
+        actions.add(XMLSecurityConstants.ENCRYPTION);
+        xmlSecurityProperties.setActions(actions);
+        xmlSecurityProperties.setEncryptionKey(encryptionSymKey);
+        xmlSecurityProperties.setEncryptionSymAlgorithm("http://www.w3.org/2001/04/xmlenc#aes256-cbc");
+
+        SecurePart securePart = new SecurePart(
+                new QName("http://www.example.com", "test"),
+                SecurePart.Modifier.Content
+        );
+        xmlSecurityProperties.addEncryptionPart(securePart);
+
+        outboundEncryptionXMLSec = XMLSec.getOutboundXMLSec(xmlSecurityProperties);
+    }
+
+    protected void setUpInboundEncryptionXMLSec() throws XMLSecurityException {
+        XMLSecurityProperties inboundProperties = new XMLSecurityProperties();
+        // If decryption is the only action then the events are not buffered while looking
+        // for a Signature, which would mean buffering the entire document
+        List<XMLSecurityConstants.Action> actions = new ArrayList<XMLSecurityConstants.Action>();
+        actions.add(XMLSecurityConstants.ENCRYPTION);
+        inboundProperties.setActions(actions);
+        inboundProperties.setDecryptionKey(encryptionSymKey);
+        inboundDecryptionXMLSec = XMLSec.getInboundWSSec(inboundProperties);
+    }
+
+    /**
+     * Encrypt the document using the streaming (StAX) API. The plaintext is read from a
+     * FileChannel and the ciphertext is written to a FileChannel, so the heap usage does not
+     * depend on the size of the document.
+     */
+    protected File doStreamingEncryptionOutbound(File file, int tagCount) throws Exception {
+
+        final File encryptedFile = new File(getTmpFilePath(), "encryption-stax-" + tagCount + ".xml");
+
+        FileChannel outputChannel = FileChannel.open(encryptedFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(outputChannel));
+        XMLStreamWriter xmlStreamWriter =
+            outboundEncryptionXMLSec.processOutMessage(outputStream, StandardCharsets.UTF_8.name());
+
+        FileChannel inputChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        InputStream inputStream = Channels.newInputStream(inputChannel);
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(inputStream);
+
+        StaxUtils.copy(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+        outputStream.close();
+        xmlStreamReader.close();
+        inputStream.close();
+
+        return encryptedFile;
+    }
+
+    /**
+     * Decrypt the document using the streaming (StAX) API. The ciphertext is read from a memory
+     * mapped file, which is outside of the Java heap.
+     */
+    protected void doStreamingDecryptionInbound(File file, int tagCount) throws Exception {
+
+        InputStream inputStream = openMappedFile(file);
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(inputStream);
+        XMLStreamReader securityStreamReader = inboundDecryptionXMLSec.processInMessage(xmlStreamReader);
+
+        while (securityStreamReader.hasNext()) {
+            securityStreamReader.next();
+        }
+        securityStreamReader.close();
+        xmlStreamReader.close();
+        inputStream.close();
+    }
+
+    /**
+     * Return an InputStream over a read-only mapping of the given file. A single mapping is
+     * limited to 2GB, so larger files are read from the FileChannel instead.
+     */
+    protected InputStream openMappedFile(File file) throws Exception {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        if (channel.size() > Integer.MAX_VALUE) {
+            return Channels.newInputStream(channel);
+        }
+        try {
+            return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            // The mapping remains valid after the channel is closed
+            channel.close();
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
     }
 }
@@ -22,6 +22,8 @@ import org.apache.cxf.ws.security.wss4j.StaxSerializer;
 import org.apache.xml.security.encryption.DocumentSerializer;
 import org.apache.xml.security.encryption.Serializer;
 import org.apache.xml.security.encryption.TransformSerializer;
+import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
@@ -29,6 +31,7 @@ import org.junit.runners.MethodSorters;
 import java.io.File;
 import java.io.FileWriter;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  */
@@ -38,8 +41,14 @@ public class PerformanceMemoryTest extends AbstractPerformanceTest {
     private static final int runs = 40;
     private static final int xmlResizeFactor = 1000;
 
+    // The maximum heap (in MB) that the streaming code may use, whatever the size of the document
+    private static final int streamingHeapCeiling = Integer.getInteger("streaming.heap.ceiling.mb", 32);
+    // If set, the size (in MB) of an additional document to stream, e.g. -Dstreaming.large.mb=512
+    private static final int streamingLargeFileSize = Integer.getInteger("streaming.large.mb", 0);
+
     //junit creates for every test method a new class instance so we need a static list
     private static Map<Integer, File> encryptedFiles = new TreeMap<Integer, File>();
+    private static Map<Integer, File> streamingEncryptedFiles = new TreeMap<Integer, File>();
 
 
     @Override
@@ -52,9 +61,9 @@ public class PerformanceMemoryTest extends AbstractPerformanceTest {
         System.out.println("Testing Outbound Encryption Memory Performance");
         FileWriter outEncryptionSamplesWriter = new FileWriter("target/encryptionOutMemorySamples.txt", false);
         
-        Serializer documentSerializer = new DocumentSerializer();
+        Serializer documentSerializer = new DocumentSerializer(true);
         Serializer staxSerializer = new StaxSerializer();
-        Serializer transformSerializer = new TransformSerializer();
+        Serializer transformSerializer = new TransformSerializer(true);
         
         for (int i = 1; i <= runs; i++) {
             System.out.println("Run " + i);
@@ -94,6 +103,18 @@ public class PerformanceMemoryTest extends AbstractPerformanceTest {
             thread.join();
             outEncryptionSamplesWriter.write(" " + mst.getMaxUsedMemory());
 
+            final File streamingFile = file;
+            final int streamingTagCount = startTagCount;
+            int streamingMemory = getMaxUsedMemory(new Callable<File>() {
+                public File call() throws Exception {
+                    File streamingEncryptedFile = doStreamingEncryptionOutbound(streamingFile, streamingTagCount);
+                    streamingEncryptedFiles.put(streamingTagCount, streamingEncryptedFile);
+                    return streamingEncryptedFile;
+                }
+            });
+            outEncryptionSamplesWriter.write(" " + streamingMemory);
+            assertStreamingHeapBounded(streamingMemory, file);
+
             encryptedFiles.put(startTagCount, encryptedFile);
             
             outEncryptionSamplesWriter.write("\n");
@@ -106,9 +127,9 @@ public class PerformanceMemoryTest extends AbstractPerformanceTest {
         System.out.println("Testing Inbound Decryption Memory Performance");
         FileWriter inEncryptionSamplesWriter = new FileWriter("target/encryptionInMemorySamples.txt", false);
         
-        Serializer documentSerializer = new DocumentSerializer();
+        Serializer documentSerializer = new DocumentSerializer(true);
         Serializer staxSerializer = new StaxSerializer();
-        Serializer transformSerializer = new TransformSerializer();
+        Serializer transformSerializer = new TransformSerializer(true);
 
         int run = 1;
         Iterator<Map.Entry<Integer, File>> mapIterator = encryptedFiles.entrySet().iterator();
@@ -150,11 +171,70 @@ public class PerformanceMemoryTest extends AbstractPerformanceTest {
             thread.join();
             inEncryptionSamplesWriter.write(" " + mst.getMaxUsedMemory());
 
+            final File streamingEncryptedFile = streamingEncryptedFiles.get(startTagCount);
+            final int streamingTagCount = startTagCount;
+            int streamingMemory = getMaxUsedMemory(new Callable<Void>() {
+                public Void call() throws Exception {
+                    doStreamingDecryptionInbound(streamingEncryptedFile, streamingTagCount);
+                    return null;
+                }
+            });
+            inEncryptionSamplesWriter.write(" " + streamingMemory);
+            assertStreamingHeapBounded(streamingMemory, streamingEncryptedFile);
+
             inEncryptionSamplesWriter.write("\n");
         }
         inEncryptionSamplesWriter.close();
     }
 
+    @Test
+    public void testRunThirdLargeStreamingMemoryPerformance() throws Exception {
+        Assume.assumeTrue("Set -Dstreaming.large.mb to stream a large document", streamingLargeFileSize > 0);
+        System.out.println("Testing Streaming Memory Performance for a " + streamingLargeFileSize + "MB document");
+
+        int factor = (int)(streamingLargeFileSize * 1024L * 1024L
+            / getClass().getClassLoader().getResource("plaintext.xml").openConnection().getContentLengthLong());
+        final File file = generateLargeXMLFile(factor);
+
+        final File[] encryptedFile = new File[1];
+        int streamingMemory = getMaxUsedMemory(new Callable<Void>() {
+            public Void call() throws Exception {
+                encryptedFile[0] = doStreamingEncryptionOutbound(file, factor);
+                return null;
+            }
+        });
+        assertStreamingHeapBounded(streamingMemory, file);
+
+        streamingMemory = getMaxUsedMemory(new Callable<Void>() {
+            public Void call() throws Exception {
+                doStreamingDecryptionInbound(encryptedFile[0], factor);
+                return null;
+            }
+        });
+        assertStreamingHeapBounded(streamingMemory, encryptedFile[0]);
+    }
+
+    private int getMaxUsedMemory(Callable<?> task) throws Exception {
+        long startMem = getUsedMemory();
+        MemorySamplerThread mst = new MemorySamplerThread(startMem);
+        Thread thread = new Thread(mst);
+        thread.setPriority(9);
+        thread.start();
+        try {
+            task.call();
+        } finally {
+            mst.setStop(true);
+            thread.join();
+        }
+        return mst.getMaxUsedMemory();
+    }
+
+    private static void assertStreamingHeapBounded(int usedMemory, File file) {
+        Assert.assertTrue("Streaming " + file.length() / 1024 / 1024 + "MB used " + usedMemory
+                          + "MB of heap, which is more than the ceiling of " + streamingHeapCeiling + "MB",
+                          usedMemory <= streamingHeapCeiling);
+    }
+
     private static void gc() {
         System.gc();
         System.runFinalization();
@@ -41,6 +41,7 @@ public class PerformanceTimingTest extends AbstractPerformanceTest {
     private static final int xmlResizeFactor = 1000;
 
     private static Map<Integer, File> encryptedFiles = new TreeMap<Integer, File>();
+    private static Map<Integer, File> streamingEncryptedFiles = new TreeMap<Integer, File>();
 
 
     @Override
@@ -53,9 +54,9 @@ public class PerformanceTimingTest extends AbstractPerformanceTest {
         System.out.println("Testing Outbound Encryption Time Performance");
         FileWriter outEncryptionSamplesWriter = new FileWriter("target/encryptionOutTimeSamples.txt", false);
         
-        Serializer documentSerializer = new DocumentSerializer();
+        Serializer documentSerializer = new DocumentSerializer(true);
         Serializer staxSerializer = new StaxSerializer();
-        Serializer transformSerializer = new TransformSerializer();
+        Serializer transformSerializer = new TransformSerializer(true);
         
         for (int i = 1; i <= runs; i++) {
             System.out.println("Run " + i);
@@ -80,7 +81,13 @@ public class PerformanceTimingTest extends AbstractPerformanceTest {
             outEncryptionSamplesWriter.write(" " + ((System.currentTimeMillis() - start) / 1000.0));
             doGC();
 
+            start = System.currentTimeMillis();
+            File streamingEncryptedFile = doStreamingEncryptionOutbound(file, startTagCount);
+            outEncryptionSamplesWriter.write(" " + ((System.currentTimeMillis() - start) / 1000.0));
+            doGC();
+
             encryptedFiles.put(startTagCount, encryptedFile);
+            streamingEncryptedFiles.put(startTagCount, streamingEncryptedFile);
             
             outEncryptionSamplesWriter.write("\n");
         }
@@ -92,9 +99,9 @@ public class PerformanceTimingTest extends AbstractPerformanceTest {
         System.out.println("Testing Inbound Decryption Time Performance");
         FileWriter inEncryptionSamplesWriter = new FileWriter("target/encryptionInTimeSamples.txt", false);
         
-        Serializer documentSerializer = new DocumentSerializer();
+        Serializer documentSerializer = new DocumentSerializer(true);
         Serializer staxSerializer = new StaxSerializer();
-        Serializer transformSerializer = new TransformSerializer();
+        Serializer transformSerializer = new TransformSerializer(true);
 
         int run = 1;
         Iterator<Map.Entry<Integer, File>> mapIterator = encryptedFiles.entrySet().iterator();
@@ -121,6 +128,11 @@ public class PerformanceTimingTest extends AbstractPerformanceTest {
             inEncryptionSamplesWriter.write(" " + ((System.currentTimeMillis() - start) / 1000.0));
             doGC();
 
+            start = System.currentTimeMillis();
+            doStreamingDecryptionInbound(streamingEncryptedFiles.get(startTagCount), startTagCount);
+            inEncryptionSamplesWriter.write(" " + ((System.currentTimeMillis() - start) / 1000.0));
+            doGC();
+
             inEncryptionSamplesWriter.write("\n");
         }
         inEncryptionSamplesWriter.close();
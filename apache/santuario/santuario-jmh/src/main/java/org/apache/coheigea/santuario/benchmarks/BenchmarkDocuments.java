@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.santuario.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Document;
+
+/**
+ * Some utility methods to generate test documents of a given size for the benchmarks. The
+ * documents are built by repeating the content of plaintext.xml under a single PurchaseOrder
+ * root element, so that the structure is the same regardless of the size.
+ */
+public final class BenchmarkDocuments {
+
+    private static final String ROOT_START = "<PurchaseOrder xmlns=\"urn:example:po\">";
+    private static final String ROOT_END = "</PurchaseOrder>";
+
+    private BenchmarkDocuments() {
+        // complete
+    }
+
+    /**
+     * Generate a serialized document that is at least sizeKb kilobytes in size.
+     */
+    public static byte[] generate(int sizeKb) throws IOException {
+        String content = readPlaintextContent();
+        long targetSize = sizeKb * 1024L;
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int)targetSize + 1024);
+        outputStream.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n".getBytes(StandardCharsets.UTF_8));
+        outputStream.write(ROOT_START.getBytes(StandardCharsets.UTF_8));
+        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+        do {
+            outputStream.write(contentBytes);
+        } while (outputStream.size() + ROOT_END.length() < targetSize);
+        outputStream.write(ROOT_END.getBytes(StandardCharsets.UTF_8));
+
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Parse the given bytes into a (namespace aware) Document. This is only intended to be
+     * called from benchmark setup methods, and not from the measured code.
+     */
+    public static Document parse(byte[] bytes) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, Boolean.TRUE);
+        dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        dbf.setNamespaceAware(true);
+        return dbf.newDocumentBuilder().parse(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Serialize the given Document into a byte array.
+     */
+    public static byte[] serialize(Document document) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        XMLUtils.outputDOM(document, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Return a deep copy of the given Document, so that benchmarks which modify the Document
+     * can work on a fresh copy for each invocation without having to re-parse it.
+     */
+    public static Document copy(Document document) {
+        return (Document)document.cloneNode(true);
+    }
+
+    private static String readPlaintextContent() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (InputStream inputStream =
+                BenchmarkDocuments.class.getClassLoader().getResourceAsStream("plaintext.xml")) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        }
+
+        String plaintext = new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+        int start = plaintext.indexOf(ROOT_START) + ROOT_START.length();
+        int end = plaintext.lastIndexOf(ROOT_END);
+        return plaintext.substring(start, end);
+    }
+
+    /**
+     * An OutputStream that discards everything that is written to it, so that the benchmarks
+     * measure the cost of producing the output and not of buffering it.
+     */
+    public static final class NullOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+            // discard
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            // discard
+        }
+    }
+
+}
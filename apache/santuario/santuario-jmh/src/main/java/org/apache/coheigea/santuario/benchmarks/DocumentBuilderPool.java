@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.santuario.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * A bounded pool of (secure) DocumentBuilders. Borrowing and returning a DocumentBuilder is
+ * lock-free. If the pool is empty a new DocumentBuilder is created, and if it is full a returned
+ * DocumentBuilder is discarded, so the pool never holds more than "capacity" DocumentBuilders.
+ * The DocumentBuilders are not tied to a thread, so they are reused by short-lived or virtual
+ * threads as well. Each thread starts looking for a DocumentBuilder (or a free slot) at a
+ * different slot, so that threads do not all contend on the same slots.
+ *
+ * DocumentBuilders are reset when they are returned, which restores the secure processing
+ * configuration of the DocumentBuilderFactory and removes any EntityResolver/ErrorHandler.
+ */
+public final class DocumentBuilderPool {
+
+    private final DocumentBuilderFactory factory;
+    private final AtomicReferenceArray<DocumentBuilder> pool;
+
+    public DocumentBuilderPool(int capacity) throws ParserConfigurationException {
+        this(capacity, true);
+    }
+
+    public DocumentBuilderPool(int capacity, boolean disallowDocTypeDeclarations)
+        throws ParserConfigurationException {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity must not be negative");
+        }
+        factory = DocumentBuilderFactory.newInstance();
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, Boolean.TRUE);
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", disallowDocTypeDeclarations);
+        factory.setNamespaceAware(true);
+        pool = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Parse the given InputSource using a pooled DocumentBuilder
+     */
+    public Document parse(InputSource inputSource) throws ParserConfigurationException, SAXException, IOException {
+        DocumentBuilder documentBuilder = borrow();
+        try {
+            return documentBuilder.parse(inputSource);
+        } finally {
+            release(documentBuilder);
+        }
+    }
+
+    /**
+     * Borrow a DocumentBuilder from the pool. It must be returned via release after use, and must
+     * not be used after it is returned.
+     */
+    public DocumentBuilder borrow() throws ParserConfigurationException {
+        int capacity = pool.length();
+        int start = startSlot(capacity);
+        for (int i = 0; i < capacity; i++) {
+            int slot = (start + i) % capacity;
+            DocumentBuilder documentBuilder = pool.get(slot);
+            if (documentBuilder != null && pool.compareAndSet(slot, documentBuilder, null)) {
+                return documentBuilder;
+            }
+        }
+
+        return newDocumentBuilder();
+    }
+
+    /**
+     * Return a DocumentBuilder to the pool
+     */
+    public void release(DocumentBuilder documentBuilder) {
+        documentBuilder.reset();
+
+        int capacity = pool.length();
+        int start = startSlot(capacity);
+        for (int i = 0; i < capacity; i++) {
+            int slot = (start + i) % capacity;
+            if (pool.get(slot) == null && pool.compareAndSet(slot, null, documentBuilder)) {
+                return;
+            }
+        }
+        // The pool is full, so just discard it
+    }
+
+    private static int startSlot(int capacity) {
+        return capacity == 0 ? 0 : (int)(Thread.currentThread().getId() % capacity);
+    }
+
+    private DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        // DocumentBuilderFactory is not guaranteed to be thread-safe. This is only called when the
+        // pool is empty, so the lock is not on the common path.
+        synchronized (factory) {
+            return factory.newDocumentBuilder();
+        }
+    }
+
+}
@@ -18,15 +18,32 @@
  */
 package org.apache.coheigea.santuario.benchmarks;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.Key;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.xml.security.Init;
 import org.apache.xml.security.encryption.EncryptedData;
 import org.apache.xml.security.encryption.EncryptedKey;
 import org.apache.xml.security.encryption.XMLCipher;
 import org.apache.xml.security.keys.KeyInfo;
+import org.apache.xml.security.stax.ext.InboundXMLSec;
+import org.apache.xml.security.stax.ext.OutboundXMLSec;
+import org.apache.xml.security.stax.ext.SecurePart;
+import org.apache.xml.security.stax.ext.XMLSec;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.securityEvent.AbstractSecuredElementSecurityEvent;
+import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
+import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -36,8 +53,11 @@ import org.w3c.dom.NodeList;
  */
 public final class EncryptionUtils {
     
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+    
     static {
         Init.init();
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
     }
     
     private EncryptionUtils() {
@@ -117,5 +137,94 @@ public final class EncryptionUtils {
         }
     }
     
+    /**
+     * Encrypt the document using the StAX API of Apache Santuario - XML Security for Java. If 
+     * a wrappingKey is supplied, this is used to encrypt the encryptingKey + place it in an 
+     * EncryptedKey structure. The encrypted document is written to the given OutputStream.
+     */
+    public static void encryptUsingStAX(
+        InputStream inputStream,
+        OutputStream outputStream,
+        List<QName> namesToEncrypt,
+        String algorithm,
+        Key encryptingKey,
+        String keyTransportAlgorithm,
+        PublicKey wrappingKey,
+        boolean content
+    ) throws Exception {
+        // Set up the Configuration
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        List<XMLSecurityConstants.Action> actions = new ArrayList<XMLSecurityConstants.Action>();
+        actions.add(XMLSecurityConstants.ENCRYPT);
+        properties.setActions(actions);
+        
+        properties.setEncryptionSymAlgorithm(algorithm);
+        properties.setEncryptionKey(encryptingKey);
+        properties.setEncryptionKeyTransportAlgorithm(keyTransportAlgorithm);
+        properties.setEncryptionTransportKey(wrappingKey);
+        properties.setEncryptionKeyIdentifier(
+                SecurityTokenConstants.KeyIdentifier_X509KeyIdentifier);
+        
+        SecurePart.Modifier modifier = SecurePart.Modifier.Content;
+        if (!content) {
+            modifier = SecurePart.Modifier.Element;
+        }
+        for (QName nameToEncrypt : namesToEncrypt) {
+            SecurePart securePart = new SecurePart(nameToEncrypt, modifier);
+            properties.addEncryptionPart(securePart);
+        }
+
+        OutboundXMLSec outboundXMLSec = XMLSec.getOutboundXMLSec(properties);
+        XMLStreamWriter xmlStreamWriter = outboundXMLSec.processOutMessage(outputStream, "UTF-8");
+
+        XMLStreamReader xmlStreamReader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+
+        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+        xmlStreamReader.close();
+    }
+    
+    /**
+     * Decrypt the document using the StAX API of Apache Santuario - XML Security for Java.
+     */
+    public static void decryptUsingStAX(
+        InputStream inputStream,
+        List<QName> namesToEncrypt,
+        Key privateKey
+    ) throws Exception {
+        // Set up the Configuration
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        List<XMLSecurityConstants.Action> actions = new ArrayList<XMLSecurityConstants.Action>();
+        actions.add(XMLSecurityConstants.ENCRYPT);
+        properties.setActions(actions);
+        
+        properties.setDecryptionKey(privateKey);
+        
+        InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+        
+        final XMLStreamReader xmlStreamReader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+        
+        final List<QName> encryptedNames = new ArrayList<>();
+        XMLStreamReader securityStreamReader = 
+            inboundXMLSec.processInMessage(xmlStreamReader, null, securityEvent -> {
+                if ((securityEvent.getSecurityEventType() == SecurityEventConstants.EncryptedElement
+                    || securityEvent.getSecurityEventType() == SecurityEventConstants.ContentEncrypted)
+                    && ((AbstractSecuredElementSecurityEvent)securityEvent).isEncrypted()) {
+                    List<QName> elementPath = ((AbstractSecuredElementSecurityEvent)securityEvent).getElementPath();
+                    encryptedNames.add(elementPath.get(elementPath.size() - 1));
+                }
+            });
+        
+        while (securityStreamReader.hasNext()) {
+            securityStreamReader.next();
+        }
+        xmlStreamReader.close();
+        inputStream.close();
+        
+        // Check that what we were expecting to be encrypted was actually encrypted
+        if (!encryptedNames.containsAll(namesToEncrypt)) {
+            throw new Exception("Failure to decrypt the document");
+        }
+    }
 
 }
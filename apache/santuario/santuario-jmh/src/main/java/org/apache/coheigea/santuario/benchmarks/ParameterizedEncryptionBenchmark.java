@@ -0,0 +1,157 @@
+package org.apache.coheigea.santuario.benchmarks;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+
+/**
+ * Benchmarks for XML Encryption using the DOM API, parameterized by document size, symmetric
+ * encryption algorithm and key transport algorithm. The documents and keys are set up in the State
+ * objects, so that only the cost of encrypting/decrypting is measured. Run it with different thread
+ * counts using "-t" or via the BenchmarkRunner.
+ */
+public class ParameterizedEncryptionBenchmark {
+
+    static final String AES128_CBC = "http://www.w3.org/2001/04/xmlenc#aes128-cbc";
+    static final String AES256_CBC = "http://www.w3.org/2001/04/xmlenc#aes256-cbc";
+    static final String AES128_GCM = "http://www.w3.org/2009/xmlenc11#aes128-gcm";
+    static final String AES256_GCM = "http://www.w3.org/2009/xmlenc11#aes256-gcm";
+
+    static final String RSA_OAEP_MGF1P = "http://www.w3.org/2001/04/xmlenc#rsa-oaep-mgf1p";
+    static final String RSA_OAEP_11 = "http://www.w3.org/2009/xmlenc11#rsa-oaep";
+
+    @State(Scope.Thread)
+    public abstract static class AbstractEncryptionState {
+
+        @Param({"1", "10", "100", "1024", "10240", "51200"})
+        int sizeKb;
+
+        @Param({AES128_CBC, AES256_CBC, AES128_GCM, AES256_GCM})
+        String encryptionAlgorithm;
+
+        @Param({RSA_OAEP_MGF1P, RSA_OAEP_11})
+        String keyTransportAlgorithm;
+
+        Key privateKey;
+        X509Certificate cert;
+        SecretKey secretKey;
+        Document plaintextDocument;
+
+        void setUpKeysAndDocument() throws Exception {
+            KeyStore keyStore = KeyStore.getInstance("jks");
+            keyStore.load(
+                this.getClass().getClassLoader().getResource("clientstore.jks").openStream(),
+                "cspass".toCharArray()
+            );
+            privateKey = keyStore.getKey("myclientkey", "ckpass".toCharArray());
+            cert = (X509Certificate)keyStore.getCertificate("myclientkey");
+
+            KeyGenerator keygen = KeyGenerator.getInstance("AES");
+            keygen.init(encryptionAlgorithm.contains("aes128") ? 128 : 256);
+            secretKey = keygen.generateKey();
+
+            plaintextDocument = BenchmarkDocuments.parse(BenchmarkDocuments.generate(sizeKb));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class EncryptionState extends AbstractEncryptionState {
+
+        Document document;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            setUpKeysAndDocument();
+        }
+
+        // Encryption modifies the document, so each invocation works on a fresh copy
+        @Setup(Level.Invocation)
+        public void copyDocument() {
+            document = BenchmarkDocuments.copy(plaintextDocument);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class DecryptionState extends AbstractEncryptionState {
+
+        Document encryptedDocument;
+        Document document;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            setUpKeysAndDocument();
+
+            Document document = BenchmarkDocuments.copy(plaintextDocument);
+            EncryptionUtils.encryptUsingDOM(
+                document, encryptionAlgorithm, secretKey, keyTransportAlgorithm, cert.getPublicKey(), true
+            );
+            encryptedDocument = BenchmarkDocuments.parse(BenchmarkDocuments.serialize(document));
+            plaintextDocument = null;
+        }
+
+        // Decryption modifies the document, so each invocation works on a fresh copy
+        @Setup(Level.Invocation)
+        public void copyDocument() {
+            document = BenchmarkDocuments.copy(encryptedDocument);
+        }
+    }
+
+    @Benchmark
+    public Document testEncryption(EncryptionState state) throws Exception {
+        EncryptionUtils.encryptUsingDOM(
+            state.document, state.encryptionAlgorithm, state.secretKey,
+            state.keyTransportAlgorithm, state.cert.getPublicKey(), true
+        );
+        return state.document;
+    }
+
+    @Benchmark
+    public Document testDecryption(DecryptionState state) throws Exception {
+        EncryptionUtils.decryptUsingDOM(state.document, state.encryptionAlgorithm, state.privateKey);
+        return state.document;
+    }
+
+}
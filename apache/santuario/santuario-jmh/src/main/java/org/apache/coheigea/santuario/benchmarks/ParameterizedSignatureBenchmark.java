@@ -0,0 +1,161 @@
+package org.apache.coheigea.santuario.benchmarks;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+
+/**
+ * Benchmarks for XML Signature using the JSR-105 API, parameterized by document size and signature
+ * algorithm. The documents and keys are set up in the State objects, so that only the cost of
+ * signing/verifying (digesting, canonicalization and the signature itself) is measured. Run it with
+ * different thread counts using "-t" or via the BenchmarkRunner.
+ */
+public class ParameterizedSignatureBenchmark {
+
+    static final String RSA_SHA256 = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256";
+    static final String RSA_SHA512 = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha512";
+    static final String ECDSA_SHA256 = "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha256";
+    static final String HMAC_SHA256 = "http://www.w3.org/2001/04/xmldsig-more#hmac-sha256";
+
+    static final String DIGEST_SHA256 = "http://www.w3.org/2001/04/xmlenc#sha256";
+
+    @State(Scope.Thread)
+    public abstract static class AbstractSignatureState {
+
+        @Param({"1", "10", "100", "1024", "10240", "51200"})
+        int sizeKb;
+
+        @Param({RSA_SHA256, RSA_SHA512, ECDSA_SHA256, HMAC_SHA256})
+        String signatureAlgorithm;
+
+        // Created once per thread, so that only the signing/verification is measured
+        XMLSignatureFactory signatureFactory;
+        Key signingKey;
+        Key validatingKey;
+        X509Certificate cert;
+        Document plaintextDocument;
+
+        void setUpKeysAndDocument() throws Exception {
+            signatureFactory = XMLSignatureFactory.getInstance("DOM");
+            if (RSA_SHA256.equals(signatureAlgorithm) || RSA_SHA512.equals(signatureAlgorithm)) {
+                KeyStore keyStore = KeyStore.getInstance("jks");
+                keyStore.load(
+                    this.getClass().getClassLoader().getResource("clientstore.jks").openStream(),
+                    "cspass".toCharArray()
+                );
+                signingKey = keyStore.getKey("myclientkey", "ckpass".toCharArray());
+                cert = (X509Certificate)keyStore.getCertificate("myclientkey");
+                validatingKey = cert.getPublicKey();
+            } else if (ECDSA_SHA256.equals(signatureAlgorithm)) {
+                KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+                keyPairGenerator.initialize(256);
+                KeyPair keyPair = keyPairGenerator.generateKeyPair();
+                signingKey = keyPair.getPrivate();
+                validatingKey = keyPair.getPublic();
+            } else if (HMAC_SHA256.equals(signatureAlgorithm)) {
+                KeyGenerator keygen = KeyGenerator.getInstance("HmacSHA256");
+                signingKey = keygen.generateKey();
+                validatingKey = signingKey;
+            } else {
+                throw new IllegalStateException("Unsupported signature algorithm: " + signatureAlgorithm);
+            }
+
+            plaintextDocument = BenchmarkDocuments.parse(BenchmarkDocuments.generate(sizeKb));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SigningState extends AbstractSignatureState {
+
+        Document document;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            setUpKeysAndDocument();
+        }
+
+        // Signing modifies the document, so each invocation works on a fresh copy
+        @Setup(Level.Invocation)
+        public void copyDocument() {
+            document = BenchmarkDocuments.copy(plaintextDocument);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class VerificationState extends AbstractSignatureState {
+
+        Document signedDocument;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            setUpKeysAndDocument();
+
+            Document document = BenchmarkDocuments.copy(plaintextDocument);
+            SignatureUtils.signUsingJSR105(
+                signatureFactory, document, signatureAlgorithm, DIGEST_SHA256, signingKey, cert
+            );
+            signedDocument = BenchmarkDocuments.parse(BenchmarkDocuments.serialize(document));
+            plaintextDocument = null;
+        }
+    }
+
+    @Benchmark
+    public Document testSignatureCreation(SigningState state) throws Exception {
+        SignatureUtils.signUsingJSR105(
+            state.signatureFactory, state.document, state.signatureAlgorithm, DIGEST_SHA256,
+            state.signingKey, state.cert
+        );
+        return state.document;
+    }
+
+    @Benchmark
+    public void testSignatureVerification(VerificationState state) throws Exception {
+        SignatureUtils.verifyUsingJSR105(state.signatureFactory, state.signedDocument, state.validatingKey);
+    }
+
+}
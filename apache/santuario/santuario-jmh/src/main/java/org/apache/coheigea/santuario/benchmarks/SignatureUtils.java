@@ -18,6 +18,8 @@
  */
 package org.apache.coheigea.santuario.benchmarks;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.Key;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
@@ -39,8 +41,21 @@ import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
 import javax.xml.crypto.dsig.keyinfo.X509Data;
 import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.xml.security.Init;
+import org.apache.xml.security.stax.ext.InboundXMLSec;
+import org.apache.xml.security.stax.ext.OutboundXMLSec;
+import org.apache.xml.security.stax.ext.SecurePart;
+import org.apache.xml.security.stax.ext.XMLSec;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
+import org.apache.xml.security.stax.securityEvent.SignedElementSecurityEvent;
+import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -49,8 +64,11 @@ import org.w3c.dom.Element;
  */
 public final class SignatureUtils {
 
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
     static {
         Init.init();
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
     }
 
     private SignatureUtils() {
@@ -65,14 +83,48 @@ public final class SignatureUtils {
         String algorithm,
         Key signingKey,
         X509Certificate signingCert
+    ) throws Exception {
+        signUsingJSR105(document, algorithm, "http://www.w3.org/2000/09/xmldsig#sha1", signingKey, signingCert);
+    }
+
+    /**
+     * Sign the (enveloped) document using the JSR-105 API, which is included in the JDK. The
+     * signing certificate is optional - if it is null then no KeyInfo is included in the Signature
+     * (e.g. for ECDSA or HMAC keys).
+     */
+    public static void signUsingJSR105(
+        Document document,
+        String algorithm,
+        String digestAlgorithm,
+        Key signingKey,
+        X509Certificate signingCert
     ) throws Exception {
         XMLSignatureFactory signatureFactory = XMLSignatureFactory.getInstance("DOM");
+        signUsingJSR105(signatureFactory, document, algorithm, digestAlgorithm, signingKey, signingCert);
+    }
+
+    /**
+     * Sign the (enveloped) document using the JSR-105 API, with the given XMLSignatureFactory. The
+     * instance methods of an XMLSignatureFactory are not guaranteed to be thread-safe, so it should
+     * not be shared between threads.
+     */
+    public static void signUsingJSR105(
+        XMLSignatureFactory signatureFactory,
+        Document document,
+        String algorithm,
+        String digestAlgorithm,
+        Key signingKey,
+        X509Certificate signingCert
+    ) throws Exception {
         CanonicalizationMethod c14nMethod =
             signatureFactory.newCanonicalizationMethod("http://www.w3.org/2001/10/xml-exc-c14n#", (C14NMethodParameterSpec)null);
 
-        KeyInfoFactory keyInfoFactory = signatureFactory.getKeyInfoFactory();
-        X509Data x509Data = keyInfoFactory.newX509Data(Collections.singletonList(signingCert));
-        javax.xml.crypto.dsig.keyinfo.KeyInfo keyInfo = keyInfoFactory.newKeyInfo(Collections.singletonList(x509Data));
+        javax.xml.crypto.dsig.keyinfo.KeyInfo keyInfo = null;
+        if (signingCert != null) {
+            KeyInfoFactory keyInfoFactory = signatureFactory.getKeyInfoFactory();
+            X509Data x509Data = keyInfoFactory.newX509Data(Collections.singletonList(signingCert));
+            keyInfo = keyInfoFactory.newKeyInfo(Collections.singletonList(x509Data));
+        }
 
         List<javax.xml.crypto.dsig.Reference> referenceList = new ArrayList<>();
         Element elementToSign = document.getDocumentElement();
@@ -85,7 +137,7 @@ public final class SignatureUtils {
         				"http://www.w3.org/2000/09/xmldsig#enveloped-signature", (TransformParameterSpec)null
         				);
 
-        DigestMethod digestMethod = signatureFactory.newDigestMethod("http://www.w3.org/2000/09/xmldsig#sha1", null);
+        DigestMethod digestMethod = signatureFactory.newDigestMethod(digestAlgorithm, null);
         javax.xml.crypto.dsig.Reference reference =
         		signatureFactory.newReference(
         				"#" + id,
@@ -118,6 +170,27 @@ public final class SignatureUtils {
     public static void verifyUsingJSR105(
         Document document,
         X509Certificate cert
+    ) throws Exception {
+        verifyUsingJSR105(document, cert.getPublicKey());
+    }
+
+    /**
+     * Verify the (enveloped) document using the JSR-105 API, which is included in the JDK
+     */
+    public static void verifyUsingJSR105(
+        Document document,
+        Key validatingKey
+    ) throws Exception {
+        verifyUsingJSR105(XMLSignatureFactory.getInstance("DOM"), document, validatingKey);
+    }
+
+    /**
+     * Verify the (enveloped) document using the JSR-105 API, with the given XMLSignatureFactory
+     */
+    public static void verifyUsingJSR105(
+        XMLSignatureFactory signatureFactory,
+        Document document,
+        Key validatingKey
     ) throws Exception {
         // Find the Signature Element
         Element sigElement = 
@@ -125,12 +198,11 @@ public final class SignatureUtils {
         				"Signature").item(0);
         document.getDocumentElement().setIdAttributeNS(null, "Id", true);
 
-        XMLValidateContext context = new DOMValidateContext(cert.getPublicKey(), sigElement);
+        XMLValidateContext context = new DOMValidateContext(validatingKey, sigElement);
         context.setProperty("javax.xml.crypto.dsig.cacheReference", Boolean.TRUE);
         context.setProperty("org.apache.jcp.xml.dsig.secureValidation", Boolean.TRUE);
         context.setProperty("org.jcp.xml.dsig.secureValidation", Boolean.TRUE);
 
-        XMLSignatureFactory signatureFactory = XMLSignatureFactory.getInstance("DOM");
         javax.xml.crypto.dsig.XMLSignature xmlSignature = signatureFactory.unmarshalXMLSignature(context);
 
         // Check the Signature value
@@ -139,4 +211,92 @@ public final class SignatureUtils {
         }
     }
 
+    /**
+     * Sign the (enveloped) document using the StAX API of Apache Santuario - XML Security for Java.
+     * The signed document is written to the given OutputStream.
+     */
+    public static void signUsingStAX(
+        InputStream inputStream,
+        OutputStream outputStream,
+        List<QName> namesToSign,
+        String algorithm,
+        String digestAlgorithm,
+        Key signingKey,
+        X509Certificate signingCert
+    ) throws Exception {
+        // Set up the Configuration
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        List<XMLSecurityConstants.Action> actions = new ArrayList<XMLSecurityConstants.Action>();
+        actions.add(XMLSecurityConstants.SIGNATURE);
+        properties.setActions(actions);
+
+        properties.setSignatureAlgorithm(algorithm);
+        properties.setSignatureDigestAlgorithm(digestAlgorithm);
+        properties.setSignatureCerts(new X509Certificate[]{signingCert});
+        properties.setSignatureKey(signingKey);
+        properties.setSignatureKeyIdentifier(
+                SecurityTokenConstants.KeyIdentifier_X509KeyIdentifier);
+
+        String[] transforms = new String[] {
+            "http://www.w3.org/2000/09/xmldsig#enveloped-signature",
+            "http://www.w3.org/2001/10/xml-exc-c14n#"
+        };
+        for (QName nameToSign : namesToSign) {
+            SecurePart securePart =
+                new SecurePart(nameToSign, SecurePart.Modifier.Element, transforms, digestAlgorithm);
+            properties.addSignaturePart(securePart);
+        }
+
+        OutboundXMLSec outboundXMLSec = XMLSec.getOutboundXMLSec(properties);
+        XMLStreamWriter xmlStreamWriter = outboundXMLSec.processOutMessage(outputStream, "UTF-8");
+
+        XMLStreamReader xmlStreamReader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+
+        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+        xmlStreamReader.close();
+    }
+
+    /**
+     * Verify the document using the StAX API of Apache Santuario - XML Security for Java.
+     */
+    public static void verifyUsingStAX(
+        InputStream inputStream,
+        List<QName> namesToSign,
+        X509Certificate cert
+    ) throws Exception {
+        // Set up the Configuration
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        List<XMLSecurityConstants.Action> actions = new ArrayList<XMLSecurityConstants.Action>();
+        actions.add(XMLSecurityConstants.SIGNATURE);
+        properties.setActions(actions);
+
+        properties.setSignatureVerificationKey(cert.getPublicKey());
+
+        InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+
+        final XMLStreamReader xmlStreamReader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+
+        final List<QName> signedNames = new ArrayList<>();
+        XMLStreamReader securityStreamReader =
+            inboundXMLSec.processInMessage(xmlStreamReader, null, securityEvent -> {
+                if (securityEvent.getSecurityEventType() == SecurityEventConstants.SignedElement
+                    && ((SignedElementSecurityEvent)securityEvent).isSigned()) {
+                    List<QName> elementPath = ((SignedElementSecurityEvent)securityEvent).getElementPath();
+                    signedNames.add(elementPath.get(elementPath.size() - 1));
+                }
+            });
+
+        while (securityStreamReader.hasNext()) {
+            securityStreamReader.next();
+        }
+        xmlStreamReader.close();
+        inputStream.close();
+
+        // Check that what we were expecting to be signed was actually signed
+        if (!signedNames.containsAll(namesToSign)) {
+            throw new Exception("Failure to validate the signature");
+        }
+    }
+
 }
@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.santuario.benchmarks;
+
+import java.security.Key;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.SignatureMethod;
+import javax.xml.crypto.dsig.SignedInfo;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.XMLValidateContext;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+import javax.xml.crypto.dsig.keyinfo.X509Data;
+import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+
+import org.apache.xml.security.Init;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * A reusable alternative to SignatureUtils.signUsingJSR105 / verifyUsingJSR105 for a fixed set of
+ * algorithms (and optionally a fixed signing certificate). The XMLSignatureFactory and the immutable
+ * JSR-105 structures (canonicalization/digest/signature methods, transforms and KeyInfo) are created
+ * once per thread and then reused for every document signed or verified on that thread. Only the
+ * Reference, SignedInfo and XMLSignature, which hold per-document state, are created per call.
+ *
+ * A SigningProfile itself is thread-safe and is intended to be shared.
+ */
+public final class SigningProfile {
+
+    private static final String ENVELOPED_TRANSFORM = "http://www.w3.org/2000/09/xmldsig#enveloped-signature";
+    private static final String XMLDSIG_NS = "http://www.w3.org/2000/09/xmldsig#";
+
+    static {
+        Init.init();
+    }
+
+    private final String signatureAlgorithm;
+    private final String digestAlgorithm;
+    private final String c14nAlgorithm;
+    private final X509Certificate signingCert;
+    private final ThreadLocal<SigningContext> contexts = ThreadLocal.withInitial(this::createContext);
+
+    /**
+     * Create a new SigningProfile. The signing certificate is optional - if it is null then no
+     * KeyInfo is included in the Signature.
+     */
+    public SigningProfile(
+        String signatureAlgorithm,
+        String digestAlgorithm,
+        String c14nAlgorithm,
+        X509Certificate signingCert
+    ) {
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.digestAlgorithm = digestAlgorithm;
+        this.c14nAlgorithm = c14nAlgorithm;
+        this.signingCert = signingCert;
+
+        // Fail early if the algorithms are not supported, rather than on first use
+        getContext();
+    }
+
+    /**
+     * Return the SigningContext for the current thread
+     */
+    public SigningContext getContext() {
+        return contexts.get();
+    }
+
+    /**
+     * Sign the (enveloped) document using the SigningContext for the current thread
+     */
+    public void sign(Document document, Key signingKey) throws Exception {
+        getContext().sign(document, signingKey);
+    }
+
+    /**
+     * Verify the (enveloped) document using the SigningContext for the current thread
+     */
+    public void verify(Document document, Key validatingKey) throws Exception {
+        getContext().verify(document, validatingKey);
+    }
+
+    private SigningContext createContext() {
+        try {
+            return new SigningContext(XMLSignatureFactory.getInstance("DOM"));
+        } catch (Exception ex) {
+            throw new IllegalStateException("Error creating the signing context", ex);
+        }
+    }
+
+    /**
+     * The per-thread state of a SigningProfile. It must not be shared between threads.
+     */
+    public final class SigningContext {
+
+        private final XMLSignatureFactory signatureFactory;
+        private final CanonicalizationMethod c14nMethod;
+        private final DigestMethod digestMethod;
+        private final SignatureMethod signatureMethod;
+        private final List<Transform> transforms;
+        private final KeyInfo keyInfo;
+
+        private SigningContext(XMLSignatureFactory signatureFactory) throws Exception {
+            this.signatureFactory = signatureFactory;
+            c14nMethod = signatureFactory.newCanonicalizationMethod(c14nAlgorithm, (C14NMethodParameterSpec)null);
+            digestMethod = signatureFactory.newDigestMethod(digestAlgorithm, null);
+            signatureMethod = signatureFactory.newSignatureMethod(signatureAlgorithm, null);
+            transforms = Collections.singletonList(
+                signatureFactory.newTransform(ENVELOPED_TRANSFORM, (TransformParameterSpec)null)
+            );
+
+            if (signingCert != null) {
+                KeyInfoFactory keyInfoFactory = signatureFactory.getKeyInfoFactory();
+                X509Data x509Data = keyInfoFactory.newX509Data(Collections.singletonList(signingCert));
+                keyInfo = keyInfoFactory.newKeyInfo(Collections.singletonList(x509Data));
+            } else {
+                keyInfo = null;
+            }
+        }
+
+        /**
+         * Sign the (enveloped) document
+         */
+        public void sign(Document document, Key signingKey) throws Exception {
+            Element elementToSign = document.getDocumentElement();
+            String id = UUID.randomUUID().toString();
+            elementToSign.setAttributeNS(null, "Id", id);
+            elementToSign.setIdAttributeNS(null, "Id", true);
+
+            Reference reference =
+                signatureFactory.newReference("#" + id, digestMethod, transforms, null, null);
+            SignedInfo signedInfo =
+                signatureFactory.newSignedInfo(c14nMethod, signatureMethod, Collections.singletonList(reference));
+
+            XMLSignature sig = signatureFactory.newXMLSignature(signedInfo, keyInfo, null, null, null);
+            sig.sign(new DOMSignContext(signingKey, elementToSign));
+        }
+
+        /**
+         * Verify the (enveloped) document
+         */
+        public void verify(Document document, Key validatingKey) throws Exception {
+            // Find the Signature Element
+            Element sigElement =
+                (Element)document.getDocumentElement().getElementsByTagNameNS(XMLDSIG_NS, "Signature").item(0);
+            document.getDocumentElement().setIdAttributeNS(null, "Id", true);
+
+            XMLValidateContext context = new DOMValidateContext(validatingKey, sigElement);
+            context.setProperty("javax.xml.crypto.dsig.cacheReference", Boolean.TRUE);
+            context.setProperty("org.apache.jcp.xml.dsig.secureValidation", Boolean.TRUE);
+            context.setProperty("org.jcp.xml.dsig.secureValidation", Boolean.TRUE);
+
+            XMLSignature xmlSignature = signatureFactory.unmarshalXMLSignature(context);
+
+            // Check the Signature value
+            if (!xmlSignature.validate(context)) {
+                throw new Exception("Failure to validate the signature");
+            }
+        }
+    }
+
+}
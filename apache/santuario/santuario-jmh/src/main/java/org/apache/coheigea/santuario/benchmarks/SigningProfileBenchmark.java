@@ -0,0 +1,125 @@
+package org.apache.coheigea.santuario.benchmarks;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+
+/**
+ * Compares signing/verifying with SignatureUtils, which builds all of the JSR-105 objects on every
+ * call, against a shared SigningProfile, which caches them per thread. Run it with different thread
+ * counts using "-t" or via the BenchmarkRunner, e.g. -Dbenchmarks=SigningProfile -Dthreads=1,8,32.
+ */
+public class SigningProfileBenchmark {
+
+    private static final String SIGNATURE_ALGORITHM = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256";
+    private static final String DIGEST_ALGORITHM = "http://www.w3.org/2001/04/xmlenc#sha256";
+    private static final String C14N_ALGORITHM = "http://www.w3.org/2001/10/xml-exc-c14n#";
+
+    @State(Scope.Benchmark)
+    public static class ProfileState {
+        Key key;
+        X509Certificate cert;
+        SigningProfile profile;
+        byte[] plaintext;
+        byte[] signed;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            KeyStore keyStore = KeyStore.getInstance("jks");
+            keyStore.load(
+                this.getClass().getClassLoader().getResource("clientstore.jks").openStream(),
+                "cspass".toCharArray()
+            );
+            key = keyStore.getKey("myclientkey", "ckpass".toCharArray());
+            cert = (X509Certificate)keyStore.getCertificate("myclientkey");
+
+            profile = new SigningProfile(SIGNATURE_ALGORITHM, DIGEST_ALGORITHM, C14N_ALGORITHM, cert);
+
+            plaintext = BenchmarkDocuments.generate(1);
+            Document document = BenchmarkDocuments.parse(plaintext);
+            profile.sign(document, key);
+            signed = BenchmarkDocuments.serialize(document);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class DocumentState {
+        Document plaintextDocument;
+        Document signedDocument;
+        Document document;
+
+        @Setup(Level.Trial)
+        public void setUp(ProfileState profileState) throws Exception {
+            plaintextDocument = BenchmarkDocuments.parse(profileState.plaintext);
+            signedDocument = BenchmarkDocuments.parse(profileState.signed);
+        }
+
+        // Signing modifies the document, so each invocation works on a fresh copy
+        @Setup(Level.Invocation)
+        public void copyDocument() {
+            document = BenchmarkDocuments.copy(plaintextDocument);
+        }
+    }
+
+    @Benchmark
+    public Document testSignaturePerCall(ProfileState state, DocumentState documentState) throws Exception {
+        SignatureUtils.signUsingJSR105(
+            documentState.document, SIGNATURE_ALGORITHM, DIGEST_ALGORITHM, state.key, state.cert
+        );
+        return documentState.document;
+    }
+
+    @Benchmark
+    public Document testSignatureProfile(ProfileState state, DocumentState documentState) throws Exception {
+        state.profile.sign(documentState.document, state.key);
+        return documentState.document;
+    }
+
+    @Benchmark
+    public void testVerificationPerCall(ProfileState state, DocumentState documentState) throws Exception {
+        SignatureUtils.verifyUsingJSR105(documentState.signedDocument, state.cert);
+    }
+
+    @Benchmark
+    public void testVerificationProfile(ProfileState state, DocumentState documentState) throws Exception {
+        state.profile.verify(documentState.signedDocument, state.cert.getPublicKey());
+    }
+
+}
@@ -0,0 +1,145 @@
+package org.apache.coheigea.santuario.benchmarks;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.xml.namespace.QName;
+
+import org.apache.xml.security.utils.XMLUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+
+/**
+ * Compares encrypting/decrypting a serialized document using the DOM API with the streaming StAX
+ * API, for a range of document sizes. Both paths start from bytes (including parsing), as a gateway
+ * would. Run it with "-prof gc" to see the allocation rate per operation (gc.alloc.rate.norm) of
+ * each approach.
+ */
+public class StreamingEncryptionBenchmark {
+
+    private static final String ENCRYPTION_ALGORITHM = "http://www.w3.org/2009/xmlenc11#aes256-gcm";
+    private static final String KEY_TRANSPORT_ALGORITHM = "http://www.w3.org/2001/04/xmlenc#rsa-oaep-mgf1p";
+    private static final List<QName> NAMES_TO_ENCRYPT =
+        Collections.singletonList(new QName("urn:example:po", "PurchaseOrder"));
+
+    @State(Scope.Thread)
+    public static class StreamingEncryptionState {
+
+        @Param({"1", "100", "1024", "10240", "51200"})
+        int sizeKb;
+
+        Key key;
+        X509Certificate cert;
+        SecretKey secretKey;
+        byte[] plaintext;
+        byte[] domEncrypted;
+        byte[] staxEncrypted;
+        OutputStream outputStream = new BenchmarkDocuments.NullOutputStream();
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            KeyStore keyStore = KeyStore.getInstance("jks");
+            keyStore.load(
+                this.getClass().getClassLoader().getResource("clientstore.jks").openStream(),
+                "cspass".toCharArray()
+            );
+            key = keyStore.getKey("myclientkey", "ckpass".toCharArray());
+            cert = (X509Certificate)keyStore.getCertificate("myclientkey");
+
+            KeyGenerator keygen = KeyGenerator.getInstance("AES");
+            keygen.init(256);
+            secretKey = keygen.generateKey();
+
+            plaintext = BenchmarkDocuments.generate(sizeKb);
+
+            Document document = BenchmarkDocuments.parse(plaintext);
+            EncryptionUtils.encryptUsingDOM(
+                document, ENCRYPTION_ALGORITHM, secretKey, KEY_TRANSPORT_ALGORITHM, cert.getPublicKey(), true
+            );
+            domEncrypted = BenchmarkDocuments.serialize(document);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            EncryptionUtils.encryptUsingStAX(
+                new ByteArrayInputStream(plaintext), baos, NAMES_TO_ENCRYPT, ENCRYPTION_ALGORITHM,
+                secretKey, KEY_TRANSPORT_ALGORITHM, cert.getPublicKey(), true
+            );
+            staxEncrypted = baos.toByteArray();
+        }
+    }
+
+    @Benchmark
+    public void testDOMEncryption(StreamingEncryptionState state) throws Exception {
+        Document document = XMLUtils.read(new ByteArrayInputStream(state.plaintext), false);
+        EncryptionUtils.encryptUsingDOM(
+            document, ENCRYPTION_ALGORITHM, state.secretKey, KEY_TRANSPORT_ALGORITHM,
+            state.cert.getPublicKey(), true
+        );
+        XMLUtils.outputDOM(document, state.outputStream);
+    }
+
+    @Benchmark
+    public void testStAXEncryption(StreamingEncryptionState state) throws Exception {
+        EncryptionUtils.encryptUsingStAX(
+            new ByteArrayInputStream(state.plaintext), state.outputStream, NAMES_TO_ENCRYPT,
+            ENCRYPTION_ALGORITHM, state.secretKey, KEY_TRANSPORT_ALGORITHM, state.cert.getPublicKey(), true
+        );
+    }
+
+    @Benchmark
+    public Document testDOMDecryption(StreamingEncryptionState state) throws Exception {
+        Document document = XMLUtils.read(new ByteArrayInputStream(state.domEncrypted), false);
+        EncryptionUtils.decryptUsingDOM(document, ENCRYPTION_ALGORITHM, state.key);
+        return document;
+    }
+
+    @Benchmark
+    public void testStAXDecryption(StreamingEncryptionState state) throws Exception {
+        EncryptionUtils.decryptUsingStAX(new ByteArrayInputStream(state.staxEncrypted), NAMES_TO_ENCRYPT, state.key);
+    }
+
+}
@@ -20,11 +20,19 @@ package org.apache.coheigea.santuario.benchmarks;
 
 
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.xml.security.utils.XMLUtils;
 import org.openjdk.jmh.annotations.Benchmark;
@@ -32,8 +40,14 @@ import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 
 @BenchmarkMode(Mode.Throughput)
@@ -44,6 +58,56 @@ import org.xml.sax.InputSource;
  */
 public class XMLUtilsPerformanceBenchmark {
 
+	private static final String XML = "<xml>123</xml>";
+	private static final int TASKS = 100;
+
+	private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = ThreadLocal.withInitial(() -> {
+		try {
+			return createDocumentBuilder();
+		} catch (ParserConfigurationException ex) {
+			throw new IllegalStateException(ex);
+		}
+	});
+
+	@State(Scope.Benchmark)
+	public static class PoolState {
+		DocumentBuilderPool pool;
+
+		@Setup
+		public void setUp() throws Exception {
+			pool = new DocumentBuilderPool(64);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class ExecutorState {
+		// "virtual" requires Java 21+, e.g. -p executor=virtual
+		@Param({"fixed", "forkjoin"})
+		String executor;
+
+		ExecutorService executorService;
+
+		@Setup
+		public void setUp() throws Exception {
+			if ("fixed".equals(executor)) {
+				executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+			} else if ("forkjoin".equals(executor)) {
+				executorService = new ForkJoinPool();
+			} else if ("virtual".equals(executor)) {
+				// Use reflection so that this still compiles for older Java versions
+				executorService =
+					(ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} else {
+				throw new IllegalStateException("Unknown executor: " + executor);
+			}
+		}
+
+		@TearDown
+		public void tearDown() {
+			executorService.shutdownNow();
+		}
+	}
+
 	@Benchmark
     @Fork(1)
     @Warmup(iterations = 5)
@@ -74,14 +138,87 @@ public class XMLUtilsPerformanceBenchmark {
 	@Threads(10)
 	// Plain Java calls for comparison
     public void testCreateDocumentBuilder() throws Exception {
+        DocumentBuilder documentBuilder = createDocumentBuilder();
+
+        InputSource inputSource = new InputSource(new StringReader(XML));
+        documentBuilder.parse(inputSource);
+	}
+
+	@Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+	@Threads(10)
+	// A bounded, lock-free DocumentBuilder pool
+    public Document testDocumentBuilderPool(PoolState state) throws Exception {
+        InputSource inputSource = new InputSource(new StringReader(XML));
+        return state.pool.parse(inputSource);
+    }
+
+	@Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+	@Threads(10)
+	// A DocumentBuilder cached in a ThreadLocal
+    public Document testThreadLocalDocumentBuilder() throws Exception {
+        DocumentBuilder documentBuilder = DOCUMENT_BUILDER.get();
+        try {
+            InputSource inputSource = new InputSource(new StringReader(XML));
+            return documentBuilder.parse(inputSource);
+        } finally {
+            documentBuilder.reset();
+        }
+    }
+
+	@Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+	@Threads(1)
+	// Each operation parses TASKS documents on the executor
+    public void testXMLUtilsExecutor(ExecutorState state) throws Exception {
+        runTasks(state.executorService, () -> XMLUtils.read(new InputSource(new StringReader(XML)), false));
+    }
+
+	@Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+	@Threads(1)
+	// Each operation parses TASKS documents on the executor
+    public void testDocumentBuilderPoolExecutor(ExecutorState state, PoolState poolState) throws Exception {
+        runTasks(state.executorService, () -> poolState.pool.parse(new InputSource(new StringReader(XML))));
+    }
+
+	@Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+	@Threads(1)
+	// Each operation parses TASKS documents on the executor
+    public void testThreadLocalDocumentBuilderExecutor(ExecutorState state) throws Exception {
+        runTasks(state.executorService, () -> {
+            DocumentBuilder documentBuilder = DOCUMENT_BUILDER.get();
+            try {
+                return documentBuilder.parse(new InputSource(new StringReader(XML)));
+            } finally {
+                documentBuilder.reset();
+            }
+        });
+    }
+
+    private static void runTasks(ExecutorService executorService, Callable<Document> task) throws Exception {
+        List<Future<Document>> futures = new ArrayList<>(TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            futures.add(executorService.submit(task));
+        }
+        for (Future<Document> future : futures) {
+            future.get();
+        }
+    }
+
+    private static DocumentBuilder createDocumentBuilder() throws ParserConfigurationException {
         DocumentBuilderFactory dfactory = DocumentBuilderFactory.newInstance();
         dfactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, Boolean.TRUE);
         dfactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
         dfactory.setNamespaceAware(true);
-        DocumentBuilder documentBuilder = dfactory.newDocumentBuilder();
+        return dfactory.newDocumentBuilder();
+    }
 
-        InputSource inputSource = new InputSource(new StringReader("<xml>123</xml>"));
-        documentBuilder.parse(inputSource);
-	}
-    
 }
@@ -0,0 +1,391 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.coheigea.misc.performance;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Generates a report from the samples written by the PerformanceTimingTest and
+ * PerformanceMemoryTest of the cxf-timing and santuario-serializer benchmarks, without needing
+ * gnuplot. It writes "index.html" (with inline SVG charts), "report.csv" and "report.json" to
+ * target/performance-report. If a baseline file exists, the total of each series is compared
+ * against the baseline, and an exception is thrown (failing the build) if it is worse by more
+ * than the threshold. It is configured via system properties:
+ *
+ *  - performance.targetDir: The directory containing the samples (default "target")
+ *  - performance.baseline: The baseline file (default "src/etc/performance-baseline.csv")
+ *  - performance.threshold: The allowed regression as a fraction (default "0.25", i.e. 25%)
+ *  - performance.updateBaseline: If "true", the baseline file is replaced by the current results
+ */
+public final class PerformanceReport {
+
+    private static final String[][] DATASETS = {
+        {"encryptionOutTimeSamples", "Time needed for encryption", "Time [s]"},
+        {"encryptionInTimeSamples", "Time needed for decryption", "Time [s]"},
+        {"encryptionOutMemorySamples", "HEAP memory consumption during encryption", "Memory [MB]"},
+        {"encryptionInMemorySamples", "HEAP memory consumption during decryption", "Memory [MB]"},
+    };
+
+    private static final String[] COLOURS = {"#1f77b4", "#d62728", "#2ca02c", "#ff7f0e", "#9467bd"};
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 400;
+    private static final int MARGIN = 60;
+
+    private PerformanceReport() {
+        // complete
+    }
+
+    /**
+     * The arguments are the names of the series (the columns of the samples after the tag count),
+     * e.g. "StAX DOM". Any series without a name is called "Series n".
+     */
+    public static void main(String[] args) throws Exception {
+        File targetDir = new File(System.getProperty("performance.targetDir", "target"));
+        File baselineFile = new File(System.getProperty("performance.baseline", "src/etc/performance-baseline.csv"));
+        double threshold = Double.parseDouble(System.getProperty("performance.threshold", "0.25"));
+
+        List<Dataset> datasets = new ArrayList<Dataset>();
+        for (String[] dataset : DATASETS) {
+            File samples = new File(targetDir, dataset[0] + ".txt");
+            if (samples.exists()) {
+                datasets.add(readSamples(samples, dataset[0], dataset[1], dataset[2], args));
+            }
+        }
+        if (datasets.isEmpty()) {
+            System.out.println("No performance samples found in " + targetDir + ", skipping the report");
+            return;
+        }
+
+        File reportDir = new File(targetDir, "performance-report");
+        reportDir.mkdirs();
+        File csvFile = new File(reportDir, "report.csv");
+        writeCSV(datasets, csvFile);
+
+        if (Boolean.getBoolean("performance.updateBaseline")) {
+            writeCSV(datasets, baselineFile);
+            System.out.println("Updated the performance baseline " + baselineFile);
+        }
+
+        List<String> regressions = new ArrayList<String>();
+        Map<String, Double> baseline = null;
+        if (baselineFile.exists()) {
+            baseline = readCSV(baselineFile);
+            regressions = compare(datasets, baseline, threshold);
+        }
+
+        writeJSON(datasets, baselineFile, baseline != null, threshold, regressions, new File(reportDir, "report.json"));
+        writeHTML(datasets, baselineFile, baseline != null, threshold, regressions, new File(reportDir, "index.html"));
+        System.out.println("Wrote the performance report to " + reportDir);
+
+        if (!regressions.isEmpty()) {
+            StringBuilder message = new StringBuilder("Performance regressions against " + baselineFile + ":");
+            for (String regression : regressions) {
+                message.append("\n  ").append(regression);
+            }
+            throw new IllegalStateException(message.toString());
+        }
+    }
+
+    private static Dataset readSamples(File file, String name, String title, String unit, String[] seriesNames)
+        throws IOException {
+        Dataset dataset = new Dataset(name, title, unit, seriesNames);
+        try (BufferedReader reader =
+            new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.trim().split("\\s+");
+                if (values.length < 2) {
+                    continue;
+                }
+                double[] row = new double[values.length - 1];
+                for (int i = 1; i < values.length; i++) {
+                    row[i - 1] = Double.parseDouble(values[i]);
+                }
+                dataset.rows.put(Integer.valueOf(values[0]), row);
+            }
+        }
+        return dataset;
+    }
+
+    /**
+     * Compare the sum of each series, over the tag counts that are in both the current results
+     * and the baseline, as individual samples are too noisy to compare.
+     */
+    private static List<String> compare(List<Dataset> datasets, Map<String, Double> baseline, double threshold) {
+        List<String> regressions = new ArrayList<String>();
+        for (Dataset dataset : datasets) {
+            for (int series = 0; series < dataset.getSeriesCount(); series++) {
+                String seriesName = dataset.getSeriesName(series);
+                double currentTotal = 0;
+                double baselineTotal = 0;
+                for (Map.Entry<Integer, double[]> row : dataset.rows.entrySet()) {
+                    Double baselineValue = baseline.get(key(dataset.name, seriesName, row.getKey()));
+                    if (baselineValue != null && series < row.getValue().length) {
+                        currentTotal += row.getValue()[series];
+                        baselineTotal += baselineValue;
+                    }
+                }
+                if (baselineTotal > 0 && currentTotal > baselineTotal * (1 + threshold)) {
+                    regressions.add(String.format(Locale.ENGLISH, "%s / %s: %.2f against a baseline of %.2f (+%.0f%%)",
+                        dataset.title, seriesName, currentTotal, baselineTotal,
+                        (currentTotal / baselineTotal - 1) * 100));
+                }
+            }
+        }
+        return regressions;
+    }
+
+    private static Map<String, Double> readCSV(File file) throws IOException {
+        Map<String, Double> values = new LinkedHashMap<String, Double>();
+        try (BufferedReader reader =
+            new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = reader.readLine(); // header
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split(",");
+                if (columns.length == 4) {
+                    values.put(key(columns[0], columns[1], Integer.valueOf(columns[2])), Double.valueOf(columns[3]));
+                }
+            }
+        }
+        return values;
+    }
+
+    private static void writeCSV(List<Dataset> datasets, File file) throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        try (PrintWriter writer = newWriter(file)) {
+            writer.println("dataset,series,tags,value");
+            for (Dataset dataset : datasets) {
+                for (Map.Entry<Integer, double[]> row : dataset.rows.entrySet()) {
+                    for (int series = 0; series < row.getValue().length; series++) {
+                        writer.println(dataset.name + "," + dataset.getSeriesName(series) + "," + row.getKey() + ","
+                            + row.getValue()[series]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeJSON(List<Dataset> datasets, File baselineFile, boolean hasBaseline,
+                                  double threshold, List<String> regressions, File file) throws IOException {
+        try (PrintWriter writer = newWriter(file)) {
+            writer.println("{");
+            writer.println("  \"datasets\": [");
+            for (int d = 0; d < datasets.size(); d++) {
+                Dataset dataset = datasets.get(d);
+                writer.println("    {");
+                writer.println("      \"name\": " + quote(dataset.name) + ",");
+                writer.println("      \"title\": " + quote(dataset.title) + ",");
+                writer.println("      \"unit\": " + quote(dataset.unit) + ",");
+                writer.println("      \"series\": [");
+                for (int series = 0; series < dataset.getSeriesCount(); series++) {
+                    StringBuilder points = new StringBuilder();
+                    for (Map.Entry<Integer, double[]> row : dataset.rows.entrySet()) {
+                        if (series < row.getValue().length) {
+                            if (points.length() > 0) {
+                                points.append(", ");
+                            }
+                            points.append('[').append(row.getKey()).append(", ")
+                                .append(row.getValue()[series]).append(']');
+                        }
+                    }
+                    writer.println("        {\"name\": " + quote(dataset.getSeriesName(series)) + ", \"points\": ["
+                        + points + "]}" + (series < dataset.getSeriesCount() - 1 ? "," : ""));
+                }
+                writer.println("      ]");
+                writer.println("    }" + (d < datasets.size() - 1 ? "," : ""));
+            }
+            writer.println("  ],");
+            writer.println("  \"baseline\": " + (hasBaseline ? quote(baselineFile.getPath()) : "null") + ",");
+            writer.println("  \"threshold\": " + threshold + ",");
+            writer.println("  \"regressions\": [");
+            for (int i = 0; i < regressions.size(); i++) {
+                writer.println("    " + quote(regressions.get(i)) + (i < regressions.size() - 1 ? "," : ""));
+            }
+            writer.println("  ]");
+            writer.println("}");
+        }
+    }
+
+    private static void writeHTML(List<Dataset> datasets, File baselineFile, boolean hasBaseline,
+                                  double threshold, List<String> regressions, File file) throws IOException {
+        try (PrintWriter writer = newWriter(file)) {
+            writer.println("<!DOCTYPE html>");
+            writer.println("<html><head><meta charset=\"UTF-8\"><title>Performance report</title>");
+            writer.println("<style>body { font-family: sans-serif; } .regression { color: #d62728; }</style>");
+            writer.println("</head><body>");
+            writer.println("<h1>Performance report</h1>");
+            if (hasBaseline) {
+                writer.println("<p>Compared against " + escape(baselineFile.getPath()) + " with a threshold of "
+                    + Math.round(threshold * 100) + "%.</p>");
+                if (regressions.isEmpty()) {
+                    writer.println("<p>No regressions.</p>");
+                } else {
+                    writer.println("<ul class=\"regression\">");
+                    for (String regression : regressions) {
+                        writer.println("<li>" + escape(regression) + "</li>");
+                    }
+                    writer.println("</ul>");
+                }
+            } else {
+                writer.println("<p>No baseline found at " + escape(baselineFile.getPath()) + ".</p>");
+            }
+            for (Dataset dataset : datasets) {
+                writer.println("<h2>" + escape(dataset.title) + "</h2>");
+                writeSVG(dataset, writer);
+            }
+            writer.println("</body></html>");
+        }
+    }
+
+    private static void writeSVG(Dataset dataset, Writer writer) throws IOException {
+        double maxX = 1;
+        double maxY = 0;
+        for (Map.Entry<Integer, double[]> row : dataset.rows.entrySet()) {
+            maxX = Math.max(maxX, row.getKey());
+            for (double value : row.getValue()) {
+                maxY = Math.max(maxY, value);
+            }
+        }
+        if (maxY <= 0) {
+            maxY = 1;
+        }
+        int plotWidth = WIDTH - 2 * MARGIN;
+        int plotHeight = HEIGHT - 2 * MARGIN;
+
+        StringBuilder svg = new StringBuilder();
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(WIDTH)
+            .append("\" height=\"").append(HEIGHT).append("\" font-size=\"11\">\n");
+        svg.append("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+
+        // Axes, grid lines and labels
+        for (int i = 0; i <= 5; i++) {
+            double y = MARGIN + plotHeight - plotHeight * i / 5.0;
+            double x = MARGIN + plotWidth * i / 5.0;
+            svg.append(String.format(Locale.ENGLISH,
+                "<line x1=\"%d\" y1=\"%.1f\" x2=\"%d\" y2=\"%.1f\" stroke=\"#ddd\"/>\n",
+                MARGIN, y, MARGIN + plotWidth, y));
+            svg.append(String.format(Locale.ENGLISH,
+                "<text x=\"%d\" y=\"%.1f\" text-anchor=\"end\">%s</text>\n",
+                MARGIN - 5, y + 4, format(maxY * i / 5)));
+            svg.append(String.format(Locale.ENGLISH,
+                "<text x=\"%.1f\" y=\"%d\" text-anchor=\"middle\">%d</text>\n",
+                x, MARGIN + plotHeight + 15, Math.round(maxX * i / 5)));
+        }
+        svg.append(String.format(Locale.ENGLISH,
+            "<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" fill=\"none\" stroke=\"black\"/>\n",
+            MARGIN, MARGIN, plotWidth, plotHeight));
+        svg.append(String.format(Locale.ENGLISH,
+            "<text x=\"%d\" y=\"%d\" text-anchor=\"middle\">Number of XML start elements</text>\n",
+            MARGIN + plotWidth / 2, HEIGHT - 15));
+        svg.append(String.format(Locale.ENGLISH,
+            "<text x=\"15\" y=\"%d\" text-anchor=\"middle\" transform=\"rotate(-90 15 %d)\">%s</text>\n",
+            MARGIN + plotHeight / 2, MARGIN + plotHeight / 2, escape(dataset.unit)));
+
+        // One line per series, and the legend in the top left corner
+        for (int series = 0; series < dataset.getSeriesCount(); series++) {
+            String colour = COLOURS[series % COLOURS.length];
+            StringBuilder points = new StringBuilder();
+            for (Map.Entry<Integer, double[]> row : dataset.rows.entrySet()) {
+                if (series < row.getValue().length) {
+                    double x = MARGIN + plotWidth * row.getKey() / maxX;
+                    double y = MARGIN + plotHeight - plotHeight * row.getValue()[series] / maxY;
+                    points.append(String.format(Locale.ENGLISH, "%.1f,%.1f ", x, y));
+                    svg.append(String.format(Locale.ENGLISH,
+                        "<circle cx=\"%.1f\" cy=\"%.1f\" r=\"2.5\" fill=\"%s\"/>\n", x, y, colour));
+                }
+            }
+            svg.append("<polyline fill=\"none\" stroke=\"").append(colour).append("\" points=\"")
+                .append(points.toString().trim()).append("\"/>\n");
+
+            int legendY = MARGIN + 15 + series * 15;
+            svg.append(String.format(Locale.ENGLISH,
+                "<line x1=\"%d\" y1=\"%d\" x2=\"%d\" y2=\"%d\" stroke=\"%s\" stroke-width=\"2\"/>\n",
+                MARGIN + 10, legendY - 4, MARGIN + 30, legendY - 4, colour));
+            svg.append(String.format(Locale.ENGLISH, "<text x=\"%d\" y=\"%d\">%s</text>\n",
+                MARGIN + 35, legendY, escape(dataset.getSeriesName(series))));
+        }
+        svg.append("</svg>\n");
+        writer.write(svg.toString());
+    }
+
+    private static String key(String dataset, String series, Integer tags) {
+        return dataset + "," + series + "," + tags;
+    }
+
+    private static String format(double value) {
+        return value >= 10 ? String.valueOf(Math.round(value)) : String.format(Locale.ENGLISH, "%.2f", value);
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static PrintWriter newWriter(File file) throws IOException {
+        return new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    private static final class Dataset {
+        private final String name;
+        private final String title;
+        private final String unit;
+        private final String[] seriesNames;
+        private final TreeMap<Integer, double[]> rows = new TreeMap<Integer, double[]>();
+
+        Dataset(String name, String title, String unit, String[] seriesNames) {
+            this.name = name;
+            this.title = title;
+            this.unit = unit;
+            this.seriesNames = seriesNames;
+        }
+
+        String getSeriesName(int series) {
+            return series < seriesNames.length ? seriesNames[series] : "Series " + (series + 1);
+        }
+
+        int getSeriesCount() {
+            int count = 0;
+            for (double[] row : rows.values()) {
+                count = Math.max(count, row.length);
+            }
+            return count;
+        }
+    }
+}